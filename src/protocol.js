@@ -0,0 +1,203 @@
+//the binary protocol used for the messages sent most often
+//every binary message is a batch: a version byte, a varint count, then for
+//each message a type byte, a varint length and the body
+var CruftyProtocol = (function () {
+	//version 2 added velocities to moves
+	var VERSION = 2;
+	var NO_FACING = 0xFF;
+	var HAS_X = 1;
+	var HAS_Y = 2;
+	var HAS_FACING = 4;
+	//position units per tile, so a unit is a pixel
+	var SCALE = 64;
+	var FACINGS = ["up", "down", "left", "right"];
+
+	var POS_UPDATE = 1;
+	var ENTITY_DIED = 2;
+	var SNAPSHOT_HELLO = 3;
+	var SNAPSHOT_ACK = 4;
+	var MOVE_SET = 16;
+	var SNAPSHOT = 17;
+
+	function Reader(bytes, start, end) {
+		this.bytes = bytes;
+		this.pos = start;
+		this.end = end;
+	}
+	Reader.prototype.byte = function () {
+		if (this.pos >= this.end) {
+			throw new Error("Unexpected end of message");
+		}
+		return this.bytes[this.pos++];
+	};
+	Reader.prototype.varint = function () {
+		var value = 0;
+		var mul = 1;
+		var b;
+		do {
+			b = this.byte();
+			value += (b & 0x7F) * mul;
+			mul *= 128;
+		} while (b & 0x80);
+		return value;
+	};
+	Reader.prototype.signed = function () {
+		var raw = this.varint();
+		return raw % 2 == 0 ? raw / 2 : -(raw + 1) / 2;
+	};
+	Reader.prototype.position = function () {
+		return this.signed() / SCALE;
+	};
+	Reader.prototype.facing = function () {
+		var code = this.byte();
+		return code < FACINGS.length ? FACINGS[code] : undefined;
+	};
+
+	function Writer() {
+		this.bytes = [];
+	}
+	Writer.prototype.byte = function (b) {
+		this.bytes.push(b & 0xFF);
+	};
+	Writer.prototype.varint = function (v) {
+		v = Math.max(0, Math.floor(v));
+		while (v >= 128) {
+			this.bytes.push((v % 128) | 0x80);
+			v = Math.floor(v / 128);
+		}
+		this.bytes.push(v);
+	};
+	Writer.prototype.signed = function (v) {
+		v = Math.round(v);
+		this.varint(v < 0 ? -2 * v - 1 : 2 * v);
+	};
+	Writer.prototype.facing = function (name) {
+		var code = FACINGS.indexOf(name);
+		this.byte(code < 0 ? NO_FACING : code);
+	};
+
+	function readSnapshot(r) {
+		var msg = {eventType: "Snapshot"};
+		msg.seq = r.varint();
+		msg.baseSeq = r.signed();
+		msg.entityCount = r.varint();
+		msg.entities = [];
+		for (var i = 0; i < msg.entityCount; i++) {
+			var e = {id: r.varint()};
+			var flags = r.byte();
+			if (flags & HAS_X) {
+				e.x = r.position();
+			}
+			if (flags & HAS_Y) {
+				e.y = r.position();
+			}
+			if (flags & HAS_FACING) {
+				e.facing = r.facing();
+			}
+			msg.entities.push(e);
+		}
+		msg.removedCount = r.varint();
+		msg.removed = [];
+		for (var i = 0; i < msg.removedCount; i++) {
+			msg.removed.push(r.varint());
+		}
+		return msg;
+	}
+
+	function readMoveSet(r) {
+		var msg = {eventType: "MoveSet"};
+		msg.moveCount = r.varint();
+		msg.moves = [];
+		for (var i = 0; i < msg.moveCount; i++) {
+			var id = r.varint();
+			var x = r.position();
+			var y = r.position();
+			var facing = r.facing();
+			var color = r.varint();
+			var vx = r.position();
+			var vy = r.position();
+			msg.moves.push({
+				entity: {id: id, colorIndex: color},
+				position: {x: x, y: y},
+				velocity: {x: vx, y: vy},
+				facing: facing
+			});
+		}
+		return msg;
+	}
+
+	//turns a binary message from the server into messages shaped like the
+	//json ones, skipping any types this doesn't know
+	function decodeFrame(buffer) {
+		var bytes = new Uint8Array(buffer);
+		var r = new Reader(bytes, 0, bytes.length);
+		var messages = [];
+		if (r.byte() != VERSION) {
+			return messages;
+		}
+		var count = r.varint();
+		for (var i = 0; i < count; i++) {
+			var type = r.byte();
+			var length = r.varint();
+			var body = new Reader(bytes, r.pos, r.pos + length);
+			r.pos += length;
+			if (type == SNAPSHOT) {
+				messages.push(readSnapshot(body));
+			}
+			else if (type == MOVE_SET) {
+				messages.push(readMoveSet(body));
+			}
+		}
+		return messages;
+	}
+
+	//encodes a message that would be sent as json, or returns null if it
+	//has no binary form
+	function encode(msg) {
+		var body = new Writer();
+		var type;
+		if (msg.eventName == "posUpdate") {
+			type = POS_UPDATE;
+			//already in pixels
+			body.signed(msg.xPosition);
+			body.signed(msg.yPosition);
+			body.facing(msg.facing);
+		}
+		else if (msg.eventName == "EntityDied") {
+			type = ENTITY_DIED;
+			body.varint(msg.id != undefined ? msg.id : 0);
+			body.varint(msg.points);
+		}
+		else if (msg.eventName == "snapshotHello") {
+			type = SNAPSHOT_HELLO;
+		}
+		else if (msg.eventName == "snapshotAck") {
+			type = SNAPSHOT_ACK;
+			body.varint(msg.seq);
+		}
+		else {
+			return null;
+		}
+		var batch = new Writer();
+		batch.byte(VERSION);
+		batch.varint(1);
+		batch.byte(type);
+		batch.varint(body.bytes.length);
+		var out = new Uint8Array(batch.bytes.length + body.bytes.length);
+		out.set(batch.bytes, 0);
+		out.set(body.bytes, batch.bytes.length);
+		return out.buffer;
+	}
+
+	//asks the server to use the binary protocol
+	function hello() {
+		return JSON.stringify({"eventName" : "binaryHello", "version" : VERSION});
+	}
+
+	return {
+		VERSION: VERSION,
+		decodeFrame: decodeFrame,
+		encode: encode,
+		hello: hello
+	};
+})();
@@ -0,0 +1,366 @@
+package cruftyKrab.ai;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.ikalagaming.logging.Logging;
+
+/**
+ * Buckets a set of points into square cells so that the points near a
+ * position can be found without checking every point. Cells are hashed into a
+ * table sized by the number of points rather than the size of the map, so
+ * memory stays proportional to the number of points even on huge arenas.
+ *
+ * Points are referred to by their index in the arrays given to
+ * {@link #rebuild(float[], float[], BitSet)}, which is the slot of each
+ * mascot when built from an entity store. The grid does not follow changes to
+ * those arrays, it has to be rebuilt after points move. Queries don't create
+ * any objects, so they are cheap enough to run for every AI every update.
+ *
+ * Only one thread should use a grid at a time.
+ *
+ * @author Ches Burks
+ *
+ */
+public class SpatialGrid {
+
+	/**
+	 * The default width and height of a cell, in tiles. Small enough that
+	 * steering only looks at a few cells, and big enough that searching a
+	 * client's view doesn't look at too many. ({@value})
+	 */
+	public static final float DEFAULT_CELL_SIZE = 2.0f;
+
+	private static final int MIN_BUCKETS = 16;
+
+	/**
+	 * With this few points it is faster to just check all of them than to
+	 * search outwards through cells, which can be slow when they are spread
+	 * out on a large map. ({@value})
+	 */
+	private static final int SCAN_ALL_BELOW = 32;
+
+	private static int hash(final int cellX, final int cellY) {
+		// large primes, spreads neighboring cells across the table
+		return (cellX * 73856093) ^ (cellY * 19349663);
+	}
+
+	private final float cellSize;
+
+	/**
+	 * Index into {@link #entries} where each bucket starts. Bucket i is
+	 * entries[bucketStart[i]] up to but not including
+	 * entries[bucketStart[i+1]].
+	 */
+	private int[] bucketStart;
+	/**
+	 * Point indices, sorted by bucket.
+	 */
+	private int[] entries;
+	private int[] bucketOf;
+	private int bucketMask;
+
+	private float[] xs;
+	private float[] ys;
+	private int count;
+
+	/**
+	 * The range of cells that have points in them.
+	 */
+	private int minCellX, maxCellX, minCellY, maxCellY;
+
+	/**
+	 * The closest point found so far by {@link #nearest(float, float)}, and
+	 * its squared distance.
+	 */
+	private int nearestPoint;
+	private float nearestDistSq;
+
+	/**
+	 * Creates an empty grid with the default cell size.
+	 */
+	public SpatialGrid() {
+		this(SpatialGrid.DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * Creates an empty grid.
+	 *
+	 * @param size the width and height of a cell, in tiles. Should be about
+	 *            the radius that is searched most often. Must be positive.
+	 */
+	public SpatialGrid(final float size) {
+		float s = size;
+		if (!(s > 0)) {
+			Logging.warning("Spatial Grid",
+					"Cell size must be positive, using default");
+			s = SpatialGrid.DEFAULT_CELL_SIZE;
+		}
+		this.cellSize = s;
+		this.bucketStart = new int[SpatialGrid.MIN_BUCKETS + 1];
+		this.bucketMask = SpatialGrid.MIN_BUCKETS - 1;
+		this.entries = new int[0];
+		this.bucketOf = new int[0];
+		this.xs = new float[0];
+		this.ys = new float[0];
+		this.count = 0;
+	}
+
+	private int cell(final float pos) {
+		return (int) Math.floor(pos / this.cellSize);
+	}
+
+	/**
+	 * Counts the points within the radius of the given position.
+	 *
+	 * @param x the x position to search around
+	 * @param y the y position to search around
+	 * @param radius how far away points can be
+	 * @return how many points are in range
+	 */
+	public int countWithin(final float x, final float y, final float radius) {
+		return this.search(x, y, radius, -1, null);
+	}
+
+	/**
+	 * Returns the width and height of the cells.
+	 *
+	 * @return the cell size in tiles
+	 */
+	public float getCellSize() {
+		return this.cellSize;
+	}
+
+	/**
+	 * Returns how many points are in the grid.
+	 *
+	 * @return the number of points
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the point closest to a position.
+	 *
+	 * @param x the x position to search from
+	 * @param y the y position to search from
+	 * @return the index of the closest point, or -1 if the grid is empty
+	 */
+	public int nearest(final float x, final float y) {
+		this.nearestPoint = -1;
+		this.nearestDistSq = Float.MAX_VALUE;
+		if (this.count < SpatialGrid.SCAN_ALL_BELOW) {
+			for (int i = 0; i < this.count; ++i) {
+				this.offer(this.entries[i], x, y);
+			}
+			return this.nearestPoint;
+		}
+		final int cx = this.cell(x);
+		final int cy = this.cell(y);
+		// the farthest ring that could contain anything
+		final int maxRing = Math.max(
+				Math.max(Math.abs(this.minCellX - cx),
+						Math.abs(this.maxCellX - cx)),
+				Math.max(Math.abs(this.minCellY - cy),
+						Math.abs(this.maxCellY - cy)));
+
+		for (int ring = 0; ring <= maxRing; ++ring) {
+			if ((long) (2 * ring + 1) * (2 * ring + 1) > this.count) {
+				// more cells than points left to look at, check them all
+				this.nearestPoint = -1;
+				this.nearestDistSq = Float.MAX_VALUE;
+				for (int i = 0; i < this.count; ++i) {
+					this.offer(this.entries[i], x, y);
+				}
+				return this.nearestPoint;
+			}
+			for (int i = -ring; i <= ring; ++i) {
+				this.searchCell(cx + i, cy - ring, x, y);
+				if (ring > 0) {
+					this.searchCell(cx + i, cy + ring, x, y);
+				}
+			}
+			for (int j = -ring + 1; j <= ring - 1; ++j) {
+				this.searchCell(cx - ring, cy + j, x, y);
+				this.searchCell(cx + ring, cy + j, x, y);
+			}
+			// anything in the next ring is at least this far away
+			final float reach = ring * this.cellSize;
+			if (this.nearestPoint >= 0
+					&& this.nearestDistSq <= reach * reach) {
+				break;
+			}
+		}
+		return this.nearestPoint;
+	}
+
+	private void offer(final int p, final float x, final float y) {
+		final float dx = this.xs[p] - x;
+		final float dy = this.ys[p] - y;
+		final float distSq = dx * dx + dy * dy;
+		if (distSq < this.nearestDistSq) {
+			this.nearestDistSq = distSq;
+			this.nearestPoint = p;
+		}
+	}
+
+	/**
+	 * Finds points within the radius of the given position, and stores their
+	 * indices in the output array. Stops once the output is full, so in a
+	 * dense crowd the results are some, but not necessarily the closest,
+	 * points in range. An output as long as {@link #getCount()} always holds
+	 * every point in range.
+	 *
+	 * @param x the x position to search around
+	 * @param y the y position to search around
+	 * @param radius how far away points can be
+	 * @param exclude a point index to leave out of the results, usually the
+	 *            point doing the searching, or -1 for none
+	 * @param out where to put the indices of points that are found
+	 * @return the number of indices stored in the output
+	 */
+	public int query(final float x, final float y, final float radius,
+			final int exclude, int[] out) {
+		if (out.length == 0) {
+			return 0;
+		}
+		return this.search(x, y, radius, exclude, out);
+	}
+
+	/**
+	 * Replaces the contents of the grid with the given points. The arrays are
+	 * kept and read from during queries, so they should not be changed until
+	 * the grid is rebuilt again.
+	 *
+	 * @param xPositions the x positions of the points
+	 * @param yPositions the y positions of the points
+	 * @param points the indices of the points to put in the grid, which must
+	 *            all be within the arrays
+	 */
+	public void rebuild(float[] xPositions, float[] yPositions,
+			BitSet points) {
+		this.xs = xPositions;
+		this.ys = yPositions;
+		final int pointCount = points.cardinality();
+		this.count = pointCount;
+
+		int buckets = SpatialGrid.MIN_BUCKETS;
+		while (buckets < pointCount * 2 && buckets < (1 << 30)) {
+			buckets <<= 1;
+		}
+		if (this.bucketStart.length != buckets + 1) {
+			this.bucketStart = new int[buckets + 1];
+		}
+		else {
+			Arrays.fill(this.bucketStart, 0);
+		}
+		this.bucketMask = buckets - 1;
+		if (this.entries.length < pointCount) {
+			this.entries = new int[pointCount];
+		}
+		if (this.bucketOf.length < xPositions.length) {
+			this.bucketOf = new int[xPositions.length];
+		}
+		this.minCellX = Integer.MAX_VALUE;
+		this.minCellY = Integer.MAX_VALUE;
+		this.maxCellX = Integer.MIN_VALUE;
+		this.maxCellY = Integer.MIN_VALUE;
+
+		// counting sort by bucket
+		for (int p = points.nextSetBit(0); p >= 0; p =
+				points.nextSetBit(p + 1)) {
+			final int cellX = this.cell(xPositions[p]);
+			final int cellY = this.cell(yPositions[p]);
+			this.minCellX = Math.min(this.minCellX, cellX);
+			this.maxCellX = Math.max(this.maxCellX, cellX);
+			this.minCellY = Math.min(this.minCellY, cellY);
+			this.maxCellY = Math.max(this.maxCellY, cellY);
+			final int b = SpatialGrid.hash(cellX, cellY) & this.bucketMask;
+			this.bucketOf[p] = b;
+			++this.bucketStart[b + 1];
+		}
+		for (int b = 0; b < buckets; ++b) {
+			this.bucketStart[b + 1] += this.bucketStart[b];
+		}
+		/*
+		 * bucketStart[b + 1] is now the end of bucket b. Use it as a cursor,
+		 * filling from the back so each bucket ends up in index order. When
+		 * done it has moved down to the start of bucket b.
+		 */
+		for (int p = points.previousSetBit(points.length() - 1); p >= 0; p =
+				points.previousSetBit(p - 1)) {
+			this.entries[--this.bucketStart[this.bucketOf[p] + 1]] = p;
+		}
+		for (int b = 0; b < buckets; ++b) {
+			this.bucketStart[b] = this.bucketStart[b + 1];
+		}
+		this.bucketStart[buckets] = pointCount;
+	}
+
+	/**
+	 * Finds points in range, storing them in the output, or only counting
+	 * them if the output is null.
+	 */
+	private int search(final float x, final float y, final float radius,
+			final int exclude, int[] out) {
+		if (this.count == 0 || radius < 0) {
+			return 0;
+		}
+		final float radiusSq = radius * radius;
+		final int minX = Math.max(this.cell(x - radius), this.minCellX);
+		final int maxX = Math.min(this.cell(x + radius), this.maxCellX);
+		final int minY = Math.max(this.cell(y - radius), this.minCellY);
+		final int maxY = Math.min(this.cell(y + radius), this.maxCellY);
+
+		int found = 0;
+		for (int cellX = minX; cellX <= maxX; ++cellX) {
+			for (int cellY = minY; cellY <= maxY; ++cellY) {
+				final int b = SpatialGrid.hash(cellX, cellY) & this.bucketMask;
+				final int end = this.bucketStart[b + 1];
+				for (int i = this.bucketStart[b]; i < end; ++i) {
+					final int p = this.entries[i];
+					if (p == exclude) {
+						continue;
+					}
+					final float px = this.xs[p];
+					final float py = this.ys[p];
+					// buckets are shared by distant cells, skip those
+					if (this.cell(px) != cellX || this.cell(py) != cellY) {
+						continue;
+					}
+					final float dx = px - x;
+					final float dy = py - y;
+					if (dx * dx + dy * dy > radiusSq) {
+						continue;
+					}
+					if (out != null) {
+						out[found] = p;
+						if (found + 1 == out.length) {
+							return found + 1;
+						}
+					}
+					++found;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Offers every point in one cell to {@link #nearest(float, float)}.
+	 */
+	private void searchCell(final int cellX, final int cellY, final float x,
+			final float y) {
+		final int b = SpatialGrid.hash(cellX, cellY) & this.bucketMask;
+		final int end = this.bucketStart[b + 1];
+		for (int i = this.bucketStart[b]; i < end; ++i) {
+			final int p = this.entries[i];
+			// buckets are shared by distant cells, skip those
+			if (this.cell(this.xs[p]) == cellX
+					&& this.cell(this.ys[p]) == cellY) {
+				this.offer(p, x, y);
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package cruftyKrab.ai;
+
+import com.ikalagaming.logging.Logging;
+
+import cruftyKrab.ai.pathing.PathingMap;
+
+/**
+ * Adjusts the movement of a crowd of AI so they spread out instead of piling
+ * onto the same tile, and so they slide around walls instead of into them.
+ * This runs after each AI has decided where it wants to go.
+ *
+ * Neighbors are found using the {@link SpatialGrid} the match already keeps
+ * of its AI, and only a limited number of them are considered per AI, so the
+ * cost grows roughly linearly with the number of AI even when they are all
+ * bunched together.
+ *
+ * @author Ches Burks
+ *
+ */
+public class Steering {
+
+	/**
+	 * How close AI can get before they start pushing each other away, in tiles.
+	 * ({@value})
+	 */
+	public static final float DEFAULT_SEPARATION_RADIUS = 0.9f;
+
+	/**
+	 * How strongly AI push away from each other compared to how fast they are
+	 * moving. ({@value})
+	 */
+	public static final float DEFAULT_SEPARATION_WEIGHT = 1.5f;
+
+	/**
+	 * The most neighbors that are considered for each AI. ({@value})
+	 */
+	public static final int MAX_NEIGHBORS = 8;
+
+	/**
+	 * Angles, in radians, to try turning when the way ahead is blocked. Small
+	 * turns are tried first, alternating sides.
+	 */
+	private static final double[] AVOID_ANGLES = {Math.PI / 4, -Math.PI / 4,
+			Math.PI / 2, -Math.PI / 2, 3 * Math.PI / 4, -3 * Math.PI / 4};
+
+	/**
+	 * Used to spread out AI that are exactly on top of each other, by giving
+	 * each one a different direction to move in.
+	 */
+	private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+
+	private final PathingMap map;
+	private final int[] neighbors;
+
+	private float separationRadius;
+	private float separationWeight;
+
+	/**
+	 * Creates a steering stage for the given map.
+	 *
+	 * @param pathingMap the map used to avoid walls
+	 */
+	public Steering(PathingMap pathingMap) {
+		this.map = pathingMap;
+		this.separationRadius = Steering.DEFAULT_SEPARATION_RADIUS;
+		this.separationWeight = Steering.DEFAULT_SEPARATION_WEIGHT;
+		this.neighbors = new int[Steering.MAX_NEIGHBORS];
+	}
+
+	/**
+	 * Returns the distance at which AI start pushing away from each other.
+	 *
+	 * @return the separation radius in tiles
+	 */
+	public float getSeparationRadius() {
+		return this.separationRadius;
+	}
+
+	/**
+	 * Returns how strongly AI push away from each other.
+	 *
+	 * @return the separation weight
+	 */
+	public float getSeparationWeight() {
+		return this.separationWeight;
+	}
+
+	/**
+	 * Returns true if an entity at the given position could move by the given
+	 * amount without ending up on a wall.
+	 */
+	private boolean isClear(final float x, final float y, final float dx,
+			final float dy) {
+		return this.map.isWalkable(Math.round(x + dx), Math.round(y + dy));
+	}
+
+	/**
+	 * Sets the distance at which AI start pushing away from each other. Values
+	 * that are not positive are ignored.
+	 *
+	 * @param radius the new separation radius in tiles
+	 */
+	public void setSeparationRadius(final float radius) {
+		if (!(radius > 0)) {
+			Logging.warning("Steering",
+					"Separation radius must be positive, ignoring");
+			return;
+		}
+		this.separationRadius = radius;
+	}
+
+	/**
+	 * Sets how strongly AI push away from each other compared to how fast they
+	 * are moving. 0 turns separation off. Negative values are ignored.
+	 *
+	 * @param weight the new separation weight
+	 */
+	public void setSeparationWeight(final float weight) {
+		if (weight < 0) {
+			Logging.warning("Steering",
+					"Separation weight must not be negative, ignoring");
+			return;
+		}
+		this.separationWeight = weight;
+	}
+
+	/**
+	 * Adjusts the movement of every AI that is moving. The grid holds every
+	 * AI, moving or not, at its position at the start of the tick, and the x
+	 * and y arrays it was built from are not changed. The dx and dy arrays
+	 * hold the movement each moving AI wants this tick, and are replaced with
+	 * the steered movement. The result does not depend on the order of the
+	 * AI.
+	 *
+	 * The length of the steered movement is never more than the desired
+	 * movement, except for AI that are standing still, which may still be
+	 * nudged apart.
+	 *
+	 * @param grid the AI, built from the x and y arrays
+	 * @param x the x positions, by point in the grid
+	 * @param y the y positions, by point in the grid
+	 * @param points the point in the grid of each moving AI
+	 * @param dx the desired x movement, replaced with the steered movement
+	 * @param dy the desired y movement, replaced with the steered movement
+	 * @param count how many AI are moving, starting from index 0
+	 */
+	public void steer(SpatialGrid grid, float[] x, float[] y, int[] points,
+			float[] dx, float[] dy, final int count) {
+		final float radius = this.separationRadius;
+
+		for (int n = 0; n < count; ++n) {
+			final int i = points[n];
+			final float speed =
+					(float) Math.sqrt(dx[n] * dx[n] + dy[n] * dy[n]);
+
+			float sepX = 0;
+			float sepY = 0;
+			if (this.separationWeight > 0) {
+				final int found =
+						grid.query(x[i], y[i], radius, i, this.neighbors);
+				for (int k = 0; k < found; ++k) {
+					final int j = this.neighbors[k];
+					float ox = x[i] - x[j];
+					float oy = y[i] - y[j];
+					float dist = (float) Math.sqrt(ox * ox + oy * oy);
+					if (dist < 0.0001f) {
+						/*
+						 * On top of each other, so there is no direction away.
+						 * Pick one based on the index so the pair split.
+						 */
+						final double angle = Steering.GOLDEN_ANGLE
+								* (i > j ? i : -j - 1);
+						ox = (float) Math.cos(angle);
+						oy = (float) Math.sin(angle);
+						dist = 0.0001f;
+					}
+					else {
+						ox /= dist;
+						oy /= dist;
+					}
+					// stronger the closer they are
+					final float push = (radius - dist) / radius;
+					sepX += ox * push;
+					sepY += oy * push;
+				}
+			}
+
+			// standing AI can still be nudged, about a tenth of a tile
+			final float scale = this.separationWeight * Math.max(speed, 0.1f);
+			float nx = dx[n] + sepX * scale;
+			float ny = dy[n] + sepY * scale;
+
+			// never go faster than intended
+			final float limit = Math.max(speed, 0.1f);
+			final float len = (float) Math.sqrt(nx * nx + ny * ny);
+			if (len > limit) {
+				nx = nx / len * limit;
+				ny = ny / len * limit;
+			}
+
+			if (!this.isClear(x[i], y[i], nx, ny)) {
+				boolean found = false;
+				for (double angle : Steering.AVOID_ANGLES) {
+					final float cos = (float) Math.cos(angle);
+					final float sin = (float) Math.sin(angle);
+					final float rx = nx * cos - ny * sin;
+					final float ry = nx * sin + ny * cos;
+					if (this.isClear(x[i], y[i], rx, ry)) {
+						nx = rx;
+						ny = ry;
+						found = true;
+						break;
+					}
+				}
+				if (!found) {
+					nx = 0;
+					ny = 0;
+				}
+			}
+			dx[n] = nx;
+			dy[n] = ny;
+		}
+	}
+}
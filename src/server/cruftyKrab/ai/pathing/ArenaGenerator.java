@@ -0,0 +1,551 @@
+package cruftyKrab.ai.pathing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+import com.ikalagaming.logging.Logging;
+
+import tiled.core.Map;
+import tiled.core.Tile;
+import tiled.core.TileLayer;
+import tiled.core.TileSet;
+
+/**
+ * Procedurally generates square arenas for testing the pathfinding and match
+ * simulation at sizes well beyond the hand made map. The same size, seed,
+ * layout and obstacle density always produce exactly the same arena, so
+ * benchmarks and load tests can be reproduced.
+ *
+ * The outer ring of tiles is always solid, and any walkable area that cannot
+ * be reached from the rest of the arena is filled in, so every walkable tile
+ * can reach every other one.
+ *
+ * @author Ches Burks
+ *
+ */
+public class ArenaGenerator {
+	/**
+	 * The smallest arena that can be generated, in tiles along each side.
+	 * ({@value})
+	 */
+	public static final int MIN_SIZE = 64;
+	/**
+	 * The largest arena that can be generated, in tiles along each side.
+	 * ({@value})
+	 */
+	public static final int MAX_SIZE = 4096;
+
+	/**
+	 * The width and height of the zones in a {@link ArenaLayout#MIXED mixed}
+	 * arena.
+	 */
+	private static final int ZONE_SIZE = 64;
+	/**
+	 * The largest obstacle scattered across open areas, in tiles along each
+	 * side.
+	 */
+	private static final int MAX_OBSTACLE = 4;
+	private static final int MIN_ROOM = 4;
+	private static final int MAX_ROOM = 12;
+	/**
+	 * The width of maze corridors, in tiles. Walls are one tile thick.
+	 */
+	private static final int MAZE_CORRIDOR = 2;
+	private static final int MAZE_PITCH = ArenaGenerator.MAZE_CORRIDOR + 1;
+
+	private final int size;
+	private final long seed;
+	private ArenaLayout layout;
+	private float obstacleDensity;
+
+	/**
+	 * Creates a generator for arenas of the given size. Sizes outside of
+	 * {@link #MIN_SIZE} and {@link #MAX_SIZE} are capped. Defaults to a
+	 * {@link ArenaLayout#MIXED mixed} layout with an obstacle density of 0.2.
+	 *
+	 * @param arenaSize the width and height of the arena, in tiles
+	 * @param arenaSeed the seed for the random number generator
+	 */
+	public ArenaGenerator(final int arenaSize, final long arenaSeed) {
+		int sizeValue = arenaSize;
+		if (sizeValue < ArenaGenerator.MIN_SIZE) {
+			Logging.warning("Pathfinding",
+					"Arena size too small, using " + ArenaGenerator.MIN_SIZE);
+			sizeValue = ArenaGenerator.MIN_SIZE;
+		}
+		if (sizeValue > ArenaGenerator.MAX_SIZE) {
+			Logging.warning("Pathfinding",
+					"Arena size too large, using " + ArenaGenerator.MAX_SIZE);
+			sizeValue = ArenaGenerator.MAX_SIZE;
+		}
+		this.size = sizeValue;
+		this.seed = arenaSeed;
+		this.layout = ArenaLayout.MIXED;
+		this.obstacleDensity = 0.2f;
+	}
+
+	private boolean anyWalkable(BitSet walk, final int x, final int y,
+			final int w, final int h) {
+		final int startX = Math.max(0, x);
+		final int endX = Math.min(this.size, x + w);
+		final int startY = Math.max(0, y);
+		final int endY = Math.min(this.size, y + h);
+		for (int row = startY; row < endY; ++row) {
+			final int next = walk.nextSetBit(row * this.size + startX);
+			if (next >= 0 && next < row * this.size + endX) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void carveMaze(BitSet walk, SplittableRandom rng, final int x0,
+			final int y0, final int w, final int h) {
+		final int cellsX = (w - 1) / ArenaGenerator.MAZE_PITCH;
+		final int cellsY = (h - 1) / ArenaGenerator.MAZE_PITCH;
+		if (cellsX <= 0 || cellsY <= 0) {
+			this.carveOpenField(walk, rng, x0, y0, w, h);
+			return;
+		}
+		for (int cy = 0; cy < cellsY; ++cy) {
+			for (int cx = 0; cx < cellsX; ++cx) {
+				this.carveRect(walk, this.mazeX(x0, cx), this.mazeY(y0, cy),
+						ArenaGenerator.MAZE_CORRIDOR,
+						ArenaGenerator.MAZE_CORRIDOR);
+			}
+		}
+
+		// iterative recursive backtracker, cells stored as cy * cellsX + cx
+		BitSet visited = new BitSet(cellsX * cellsY);
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		visited.set(0);
+		int[] options = new int[4];
+		while (top > 0) {
+			final int cell = stack[top - 1];
+			final int cx = cell % cellsX;
+			final int cy = cell / cellsX;
+			int count = 0;
+			if (cx > 0 && !visited.get(cell - 1)) {
+				options[count++] = cell - 1;
+			}
+			if (cx < cellsX - 1 && !visited.get(cell + 1)) {
+				options[count++] = cell + 1;
+			}
+			if (cy > 0 && !visited.get(cell - cellsX)) {
+				options[count++] = cell - cellsX;
+			}
+			if (cy < cellsY - 1 && !visited.get(cell + cellsX)) {
+				options[count++] = cell + cellsX;
+			}
+			if (count == 0) {
+				--top;
+				continue;
+			}
+			final int next = options[rng.nextInt(count)];
+			this.carveMazeWall(walk, x0, y0, cellsX, cell, next);
+			visited.set(next);
+			if (top == stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			stack[top++] = next;
+		}
+
+		// knock out extra walls to create loops
+		final float keep = this.obstacleDensity;
+		for (int cy = 0; cy < cellsY; ++cy) {
+			for (int cx = 0; cx < cellsX; ++cx) {
+				final int cell = cy * cellsX + cx;
+				if (cx < cellsX - 1 && rng.nextFloat() >= keep) {
+					this.carveMazeWall(walk, x0, y0, cellsX, cell, cell + 1);
+				}
+				if (cy < cellsY - 1 && rng.nextFloat() >= keep) {
+					this.carveMazeWall(walk, x0, y0, cellsX, cell,
+							cell + cellsX);
+				}
+			}
+		}
+	}
+
+	private void carveMazeWall(BitSet walk, final int x0, final int y0,
+			final int cellsX, final int from, final int to) {
+		final int a = Math.min(from, to);
+		final int b = Math.max(from, to);
+		final int ax = this.mazeX(x0, a % cellsX);
+		final int ay = this.mazeY(y0, a / cellsX);
+		if (b == a + 1) {
+			this.carveRect(walk, ax + ArenaGenerator.MAZE_CORRIDOR, ay, 1,
+					ArenaGenerator.MAZE_CORRIDOR);
+		}
+		else {
+			this.carveRect(walk, ax, ay + ArenaGenerator.MAZE_CORRIDOR,
+					ArenaGenerator.MAZE_CORRIDOR, 1);
+		}
+	}
+
+	private void carveMixed(BitSet walk, SplittableRandom rng) {
+		final int interior = this.size - 2;
+		final int zoneSize = ArenaGenerator.ZONE_SIZE;
+		final ArenaLayout[] zoneLayouts = {ArenaLayout.OPEN_FIELD,
+				ArenaLayout.ROOMS, ArenaLayout.MAZE};
+		for (int zy = 1; zy < interior + 1; zy += zoneSize) {
+			for (int zx = 1; zx < interior + 1; zx += zoneSize) {
+				final int w = Math.min(zoneSize, interior + 1 - zx);
+				final int h = Math.min(zoneSize, interior + 1 - zy);
+				// leave a one tile wall along the zone edges
+				final int innerW = w - 2;
+				final int innerH = h - 2;
+				if (innerW <= 0 || innerH <= 0) {
+					continue;
+				}
+				switch (zoneLayouts[rng.nextInt(zoneLayouts.length)]) {
+				case ROOMS:
+					this.carveRooms(walk, rng, zx + 1, zy + 1, innerW, innerH);
+					break;
+				case MAZE:
+					this.carveMaze(walk, rng, zx + 1, zy + 1, innerW, innerH);
+					break;
+				default:
+					this.carveOpenField(walk, rng, zx + 1, zy + 1, innerW,
+							innerH);
+					break;
+				}
+				// avenues through the middle of the zone join its neighbors
+				this.carveRect(walk, zx, zy + h / 2 - 1, w, 2);
+				this.carveRect(walk, zx + w / 2 - 1, zy, 2, h);
+			}
+		}
+	}
+
+	private void carveOpenField(BitSet walk, SplittableRandom rng,
+			final int x0, final int y0, final int w, final int h) {
+		this.carveRect(walk, x0, y0, w, h);
+		this.scatterObstacles(walk, rng, x0, y0, w, h, this.obstacleDensity,
+				ArenaGenerator.MAX_OBSTACLE);
+	}
+
+	/**
+	 * Makes every tile in the rectangle walkable, clipped to the interior of
+	 * the arena.
+	 */
+	private void carveRect(BitSet walk, final int x, final int y, final int w,
+			final int h) {
+		final int startX = Math.max(1, x);
+		final int endX = Math.min(this.size - 1, x + w);
+		final int startY = Math.max(1, y);
+		final int endY = Math.min(this.size - 1, y + h);
+		if (startX >= endX) {
+			return;
+		}
+		for (int row = startY; row < endY; ++row) {
+			walk.set(row * this.size + startX, row * this.size + endX);
+		}
+	}
+
+	private void carveRooms(BitSet walk, SplittableRandom rng, final int x0,
+			final int y0, final int w, final int h) {
+		final int span = ArenaGenerator.MAX_ROOM - ArenaGenerator.MIN_ROOM + 1;
+		final int attempts =
+				Math.max(4, (w * h) / (ArenaGenerator.MAX_ROOM * 4));
+		ArrayList<int[]> rooms = new ArrayList<>();
+		for (int i = 0; i < attempts; ++i) {
+			final int rw = Math.min(w - 2,
+					ArenaGenerator.MIN_ROOM + rng.nextInt(span));
+			final int rh = Math.min(h - 2,
+					ArenaGenerator.MIN_ROOM + rng.nextInt(span));
+			if (rw <= 0 || rh <= 0) {
+				break;
+			}
+			final int rx = x0 + 1 + rng.nextInt(Math.max(1, w - rw - 1));
+			final int ry = y0 + 1 + rng.nextInt(Math.max(1, h - rh - 1));
+			// keep a wall between rooms
+			if (this.anyWalkable(walk, rx - 1, ry - 1, rw + 2, rh + 2)) {
+				continue;
+			}
+			this.carveRect(walk, rx, ry, rw, rh);
+			rooms.add(new int[] {rx, ry, rw, rh});
+		}
+		if (rooms.isEmpty()) {
+			this.carveOpenField(walk, rng, x0, y0, w, h);
+			return;
+		}
+
+		// serpentine order through bands keeps connected rooms close together
+		final int band = ArenaGenerator.MAX_ROOM * 3;
+		rooms.sort((a, b) -> {
+			final int bandA = (a[1] + a[3] / 2) / band;
+			final int bandB = (b[1] + b[3] / 2) / band;
+			if (bandA != bandB) {
+				return Integer.compare(bandA, bandB);
+			}
+			final int cmp = Integer.compare(a[0], b[0]);
+			return bandA % 2 == 0 ? cmp : -cmp;
+		});
+
+		for (int i = 1; i < rooms.size(); ++i) {
+			int[] prev = rooms.get(i - 1);
+			int[] cur = rooms.get(i);
+			final int ax = prev[0] + prev[2] / 2;
+			final int ay = prev[1] + prev[3] / 2;
+			final int bx = cur[0] + cur[2] / 2;
+			final int by = cur[1] + cur[3] / 2;
+			final int width = 1 + rng.nextInt(2);
+			if (rng.nextBoolean()) {
+				this.carveRect(walk, Math.min(ax, bx), ay,
+						Math.abs(bx - ax) + 1, width);
+				this.carveRect(walk, bx, Math.min(ay, by), width,
+						Math.abs(by - ay) + 1);
+			}
+			else {
+				this.carveRect(walk, ax, Math.min(ay, by), width,
+						Math.abs(by - ay) + 1);
+				this.carveRect(walk, Math.min(ax, bx), by,
+						Math.abs(bx - ax) + 1, width);
+			}
+		}
+
+		// single tile pillars, so they never seal off a doorway by themselves
+		for (int[] room : rooms) {
+			this.scatterObstacles(walk, rng, room[0] + 1, room[1] + 1,
+					room[2] - 2, room[3] - 2, this.obstacleDensity / 2, 1);
+		}
+	}
+
+	private BitSet generate() {
+		BitSet walk = new BitSet(this.size * this.size);
+		SplittableRandom rng = new SplittableRandom(this.seed);
+		final int interior = this.size - 2;
+		switch (this.layout) {
+		case OPEN_FIELD:
+			this.carveOpenField(walk, rng, 1, 1, interior, interior);
+			break;
+		case ROOMS:
+			this.carveRooms(walk, rng, 1, 1, interior, interior);
+			break;
+		case MAZE:
+			this.carveMaze(walk, rng, 1, 1, interior, interior);
+			break;
+		case MIXED:
+		default:
+			this.carveMixed(walk, rng);
+			break;
+		}
+		this.removeUnreachable(walk);
+		return walk;
+	}
+
+	/**
+	 * Generates the arena as a pathing map. This is far cheaper than
+	 * {@link #generateTiledMap()} for large arenas.
+	 *
+	 * @return a new map of the generated arena
+	 */
+	public PathingMap generatePathingMap() {
+		return new PathingMap(this.size, this.size, this.generate());
+	}
+
+	/**
+	 * Generates the arena as a Tiled map with the same layers as the hand made
+	 * map. Layer 0 is the floor, and layer 1 has a tile everywhere that is not
+	 * walkable, so the result can be passed to
+	 * {@link PathingMap#PathingMap(Map)} or {@link Pathfinding#processMap(Map)}.
+	 * The tiles have no images attached.
+	 *
+	 * @return a new Tiled map of the generated arena
+	 */
+	public Map generateTiledMap() {
+		BitSet walk = this.generate();
+
+		Map tiledMap = new Map(this.size, this.size);
+		tiledMap.setTileWidth(64);
+		tiledMap.setTileHeight(64);
+		TileSet tileset = new TileSet();
+		tileset.setName("arena");
+		Tile floor = new Tile();
+		Tile wall = new Tile();
+		tileset.addNewTile(floor);
+		tileset.addNewTile(wall);
+		tiledMap.addTileset(tileset);
+
+		TileLayer floorLayer = new TileLayer(tiledMap, this.size, this.size);
+		floorLayer.setName("floor");
+		TileLayer wallLayer = new TileLayer(tiledMap, this.size, this.size);
+		wallLayer.setName("buildings");
+		for (int y = 0; y < this.size; ++y) {
+			for (int x = 0; x < this.size; ++x) {
+				floorLayer.setTileAt(x, y, floor);
+				if (!walk.get(y * this.size + x)) {
+					wallLayer.setTileAt(x, y, wall);
+				}
+			}
+		}
+		tiledMap.addLayer(floorLayer);
+		tiledMap.addLayer(wallLayer);
+		return tiledMap;
+	}
+
+	/**
+	 * Returns the layout of generated arenas.
+	 *
+	 * @return the layout
+	 */
+	public ArenaLayout getLayout() {
+		return this.layout;
+	}
+
+	/**
+	 * Returns the obstacle density of generated arenas.
+	 *
+	 * @return the obstacle density, from 0 to 1
+	 */
+	public float getObstacleDensity() {
+		return this.obstacleDensity;
+	}
+
+	/**
+	 * Returns the seed used for generating arenas.
+	 *
+	 * @return the seed
+	 */
+	public long getSeed() {
+		return this.seed;
+	}
+
+	/**
+	 * Returns the width and height of the generated arenas.
+	 *
+	 * @return the size of a side, in tiles
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	private int mazeX(final int x0, final int cx) {
+		return x0 + 1 + cx * ArenaGenerator.MAZE_PITCH;
+	}
+
+	private int mazeY(final int y0, final int cy) {
+		return y0 + 1 + cy * ArenaGenerator.MAZE_PITCH;
+	}
+
+	/**
+	 * Flood fills from the walkable tile closest to the center of the arena and
+	 * clears every walkable tile that was not reached.
+	 */
+	private void removeUnreachable(BitSet walk) {
+		final int center = (this.size / 2) * this.size + this.size / 2;
+		int start = walk.nextSetBit(center);
+		if (start < 0) {
+			start = walk.previousSetBit(center);
+		}
+		if (start < 0) {
+			Logging.warning("Pathfinding", "Generated arena has no open tiles");
+			return;
+		}
+
+		// scanline fill, so the stack only holds the start of each run
+		BitSet reached = new BitSet(this.size * this.size);
+		int[] stack = new int[256];
+		int top = 0;
+		stack[top++] = start;
+		while (top > 0) {
+			final int index = stack[--top];
+			if (reached.get(index)) {
+				continue;
+			}
+			final int row = (index / this.size) * this.size;
+			int left = index;
+			while (left > row && walk.get(left - 1) && !reached.get(left - 1)) {
+				--left;
+			}
+			int right = index;
+			while (right < row + this.size - 1 && walk.get(right + 1)
+					&& !reached.get(right + 1)) {
+				++right;
+			}
+			reached.set(left, right + 1);
+			for (int offset = -this.size; offset <= this.size; offset +=
+					2 * this.size) {
+				final int other = row + offset;
+				if (other < 0 || other >= this.size * this.size) {
+					continue;
+				}
+				boolean inRun = false;
+				for (int i = left + offset; i <= right + offset; ++i) {
+					final boolean open = walk.get(i) && !reached.get(i);
+					if (open && !inRun) {
+						if (top == stack.length) {
+							stack = Arrays.copyOf(stack, stack.length * 2);
+						}
+						stack[top++] = i;
+					}
+					inRun = open;
+				}
+			}
+		}
+		walk.and(reached);
+	}
+
+	private void scatterObstacles(BitSet walk, SplittableRandom rng,
+			final int x0, final int y0, final int w, final int h,
+			final float density, final int maxSide) {
+		if (w <= 0 || h <= 0 || density <= 0) {
+			return;
+		}
+		final long area = (long) w * h;
+		final long target = (long) (area * density);
+		long blocked = 0;
+		// every placement blocks at least one tile, so this always terminates
+		for (long tries = 0; blocked < target && tries < area; ++tries) {
+			final int ow = 1 + rng.nextInt(maxSide);
+			final int oh = 1 + rng.nextInt(maxSide);
+			final int ox = x0 + rng.nextInt(w);
+			final int oy = y0 + rng.nextInt(h);
+			final int endX = Math.min(x0 + w, ox + ow);
+			final int endY = Math.min(y0 + h, oy + oh);
+			for (int y = oy; y < endY; ++y) {
+				for (int x = ox; x < endX; ++x) {
+					final int index = y * this.size + x;
+					if (walk.get(index)) {
+						walk.clear(index);
+						++blocked;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the layout of generated arenas.
+	 *
+	 * @param newLayout the layout to use
+	 */
+	public void setLayout(final ArenaLayout newLayout) {
+		if (newLayout == null) {
+			Logging.warning("Pathfinding", "Null arena layout, ignoring");
+			return;
+		}
+		this.layout = newLayout;
+	}
+
+	/**
+	 * Sets the obstacle density of generated arenas. For open areas this is
+	 * the fraction of tiles covered by obstacles, and for mazes it is the
+	 * fraction of maze walls that are kept. Values are capped to the range 0
+	 * to 1.
+	 *
+	 * @param density how crowded the arena should be, from 0 to 1
+	 */
+	public void setObstacleDensity(final float density) {
+		float value = density;
+		if (value < 0 || value > 1 || Float.isNaN(value)) {
+			Logging.warning("Pathfinding",
+					"Obstacle density out of range, capping.");
+			value = Float.isNaN(value) ? 0 : Math.max(0, Math.min(1, value));
+		}
+		this.obstacleDensity = value;
+	}
+}
@@ -0,0 +1,28 @@
+package cruftyKrab.ai.pathing;
+
+/**
+ * The overall shape of an arena produced by the {@link ArenaGenerator}.
+ *
+ * @author Ches Burks
+ *
+ */
+public enum ArenaLayout {
+	/**
+	 * A mostly open field with scattered obstacles.
+	 */
+	OPEN_FIELD,
+	/**
+	 * Rectangular rooms connected by corridors.
+	 */
+	ROOMS,
+	/**
+	 * A maze of corridors. The obstacle density controls how many of the maze
+	 * walls are kept, so low densities produce a maze with many loops.
+	 */
+	MAZE,
+	/**
+	 * The arena is split into zones, each of which uses one of the other
+	 * layouts, joined by open avenues.
+	 */
+	MIXED;
+}
@@ -0,0 +1,361 @@
+package cruftyKrab.ai.pathing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ikalagaming.logging.Logging;
+
+/**
+ * A pathing map that is too large to keep in memory all at once. The map is
+ * stored in a file as square chunks of {@value #CHUNK_SIZE} by
+ * {@value #CHUNK_SIZE} tiles which is memory mapped, and chunks are only
+ * decoded when a tile inside them is looked at. Only a limited number of
+ * chunks are kept decoded, and the least recently used ones are dropped when
+ * more are needed, so memory use follows the area that is actually being
+ * walked around instead of the size of the whole map.
+ *
+ * Files are created with {@link #write(PathingMap, File)}.
+ *
+ * @author Ches Burks
+ *
+ */
+public class ChunkedPathingMap extends PathingMap {
+
+	/**
+	 * The width and height of a chunk in tiles. ({@value}) Each row of a chunk
+	 * is exactly one long.
+	 */
+	public static final int CHUNK_SIZE = 64;
+
+	/**
+	 * Identifies chunked map files, the ASCII for "CKPM".
+	 */
+	private static final int MAGIC = 0x434B504D;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+	private static final int CHUNK_BYTES =
+			ChunkedPathingMap.CHUNK_SIZE * Long.BYTES;
+	/**
+	 * How many chunks are memory mapped together. Each mapping has to be less
+	 * than 2 GB.
+	 */
+	private static final int SEGMENT_CHUNKS =
+			(1 << 30) / ChunkedPathingMap.CHUNK_BYTES;
+
+	/**
+	 * Writes a pathing map out as a chunked map file, overwriting the file if
+	 * it exists.
+	 *
+	 * @param source the map to write out
+	 * @param file where to write the map
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(PathingMap source, File file) throws IOException {
+		final int width = source.getWidth();
+		final int height = source.getHeight();
+		final int chunksWide = ChunkedPathingMap.chunkCount(width);
+		final int chunksHigh = ChunkedPathingMap.chunkCount(height);
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				FileChannel channel = raf.getChannel()) {
+			channel.truncate(0);
+			ByteBuffer header =
+					ByteBuffer.allocate(ChunkedPathingMap.HEADER_BYTES);
+			header.putInt(ChunkedPathingMap.MAGIC);
+			header.putInt(ChunkedPathingMap.VERSION);
+			header.putInt(width);
+			header.putInt(height);
+			header.putInt(ChunkedPathingMap.CHUNK_SIZE);
+			header.rewind();
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+
+			// one row of chunks at a time
+			ByteBuffer row = ByteBuffer
+					.allocate(chunksWide * ChunkedPathingMap.CHUNK_BYTES);
+			for (int cy = 0; cy < chunksHigh; ++cy) {
+				row.clear();
+				for (int cx = 0; cx < chunksWide; ++cx) {
+					for (int ly = 0; ly < ChunkedPathingMap.CHUNK_SIZE; ++ly) {
+						final int y = cy * ChunkedPathingMap.CHUNK_SIZE + ly;
+						long bits = 0;
+						for (int lx = 0; lx < ChunkedPathingMap.CHUNK_SIZE; ++lx) {
+							final int x = cx * ChunkedPathingMap.CHUNK_SIZE + lx;
+							if (source.isWalkable(x, y)) {
+								bits |= 1L << lx;
+							}
+						}
+						row.putLong(bits);
+					}
+				}
+				row.flip();
+				while (row.hasRemaining()) {
+					channel.write(row);
+				}
+			}
+		}
+	}
+
+	private static int chunkCount(final int tiles) {
+		return (tiles + ChunkedPathingMap.CHUNK_SIZE - 1)
+				/ ChunkedPathingMap.CHUNK_SIZE;
+	}
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final MappedByteBuffer[] segments;
+
+	private final int chunksWide;
+	private final int chunksHigh;
+	private final int maxResident;
+
+	/**
+	 * Decoded chunks, in order of least to most recently used.
+	 */
+	private final LinkedHashMap<Integer, long[]> resident;
+	private final ReentrantLock chunkLock;
+
+	/**
+	 * The most recently used chunk, so that repeated lookups near the same spot
+	 * do not need to lock.
+	 */
+	private volatile LoadedChunk lastChunk;
+
+	private long loads;
+	private long evictions;
+
+	/**
+	 * Opens a chunked map file.
+	 *
+	 * @param mapFile a file created by {@link #write(PathingMap, File)}
+	 * @param maxResidentChunks how many chunks to keep decoded in memory at
+	 *            once
+	 * @throws IOException if the file cannot be read or is not a chunked map
+	 */
+	public ChunkedPathingMap(File mapFile, final int maxResidentChunks)
+			throws IOException {
+		this(ChunkedPathingMap.readHeader(mapFile), mapFile,
+				maxResidentChunks);
+	}
+
+	private ChunkedPathingMap(int[] header, File mapFile,
+			final int maxResidentChunks) throws IOException {
+		super(header[0], header[1]);
+		this.chunksWide = ChunkedPathingMap.chunkCount(this.getWidth());
+		this.chunksHigh = ChunkedPathingMap.chunkCount(this.getHeight());
+		final long chunkTotal = (long) this.chunksWide * this.chunksHigh;
+		this.segments = new MappedByteBuffer[(int) ((chunkTotal
+				+ ChunkedPathingMap.SEGMENT_CHUNKS - 1)
+				/ ChunkedPathingMap.SEGMENT_CHUNKS)];
+
+		int max = maxResidentChunks;
+		if (max < 1) {
+			Logging.warning("Pathfinding",
+					"Must keep at least one chunk resident");
+			max = 1;
+		}
+		this.maxResident = max;
+		this.chunkLock = new ReentrantLock();
+		this.resident = new LinkedHashMap<Integer, long[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					java.util.Map.Entry<Integer, long[]> eldest) {
+				if (this.size() > ChunkedPathingMap.this.maxResident) {
+					++ChunkedPathingMap.this.evictions;
+					return true;
+				}
+				return false;
+			}
+		};
+
+		this.file = new RandomAccessFile(mapFile, "r");
+		this.channel = this.file.getChannel();
+		final long expected = ChunkedPathingMap.HEADER_BYTES
+				+ chunkTotal * ChunkedPathingMap.CHUNK_BYTES;
+		if (this.channel.size() < expected) {
+			this.close();
+			throw new IOException("Chunked map file is truncated");
+		}
+	}
+
+	private static int[] readHeader(File mapFile) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(mapFile, "r")) {
+			if (raf.readInt() != ChunkedPathingMap.MAGIC) {
+				throw new IOException("Not a chunked map file");
+			}
+			if (raf.readInt() != ChunkedPathingMap.VERSION) {
+				throw new IOException("Unsupported chunked map version");
+			}
+			final int width = raf.readInt();
+			final int height = raf.readInt();
+			if (raf.readInt() != ChunkedPathingMap.CHUNK_SIZE) {
+				throw new IOException("Unsupported chunk size");
+			}
+			if (width <= 0 || height <= 0) {
+				throw new IOException("Chunked map has invalid dimensions");
+			}
+			return new int[] {width, height};
+		}
+	}
+
+	/**
+	 * Releases the file. Tiles can not be looked up after this.
+	 */
+	public void close() {
+		this.chunkLock.lock();
+		try {
+			this.resident.clear();
+			this.lastChunk = null;
+			this.channel.close();
+			this.file.close();
+		}
+		catch (IOException e) {
+			e.printStackTrace(System.err);
+		}
+		finally {
+			this.chunkLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the chunk with the given index, decoding it from the file if it
+	 * is not already resident.
+	 */
+	private long[] getChunk(final int index) {
+		LoadedChunk last = this.lastChunk;
+		if (last != null && last.index == index) {
+			return last.rows;
+		}
+		long[] rows;
+		this.chunkLock.lock();
+		try {
+			rows = this.resident.get(index);
+			if (rows == null) {
+				rows = this.loadChunk(index);
+				this.resident.put(index, rows);
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace(System.err);
+			Logging.warning("Pathfinding", "Could not load map chunk");
+			return null;
+		}
+		finally {
+			this.chunkLock.unlock();
+		}
+		this.lastChunk = new LoadedChunk(index, rows);
+		return rows;
+	}
+
+	/**
+	 * Returns the number of chunks that have been decoded from the file since
+	 * it was opened, including ones decoded again after being dropped.
+	 *
+	 * @return the number of chunk loads
+	 */
+	public long getChunkLoads() {
+		this.chunkLock.lock();
+		try {
+			return this.loads;
+		}
+		finally {
+			this.chunkLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of chunks that have been dropped from memory to make
+	 * room for others.
+	 *
+	 * @return the number of evictions
+	 */
+	public long getChunkEvictions() {
+		this.chunkLock.lock();
+		try {
+			return this.evictions;
+		}
+		finally {
+			this.chunkLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns how many chunks are currently decoded in memory.
+	 *
+	 * @return the number of resident chunks
+	 */
+	public int getResidentChunks() {
+		this.chunkLock.lock();
+		try {
+			return this.resident.size();
+		}
+		finally {
+			this.chunkLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isWalkable(final int x, final int y) {
+		if (x < 0 || y < 0 || x >= this.getWidth() || y >= this.getHeight()) {
+			return false;
+		}
+		final int cx = x / ChunkedPathingMap.CHUNK_SIZE;
+		final int cy = y / ChunkedPathingMap.CHUNK_SIZE;
+		long[] rows = this.getChunk(cy * this.chunksWide + cx);
+		if (rows == null) {
+			return false;
+		}
+		final int lx = x % ChunkedPathingMap.CHUNK_SIZE;
+		final int ly = y % ChunkedPathingMap.CHUNK_SIZE;
+		return (rows[ly] & (1L << lx)) != 0;
+	}
+
+	/**
+	 * Should only be called while holding the chunk lock.
+	 */
+	private long[] loadChunk(final int index) throws IOException {
+		final int segment = index / ChunkedPathingMap.SEGMENT_CHUNKS;
+		MappedByteBuffer buffer = this.segments[segment];
+		if (buffer == null) {
+			final long firstChunk =
+					(long) segment * ChunkedPathingMap.SEGMENT_CHUNKS;
+			final long chunks = Math.min(ChunkedPathingMap.SEGMENT_CHUNKS,
+					(long) this.chunksWide * this.chunksHigh - firstChunk);
+			buffer = this.channel.map(FileChannel.MapMode.READ_ONLY,
+					ChunkedPathingMap.HEADER_BYTES
+							+ firstChunk * ChunkedPathingMap.CHUNK_BYTES,
+					chunks * ChunkedPathingMap.CHUNK_BYTES);
+			this.segments[segment] = buffer;
+		}
+		final int offset = (index % ChunkedPathingMap.SEGMENT_CHUNKS)
+				* ChunkedPathingMap.CHUNK_BYTES;
+		long[] rows = new long[ChunkedPathingMap.CHUNK_SIZE];
+		for (int i = 0; i < rows.length; ++i) {
+			rows[i] = buffer.getLong(offset + i * Long.BYTES);
+		}
+		++this.loads;
+		return rows;
+	}
+
+	/**
+	 * A decoded chunk and where it came from.
+	 */
+	private static class LoadedChunk {
+		final int index;
+		final long[] rows;
+
+		LoadedChunk(final int chunkIndex, final long[] chunkRows) {
+			this.index = chunkIndex;
+			this.rows = chunkRows;
+		}
+	}
+}
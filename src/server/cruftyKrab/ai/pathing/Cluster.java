@@ -54,6 +54,12 @@ public class Cluster {
 	 */
 	protected Point ulCorner;
 
+	/**
+	 * True once entrances to all the clusters around this one, and the edges
+	 * between them, have been worked out.
+	 */
+	protected boolean built;
+
 	/**
 	 * Creates a new cluster at the given level. Level 0 is the level tiles are
 	 * on, and higher is l-clusters above that.
@@ -65,6 +71,7 @@ public class Cluster {
 		this.internalEdges = new ArrayList<>();
 		this.externalEdges = new ArrayList<>();
 		this.entranceNodes = new ArrayList<>();
+		this.built = false;
 
 		int xValue = xPos;
 		int yValue = yPos;
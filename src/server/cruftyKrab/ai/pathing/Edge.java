@@ -159,6 +159,10 @@ public class Edge implements Comparable<Edge> {
 	 *         clusters, INT_MAX if the node could not be reached.
 	 */
 	protected int calcLengthTiles() {
+		if (this.node1.cluster == null || this.node2.cluster == null) {
+			// off the map
+			return Integer.MAX_VALUE;
+		}
 		if (!this.node1.cluster.equals(this.node2.cluster)) {
 			float dist = Edge.getDist(this.node1.loc, this.node2.loc);
 			if (Math.round(dist) == 1) {
@@ -201,15 +205,20 @@ public class Edge implements Comparable<Edge> {
 
 		Cluster loc = this.node1.cluster;
 
-		// generate map for cluster
-		for (int i = loc.ulCorner.x; i < Cluster.CLUSTER_SIZE; ++i) {
-			for (int j = loc.ulCorner.y; j < Cluster.CLUSTER_SIZE; ++j) {
+		// generate map for cluster, which may be cut off by the map edge
+		final int maxX = Math.min(loc.ulCorner.x + Cluster.CLUSTER_SIZE,
+				this.map.getWidth());
+		final int maxY = Math.min(loc.ulCorner.y + Cluster.CLUSTER_SIZE,
+				this.map.getHeight());
+		for (int i = loc.ulCorner.x; i < maxX; ++i) {
+			for (int j = loc.ulCorner.y; j < maxY; ++j) {
 				data.put(new Point(i, j), new AStarData(null, Integer.MAX_VALUE,
 						Integer.MAX_VALUE));
 			}
 		}
 
-		AStarData startData = data.get(start);
+		AStarData startData = data.computeIfAbsent(start,
+				p -> new AStarData(null, Integer.MAX_VALUE, Integer.MAX_VALUE));
 		startData.cameFrom = start;
 		startData.gScore = 0;
 		startData.fScore = this.heuristicCostEstimate(start, end);
@@ -228,8 +237,9 @@ public class Edge implements Comparable<Edge> {
 					continue;
 				}
 				if (!data.containsKey(neighbor)) {
-					data.put(new Point(neighbor.x, neighbor.y), new AStarData(
-							null, Integer.MAX_VALUE, Integer.MAX_VALUE));
+					// stay inside the cluster, otherwise an unreachable end
+					// floods the whole map
+					continue;
 				}
 
 				float tentativeGScore = data.get(current).gScore
@@ -362,6 +372,8 @@ public class Edge implements Comparable<Edge> {
 			p.addStep(prevStep);
 			prevStep = data.get(prevStep).cameFrom;
 		}
+		// include the start, so edges that share a node join up
+		p.addStep(prevStep);
 		return p.getInverted();
 	}
 
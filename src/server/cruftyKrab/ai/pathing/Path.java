@@ -126,6 +126,12 @@ public class Path {
 
 				return;
 			}
+			if (this.tiles.isEmpty()) {
+				// nothing to connect to, just copy the other one
+				this.tiles.addAll(other.tiles);
+				this.length = other.length;
+				return;
+			}
 			// if the start and end are the same
 			if (start.equals(this.getEnd()) && other.tiles.size() >= 2) {
 				// then just tack on the others
@@ -6,6 +6,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiPredicate;
@@ -27,11 +29,23 @@ import tiled.core.Map;
  * specific (and small) map specs for this game, which will not change enough to
  * make it worth implementing multiple levels.
  *
+ * Maps with more clusters than the cluster capacity, and all
+ * {@link ChunkedPathingMap chunked maps}, are not processed up front. Instead
+ * clusters are built the first time a path goes through them and the least
+ * recently used ones are thrown away again, so that huge arenas do not need a
+ * graph for the whole map in memory.
+ *
  * @author Ches Burks
  *
  */
 public class Pathfinding {
 
+	/**
+	 * The default maximum number of clusters to keep built when they are loaded
+	 * lazily. ({@value})
+	 */
+	public static final int DEFAULT_CLUSTER_CAPACITY = 4096;
+
 	/**
 	 * True if you can go straight between the points without an intermediate
 	 * step, which is not passed. To is two ahead of from. That is, one ahead of
@@ -98,6 +112,34 @@ public class Pathfinding {
 		return true;
 	}
 
+	/**
+	 * Orders entrance nodes by position, and nodes on the same tile by the
+	 * tile they lead to.
+	 *
+	 * @param a the first node
+	 * @param b the second node
+	 * @return negative if a comes first, positive if b does, 0 if equal
+	 */
+	private static int compareEntrances(Node a, Node b) {
+		int cmp = Pathfinding.comparePoints(a.loc, b.loc);
+		if (cmp == 0 && !a.edges.isEmpty() && !b.edges.isEmpty()) {
+			// the first edge of an entrance node is always the external one
+			Edge aOut = a.edges.get(0);
+			Edge bOut = b.edges.get(0);
+			cmp = Pathfinding.comparePoints(
+					(aOut.node1 == a ? aOut.node2 : aOut.node1).loc,
+					(bOut.node1 == b ? bOut.node2 : bOut.node1).loc);
+		}
+		return cmp;
+	}
+
+	private static int comparePoints(Point a, Point b) {
+		if (a.y != b.y) {
+			return Integer.compare(a.y, b.y);
+		}
+		return Integer.compare(a.x, b.x);
+	}
+
 	private static BiPredicate<Point, Point> getConsumerForMap(PathingMap map) {
 		Function<PathingMap, BiPredicate<Point, Point>> skipTest =
 				(m) -> ((a, b) -> Pathfinding.canSkipTo(a, b, m));
@@ -111,6 +153,24 @@ public class Pathfinding {
 	 */
 	private Cluster clusters[][];
 
+	/**
+	 * Clusters that are currently loaded when loading lazily, keyed by their
+	 * index in the cluster grid, in order of least to most recently used. Only
+	 * some of them are {@link Cluster#built built}, the rest just hold the
+	 * entrances from built clusters next to them.
+	 */
+	private LinkedHashMap<Point, Cluster> loadedClusters;
+
+	/**
+	 * True if clusters are built as needed instead of all at once.
+	 */
+	private boolean lazy;
+
+	private int clusterCapacity;
+
+	private int clustersWide;
+	private int clustersHigh;
+
 	private ReentrantLock clusterLock;
 
 	private PathingMap map;
@@ -124,10 +184,46 @@ public class Pathfinding {
 	 */
 	public Pathfinding() {
 		this.clusterLock = new ReentrantLock();
+		this.clusterCapacity = Pathfinding.DEFAULT_CLUSTER_CAPACITY;
+		this.loadedClusters = new LinkedHashMap<>(16, 0.75f, true);
 		this.pathCache =
 				Collections.synchronizedMap(new HashMap<Tuple, Path>());
 	}
 
+	/**
+	 * Adds an entrance between two clusters, made up of a node on each side
+	 * and the edge between them.
+	 *
+	 * @param inOne the node on the first cluster's side
+	 * @param inTwo the node on the second cluster's side
+	 */
+	private void addEntrance(Node inOne, Node inTwo) {
+		inOne.cluster.entranceNodes.add(inOne);
+		inTwo.cluster.entranceNodes.add(inTwo);
+		Edge edge = new Edge(inOne, inTwo, this.map);
+		edge.calcLength();
+		inOne.cluster.externalEdges.add(edge);
+		inTwo.cluster.externalEdges.add(edge);
+	}
+
+	/**
+	 * Works out all the entrances of a cluster and the edges between them, if
+	 * that has not been done yet. Clusters around it are loaded as needed, but
+	 * not built, so each cluster's edges are only calculated once. Does nothing
+	 * unless loading lazily.
+	 *
+	 * @param c the cluster to build
+	 */
+	private void buildCluster(Cluster c) {
+		if (!this.lazy || c == null || c.built) {
+			return;
+		}
+		this.calculateEntrances(c, c.ulCorner.x / Cluster.CLUSTER_SIZE,
+				c.ulCorner.y / Cluster.CLUSTER_SIZE);
+		this.calculateInernalEdges(c);
+		c.built = true;
+	}
+
 	private void calcEntrancesBtwn(Cluster one, Cluster two) {
 		final int oneXIndex, oneYIndex;
 		final int twoXIndex, twoYIndex;
@@ -139,8 +235,8 @@ public class Pathfinding {
 		try {
 			// check if they already have edges defined
 			for (Edge e : one.externalEdges) {
-				Cluster a = this.getCluster(e.node1.loc.x, e.node1.loc.y);
-				Cluster b = this.getCluster(e.node2.loc.x, e.node2.loc.y);
+				Cluster a = e.node1.cluster;
+				Cluster b = e.node2.cluster;
 				if (a.equals(one) && b.equals(two)) {
 					return;
 				}
@@ -225,6 +321,11 @@ public class Pathfinding {
 	private void calculateInernalEdges(Cluster c) {
 		this.clusterLock.lock();
 		try {
+			/*
+			 * Entrances are found in whatever order the clusters around it were
+			 * processed, so sort them to get the same graph every time.
+			 */
+			c.entranceNodes.sort(Pathfinding::compareEntrances);
 			final int size = c.entranceNodes.size();
 			for (int i = 0; i < size; ++i) {
 				for (int j = i + 1; j < size; ++j) {
@@ -240,6 +341,20 @@ public class Pathfinding {
 		}
 	}
 
+	/**
+	 * Drops the edges inside a cluster, for when its entrances change.
+	 *
+	 * @param c the cluster to clear
+	 */
+	private void clearInternalEdges(Cluster c) {
+		for (Edge e : c.internalEdges) {
+			// by identity, edge equality only roughly compares the nodes
+			e.node1.edges.removeIf(edge -> edge == e);
+			e.node2.edges.removeIf(edge -> edge == e);
+		}
+		c.internalEdges.clear();
+	}
+
 	/**
 	 * Convenience for safely grabbing from the array at any index.
 	 *
@@ -248,13 +363,22 @@ public class Pathfinding {
 	 * @return the cluster at clusters[xIndex][yIndex] or null if invalid coords
 	 */
 	private Cluster clusterAt(final int xIndex, final int yIndex) {
+		if (xIndex < 0 || yIndex < 0 || xIndex >= this.clustersWide
+				|| yIndex >= this.clustersHigh) {
+			return null;
+		}
 		Cluster ret;
 		this.clusterLock.lock();
 		try {
-			ret = this.clusters[xIndex][yIndex];
-		}
-		catch (@SuppressWarnings("unused") ArrayIndexOutOfBoundsException e) {
-			ret = null;
+			if (this.lazy) {
+				ret = this.loadedClusters.get(new Point(xIndex, yIndex));
+				if (ret == null) {
+					ret = this.loadCluster(xIndex, yIndex);
+				}
+			}
+			else {
+				ret = this.clusters[xIndex][yIndex];
+			}
 		}
 		finally {
 			this.clusterLock.unlock();
@@ -272,14 +396,16 @@ public class Pathfinding {
 			if (dxIndex == -1) {
 				// two is to the left of one
 				startY = one.ulCorner.y;
-				endY = one.ulCorner.y + Cluster.CLUSTER_SIZE;
+				endY = Math.min(one.ulCorner.y + Cluster.CLUSTER_SIZE,
+						this.map.getHeight());
 				startX = one.ulCorner.x;
 				this.entrancesVert(startX, startY, endY, -1, one, two);
 			}
 			else if (dxIndex == 1) {
 				// two is to the right of one
 				startY = one.ulCorner.y;
-				endY = one.ulCorner.y + Cluster.CLUSTER_SIZE;
+				endY = Math.min(one.ulCorner.y + Cluster.CLUSTER_SIZE,
+						this.map.getHeight());
 				startX = one.ulCorner.x + Cluster.CLUSTER_SIZE - 1;
 				this.entrancesVert(startX, startY, endY, 1, one, two);
 			}
@@ -289,14 +415,16 @@ public class Pathfinding {
 				// two is to the north of one
 				startY = one.ulCorner.y;
 				startX = one.ulCorner.x;
-				endX = one.ulCorner.x + Cluster.CLUSTER_SIZE;
+				endX = Math.min(one.ulCorner.x + Cluster.CLUSTER_SIZE,
+						this.map.getWidth());
 				this.entrancesHoriz(startY, startX, endX, -1, one, two);
 			}
 			else if (dyIndex == 1) {
 				// two is to the south of one
 				startY = one.ulCorner.y + Cluster.CLUSTER_SIZE - 1;
 				startX = one.ulCorner.x;
-				endX = one.ulCorner.x + Cluster.CLUSTER_SIZE;
+				endX = Math.min(one.ulCorner.x + Cluster.CLUSTER_SIZE,
+						this.map.getWidth());
 				this.entrancesHoriz(startY, startX, endX, 1, one, two);
 			}
 		}
@@ -307,45 +435,27 @@ public class Pathfinding {
 		// should be called from calcEntrances only
 		int curStreak = 0;
 		int curStart = startX;
-		for (int i = startX; i < endX; ++i) {
-			if (!this.map.isWalkable(i, y)) {
-				if (curStreak > Cluster.ENTRANCE_WIDTH_CAP) {
-					Node oneNodeOne = new Node(curStart, y, one);
-					Node twoNodeOne = new Node(curStart, y + dY, two);
-					Node oneNodeTwo = new Node(curStart + curStreak, y, one);
-					Node twoNodeTwo =
-							new Node(curStart + curStreak, y + dY, two);
-					one.entranceNodes.add(oneNodeOne);
-					one.entranceNodes.add(oneNodeTwo);
-					two.entranceNodes.add(twoNodeOne);
-					two.entranceNodes.add(twoNodeTwo);
-					Edge edgeOne = new Edge(oneNodeOne, twoNodeOne, this.map);
-					edgeOne.calcLength();
-					Edge edgeTwo = new Edge(oneNodeTwo, twoNodeTwo, this.map);
-					edgeTwo.calcLength();
-					one.externalEdges.add(edgeOne);
-					one.externalEdges.add(edgeTwo);
-					two.externalEdges.add(edgeOne);
-					two.externalEdges.add(edgeTwo);
-				}
-				else {
-					Node oneNode = new Node((curStart + curStreak) / 2, y, one);
-					Node twoNode =
-							new Node((curStart + curStreak) / 2, y + dY, two);
-
-					one.entranceNodes.add(oneNode);
-					two.entranceNodes.add(twoNode);
-					Edge edge = new Edge(oneNode, twoNode, this.map);
-					edge.calcLength();
-					one.externalEdges.add(edge);
-					two.externalEdges.add(edge);
-				}
-				curStreak = 0;
-				curStart = i + 1;
-			}
-			else {
+		// one past the end, so a streak running up to the end is added too
+		for (int i = startX; i <= endX; ++i) {
+			if (i < endX && this.map.isWalkable(i, y)
+					&& this.map.isWalkable(i, y + dY)) {
 				++curStreak;
+				continue;
 			}
+			if (curStreak > Cluster.ENTRANCE_WIDTH_CAP) {
+				final int last = curStart + curStreak - 1;
+				this.addEntrance(new Node(curStart, y, one),
+						new Node(curStart, y + dY, two));
+				this.addEntrance(new Node(last, y, one),
+						new Node(last, y + dY, two));
+			}
+			else if (curStreak > 0) {
+				final int middle = curStart + curStreak / 2;
+				this.addEntrance(new Node(middle, y, one),
+						new Node(middle, y + dY, two));
+			}
+			curStreak = 0;
+			curStart = i + 1;
 		}
 	}
 
@@ -354,56 +464,40 @@ public class Pathfinding {
 		// should be called from calcEntrances only
 		int curStreak = 0;
 		int curStart = startY;
-		for (int i = startY; i < endY; ++i) {
-			if (!this.map.isWalkable(x, i)) {
-				if (curStreak > Cluster.ENTRANCE_WIDTH_CAP) {
-					Node oneNodeOne = new Node(x, curStart, one);
-					Node twoNodeOne = new Node(x + dX, curStart, two);
-					Node oneNodeTwo = new Node(x, curStart + curStreak, one);
-					Node twoNodeTwo =
-							new Node(x + dX, curStart + curStreak, two);
-					one.entranceNodes.add(oneNodeOne);
-					one.entranceNodes.add(oneNodeTwo);
-					two.entranceNodes.add(twoNodeOne);
-					two.entranceNodes.add(twoNodeTwo);
-					Edge edgeOne = new Edge(oneNodeOne, twoNodeOne, this.map);
-					edgeOne.calcLength();
-					Edge edgeTwo = new Edge(oneNodeTwo, twoNodeTwo, this.map);
-					edgeTwo.calcLength();
-					one.externalEdges.add(edgeOne);
-					one.externalEdges.add(edgeTwo);
-					two.externalEdges.add(edgeOne);
-					two.externalEdges.add(edgeTwo);
-				}
-				else {
-					Node oneNode = new Node(x + curStreak,
-							(curStart + curStreak) / 2, one);
-					Node twoNode =
-							new Node(x + dX, (curStart + curStreak) / 2, two);
-
-					one.entranceNodes.add(oneNode);
-					two.entranceNodes.add(twoNode);
-					Edge edge = new Edge(oneNode, twoNode, this.map);
-					edge.calcLength();
-					one.externalEdges.add(edge);
-					two.externalEdges.add(edge);
-				}
-				curStreak = 0;
-				curStart = i + 1;
-			}
-			else {
+		// one past the end, so a streak running up to the end is added too
+		for (int i = startY; i <= endY; ++i) {
+			if (i < endY && this.map.isWalkable(x, i)
+					&& this.map.isWalkable(x + dX, i)) {
 				++curStreak;
+				continue;
+			}
+			if (curStreak > Cluster.ENTRANCE_WIDTH_CAP) {
+				final int last = curStart + curStreak - 1;
+				this.addEntrance(new Node(x, curStart, one),
+						new Node(x + dX, curStart, two));
+				this.addEntrance(new Node(x, last, one),
+						new Node(x + dX, last, two));
 			}
+			else if (curStreak > 0) {
+				final int middle = curStart + curStreak / 2;
+				this.addEntrance(new Node(x, middle, one),
+						new Node(x + dX, middle, two));
+			}
+			curStreak = 0;
+			curStart = i + 1;
 		}
 	}
 
 	/**
-	 * Gets the closest node walkable to from the given point.
+	 * Gets the closest entrance node that can be walked to from the given
+	 * point without leaving its cluster.
 	 *
 	 * @param to the point to start looking from
+	 * @param clust the cluster the point is in
 	 * @return the closest node, or null if none exist in the cluster
 	 */
-	private Node getClosest(Point to) {
+	private Node getClosest(Point to, Cluster clust) {
+		this.buildCluster(clust);
 		/*
 		 * Set of nodes already evaluated
 		 */
@@ -419,13 +513,9 @@ public class Pathfinding {
 
 		while (!open.isEmpty()) {
 			Point current = open.get(0);
-			for (Cluster[] cols : this.clusters) {
-				for (Cluster clust : cols) {
-					for (Node node : clust.entranceNodes) {
-						if (node.loc.equals(current)) {
-							return node;
-						}
-					}
+			for (Node node : clust.entranceNodes) {
+				if (node.loc.equals(current)) {
+					return node;
 				}
 			}
 			open.remove(current);
@@ -435,6 +525,13 @@ public class Pathfinding {
 					// Ignore any neighbor which is already evaluated.
 					continue;
 				}
+				if (neighbor.x < clust.ulCorner.x || neighbor.y < clust.ulCorner.y
+						|| neighbor.x >= clust.ulCorner.x + Cluster.CLUSTER_SIZE
+						|| neighbor.y >= clust.ulCorner.y
+								+ Cluster.CLUSTER_SIZE) {
+					// the path to the node has to stay inside the cluster
+					continue;
+				}
 				if (!open.contains(neighbor)) {
 					open.add(neighbor);// discover a new node
 					open.sort((a, b) -> Math.subtractExact(
@@ -443,7 +540,7 @@ public class Pathfinding {
 				}
 			}
 		}
-		Logging.warning("Pathfinding", "Could not find an entrance");
+		Logging.finer("Pathfinding", "Could not find an entrance");
 		return null;
 	}
 
@@ -458,7 +555,7 @@ public class Pathfinding {
 		if (x < 0 || y < 0) {
 			return null;
 		}
-		if (x > this.map.getWidth() || y > this.map.getHeight()) {
+		if (x >= this.map.getWidth() || y >= this.map.getHeight()) {
 			return null;
 		}
 
@@ -474,19 +571,17 @@ public class Pathfinding {
 		 */
 		final int yIndex = y / Cluster.CLUSTER_SIZE;
 
-		Cluster ret = null;
-		this.clusterLock.lock();
-		try {
-			ret = this.clusters[xIndex][yIndex];
-		}
-		catch (ArrayIndexOutOfBoundsException e) {
-			e.printStackTrace(System.err);
-			ret = null;
-		}
-		finally {
-			this.clusterLock.unlock();
-		}
-		return ret;
+		return this.clusterAt(xIndex, yIndex);
+	}
+
+	/**
+	 * Returns the maximum number of clusters that are kept built at once when
+	 * loading them lazily.
+	 *
+	 * @return the cluster capacity
+	 */
+	public int getClusterCapacity() {
+		return this.clusterCapacity;
 	}
 
 	/**
@@ -526,11 +621,44 @@ public class Pathfinding {
 	 * @return the (non-smoothed) path between the points
 	 */
 	public Path getPath(Point from, Point to) {
-		Node start = new Node(from.x, from.y, this.getCluster(from.x, from.y));
-		Node end = new Node(to.x, to.y, this.getCluster(to.x, to.y));
+		if (!this.lazy) {
+			return this.findPath(from, to);
+		}
+		// the graph changes as clusters are loaded, so only one search at once
+		this.clusterLock.lock();
+		try {
+			this.trimClusters();
+			return this.findPath(from, to);
+		}
+		finally {
+			this.clusterLock.unlock();
+		}
+	}
 
-		Node closeStart = this.getClosest(from);
-		Node closeEnd = this.getClosest(to);
+	private Path findPath(Point from, Point to) {
+		Cluster startCluster = this.getCluster(from.x, from.y);
+		Cluster endCluster = this.getCluster(to.x, to.y);
+		if (startCluster == null || endCluster == null) {
+			Logging.finer("Pathfinding", "Path goes off the map");
+			return new Path();
+		}
+		Node start = new Node(from.x, from.y, startCluster);
+		Node end = new Node(to.x, to.y, endCluster);
+
+		if (startCluster.equals(endCluster)) {
+			// try going straight there without leaving the cluster first
+			Edge direct = new Edge(start, end, this.map, false);
+			if (direct.calcLength() != Integer.MAX_VALUE) {
+				return direct.path;
+			}
+		}
+
+		Node closeStart = this.getClosest(from, startCluster);
+		Node closeEnd = this.getClosest(to, endCluster);
+		if (closeStart == null || closeEnd == null) {
+			// one of the ends is walled in
+			return new Path();
+		}
 
 		Path cached = this.pathCache.get(new Tuple(closeStart, closeEnd));
 		if (cached == null) {
@@ -570,15 +698,6 @@ public class Pathfinding {
 
 		open.add(closeStart);
 
-		// generate map for cluster
-		for (Cluster[] cols : this.clusters) {
-			for (Cluster clust : cols) {
-				for (Node n : clust.entranceNodes) {
-					data.put(n, new AStarData(null, Integer.MAX_VALUE,
-							Integer.MAX_VALUE));
-				}
-			}
-		}
 		data.put(closeStart,
 				new AStarData(null, Integer.MAX_VALUE, Integer.MAX_VALUE));
 		AStarData startData = data.get(closeStart);
@@ -586,19 +705,19 @@ public class Pathfinding {
 		startData.gScore = 0;
 		startData.fScore = (float) closeStart.loc.distance(closeEnd.loc);
 
-		Path path = new Path();
+		Path path = null;
 
 		while (!open.isEmpty()) {
 			Node current = open.get(0);
-			if (current == end) {
-				path = this.reconstructPath(current,
-						data.get(current).cameFromPath, data);
+			if (current == closeEnd) {
+				path = this.reconstructPath(current, data);
 				this.pathCache.put(new Tuple(closeStart, closeEnd), path);
 				break;
 			}
 			open.remove(current);
 			closed.add(current);
 
+			this.buildCluster(current.cluster);
 			for (Edge e : current.getEdges(0)) {
 				Node other = null;
 				if (e.node1.equals(current)) {
@@ -616,7 +735,13 @@ public class Pathfinding {
 					// Ignore any neighbor which is already evaluated.
 					continue;
 				}
+				if (e.getLength() == Integer.MAX_VALUE) {
+					// the ends are not connected
+					continue;
+				}
 
+				data.computeIfAbsent(other, n -> new AStarData(null,
+						Integer.MAX_VALUE, Integer.MAX_VALUE));
 				float tentativeGScore =
 						data.get(current).gScore + e.getLength();
 				if (!open.contains(other)) {
@@ -638,6 +763,11 @@ public class Pathfinding {
 			}
 		}
 
+		if (path == null) {
+			Logging.finer("Pathfinding", "The points are not connected");
+			return new Path();
+		}
+
 		Edge firstEdge = new Edge(start, closeStart, this.map, false);
 		firstEdge.calcLength();
 		Edge lastEdge = new Edge(closeEnd, end, this.map, false);
@@ -655,32 +785,62 @@ public class Pathfinding {
 	 * @param m the map to process
 	 */
 	public void processMap(Map m) {
+		this.processMap(new PathingMap(m));
+	}
+
+	/**
+	 * Process the given map and generate pathfinding graphs. If the map is
+	 * chunked, or has more clusters than the cluster capacity, clusters are
+	 * instead built as paths need them.
+	 *
+	 * @param m the map to process
+	 * @see #setClusterCapacity(int)
+	 */
+	public void processMap(PathingMap m) {
 		Logging.finest("Pathfinding", "Beginning map processing...");
 		this.clusterLock.lock();
 		try {
-			this.map = new PathingMap(m);
+			this.map = m;
+			this.pathCache.clear();
+			this.loadedClusters.clear();
+			this.clusters = null;
+
+			/*
+			 * How many clusters it takes to cover the map. The last row and
+			 * column are cut short if the size is not a multiple of the
+			 * cluster size.
+			 */
+			this.clustersWide = (this.map.getWidth() + Cluster.CLUSTER_SIZE - 1)
+					/ Cluster.CLUSTER_SIZE;
+			this.clustersHigh =
+					(this.map.getHeight() + Cluster.CLUSTER_SIZE - 1)
+							/ Cluster.CLUSTER_SIZE;
+
+			this.lazy = this.map instanceof ChunkedPathingMap
+					|| (long) this.clustersWide
+							* this.clustersHigh > this.clusterCapacity;
+			if (this.lazy) {
+				Logging.finest("Pathfinding",
+						"Map is large, clusters will be loaded as needed");
+				return;
+			}
 
-			// how many clusters can fit completely across the width
-			int clusterWidth = this.map.getWidth() / Cluster.CLUSTER_SIZE;
-			// how many clusters can fit completely across the width
-			int clusterHeight = this.map.getHeight() / Cluster.CLUSTER_SIZE;
-			this.clusters = new Cluster[clusterWidth][clusterHeight];
+			this.clusters = new Cluster[this.clustersWide][this.clustersHigh];
 
 			this.splitIntoClusters();
 
 			int count = 1;
-			for (int i = 0; i < this.clusters.length; ++i) {
-				final int len = this.clusters[i].length;
-				for (int j = 0; j < len; ++j) {
+			for (int xIndex = 0; xIndex < this.clusters.length; ++xIndex) {
+				final int len = this.clusters[xIndex].length;
+				for (int yIndex = 0; yIndex < len; ++yIndex) {
 					Logging.finest("Pathfinding",
 							"Processing cluster " + count);
 					++count;
-					int xIndex = i / Cluster.CLUSTER_SIZE;
-					int yIndex = j / Cluster.CLUSTER_SIZE;
 
 					Cluster c = this.clusters[xIndex][yIndex];
 					this.calculateEntrances(c, xIndex, yIndex);
 					this.calculateInernalEdges(c);
+					c.built = true;
 				}
 			}
 		}
@@ -690,34 +850,89 @@ public class Pathfinding {
 		Logging.finest("Pathfinding", "Finished processing map!");
 	}
 
-	private Path reconstructPath(final Node current, final Edge curEdge,
-			final HashMap<Node, AStarData> data) {
+	/**
+	 * Creates the cluster at the given index, without working out any of its
+	 * entrances yet. Should only be called while holding the cluster lock,
+	 * when loading lazily.
+	 *
+	 * @param xIndex x index of the cluster in the cluster grid
+	 * @param yIndex y index of the cluster in the cluster grid
+	 * @return the new cluster
+	 * @see #buildCluster(Cluster)
+	 */
+	private Cluster loadCluster(final int xIndex, final int yIndex) {
+		Cluster c = new Cluster(xIndex * Cluster.CLUSTER_SIZE,
+				yIndex * Cluster.CLUSTER_SIZE);
+		this.loadedClusters.put(new Point(xIndex, yIndex), c);
+		return c;
+	}
 
-		Path p = new Path();
-		Edge prevEdge = curEdge;
+	/**
+	 * Throws away the cluster, and all the entrances other clusters have
+	 * leading into it. Built clusters next to it are missing entrances after
+	 * that, so they have to be built again before they are used. Should only
+	 * be called while holding the cluster lock.
+	 *
+	 * @param c the cluster to remove
+	 */
+	private void unloadCluster(Cluster c) {
+		HashSet<Cluster> changed = new HashSet<>();
+		for (Edge e : c.externalEdges) {
+			Node other = e.node1.cluster == c ? e.node2 : e.node1;
+			other.cluster.externalEdges.removeIf(edge -> edge == e);
+			other.cluster.entranceNodes.remove(other);
+			changed.add(other.cluster);
+		}
+		for (Cluster n : changed) {
+			this.clearInternalEdges(n);
+			n.built = false;
+		}
+		synchronized (this.pathCache) {
+			this.pathCache.keySet().removeIf(t -> t.key.cluster == c
+					|| t.value.cluster == c || changed.contains(t.key.cluster)
+					|| changed.contains(t.value.cluster));
+		}
+	}
+
+	/**
+	 * Sets the maximum number of clusters to keep built at once when loading
+	 * lazily. This also decides which maps are loaded lazily, so it should be
+	 * set before processing a map. Values less than 1 are ignored.
+	 *
+	 * @param capacity the new cluster capacity
+	 */
+	public void setClusterCapacity(final int capacity) {
+		if (capacity < 1) {
+			Logging.warning("Pathfinding",
+					"Cluster capacity must be positive, ignoring");
+			return;
+		}
+		this.clusterCapacity = capacity;
+	}
+
+	private Path reconstructPath(final Node current,
+			final HashMap<Node, AStarData> data) {
+		ArrayDeque<Path> reverseSteps = new ArrayDeque<>();
 		Node lastNode = current;
-		ArrayDeque<Edge> reverseEdges = new ArrayDeque<>();
+		Edge prevEdge = data.get(lastNode).cameFromPath;
 
 		// keep going until the start node
 		while (prevEdge != null) {
-			if (data.get(lastNode).cameFromPath == null) {
-				break;
-			}
-			reverseEdges.push(data.get(lastNode).cameFromPath);
-			// update last node so we can track what side of the edge we're on
-			if (lastNode == data.get(lastNode).cameFromPath.node1) {
-				lastNode = data.get(lastNode).cameFromPath.node2;
+			// edge paths go from node1 to node2, so flip them to go backwards
+			if (lastNode == prevEdge.node2) {
+				reverseSteps.push(prevEdge.path);
+				lastNode = prevEdge.node1;
 			}
 			else {
-				// assuming here
-				lastNode = data.get(lastNode).cameFromPath.node1;
+				reverseSteps.push(prevEdge.path.getInverted());
+				lastNode = prevEdge.node2;
 			}
 			prevEdge = data.get(lastNode).cameFromPath;
 		}
 
-		for (Edge e; !reverseEdges.isEmpty();) {
-			e = reverseEdges.pop();
-			p.append(e.path);
+		Path p = new Path();
+		while (!reverseSteps.isEmpty()) {
+			p.append(reverseSteps.pop());
 		}
 		return p;
 	}
@@ -742,13 +957,27 @@ public class Pathfinding {
 							+ Cluster.CLUSTER_SIZE + ".");
 		}
 
-		for (int i = 0; i < width; i += Cluster.CLUSTER_SIZE) {
-			for (int j = 0; j < height; j += Cluster.CLUSTER_SIZE) {
-				Cluster c = new Cluster(i, j);
-				this.clusters[i / Cluster.CLUSTER_SIZE][j
-						/ Cluster.CLUSTER_SIZE] = c;
+		for (int i = 0; i < this.clustersWide; ++i) {
+			for (int j = 0; j < this.clustersHigh; ++j) {
+				this.clusters[i][j] = new Cluster(i * Cluster.CLUSTER_SIZE,
+						j * Cluster.CLUSTER_SIZE);
 			}
 		}
 	}
 
+	/**
+	 * Unloads the least recently used clusters until there are no more than the
+	 * capacity. Should only be called while holding the cluster lock, and not
+	 * in the middle of a search.
+	 */
+	private void trimClusters() {
+		Iterator<Cluster> it = this.loadedClusters.values().iterator();
+		while (this.loadedClusters.size() > this.clusterCapacity
+				&& it.hasNext()) {
+			Cluster c = it.next();
+			it.remove();
+			this.unloadCluster(c);
+		}
+	}
+
 }
@@ -72,6 +72,34 @@ public class PathingMap {
 
 	}
 
+	/**
+	 * Creates a map directly from a set of walkable tiles, skipping the Tiled
+	 * map entirely. Bit {@code y * width + x} is set if the tile at (x,y) is
+	 * walkable. The bit set is used as is, not copied.
+	 *
+	 * @param mapWidth the width of the map in tiles
+	 * @param mapHeight the height of the map in tiles
+	 * @param walkable the walkable tiles
+	 * @see ArenaGenerator
+	 */
+	PathingMap(final int mapWidth, final int mapHeight, BitSet walkable) {
+		this.width = mapWidth;
+		this.height = mapHeight;
+		this.tiles = walkable;
+	}
+
+	/**
+	 * Creates a map that stores its tiles somewhere other than an in memory bit
+	 * set. Subclasses using this must override {@link #isWalkable(int, int)}.
+	 *
+	 * @param mapWidth the width of the map in tiles
+	 * @param mapHeight the height of the map in tiles
+	 * @see ChunkedPathingMap
+	 */
+	protected PathingMap(final int mapWidth, final int mapHeight) {
+		this(mapWidth, mapHeight, new BitSet(0));
+	}
+
 	private void calcMap(final Map tiledMap, int size, boolean hasTwoLayers) {
 		if (!(tiledMap.getLayer(1) instanceof TileLayer)) {
 			Logging.severe("Pathfinding",
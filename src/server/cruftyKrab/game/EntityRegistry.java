@@ -0,0 +1,287 @@
+package cruftyKrab.game;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ikalagaming.logging.Logging;
+
+/**
+ * Hands out small integer IDs for the mascots in a match, so they can be
+ * looked up and sent to clients without using their unique name strings.
+ *
+ * An ID is made of a slot and a generation. The slot is an index into an
+ * array, so finding the mascot for an ID is a single array read. When a
+ * mascot is released its slot can be reused, but the generation of that slot
+ * is increased, so old IDs that are still floating around (in messages from
+ * clients, for example) will no longer match anything instead of pointing at
+ * the new mascot.
+ *
+ * IDs are never negative, and never 0, so 0 can be treated as missing by
+ * clients that don't send an ID.
+ *
+ * Looking up an ID never locks. Only registering and releasing do, and they
+ * publish the slots again afterwards, so lookups from any thread see them.
+ * Lookups on the thread that registers and releases are always up to date.
+ *
+ * @author Ches Burks
+ *
+ */
+public class EntityRegistry {
+
+	/**
+	 * The mascot and generation of each slot, kept together so that a lookup
+	 * reads both from the same arrays.
+	 */
+	private static final class Slots {
+		final Mascot[] entities;
+		final int[] generations;
+
+		Slots(final int capacity) {
+			this.entities = new Mascot[capacity];
+			this.generations = new int[capacity];
+		}
+
+		Slots(Slots old, final int capacity) {
+			this.entities = Arrays.copyOf(old.entities, capacity);
+			this.generations = Arrays.copyOf(old.generations, capacity);
+		}
+	}
+
+	/**
+	 * Returned when there is no ID, and stored by mascots that are not in a
+	 * registry. ({@value})
+	 */
+	public static final int NO_ID = -1;
+
+	/**
+	 * How many bits of an ID are used for the slot. ({@value})
+	 */
+	private static final int SLOT_BITS = 16;
+
+	private static final int SLOT_MASK = (1 << EntityRegistry.SLOT_BITS) - 1;
+
+	/**
+	 * The most mascots that can be registered at once.
+	 */
+	public static final int MAX_ENTITIES = EntityRegistry.SLOT_MASK + 1;
+
+	/**
+	 * Generations are kept to 15 bits so that IDs stay positive.
+	 */
+	private static final int GENERATION_MASK = 0x7FFF;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Returns the generation part of an ID.
+	 *
+	 * @param id the ID
+	 * @return the generation of the ID
+	 */
+	public static int generationOf(final int id) {
+		return (id >>> EntityRegistry.SLOT_BITS)
+				& EntityRegistry.GENERATION_MASK;
+	}
+
+	/**
+	 * Returns the slot part of an ID.
+	 *
+	 * @param id the ID
+	 * @return the slot of the ID
+	 */
+	public static int slotOf(final int id) {
+		return id & EntityRegistry.SLOT_MASK;
+	}
+
+	/**
+	 * The mascot and generation of every slot. Replaced when it grows, and
+	 * written again after every change so that lookups see it.
+	 */
+	private volatile Slots slots;
+	/**
+	 * Slots that have been released and can be handed out again, used as a
+	 * stack.
+	 */
+	private int[] freeSlots;
+	private int freeCount;
+	/**
+	 * The number of slots that have ever been used.
+	 */
+	private int used;
+	private int count;
+	private final ReentrantLock registryLock;
+
+	/**
+	 * Creates an empty registry.
+	 */
+	public EntityRegistry() {
+		this.slots = new Slots(EntityRegistry.INITIAL_CAPACITY);
+		this.freeSlots = new int[EntityRegistry.INITIAL_CAPACITY];
+		this.freeCount = 0;
+		this.used = 0;
+		this.count = 0;
+		this.registryLock = new ReentrantLock();
+	}
+
+	/**
+	 * Releases every ID in the registry.
+	 */
+	public void clear() {
+		this.registryLock.lock();
+		try {
+			for (int slot = 0; slot < this.used; ++slot) {
+				if (this.slots.entities[slot] != null) {
+					this.release(this.idFor(slot));
+				}
+			}
+		}
+		finally {
+			this.registryLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the mascot with the given ID.
+	 *
+	 * @param id the ID of the mascot
+	 * @return the mascot, or null if the ID is not valid anymore
+	 */
+	public Mascot get(final int id) {
+		if (id <= 0) {
+			return null;
+		}
+		final int slot = EntityRegistry.slotOf(id);
+		// read once, so a slot can't be checked in one array and read in
+		// another
+		final Slots table = this.slots;
+		if (slot >= table.generations.length
+				|| table.generations[slot] != EntityRegistry.generationOf(id)) {
+			return null;
+		}
+		return table.entities[slot];
+	}
+
+	/**
+	 * Should only be called while holding the registry lock.
+	 */
+	private void grow() {
+		final Slots old = this.slots;
+		final int cap = Math.min(old.entities.length * 2,
+				EntityRegistry.MAX_ENTITIES);
+		this.slots = new Slots(old, cap);
+		this.freeSlots = Arrays.copyOf(this.freeSlots, cap);
+	}
+
+	/**
+	 * Should only be called while holding the registry lock.
+	 */
+	private int idFor(final int slot) {
+		return (this.slots.generations[slot] << EntityRegistry.SLOT_BITS)
+				| slot;
+	}
+
+	/**
+	 * Returns true if the ID belongs to a mascot that is still registered.
+	 *
+	 * @param id the ID to check
+	 * @return true if the ID is valid
+	 */
+	public boolean isValid(final int id) {
+		return this.get(id) != null;
+	}
+
+	/**
+	 * Gives a mascot an ID, which can be read with {@link Mascot#getId()}
+	 * afterwards.
+	 *
+	 * @param mascot the mascot
+	 * @return the new ID, or {@link #NO_ID} if the mascot already has one or
+	 *         the registry is full
+	 */
+	public int register(Mascot mascot) {
+		if (mascot.getId() != EntityRegistry.NO_ID) {
+			Logging.warning("Entity Registry", "Mascot already has an ID");
+			return EntityRegistry.NO_ID;
+		}
+		this.registryLock.lock();
+		try {
+			int slot;
+			if (this.freeCount > 0) {
+				slot = this.freeSlots[--this.freeCount];
+			}
+			else if (this.used < EntityRegistry.MAX_ENTITIES) {
+				if (this.used >= this.slots.entities.length) {
+					this.grow();
+				}
+				slot = this.used++;
+				this.slots.generations[slot] = 1;
+			}
+			else {
+				Logging.warning("Entity Registry",
+						"Too many entities, not registering");
+				return EntityRegistry.NO_ID;
+			}
+			final Slots table = this.slots;
+			table.entities[slot] = mascot;
+			++this.count;
+			final int id = this.idFor(slot);
+			mascot.setId(id);
+			this.slots = table;
+			return id;
+		}
+		finally {
+			this.registryLock.unlock();
+		}
+	}
+
+	/**
+	 * Releases an ID, so it will no longer find the mascot and its slot can be
+	 * reused. The mascot goes back to having no ID.
+	 *
+	 * @param id the ID to release
+	 * @return the mascot that had the ID, or null if it was not valid
+	 */
+	public Mascot release(final int id) {
+		this.registryLock.lock();
+		try {
+			Mascot m = this.get(id);
+			if (m == null) {
+				return null;
+			}
+			final int slot = EntityRegistry.slotOf(id);
+			final Slots table = this.slots;
+			int gen = (table.generations[slot] + 1)
+					& EntityRegistry.GENERATION_MASK;
+			if (gen == 0) {
+				// 0 would let slot 0 hand out an ID of 0
+				gen = 1;
+			}
+			// the old ID stops matching before the mascot is dropped
+			table.generations[slot] = gen;
+			table.entities[slot] = null;
+			this.freeSlots[this.freeCount++] = slot;
+			--this.count;
+			m.setId(EntityRegistry.NO_ID);
+			this.slots = table;
+			return m;
+		}
+		finally {
+			this.registryLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns how many mascots are registered.
+	 *
+	 * @return the number of registered mascots
+	 */
+	public int size() {
+		this.registryLock.lock();
+		try {
+			return this.count;
+		}
+		finally {
+			this.registryLock.unlock();
+		}
+	}
+}
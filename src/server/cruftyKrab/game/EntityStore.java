@@ -0,0 +1,699 @@
+package cruftyKrab.game;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ikalagaming.entity.component.Health;
+import com.ikalagaming.logging.Logging;
+
+/**
+ * Holds the frequently used data for every mascot in a match, with each kind
+ * of data in its own array. A mascot is stored at a slot, which is its index
+ * into each array. Looping over all the mascots in a match this way reads
+ * memory in order, instead of following references to a different component
+ * object for every mascot and locking each one.
+ *
+ * Mascots added to a store become views of it, so {@link Mascot#getColor()}
+ * and the mascot's {@link Location} read from and write to the store. The
+ * store is the only copy of those values until the mascot is removed.
+ *
+ * A store shared between threads locks for each method, but the lock is
+ * reentrant so a whole update can hold it with {@link #lock()}. Loops over
+ * many mascots should instead lock the store once and use the arrays from
+ * {@link #getXs()} and the like directly, rather than locking again for every
+ * field. A store that only one thread ever uses doesn't lock at all.
+ *
+ * @author Ches Burks
+ *
+ */
+public class EntityStore {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Stored in place of a facing code when the direction is unknown.
+	 */
+	private static final byte NO_FACING = -1;
+
+	private float[] x;
+	private float[] y;
+	/**
+	 * How fast each mascot is moving, in tiles per second.
+	 */
+	private float[] vx;
+	private float[] vy;
+	private int[] color;
+	private float[] health;
+	private byte[] facing;
+	private Mascot[] mascots;
+
+	/**
+	 * Slots that have a mascot in them.
+	 */
+	private final BitSet occupied;
+	/**
+	 * Slots that hold a mascot that is not dead.
+	 */
+	private final BitSet alive;
+	/**
+	 * Slots that hold an AI.
+	 */
+	private final BitSet enemies;
+	/**
+	 * Slots that hold a player.
+	 */
+	private final BitSet players;
+
+	/**
+	 * Guards the store, or null if only one thread uses it.
+	 */
+	private final ReentrantLock storeLock;
+
+	/**
+	 * Creates an empty store that can be shared between threads.
+	 */
+	public EntityStore() {
+		this(true);
+	}
+
+	/**
+	 * Creates an empty store. If it isn't shared, only one thread may ever use
+	 * it, including the mascots and locations that are views of it, and
+	 * {@link #lock()} does nothing.
+	 *
+	 * @param shared true if more than one thread uses the store
+	 */
+	public EntityStore(final boolean shared) {
+		final int cap = EntityStore.INITIAL_CAPACITY;
+		this.x = new float[cap];
+		this.y = new float[cap];
+		this.vx = new float[cap];
+		this.vy = new float[cap];
+		this.color = new int[cap];
+		this.health = new float[cap];
+		this.facing = new byte[cap];
+		this.mascots = new Mascot[cap];
+		this.occupied = new BitSet(cap);
+		this.alive = new BitSet(cap);
+		this.enemies = new BitSet(cap);
+		this.players = new BitSet(cap);
+		this.storeLock = shared ? new ReentrantLock() : null;
+	}
+
+	/**
+	 * Adds a mascot to the store, copying its current position, color and
+	 * health. The mascot and its location become views of the store until it
+	 * is removed.
+	 *
+	 * @param mascot the mascot to add
+	 * @param enemy true if it is an AI, false if it is a player
+	 * @return the slot the mascot was put in, or -1 if it is already in a
+	 *         store
+	 */
+	public int add(Mascot mascot, final boolean enemy) {
+		if (mascot.getSlot() >= 0) {
+			Logging.warning("Entity Store", "Mascot is already in a store");
+			return -1;
+		}
+		Location loc = (Location) mascot.getComponent(Location.TYPE_NAME);
+		Health hp = (Health) mascot.getComponent(Health.TYPE_NAME);
+		final int col = mascot.getColor();
+
+		this.lock();
+		try {
+			final int slot = this.occupied.nextClearBit(0);
+			if (slot >= this.mascots.length) {
+				this.grow(slot + 1);
+			}
+			this.occupied.set(slot);
+			if (enemy) {
+				this.enemies.set(slot);
+			}
+			else {
+				this.players.set(slot);
+			}
+			this.mascots[slot] = mascot;
+			if (loc == null) {
+				this.x[slot] = 0;
+				this.y[slot] = 0;
+			}
+			else {
+				Location.Snapshot now = loc.getSnapshot();
+				this.x[slot] = now.getX();
+				this.y[slot] = now.getY();
+			}
+			this.vx[slot] = 0;
+			this.vy[slot] = 0;
+			this.color[slot] = col;
+			this.facing[slot] = EntityStore.NO_FACING;
+			if (hp == null) {
+				this.health[slot] = Health.DEFAULT_MAX_HEALTH;
+				this.alive.set(slot);
+			}
+			else {
+				this.health[slot] = hp.getHealth();
+				this.alive.set(slot, !hp.isDead());
+			}
+			StoreSlot binding = new StoreSlot(this, slot);
+			mascot.bind(binding);
+			if (loc != null) {
+				loc.bind(binding);
+			}
+			return slot;
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Returns true if there is at least one player that is not dead.
+	 *
+	 * @return true if any player is alive
+	 */
+	public boolean anyPlayerAlive() {
+		this.lock();
+		try {
+			return this.players.intersects(this.alive);
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Makes sure the calling thread holds the store lock, before handing out
+	 * an array that is only safe to use while holding it.
+	 */
+	private void checkLocked() {
+		if (this.storeLock != null
+				&& !this.storeLock.isHeldByCurrentThread()) {
+			throw new IllegalStateException("The entity store is not locked");
+		}
+	}
+
+	/**
+	 * Returns the slots that hold a mascot that is not dead, like
+	 * {@link #getEnemySlots()}.
+	 *
+	 * @return the set of living slots
+	 * @see #lock()
+	 */
+	public BitSet getAliveSlots() {
+		this.checkLocked();
+		return this.alive;
+	}
+
+	/**
+	 * Returns the color index of the mascot in a slot.
+	 *
+	 * @param slot the slot
+	 * @return the color index
+	 * @see MascotColor#getIndex()
+	 */
+	public int getColor(final int slot) {
+		this.lock();
+		try {
+			return this.color[slot];
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Returns the color index of every slot, so a loop over many mascots can
+	 * read them without locking for each one. Only valid while holding the
+	 * store lock.
+	 *
+	 * @return the color indexes, by slot
+	 * @see #lock()
+	 */
+	public int[] getColors() {
+		this.checkLocked();
+		return this.color;
+	}
+
+	/**
+	 * Returns the slots that hold an AI, for loops over many mascots. Only
+	 * valid while holding the store lock, and must not be changed.
+	 *
+	 * @return the set of enemy slots
+	 * @see #lock()
+	 */
+	public BitSet getEnemySlots() {
+		this.checkLocked();
+		return this.enemies;
+	}
+
+	/**
+	 * Returns the way the mascot in a slot is facing.
+	 *
+	 * @param slot the slot
+	 * @return the direction, or null if it is not known
+	 */
+	public Facing getFacing(final int slot) {
+		this.lock();
+		try {
+			return Facing.fromCode(this.facing[slot]);
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Returns the facing code of every slot, like {@link #getColors()}. Codes
+	 * are from {@link Facing#getCode()}, or negative if the direction is not
+	 * known.
+	 *
+	 * @return the facing codes, by slot
+	 * @see #lock()
+	 */
+	public byte[] getFacingCodes() {
+		this.checkLocked();
+		return this.facing;
+	}
+
+	/**
+	 * Returns the health of the mascot in a slot.
+	 *
+	 * @param slot the slot
+	 * @return the health
+	 */
+	public float getHealth(final int slot) {
+		this.lock();
+		try {
+			return this.health[slot];
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Returns the mascot in a slot.
+	 *
+	 * @param slot the slot
+	 * @return the mascot, or null if the slot is empty
+	 */
+	public Mascot getMascot(final int slot) {
+		this.lock();
+		try {
+			if (slot < 0 || slot >= this.mascots.length) {
+				return null;
+			}
+			return this.mascots[slot];
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Returns the mascot in every slot, like {@link #getColors()}. Empty slots
+	 * are null.
+	 *
+	 * @return the mascots, by slot
+	 * @see #lock()
+	 */
+	public Mascot[] getMascots() {
+		this.checkLocked();
+		return this.mascots;
+	}
+
+	/**
+	 * Returns the slots that hold a player, like {@link #getEnemySlots()}.
+	 *
+	 * @return the set of player slots
+	 * @see #lock()
+	 */
+	public BitSet getPlayerSlots() {
+		this.checkLocked();
+		return this.players;
+	}
+
+	/**
+	 * Returns how fast the mascot in a slot is moving along the x axis.
+	 *
+	 * @param slot the slot
+	 * @return the x velocity, in tiles per second
+	 */
+	public float getVelocityX(final int slot) {
+		this.lock();
+		try {
+			return this.vx[slot];
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Returns the x velocity of every slot, like {@link #getXs()}.
+	 *
+	 * @return the x velocities, by slot
+	 * @see #lock()
+	 */
+	public float[] getVelocityXs() {
+		this.checkLocked();
+		return this.vx;
+	}
+
+	/**
+	 * Returns how fast the mascot in a slot is moving along the y axis.
+	 *
+	 * @param slot the slot
+	 * @return the y velocity, in tiles per second
+	 */
+	public float getVelocityY(final int slot) {
+		this.lock();
+		try {
+			return this.vy[slot];
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Returns the y velocity of every slot, like {@link #getXs()}.
+	 *
+	 * @return the y velocities, by slot
+	 * @see #lock()
+	 */
+	public float[] getVelocityYs() {
+		this.checkLocked();
+		return this.vy;
+	}
+
+	/**
+	 * Returns the x position of the mascot in a slot.
+	 *
+	 * @param slot the slot
+	 * @return the x position
+	 */
+	public float getX(final int slot) {
+		this.lock();
+		try {
+			return this.x[slot];
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Returns the x position of every slot, so a loop over many mascots can
+	 * read and set them without locking for each one. Only valid while holding
+	 * the store lock, and not after that, as the array is replaced when the
+	 * store grows.
+	 *
+	 * @return the x positions, by slot
+	 * @see #lock()
+	 */
+	public float[] getXs() {
+		this.checkLocked();
+		return this.x;
+	}
+
+	/**
+	 * Returns the y position of the mascot in a slot.
+	 *
+	 * @param slot the slot
+	 * @return the y position
+	 */
+	public float getY(final int slot) {
+		this.lock();
+		try {
+			return this.y[slot];
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Returns the y position of every slot, like {@link #getXs()}.
+	 *
+	 * @return the y positions, by slot
+	 * @see #lock()
+	 */
+	public float[] getYs() {
+		this.checkLocked();
+		return this.y;
+	}
+
+	/**
+	 * Should only be called while holding the store lock.
+	 */
+	private void grow(final int needed) {
+		int cap = this.mascots.length * 2;
+		while (cap < needed) {
+			cap *= 2;
+		}
+		this.x = Arrays.copyOf(this.x, cap);
+		this.y = Arrays.copyOf(this.y, cap);
+		this.vx = Arrays.copyOf(this.vx, cap);
+		this.vy = Arrays.copyOf(this.vy, cap);
+		this.color = Arrays.copyOf(this.color, cap);
+		this.health = Arrays.copyOf(this.health, cap);
+		this.facing = Arrays.copyOf(this.facing, cap);
+		this.mascots = Arrays.copyOf(this.mascots, cap);
+	}
+
+	/**
+	 * Returns true if the mascot in the slot is not dead.
+	 *
+	 * @param slot the slot
+	 * @return true if the slot holds a living mascot
+	 */
+	public boolean isAlive(final int slot) {
+		this.lock();
+		try {
+			return this.alive.get(slot);
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Returns true if the slot holds an AI.
+	 *
+	 * @param slot the slot
+	 * @return true if the slot holds an enemy
+	 */
+	public boolean isEnemy(final int slot) {
+		this.lock();
+		try {
+			return this.enemies.get(slot);
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Locks the store, so that a whole update can run without other threads
+	 * changing it and without locking for each call. Must be followed by
+	 * {@link #unlock()}. Does nothing if the store isn't shared.
+	 */
+	public void lock() {
+		if (this.storeLock != null) {
+			this.storeLock.lock();
+		}
+	}
+
+	/**
+	 * Returns the first slot at or after the given one that holds an AI. Loop
+	 * with {@code for (int i = store.nextEnemy(0); i >= 0; i =
+	 * store.nextEnemy(i + 1))}.
+	 *
+	 * @param from the first slot to check
+	 * @return the next enemy slot, or -1 if there are none
+	 */
+	public int nextEnemy(final int from) {
+		this.lock();
+		try {
+			return this.enemies.nextSetBit(from);
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Returns the first slot at or after the given one that holds a player.
+	 *
+	 * @param from the first slot to check
+	 * @return the next player slot, or -1 if there are none
+	 * @see #nextEnemy(int)
+	 */
+	public int nextPlayer(final int from) {
+		this.lock();
+		try {
+			return this.players.nextSetBit(from);
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Removes the mascot in a slot from the store. The mascot and its location
+	 * stop being views of the store and keep the values they had.
+	 *
+	 * @param slot the slot to empty
+	 */
+	public void remove(final int slot) {
+		this.lock();
+		try {
+			if (slot < 0 || !this.occupied.get(slot)) {
+				return;
+			}
+			Mascot m = this.mascots[slot];
+			final int col = this.color[slot];
+			this.mascots[slot] = null;
+			this.occupied.clear(slot);
+			this.alive.clear(slot);
+			this.enemies.clear(slot);
+			this.players.clear(slot);
+			// still locked, so nothing can see the slot reused while bound
+			Location loc = (Location) m.getComponent(Location.TYPE_NAME);
+			if (loc != null) {
+				loc.unbind(this.x[slot], this.y[slot]);
+			}
+			m.unbind(col);
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Sets the color index of the mascot in a slot.
+	 *
+	 * @param slot the slot
+	 * @param colorIndex the color index
+	 * @see MascotColor#getIndex()
+	 */
+	public void setColor(final int slot, final int colorIndex) {
+		this.lock();
+		try {
+			this.color[slot] = colorIndex;
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Sets the way the mascot in a slot is facing.
+	 *
+	 * @param slot the slot
+	 * @param dir the direction, or null if it is not known
+	 */
+	public void setFacing(final int slot, Facing dir) {
+		this.lock();
+		try {
+			this.facing[slot] = dir == null ? EntityStore.NO_FACING
+					: dir.getCode();
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Sets the health of the mascot in a slot, updating whether it is alive.
+	 * This is also passed on to the mascot's health component.
+	 *
+	 * @param slot the slot
+	 * @param value the new health
+	 */
+	public void setHealth(final int slot, final float value) {
+		Health hp;
+		this.lock();
+		try {
+			if (!this.occupied.get(slot)) {
+				return;
+			}
+			this.health[slot] = value;
+			hp = (Health) this.mascots[slot].getComponent(Health.TYPE_NAME);
+			if (hp == null) {
+				this.alive.set(slot, value > Health.DEFAULT_MIN_HEALTH);
+				return;
+			}
+			hp.setHealth(Math.round(value));
+			this.alive.set(slot, !hp.isDead());
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Sets the position of the mascot in a slot.
+	 *
+	 * @param slot the slot
+	 * @param xPos the new x position
+	 * @param yPos the new y position
+	 */
+	public void setPosition(final int slot, final float xPos,
+			final float yPos) {
+		this.lock();
+		try {
+			this.x[slot] = xPos;
+			this.y[slot] = yPos;
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Sets how fast the mascot in a slot is moving, so clients can guess
+	 * where it is between updates.
+	 *
+	 * @param slot the slot
+	 * @param xSpeed the x velocity, in tiles per second
+	 * @param ySpeed the y velocity, in tiles per second
+	 */
+	public void setVelocity(final int slot, final float xSpeed,
+			final float ySpeed) {
+		this.lock();
+		try {
+			this.vx[slot] = xSpeed;
+			this.vy[slot] = ySpeed;
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Returns how many mascots are in the store.
+	 *
+	 * @return the number of mascots
+	 */
+	public int size() {
+		this.lock();
+		try {
+			return this.occupied.cardinality();
+		}
+		finally {
+			this.unlock();
+		}
+	}
+
+	/**
+	 * Unlocks the store after a call to {@link #lock()}.
+	 */
+	public void unlock() {
+		if (this.storeLock != null) {
+			this.storeLock.unlock();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package cruftyKrab.game;
+
+/**
+ * The four directions a mascot can face, as sent by the client.
+ *
+ * @author Ches Burks
+ *
+ */
+public enum Facing {
+	/**
+	 * Facing the top of the screen.
+	 */
+	UP("up"),
+	/**
+	 * Facing the bottom of the screen.
+	 */
+	DOWN("down"),
+	/**
+	 * Facing the left of the screen.
+	 */
+	LEFT("left"),
+	/**
+	 * Facing the right of the screen.
+	 */
+	RIGHT("right");
+
+	private static final Facing[] VALUES = Facing.values();
+
+	/**
+	 * Returns the direction with the given code, as returned by
+	 * {@link #getCode()}.
+	 *
+	 * @param code the code
+	 * @return the direction, or null if the code is not valid
+	 */
+	public static Facing fromCode(final byte code) {
+		if (code < 0 || code >= Facing.VALUES.length) {
+			return null;
+		}
+		return Facing.VALUES[code];
+	}
+
+	/**
+	 * Returns the direction with the given name, as used by the client.
+	 *
+	 * @param name the name, such as "up"
+	 * @return the direction, or null if the name is not valid
+	 */
+	public static Facing fromName(final String name) {
+		if (name == null) {
+			return null;
+		}
+		for (Facing f : Facing.VALUES) {
+			if (f.name.equals(name)) {
+				return f;
+			}
+		}
+		return null;
+	}
+
+	private final String name;
+
+	private Facing(final String clientName) {
+		this.name = clientName;
+	}
+
+	/**
+	 * Returns a small number that represents this direction, for storing in
+	 * arrays.
+	 *
+	 * @return the code for this direction
+	 */
+	public byte getCode() {
+		return (byte) this.ordinal();
+	}
+
+	/**
+	 * Returns the name of the direction as used by the client, such as "up".
+	 *
+	 * @return the client name
+	 */
+	public String getName() {
+		return this.name;
+	}
+}
@@ -1,18 +1,75 @@
 package cruftyKrab.game;
 
 import java.awt.Point;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.ikalagaming.entity.component.Component;
 
 /**
  * Stores the location information for an entity in the game.
  *
+ * The position and angle are kept together in an immutable {@link Snapshot}
+ * that is swapped out whenever anything changes, so reads never lock and
+ * never see a new x with an old y. Use {@link #getSnapshot()} to read
+ * several values that have to match each other.
+ *
+ * While the mascot is in an {@link EntityStore}, the position is read from
+ * and written to its slot there instead, so the store is the only copy of it.
+ * The store is locked for each call, the same as calling it directly. When
+ * the mascot is removed from the store, it keeps the position it had there.
+ *
  * @author Ches Burks
  *
  */
 public class Location extends Component {
 
+	/**
+	 * The position and angle of a location at one point in time. These never
+	 * change once created.
+	 *
+	 * @author Ches Burks
+	 *
+	 */
+	public static final class Snapshot {
+		private final float x;
+		private final float y;
+		private final float angleRad;
+
+		private Snapshot(final float xPos, final float yPos,
+				final float angle) {
+			this.x = xPos;
+			this.y = yPos;
+			this.angleRad = angle;
+		}
+
+		/**
+		 * Returns the angle the entity was facing, in radians.
+		 *
+		 * @return the angle in rad
+		 */
+		public float getAngleRad() {
+			return this.angleRad;
+		}
+
+		/**
+		 * Returns the X position of the entity.
+		 *
+		 * @return the X position
+		 */
+		public float getX() {
+			return this.x;
+		}
+
+		/**
+		 * Returns the Y position of the entity.
+		 *
+		 * @return the Y position
+		 */
+		public float getY() {
+			return this.y;
+		}
+	}
+
 	/**
 	 * The name of the component returned by {@link #getType()}. ( {@value} )
 	 */
@@ -34,8 +91,10 @@ public class Location extends Component {
 	public static float findAngle(final Location source, final Location dest) {
 		boolean xNegative = false;
 		boolean yNegative = false;
-		float width = dest.getX() - source.getX();
-		float height = dest.getY() - source.getY();
+		final Snapshot from = source.getSnapshot();
+		final Snapshot to = dest.getSnapshot();
+		float width = to.getX() - from.getX();
+		float height = to.getY() - from.getY();
 
 		if (width < 0) {
 			width = -width;
@@ -91,8 +150,10 @@ public class Location extends Component {
 			final Location dest) {
 		boolean xNegative = false;
 		boolean yNegative = false;
-		float width = dest.getX() - source.getX();
-		float height = dest.getY() - source.getY();
+		final Snapshot from = source.getSnapshot();
+		final Snapshot to = dest.getSnapshot();
+		float width = to.getX() - from.getX();
+		float height = to.getY() - from.getY();
 
 		if (width < 0) {
 			width = -width;
@@ -141,25 +202,34 @@ public class Location extends Component {
 	 * @return distance between the locations
 	 */
 	public static float getDistance(final Location a, final Location b) {
-		final float dx = b.getX() - a.getX();
-		final float dy = b.getY() - a.getY();
+		final Snapshot from = a.getSnapshot();
+		final Snapshot to = b.getSnapshot();
+		final float dx = to.getX() - from.getX();
+		final float dy = to.getY() - from.getY();
 		return (float) Math.sqrt((dx * dx) + (dy * dy));
 	}
 
-	private ReentrantLock dataLock = new ReentrantLock();
 	/**
-	 * The x position
+	 * The current position and angle. The position is out of date while in a
+	 * store.
 	 */
-	private float xPos;
+	private final AtomicReference<Snapshot> state =
+			new AtomicReference<>(new Snapshot(0, 0, 0));
+
 	/**
-	 * The y position
+	 * The store and slot the position is kept in, or null if it is kept here.
 	 */
-	private float yPos;
+	private volatile StoreSlot binding;
 
 	/**
-	 * The angle in radians
+	 * Makes the position a view of a slot in a store. Only the store should
+	 * call this.
+	 *
+	 * @param storeSlot the store and the slot the mascot is in
 	 */
-	private float angleRad;
+	void bind(StoreSlot storeSlot) {
+		this.binding = storeSlot;
+	}
 
 	/**
 	 * Returns the angle the entity is facing, in degrees.
@@ -167,15 +237,7 @@ public class Location extends Component {
 	 * @return the angle in deg
 	 */
 	public int getAngleDeg() {
-		float angle = 0.0f;
-		this.dataLock.lock();
-		try {
-			angle = this.angleRad;
-		}
-		finally {
-			this.dataLock.unlock();
-		}
-		return Math.round((float) Math.toDegrees(angle));
+		return Math.round((float) Math.toDegrees(this.getAngleRad()));
 	}
 
 	/**
@@ -184,15 +246,33 @@ public class Location extends Component {
 	 * @return the angle in rad
 	 */
 	public float getAngleRad() {
-		float angle = 0.0f;
-		this.dataLock.lock();
-		try {
-			angle = this.angleRad;
-		}
-		finally {
-			this.dataLock.unlock();
+		return this.state.get().getAngleRad();
+	}
+
+	/**
+	 * Returns the position and angle of the entity as they are right now. The
+	 * values in the snapshot always belong to the same update, unlike calling
+	 * {@link #getX()} and then {@link #getY()}.
+	 *
+	 * @return the current position and angle
+	 */
+	public Snapshot getSnapshot() {
+		StoreSlot b = this.binding;
+		while (b != null) {
+			b.store.lock();
+			try {
+				// the slot might have been emptied and reused since
+				if (this.binding == b) {
+					return new Snapshot(b.store.getX(b.slot),
+							b.store.getY(b.slot), this.getAngleRad());
+				}
+			}
+			finally {
+				b.store.unlock();
+			}
+			b = this.binding;
 		}
-		return angle;
+		return this.state.get();
 	}
 
 	/**
@@ -202,15 +282,8 @@ public class Location extends Component {
 	 * @return the point representing the location rounded to integers
 	 */
 	public Point getTilePos() {
-		Point p;
-		this.dataLock.lock();
-		try {
-			p = new Point(Math.round(this.xPos), Math.round(this.yPos));
-		}
-		finally {
-			this.dataLock.unlock();
-		}
-		return p;
+		final Snapshot now = this.getSnapshot();
+		return new Point(Math.round(now.getX()), Math.round(now.getY()));
 	}
 
 	@Override
@@ -224,15 +297,20 @@ public class Location extends Component {
 	 * @return the X position
 	 */
 	public float getX() {
-		float x = 0.0f;
-		this.dataLock.lock();
-		try {
-			x = this.xPos;
-		}
-		finally {
-			this.dataLock.unlock();
+		StoreSlot b = this.binding;
+		while (b != null) {
+			b.store.lock();
+			try {
+				if (this.binding == b) {
+					return b.store.getX(b.slot);
+				}
+			}
+			finally {
+				b.store.unlock();
+			}
+			b = this.binding;
 		}
-		return x;
+		return this.state.get().getX();
 	}
 
 	/**
@@ -241,15 +319,20 @@ public class Location extends Component {
 	 * @return the Y position
 	 */
 	public float getY() {
-		float y = 0.0f;
-		this.dataLock.lock();
-		try {
-			y = this.yPos;
-		}
-		finally {
-			this.dataLock.unlock();
+		StoreSlot b = this.binding;
+		while (b != null) {
+			b.store.lock();
+			try {
+				if (this.binding == b) {
+					return b.store.getY(b.slot);
+				}
+			}
+			finally {
+				b.store.unlock();
+			}
+			b = this.binding;
 		}
-		return y;
+		return this.state.get().getY();
 	}
 
 	/**
@@ -271,16 +354,13 @@ public class Location extends Component {
 				val -= 180;// make it -2pi <= val <= 2pi
 			}
 		}
-		float fVal = (float) Math.toRadians(val);
-
-		this.dataLock.lock();
-		try {
-			this.angleRad = fVal;
-		}
-		finally {
-			this.dataLock.unlock();
-		}
+		final float fVal = (float) Math.toRadians(val);
 
+		Snapshot old;
+		do {
+			old = this.state.get();
+		} while (!this.state.compareAndSet(old,
+				new Snapshot(old.getX(), old.getY(), fVal)));
 	}
 
 	/**
@@ -300,13 +380,48 @@ public class Location extends Component {
 				val -= Location.TWO_PI;// make it -2pi <= val <= 2pi
 			}
 		}
-		this.dataLock.lock();
-		try {
-			this.angleRad = val;
-		}
-		finally {
-			this.dataLock.unlock();
+		final float fVal = val;
+
+		Snapshot old;
+		do {
+			old = this.state.get();
+		} while (!this.state.compareAndSet(old,
+				new Snapshot(old.getX(), old.getY(), fVal)));
+	}
+
+	/**
+	 * Sets the X and Y position of the entity at the same time.
+	 *
+	 * @param x the new X position
+	 * @param y the new Y position
+	 */
+	public void setPosition(final float x, final float y) {
+		StoreSlot b = this.binding;
+		while (b != null) {
+			b.store.lock();
+			try {
+				if (this.binding == b) {
+					b.store.setPosition(b.slot, x, y);
+					return;
+				}
+			}
+			finally {
+				b.store.unlock();
+			}
+			b = this.binding;
 		}
+		this.setLocalPosition(x, y);
+	}
+
+	/**
+	 * Sets the position kept here rather than in a store.
+	 */
+	private void setLocalPosition(final float x, final float y) {
+		Snapshot old;
+		do {
+			old = this.state.get();
+		} while (!this.state.compareAndSet(old,
+				new Snapshot(x, y, old.getAngleRad())));
 	}
 
 	/**
@@ -315,13 +430,25 @@ public class Location extends Component {
 	 * @param x the new X position
 	 */
 	public void setX(final float x) {
-		this.dataLock.lock();
-		try {
-			this.xPos = x;
-		}
-		finally {
-			this.dataLock.unlock();
+		StoreSlot b = this.binding;
+		while (b != null) {
+			b.store.lock();
+			try {
+				if (this.binding == b) {
+					b.store.setPosition(b.slot, x, b.store.getY(b.slot));
+					return;
+				}
+			}
+			finally {
+				b.store.unlock();
+			}
+			b = this.binding;
 		}
+		Snapshot old;
+		do {
+			old = this.state.get();
+		} while (!this.state.compareAndSet(old,
+				new Snapshot(x, old.getY(), old.getAngleRad())));
 	}
 
 	/**
@@ -330,12 +457,36 @@ public class Location extends Component {
 	 * @param y the new Y position
 	 */
 	public void setY(final float y) {
-		this.dataLock.lock();
-		try {
-			this.yPos = y;
-		}
-		finally {
-			this.dataLock.unlock();
+		StoreSlot b = this.binding;
+		while (b != null) {
+			b.store.lock();
+			try {
+				if (this.binding == b) {
+					b.store.setPosition(b.slot, b.store.getX(b.slot), y);
+					return;
+				}
+			}
+			finally {
+				b.store.unlock();
+			}
+			b = this.binding;
 		}
+		Snapshot old;
+		do {
+			old = this.state.get();
+		} while (!this.state.compareAndSet(old,
+				new Snapshot(old.getX(), y, old.getAngleRad())));
+	}
+
+	/**
+	 * Stops the position being a view of a store, keeping the position it had
+	 * there. Only the store should call this, while holding its lock.
+	 *
+	 * @param lastX the x position the mascot had in the store
+	 * @param lastY the y position the mascot had in the store
+	 */
+	void unbind(final float lastX, final float lastY) {
+		this.setLocalPosition(lastX, lastY);
+		this.binding = null;
 	}
 }
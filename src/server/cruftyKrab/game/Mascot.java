@@ -28,6 +28,17 @@ public class Mascot extends Player {
 	private int color;
 	private ReentrantLock colorLock;
 
+	/**
+	 * The store and slot this mascot is a view of, or null if it is not in a
+	 * store. They are replaced together, so they always match.
+	 */
+	private volatile StoreSlot binding;
+
+	/**
+	 * The ID given by an {@link EntityRegistry}.
+	 */
+	private volatile int id;
+
 	/**
 	 * Constructs a mascot and gives it some essential components.
 	 */
@@ -48,6 +59,18 @@ public class Mascot extends Player {
 		this.nameLock = new ReentrantLock();
 		this.colorLock = new ReentrantLock();
 		this.color = MascotColor.MAROON.getIndex();
+		this.binding = null;
+		this.id = EntityRegistry.NO_ID;
+	}
+
+	/**
+	 * Makes this mascot a view of a slot in a store. Only the store should call
+	 * this.
+	 *
+	 * @param storeSlot the store and the slot this mascot is in
+	 */
+	void bind(StoreSlot storeSlot) {
+		this.binding = storeSlot;
 	}
 
 	/**
@@ -57,6 +80,20 @@ public class Mascot extends Player {
 	 * @return the color
 	 */
 	public int getColor() {
+		StoreSlot b = this.binding;
+		while (b != null) {
+			b.store.lock();
+			try {
+				// the slot might have been emptied and reused since
+				if (this.binding == b) {
+					return b.store.getColor(b.slot);
+				}
+			}
+			finally {
+				b.store.unlock();
+			}
+			b = this.binding;
+		}
 		this.colorLock.lock();
 		try {
 			return this.color;
@@ -66,6 +103,27 @@ public class Mascot extends Player {
 		}
 	}
 
+	/**
+	 * Returns the ID of this mascot within its match, which is much cheaper to
+	 * look up and send than the name.
+	 *
+	 * @return the ID, or {@link EntityRegistry#NO_ID} if it does not have one
+	 * @see EntityRegistry#get(int)
+	 */
+	public int getId() {
+		return this.id;
+	}
+
+	/**
+	 * Returns the slot this mascot is in within its {@link EntityStore}.
+	 *
+	 * @return the slot, or -1 if it is not in a store
+	 */
+	public int getSlot() {
+		StoreSlot b = this.binding;
+		return b == null ? -1 : b.slot;
+	}
+
 	/**
 	 * Returns the username of the player. Note this is different than the name
 	 * returned by {@link Mascot#getName()}, and is not necessarily guaranteed
@@ -96,6 +154,20 @@ public class Mascot extends Player {
 	 * @param newColorInd the color to set
 	 */
 	public void setColor(final int newColorInd) {
+		StoreSlot b = this.binding;
+		while (b != null) {
+			b.store.lock();
+			try {
+				if (this.binding == b) {
+					b.store.setColor(b.slot, newColorInd);
+					return;
+				}
+			}
+			finally {
+				b.store.unlock();
+			}
+			b = this.binding;
+		}
 		this.colorLock.lock();
 		try {
 			this.color = newColorInd;
@@ -105,6 +177,15 @@ public class Mascot extends Player {
 		}
 	}
 
+	/**
+	 * Sets the ID of this mascot. Only the registry should call this.
+	 *
+	 * @param newId the new ID
+	 */
+	void setId(final int newId) {
+		this.id = newId;
+	}
+
 	/**
 	 * Sets the username of the player. Note this is different than the name
 	 * returned by {@link Mascot#getName()}, and is not necessarily guaranteed
@@ -125,4 +206,21 @@ public class Mascot extends Player {
 			this.nameLock.unlock();
 		}
 	}
+
+	/**
+	 * Stops this mascot being a view of a store, keeping the color it had
+	 * there. Only the store should call this, while holding its lock.
+	 *
+	 * @param lastColor the color the mascot had in the store
+	 */
+	void unbind(final int lastColor) {
+		this.colorLock.lock();
+		try {
+			this.color = lastColor;
+		}
+		finally {
+			this.colorLock.unlock();
+		}
+		this.binding = null;
+	}
 }
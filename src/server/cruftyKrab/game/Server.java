@@ -5,8 +5,6 @@ import java.net.UnknownHostException;
 import java.util.HashSet;
 import java.util.Set;
 
-import org.java_websocket.drafts.Draft_17;
-
 import com.ikalagaming.event.EventHandler;
 import com.ikalagaming.event.EventManager;
 import com.ikalagaming.event.Listener;
@@ -17,6 +15,9 @@ import com.ikalagaming.packages.PackageManager;
 
 import cruftyKrab.game.events.Shutdown;
 import cruftyKrab.game.lobby.LobbyPackage;
+import cruftyKrab.network.Connection;
+import cruftyKrab.network.DeflateDraft;
+import cruftyKrab.network.ThreadMode;
 import cruftyKrab.network.WSServer;
 
 /**
@@ -108,8 +109,33 @@ public class Server implements Package, Listener {
 	@Override
 	public boolean onEnable() {
 		Logging.finest(Server.packageName, "Starting WebSocket server...");
+		ThreadMode threadMode = ThreadMode.PLATFORM;
+		final String modeName = System.getProperty("cruftyKrab.threadMode");
+		if (modeName != null) {
+			try {
+				threadMode = ThreadMode.valueOf(modeName.toUpperCase());
+			}
+			catch (@SuppressWarnings("unused") IllegalArgumentException e) {
+				Logging.warning(Server.packageName, "Unknown thread mode "
+						+ modeName + ", using " + threadMode);
+			}
+		}
+		/*
+		 * Large messages are compressed if the client supports it. A negative
+		 * threshold turns that off.
+		 */
+		DeflateDraft draft = new DeflateDraft(
+				Integer.getInteger("cruftyKrab.deflateThreshold",
+						DeflateDraft.DEFAULT_THRESHOLD).intValue(),
+				Boolean.parseBoolean(System
+						.getProperty("cruftyKrab.deflateContextTakeover", "true")));
 		try {
-			this.server = new WSServer(Server.SERVER_PORT, new Draft_17());
+			this.server = new WSServer(Server.SERVER_PORT, draft,
+					threadMode, Integer.getInteger("cruftyKrab.connectionThreads",
+							ThreadMode.defaultPlatformThreads()).intValue(),
+					Integer.getInteger("cruftyKrab.writerThreads", 2).intValue(),
+					Long.getLong("cruftyKrab.maxQueuedBytes",
+							Connection.DEFAULT_MAX_QUEUED_BYTES).longValue());
 			this.server.start();
 		}
 		catch (@SuppressWarnings("unused") UnknownHostException e) {
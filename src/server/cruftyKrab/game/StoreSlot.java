@@ -0,0 +1,19 @@
+package cruftyKrab.game;
+
+/**
+ * A store and the slot a mascot is in there. A mascot and its location share
+ * the same one, and it is replaced rather than changed, so the store and slot
+ * always match.
+ *
+ * @author Ches Burks
+ *
+ */
+final class StoreSlot {
+	final EntityStore store;
+	final int slot;
+
+	StoreSlot(EntityStore entityStore, final int storeSlot) {
+		this.store = entityStore;
+		this.slot = storeSlot;
+	}
+}
@@ -1,5 +1,6 @@
 package cruftyKrab.game.events;
 
+import cruftyKrab.game.EntityRegistry;
 import cruftyKrab.network.Connection;
 
 /**
@@ -12,6 +13,7 @@ public class EntityDiedEvent extends CancellableEvent {
 
 	private final Connection sender;
 	private final String id;
+	private final int entityID;
 	private final double pts;
 
 	/**
@@ -24,11 +26,37 @@ public class EntityDiedEvent extends CancellableEvent {
 	 */
 	public EntityDiedEvent(final String uniqueID, final Connection connection,
 			final double points) {
+		this(EntityRegistry.NO_ID, uniqueID, connection, points);
+	}
+
+	/**
+	 * Creates a {@link EntityDiedEvent} event.
+	 *
+	 * @param handle the ID of the entity that died within the match, or
+	 *            {@link EntityRegistry#NO_ID} if only the unique ID is known
+	 * @param uniqueID the unique ID of the entity that died
+	 * @param connection the connection that requested the join
+	 * @param points the number of points the player at the other end of the
+	 *            connection has
+	 */
+	public EntityDiedEvent(final int handle, final String uniqueID,
+			final Connection connection, final double points) {
+		this.entityID = handle;
 		this.id = uniqueID;
 		this.sender = connection;
 		this.pts = points;
 	}
 
+	/**
+	 * Returns the ID of the dead entity within the match.
+	 *
+	 * @return the ID, or {@link EntityRegistry#NO_ID} if it was not given
+	 * @see cruftyKrab.game.Mascot#getId()
+	 */
+	public int getEntityID() {
+		return this.entityID;
+	}
+
 	/**
 	 * Returns the connection that requested the join
 	 *
@@ -0,0 +1,22 @@
+package cruftyKrab.game.lobby;
+
+/**
+ * How a match handles events that come in from other threads, such as player
+ * updates from the network.
+ *
+ * @author Ches Burks
+ *
+ */
+public enum ExecutionMode {
+	/**
+	 * Events change the match right away on whatever thread they arrive on,
+	 * and the match state is guarded by locks.
+	 */
+	LOCKED,
+	/**
+	 * Events are queued as commands, and the match's update runs them at the
+	 * start of each tick. Only the update thread ever changes the match, so
+	 * the locks are never contended.
+	 */
+	ACTOR;
+}
@@ -1,21 +1,16 @@
 package cruftyKrab.game.lobby;
 
-import com.google.gson.Gson;
 import com.ikalagaming.event.EventHandler;
 import com.ikalagaming.event.EventManager;
 import com.ikalagaming.event.Listener;
 import com.ikalagaming.gui.console.events.ConsoleCommandEntered;
 import com.ikalagaming.logging.Logging;
 
-import cruftyKrab.game.events.EntityDiedEvent;
 import cruftyKrab.game.events.JoinMatch;
 import cruftyKrab.game.events.MatchOver;
 import cruftyKrab.game.events.PlayerConnected;
-import cruftyKrab.game.events.PlayerUpdate;
 import cruftyKrab.network.Connection;
 import cruftyKrab.network.events.MessageReceived;
-import cruftyKrab.network.messages.EntityDied;
-import cruftyKrab.network.messages.in.PosUpdate;
 
 /**
  * The lobby package listener that is registered with the static event system.
@@ -66,30 +61,14 @@ public class LobbyListener implements Listener {
 	}
 
 	/**
-	 * Transfers the event to the match listener.
+	 * Transfers the event to the match listener. Game messages the match
+	 * knows about are sent to it directly by the connection, so only the
+	 * rest end up here.
 	 *
 	 * @param event the event
 	 */
 	@EventHandler
 	public void onMessageReceived(MessageReceived event) {
-		if (event.getMessage().contains("\"eventName\":\"posUpdate\"")) {
-			Gson g = event.getSocket().getGson();
-			PosUpdate pu = g.fromJson(event.getMessage(), PosUpdate.class);
-			PlayerUpdate playerUpdate = new PlayerUpdate(pu.xPosition,
-					pu.yPosition, pu.facing, event.getSocket());
-			event.getSocket().getManager().fireEvent(playerUpdate);
-			return;
-		}
-
-		if (event.getMessage().contains("\"eventName\":\"EntityDied\"")) {
-			Gson g = event.getSocket().getGson();
-			EntityDied ed = g.fromJson(event.getMessage(), EntityDied.class);
-			EntityDiedEvent edEvent = new EntityDiedEvent(ed.uniqueID,
-					event.getSocket(), ed.points);
-			event.getSocket().getManager().fireEvent(edEvent);
-			return;
-		}
-
 		if (event.getSocket().getManager() != EventManager.getInstance()) {
 			event.getSocket().getManager().fireEvent(event);
 		}
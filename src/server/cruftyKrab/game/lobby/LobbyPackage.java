@@ -18,6 +18,8 @@ import cruftyKrab.ai.pathing.PathingMap;
 import cruftyKrab.game.events.Freeze;
 import cruftyKrab.game.events.JoinMatch;
 import cruftyKrab.game.events.SuddenDeath;
+import cruftyKrab.game.replication.InterestManager;
+import cruftyKrab.game.replication.MoveEncoder;
 import cruftyKrab.network.Connection;
 import cruftyKrab.network.WSServer;
 import tiled.core.Map;
@@ -52,6 +54,25 @@ public class LobbyPackage implements Package {
 	private Pathfinding pathfinding;
 	private Map map;
 	private PathingMap pathingMap;
+	private TickScheduler scheduler;
+	private ExecutionMode executionMode;
+	/**
+	 * How far from their player clients are sent updates, in tiles.
+	 */
+	private float interestRadius;
+	/**
+	 * How many times a second positions are sent, or zero for every update.
+	 */
+	private int sendRate;
+	/**
+	 * How far off clients can guess an entity's position, in tiles.
+	 */
+	private float moveThreshold;
+	/**
+	 * How many bytes of positions each client can be sent per second, or zero
+	 * for no limit.
+	 */
+	private int moveBudget;
 
 	/**
 	 * Adds a player to the lobby. Returns a success value which is false if the
@@ -67,6 +88,7 @@ public class LobbyPackage implements Package {
 			return false;
 		}
 		player.setManager(EventManager.getInstance());
+		player.setHandler(null);
 		this.connectionLock.lock();
 		try {
 			this.inLobby.add(player);
@@ -284,7 +306,10 @@ public class LobbyPackage implements Package {
 		this.matchLock.lock();
 		this.idLock.lock();
 		int id = this.registerNewMatchID();
-		Match match = new Match(id, this.pathfinding, this.pathingMap);
+		Match match =
+				new Match(id, this.pathfinding, this.pathingMap, this.scheduler,
+						this.executionMode, this.interestRadius, this.sendRate,
+						this.moveThreshold, this.moveBudget);
 
 		try {
 			this.curMatches.add(match);
@@ -343,6 +368,70 @@ public class LobbyPackage implements Package {
 				"Generating pathfinding map...");
 		this.pathfinding.processMap(this.map);
 		Logging.finest(LobbyPackage.packageName, "Done generating paths!");
+
+		TickScheduler.Policy policy = TickScheduler.Policy.CATCH_UP;
+		final String policyName = System.getProperty("cruftyKrab.tickPolicy");
+		if (policyName != null) {
+			try {
+				policy = TickScheduler.Policy.valueOf(policyName.toUpperCase());
+			}
+			catch (@SuppressWarnings("unused") IllegalArgumentException e) {
+				Logging.warning(LobbyPackage.packageName,
+						"Unknown tick policy " + policyName + ", using "
+								+ policy);
+			}
+		}
+		this.scheduler = new TickScheduler(
+				Integer.getInteger("cruftyKrab.tickRate",
+						TickScheduler.DEFAULT_TICK_RATE),
+				Integer.getInteger("cruftyKrab.tickThreads",
+						TickScheduler.defaultThreads()),
+				policy);
+		this.scheduler.start();
+
+		this.interestRadius = InterestManager.DEFAULT_RADIUS;
+		final String radius = System.getProperty("cruftyKrab.interestRadius");
+		if (radius != null) {
+			try {
+				this.interestRadius = Float.parseFloat(radius);
+			}
+			catch (@SuppressWarnings("unused") NumberFormatException e) {
+				Logging.warning(LobbyPackage.packageName,
+						"Bad interest radius " + radius + ", using "
+								+ this.interestRadius);
+			}
+		}
+		this.sendRate =
+				Integer.getInteger("cruftyKrab.sendRate", 0).intValue();
+		this.moveBudget =
+				Integer.getInteger("cruftyKrab.moveBudget", 0).intValue();
+
+		this.moveThreshold = MoveEncoder.DEFAULT_THRESHOLD;
+		final String threshold = System.getProperty("cruftyKrab.moveThreshold");
+		if (threshold != null) {
+			try {
+				this.moveThreshold = Float.parseFloat(threshold);
+			}
+			catch (@SuppressWarnings("unused") NumberFormatException e) {
+				Logging.warning(LobbyPackage.packageName,
+						"Bad move threshold " + threshold + ", using "
+								+ this.moveThreshold);
+			}
+		}
+
+		this.executionMode = ExecutionMode.ACTOR;
+		final String modeName = System.getProperty("cruftyKrab.executionMode");
+		if (modeName != null) {
+			try {
+				this.executionMode =
+						ExecutionMode.valueOf(modeName.toUpperCase());
+			}
+			catch (@SuppressWarnings("unused") IllegalArgumentException e) {
+				Logging.warning(LobbyPackage.packageName,
+						"Unknown execution mode " + modeName + ", using "
+								+ this.executionMode);
+			}
+		}
 		return true;
 	}
 
@@ -353,6 +442,10 @@ public class LobbyPackage implements Package {
 			this.curMatches.forEach(m -> m.shutdown());
 			this.curMatches.clear();
 		}
+		if (this.scheduler != null) {
+			this.scheduler.shutdown();
+			this.scheduler = null;
+		}
 		if (!this.inLobby.isEmpty()) {
 			this.inLobby.forEach(c -> c.close(WSServer.CLOSE_NORMAL));
 			this.inLobby.clear();
@@ -1,8 +1,14 @@
 package cruftyKrab.game.lobby;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
 import com.ikalagaming.event.EventManager;
 import com.ikalagaming.logging.Logging;
@@ -11,7 +17,20 @@ import com.ikalagaming.packages.PackageManager;
 
 import cruftyKrab.ai.pathing.Pathfinding;
 import cruftyKrab.ai.pathing.PathingMap;
+import cruftyKrab.game.EntityRegistry;
+import cruftyKrab.game.events.EntityDiedEvent;
+import cruftyKrab.game.replication.InterestManager;
+import cruftyKrab.game.replication.Replicator;
 import cruftyKrab.network.Connection;
+import cruftyKrab.network.MessageDecoder;
+import cruftyKrab.network.MessageHandler;
+import cruftyKrab.network.PreparedFrame;
+import cruftyKrab.network.binary.BinaryDecoder;
+import cruftyKrab.network.binary.BinaryEncoder;
+import cruftyKrab.network.binary.BinaryReader;
+import cruftyKrab.network.binary.BinaryType;
+import cruftyKrab.network.messages.EntityDied;
+import cruftyKrab.network.messages.in.SnapshotAck;
 
 /**
  * A game that is currently going on, or at least waiting to be started. It can
@@ -19,14 +38,62 @@ import cruftyKrab.network.Connection;
  * time. In general, the first player creates a new match, and subsequent
  * players can either join an existing match or start their own.
  *
+ * Game messages from players in the match are handed to it directly by their
+ * connections, instead of going through the global event manager first.
+ *
  * @author Ches Burks
  *
  */
-public class Match {
+public class Match implements MessageHandler {
 	/**
 	 * The maximum number of players that can be in a match at once.
 	 */
 	public static final int MAX_PLAYERS = 10;
+
+	/**
+	 * Game messages that are handled by the match they are sent to.
+	 */
+	private static final MessageDecoder<Match> DECODER =
+			new MessageDecoder<>();
+
+	/**
+	 * Binary game messages that are handled by the match they are sent to.
+	 */
+	private static final BinaryDecoder<Match> BINARY_DECODER =
+			new BinaryDecoder<>();
+
+	static {
+		Match.DECODER.register("EntityDied", EntityDied::new, (match, source,
+				ed) -> match.director.onEntityDied(new EntityDiedEvent(
+						ed.id > 0 ? (int) ed.id : EntityRegistry.NO_ID,
+						ed.uniqueID, source, ed.points)))
+				.field("id", (r, in) -> r.id = in.nextDouble())
+				.field("uniqueID", (r, in) -> r.uniqueID = in.nextString())
+				.field("points", (r, in) -> r.points = in.nextDouble());
+		Match.DECODER.register("snapshotHello", Object::new,
+				(match, source, hello) -> match.replicator.addClient(source));
+		Match.DECODER
+				.register("snapshotAck", SnapshotAck::new,
+						(match, source, ack) -> match.replicator
+								.acknowledge(source, (int) ack.seq))
+				.field("seq", (r, in) -> r.seq = in.nextDouble());
+		Match.DECODER.register("tickHello", Object::new,
+				(match, source, hello) -> match.tickClients.add(source));
+
+		Match.BINARY_DECODER.register(BinaryType.ENTITY_DIED,
+				(match, source, in) -> {
+					final int id = in.readInt();
+					final double points = in.readVarint();
+					match.director.onEntityDied(new EntityDiedEvent(
+							id > 0 ? id : EntityRegistry.NO_ID, null, source,
+							points));
+				});
+		Match.BINARY_DECODER.register(BinaryType.SNAPSHOT_HELLO,
+				(match, source, in) -> match.replicator.addClient(source));
+		Match.BINARY_DECODER.register(BinaryType.SNAPSHOT_ACK,
+				(match, source, in) -> match.replicator.acknowledge(source,
+						in.readInt()));
+	}
 	/**
 	 * The name of whoever created the match.
 	 */
@@ -37,9 +104,14 @@ public class Match {
 	 */
 	private ArrayList<Connection> connections;
 	/**
-	 * Maps unique names to owning connection.
+	 * Maps player IDs to owning connection.
+	 */
+	private HashMap<Integer, Connection> playerMap;
+	/**
+	 * Maps connections to the ID of the player they control, the reverse of
+	 * playerMap.
 	 */
-	private HashMap<String, Connection> playerMap;
+	private HashMap<Connection, Integer> playerIDs;
 	private ReentrantLock connectionLock;
 	/**
 	 * The event manager for match specific events. This is used so that events
@@ -48,9 +120,56 @@ public class Match {
 	private EventManager eventMgr;
 
 	private MatchDirector director;
-	private UpdateThread updater;
+	/**
+	 * Sends snapshots to the clients that asked for them.
+	 */
+	private final Replicator replicator;
+	/**
+	 * Tracks which entities each client is close enough to see.
+	 */
+	private final InterestManager interest;
+	/**
+	 * Clients that asked to get everything from an update in one
+	 * {@link cruftyKrab.network.messages.out.TickSnapshot TickSnapshot}.
+	 */
+	private final Set<Connection> tickClients;
+	/**
+	 * What each tick client has been sent during the current update. Only
+	 * used by the thread updating the match.
+	 */
+	private final HashMap<Connection, TickBatch> batches;
+	/**
+	 * The thread running the current update, or null between updates.
+	 * Messages sent by this thread to tick clients are batched.
+	 */
+	private volatile Thread tickThread;
+	/**
+	 * How many updates the match has run. Only changed by the thread
+	 * updating the match.
+	 */
+	private volatile long tickCount;
+	/**
+	 * Runs the updates for this match.
+	 */
+	private TickScheduler scheduler;
+	/**
+	 * How many times a second positions are sent, or zero to send them every
+	 * update.
+	 */
+	private final int sendRate;
+	/**
+	 * How far off clients can guess an entity's position before it is sent
+	 * again, in tiles.
+	 */
+	private final float moveThreshold;
+	/**
+	 * How many bytes of positions each client can be sent per second, or zero
+	 * for no limit.
+	 */
+	private final int moveBudget;
 
 	private final int matchID;
+	private final ExecutionMode mode;
 
 	/**
 	 * The reference to the pathfinding instance
@@ -62,64 +181,178 @@ public class Match {
 	protected PathingMap map;
 
 	/**
-	 * Creates a new match for players, with a dedicated event manager.
+	 * Creates a new match for players, with a dedicated event manager. The
+	 * match starts being updated by the scheduler right away.
 	 *
 	 * @param id The unique match ID for this match.
 	 * @param pf The pathfinding instance to use
 	 * @param pMap the pathing map to use
+	 * @param ticks the scheduler that updates the match
+	 * @param execMode how the match handles events from other threads
+	 * @param interestRadius how far from their player clients are sent
+	 *            updates about entities, in tiles, or zero to send them
+	 *            everything
+	 * @param positionRate how many times a second positions are sent, or
+	 *            zero to send them every update
+	 * @param threshold how far off clients can guess an entity's position
+	 *            before it is sent again, in tiles, or zero to send every
+	 *            position every time
+	 * @param budget how many bytes of positions each client can be sent per
+	 *            second, or zero for no limit
 	 *
 	 * @see Match#shutdown()
 	 */
-	public Match(final int id, Pathfinding pf, PathingMap pMap) {
+	public Match(final int id, Pathfinding pf, PathingMap pMap,
+			TickScheduler ticks, ExecutionMode execMode,
+			final float interestRadius, final int positionRate,
+			final float threshold, final int budget) {
 		this.connections = new ArrayList<>();
 		this.playerMap = new HashMap<>();
+		this.playerIDs = new HashMap<>();
 		this.eventMgr = new EventManager();
 		this.hostLock = new ReentrantLock();
 		this.connectionLock = new ReentrantLock();
 		this.matchID = id;
-		this.director = new MatchDirector(this);
-		this.eventMgr.registerEventListeners(this.director);
-		this.updater = new UpdateThread(this.eventMgr);
-		this.updater.start();
+		this.mode = execMode == null ? ExecutionMode.ACTOR : execMode;
 		this.pathfinding = pf;
 		this.map = pMap;
+		this.replicator = new Replicator();
+		this.interest = new InterestManager(interestRadius);
+		this.tickClients = ConcurrentHashMap.newKeySet();
+		this.batches = new HashMap<>();
+		this.tickThread = null;
+		this.tickCount = 0;
+		this.scheduler = ticks;
+		this.sendRate = Math.max(0, positionRate);
+		this.moveThreshold = Math.max(0, threshold);
+		this.moveBudget = Math.max(0, budget);
+		this.director = new MatchDirector(this);
+		this.eventMgr.registerEventListeners(this.director);
+		this.scheduler.add(this);
 	}
 
 	/**
-	 * Send an object as json to all connections
+	 * Send an object as json to all connections. The message is encoded only
+	 * once, and the same frame is sent to everyone.
 	 *
 	 * @param jsonable an object that can be turned into json
 	 */
 	protected void broadcast(Object jsonable) {
-		this.connectionLock.lock();
-		try {
-			/*
-			 * Logging.finest("Match", "Dispatching to " +
-			 * this.connections.size() + " connections.");
-			 */
-			for (Connection c : this.connections) {
-				c.sendMessage(jsonable);
+		this.broadcast(jsonable, null);
+	}
+
+	/**
+	 * Send an object as json to some of the connections. The message is
+	 * encoded only once, and the same frame is sent to everyone. Clients
+	 * using the binary protocol are sent the binary form instead, if the
+	 * message has one. Clients that asked for tick snapshots get spawns,
+	 * deaths, moves and round changes sent during an update in the snapshot
+	 * for that update instead.
+	 *
+	 * @param jsonable an object that can be turned into json
+	 * @param filter which connections to send to, or null for all of them
+	 */
+	protected void broadcast(Object jsonable, Predicate<Connection> filter) {
+		this.broadcast(jsonable, filter, null);
+	}
+
+	/**
+	 * Send an object to some of the connections, like
+	 * {@link #broadcast(Object, Predicate)}. If a key is given, the message
+	 * replaces any message with the same key that is still waiting to be sent
+	 * to a client, so slow clients skip straight to the newest one.
+	 *
+	 * @param jsonable an object that can be turned into json
+	 * @param filter which connections to send to, or null for all of them
+	 * @param replaces the key of messages this replaces, or null if it must
+	 *            always be sent
+	 */
+	protected void broadcast(Object jsonable, Predicate<Connection> filter,
+			Object replaces) {
+		Connection[] targets = this.getConnections();
+		// sending can block, so don't hold the lock while doing it
+		PreparedFrame text = null;
+		PreparedFrame binary = null;
+		boolean hasBinary = !(jsonable instanceof String);
+		for (Connection c : targets) {
+			if (filter != null && !filter.test(c)) {
+				continue;
+			}
+			if (this.batch(c, jsonable)) {
+				continue;
+			}
+			if (hasBinary && c.isBinary()) {
+				if (binary == null) {
+					ByteBuffer bytes = BinaryEncoder.encode(jsonable);
+					if (bytes == null) {
+						hasBinary = false;
+					}
+					else {
+						binary = c.prepare(bytes);
+					}
+				}
+				if (binary != null) {
+					c.sendFrame(binary, replaces);
+					continue;
+				}
+			}
+			if (text == null) {
+				// encoded once, every connection gets the same bytes
+				text = c.prepareJson(jsonable);
 			}
+			c.sendFrame(text, replaces);
 		}
-		finally {
-			this.connectionLock.unlock();
+	}
+
+	/**
+	 * Adds a message to the tick snapshot for a client, if the client wants
+	 * them, an update is running on this thread, and the message is one that
+	 * goes in a snapshot.
+	 *
+	 * @param c the connection the message is for
+	 * @param message the message
+	 * @return true if the message was batched, false if it should be sent
+	 */
+	private boolean batch(Connection c, Object message) {
+		if (!this.isBatching(c)) {
+			return false;
+		}
+		TickBatch batch = this.batches.get(c);
+		if (batch == null) {
+			batch = new TickBatch();
+			if (!batch.add(message)) {
+				return false;
+			}
+			this.batches.put(c, batch);
+			return true;
 		}
+		return batch.add(message);
+	}
+
+	/**
+	 * Returns true if messages sent to a client right now go into its tick
+	 * snapshot instead of being sent on their own.
+	 *
+	 * @param c the connection
+	 * @return true if the client gets tick snapshots and this thread is
+	 *         running an update
+	 */
+	protected boolean isBatching(Connection c) {
+		return Thread.currentThread() == this.tickThread
+				&& this.tickClients.contains(c);
 	}
 
 	/**
-	 * Returns the connection mapped to the given unique name.
+	 * Returns the connection mapped to the given player ID.
 	 *
-	 * @param playerName the unique (entity) name of the player
+	 * @param playerID the ID of the player's mascot
 	 * @return the connection controlling that player, or null if none exists
 	 */
-	protected Connection getConnection(final String playerName) {
-		if (playerName == null) {
-			return null;
-		}
+	protected Connection getConnection(final int playerID) {
 		Connection c;
 		this.connectionLock.lock();
 		try {
-			c = this.playerMap.get(playerName);
+			c = this.playerMap.get(playerID);
 		}
 		finally {
 			this.connectionLock.unlock();
@@ -127,6 +360,21 @@ public class Match {
 		return c;
 	}
 
+	/**
+	 * Returns the connections to clients in the match.
+	 *
+	 * @return a copy of the list of connections
+	 */
+	protected Connection[] getConnections() {
+		this.connectionLock.lock();
+		try {
+			return this.connections.toArray(new Connection[0]);
+		}
+		finally {
+			this.connectionLock.unlock();
+		}
+	}
+
 	/**
 	 * Returns the event manager for this match.
 	 *
@@ -136,6 +384,15 @@ public class Match {
 		return this.eventMgr;
 	}
 
+	/**
+	 * Returns how the match handles events from other threads.
+	 *
+	 * @return the execution mode
+	 */
+	public ExecutionMode getExecutionMode() {
+		return this.mode;
+	}
+
 	/**
 	 * Returns the name of the host. The host is the player that created the
 	 * match, and hence the first to join. If there is no host, an empty string
@@ -165,47 +422,123 @@ public class Match {
 	}
 
 	/**
-	 * Returns the name the connection is mapped to.
+	 * Returns what tracks which entities each client can see.
 	 *
-	 * @param connection the connection controlling that player, or null if none
-	 *            exists
-	 * @return the unique (entity) name of the player
+	 * @return the interest manager
 	 */
-	protected String getName(final Connection connection) {
-		if (connection == null) {
-			return null;
-		}
-		String name = "";
+	protected InterestManager getInterest() {
+		return this.interest;
+	}
+
+	/**
+	 * Returns how many bytes of positions each client can be sent per
+	 * second.
+	 *
+	 * @return the budget, or zero if there is no limit
+	 */
+	protected int getMoveBudget() {
+		return this.moveBudget;
+	}
+
+	/**
+	 * Returns how far off clients can guess an entity's position before it
+	 * is sent again.
+	 *
+	 * @return the error threshold, in tiles
+	 */
+	protected float getMoveThreshold() {
+		return this.moveThreshold;
+	}
+
+	/**
+	 * Returns the number of players in the match.
+	 *
+	 * @return how many connections are owned by this match
+	 */
+	public int getPlayerCount() {
 		this.connectionLock.lock();
 		try {
-			for (String s : this.playerMap.keySet()) {
-				if (this.playerMap.get(s).equals(connection)) {
-					name = s;
-					break;
-				}
-			}
+			return this.connections.size();
 		}
 		finally {
 			this.connectionLock.unlock();
 		}
-		return name;
 	}
 
 	/**
-	 * Returns the number of players in the match.
+	 * Returns the ID of the player the connection is mapped to.
 	 *
-	 * @return how many connections are owned by this match
+	 * @param connection the connection controlling that player
+	 * @return the ID of the player's mascot, or {@link EntityRegistry#NO_ID}
+	 *         if the connection is not mapped
 	 */
-	public int getPlayerCount() {
+	protected int getPlayerID(final Connection connection) {
+		if (connection == null) {
+			return EntityRegistry.NO_ID;
+		}
 		this.connectionLock.lock();
 		try {
-			return this.connections.size();
+			Integer id = this.playerIDs.get(connection);
+			return id == null ? EntityRegistry.NO_ID : id.intValue();
 		}
 		finally {
 			this.connectionLock.unlock();
 		}
 	}
 
+	/**
+	 * Returns the replicator that sends snapshots to clients.
+	 *
+	 * @return the replicator
+	 */
+	protected Replicator getReplicator() {
+		return this.replicator;
+	}
+
+	/**
+	 * Returns how many times a second positions are sent to clients. This is
+	 * never more than the tick rate.
+	 *
+	 * @return the send rate
+	 */
+	public int getSendRate() {
+		final int ticks = this.getTickRate();
+		if (this.sendRate <= 0 || this.sendRate > ticks) {
+			return ticks;
+		}
+		return this.sendRate;
+	}
+
+	/**
+	 * Returns how many updates the match has started, which identifies the
+	 * current update.
+	 *
+	 * @return the number of updates
+	 */
+	protected long getTickCount() {
+		return this.tickCount;
+	}
+
+	/**
+	 * Returns the number of updates per second the match runs at.
+	 *
+	 * @return the tick rate
+	 */
+	public int getTickRate() {
+		return this.scheduler.getTickRate();
+	}
+
+	@Override
+	public boolean handleBinary(Connection source, final int type,
+			BinaryReader message) {
+		return Match.BINARY_DECODER.handle(this, source, type, message);
+	}
+
+	@Override
+	public boolean handleMessage(Connection source, String message) {
+		return Match.DECODER.decode(this, source, message);
+	}
+
 	/**
 	 * Kicks all the players in the match back out to the lobby.
 	 */
@@ -224,7 +557,11 @@ public class Match {
 					// TODO alert players of this
 					this.connections.forEach(c -> lobby.addToLobby(c));
 					this.playerMap.clear();
+					this.playerIDs.clear();
 					this.connections.clear();
+					this.replicator.clear();
+					this.interest.clear();
+					this.tickClients.clear();
 				}
 				finally {
 					this.connectionLock.unlock();
@@ -234,16 +571,18 @@ public class Match {
 	}
 
 	/**
-	 * Map a unique player name to the connection
+	 * Map a player ID to the connection
 	 *
-	 * @param name the name of the player's mascot
+	 * @param playerID the ID of the player's mascot
 	 * @param c the connection controlling that mascot
 	 */
-	protected void mapPlayer(final String name, Connection c) {
+	protected void mapPlayer(final int playerID, Connection c) {
 		this.connectionLock.lock();
 		try {
 			this.connections.add(c);
-			this.playerMap.put(name, c);
+			this.playerMap.put(playerID, c);
+			this.playerIDs.put(c, playerID);
+			c.setHandler(this);
 		}
 		finally {
 			this.connectionLock.unlock();
@@ -254,30 +593,92 @@ public class Match {
 	 * Removes the connection and mapping to it.
 	 *
 	 * @param c the connection to remove.
-	 * @return the unique name of the player that left, or null if not found
+	 * @return the ID of the player that left, or {@link EntityRegistry#NO_ID}
+	 *         if not found
 	 */
-	protected String removeConnection(Connection c) {
+	protected int removeConnection(Connection c) {
 		this.connectionLock.lock();
 		try {
 			this.connections.remove(c);
-			String name = null;
-			for (String s : this.playerMap.keySet()) {
-				if (this.playerMap.get(s).equals(c)) {
-					name = s;
-					break;
-				}
-			}
-			if (name != null) {
-				this.playerMap.remove(name);
-				return name;
+			this.replicator.removeClient(c);
+			this.interest.removeClient(c);
+			this.tickClients.remove(c);
+			Integer id = this.playerIDs.remove(c);
+			if (id != null) {
+				this.playerMap.remove(id);
+				return id.intValue();
 			}
 		}
 		finally {
 			this.connectionLock.unlock();
 			// reset the connection's event manager
 			c.setManager(EventManager.getInstance());
+			if (c.getHandler() == this) {
+				c.setHandler(null);
+			}
+		}
+		return EntityRegistry.NO_ID;
+	}
+
+	/**
+	 * Send an object to one connection, in binary if the client uses the
+	 * binary protocol and the message has a binary form, otherwise as json.
+	 *
+	 * @param c the connection to send to
+	 * @param jsonable an object that can be turned into json
+	 */
+	protected void send(Connection c, Object jsonable) {
+		this.send(c, jsonable, null);
+	}
+
+	/**
+	 * Send an object to one connection, replacing any message with the same
+	 * key that is still waiting to be sent to it.
+	 *
+	 * @param c the connection to send to
+	 * @param jsonable an object that can be turned into json
+	 * @param replaces the key of messages this replaces, or null if it must
+	 *            always be sent
+	 */
+	protected void send(Connection c, Object jsonable, Object replaces) {
+		if (this.batch(c, jsonable)) {
+			return;
+		}
+		if (c.isBinary()) {
+			ByteBuffer bytes = BinaryEncoder.encode(jsonable);
+			if (bytes != null) {
+				c.sendFrame(c.prepare(bytes), replaces);
+				return;
+			}
+		}
+		c.sendFrame(c.prepareJson(jsonable), replaces);
+	}
+
+	/**
+	 * Sends each tick client everything it was sent during this update as one
+	 * {@link cruftyKrab.network.messages.out.TickSnapshot TickSnapshot}.
+	 * Clients that were sent the same messages share the same frame. Called
+	 * at the end of each update, and can be called earlier so that clients
+	 * hear about new entities before anything else mentions them.
+	 */
+	protected void sendTickSnapshots() {
+		if (this.batches.isEmpty()) {
+			return;
 		}
-		return null;
+		HashMap<List<Object>, PreparedFrame> frames = new HashMap<>();
+		for (Map.Entry<Connection, TickBatch> entry : this.batches.entrySet()) {
+			final Connection c = entry.getKey();
+			final TickBatch batch = entry.getValue();
+			PreparedFrame frame = frames.get(batch.getAdded());
+			if (frame == null) {
+				frame = c.prepareJson(batch.toMessage(this.tickCount,
+						this.director.getRound()));
+				frames.put(batch.getAdded(), frame);
+			}
+			// snapshots hold messages that must arrive, so nothing is replaced
+			c.sendFrame(frame);
+		}
+		this.batches.clear();
 	}
 
 	/**
@@ -285,7 +686,7 @@ public class Match {
 	 * the event manager, hence is important to call before dereferencing.
 	 */
 	public void shutdown() {
-		this.updater.terminate();
+		this.scheduler.remove(this);
 		this.director.shutdown();
 		this.eventMgr.unregisterEventListeners(this.director);
 		this.kickAllToLobby();
@@ -294,4 +695,21 @@ public class Match {
 		this.map = null;
 	}
 
+	/**
+	 * Runs one update of the match. Called by the {@link TickScheduler}.
+	 *
+	 * @param dt the time to simulate, in seconds
+	 */
+	protected void tick(final float dt) {
+		++this.tickCount;
+		this.tickThread = Thread.currentThread();
+		try {
+			this.director.tick(dt);
+		}
+		finally {
+			this.tickThread = null;
+			this.sendTickSnapshots();
+		}
+	}
+
 }
@@ -2,13 +2,14 @@ package cruftyKrab.game.lobby;
 
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
 
 import com.ikalagaming.entity.component.Health;
 import com.ikalagaming.event.EventHandler;
@@ -18,6 +19,11 @@ import com.ikalagaming.logging.Logging;
 import com.ikalagaming.util.DuplicateEntry;
 import com.ikalagaming.util.IntegerTree;
 
+import cruftyKrab.ai.SpatialGrid;
+import cruftyKrab.ai.Steering;
+import cruftyKrab.game.EntityRegistry;
+import cruftyKrab.game.EntityStore;
+import cruftyKrab.game.Facing;
 import cruftyKrab.game.Location;
 import cruftyKrab.game.Mascot;
 import cruftyKrab.game.MascotColor;
@@ -28,15 +34,22 @@ import cruftyKrab.game.events.MatchOver;
 import cruftyKrab.game.events.PlayerUpdate;
 import cruftyKrab.game.events.RoundOver;
 import cruftyKrab.game.events.SuddenDeath;
-import cruftyKrab.game.events.Update;
+import cruftyKrab.game.replication.InterestManager;
+import cruftyKrab.game.replication.MoveEncoder;
+import cruftyKrab.game.replication.Replicator;
+import cruftyKrab.network.Connection;
+import cruftyKrab.network.PreparedFrame;
+import cruftyKrab.network.binary.BinaryProtocol;
 import cruftyKrab.network.events.ConnectionClosed;
 import cruftyKrab.network.messages.EntityDied;
 import cruftyKrab.network.messages.EntityInfo;
 import cruftyKrab.network.messages.MoveInfo;
 import cruftyKrab.network.messages.ScoreInfo;
 import cruftyKrab.network.messages.Vect;
+import cruftyKrab.network.messages.in.PosUpdate;
 import cruftyKrab.network.messages.out.EntitySpawned;
 import cruftyKrab.network.messages.out.GameOver;
+import cruftyKrab.network.messages.out.MatchSnapshot;
 import cruftyKrab.network.messages.out.MoveSet;
 import cruftyKrab.network.messages.out.PlayerLeft;
 import cruftyKrab.network.messages.out.Welcome;
@@ -45,18 +58,43 @@ import cruftyKrab.network.messages.out.Welcome;
  * The brain behind a match. Handles AI, spawning, etc. Named after The Director
  * from Left 4 Dead. Should listen to match events.
  *
+ * Depending on the {@link ExecutionMode} of the match, events either change
+ * the match as soon as they arrive, or are queued up and run by
+ * {@link #tick(float)}.
+ *
  * @author Ches Burks
  *
  */
 public class MatchDirector implements Listener {
 	private final static int MIN_MAP_X = 1;
 	private final static int MIN_MAP_Y = 1;
-	private final static int MAX_MAP_X = 30;
-	private final static int MAX_MAP_Y = 30;
-	private final static int MAP_WIDTH =
-			MatchDirector.MAX_MAP_X - MatchDirector.MIN_MAP_X;
-	private final static int MAP_HEIGHT =
-			MatchDirector.MAX_MAP_Y - MatchDirector.MIN_MAP_Y;
+
+	/**
+	 * How fast enemies move, in tiles per second.
+	 */
+	private final static float ENEMY_SPEED = 2.0f;
+
+	/**
+	 * The average number of enemies spawned per second, until the round has
+	 * spawned all of its enemies.
+	 */
+	private final static float SPAWNS_PER_SECOND = 1.5f;
+
+	/**
+	 * The most queued commands run in one update.
+	 */
+	private final static int MAX_COMMANDS_PER_TICK = 4096;
+
+	/**
+	 * Enemies will not spawn this close to a player, in tiles.
+	 */
+	private final static float SPAWN_CLEARANCE = 5.0f;
+
+	/**
+	 * Where players join the match.
+	 */
+	private final static int SPAWN_X = 21;
+	private final static int SPAWN_Y = 22;
 
 	private static int maxAI(final int round) {
 		if (round <= 0) {
@@ -65,6 +103,66 @@ public class MatchDirector implements Listener {
 		return 3 * round;
 	}
 
+	/**
+	 * Describes a mascot to clients.
+	 *
+	 * @param m the mascot
+	 * @return its ID, names and color
+	 */
+	private static EntityInfo info(Mascot m) {
+		EntityInfo info = new EntityInfo();
+		info.id = m.getId();
+		info.name = m.getUsername();
+		info.uniqueID = m.getName();
+		info.colorIndex = m.getColor();
+		return info;
+	}
+
+	/**
+	 * Returns where a mascot is, rounded to the nearest tile.
+	 *
+	 * @param m the mascot
+	 * @return its position, or the spawn point if it doesn't have one
+	 */
+	private static Vect position(Mascot m) {
+		Vect pos = new Vect();
+		Location loc = (Location) m.getComponent(Location.TYPE_NAME);
+		if (loc != null) {
+			Location.Snapshot now = loc.getSnapshot();
+			pos.x = Math.round(now.getX());
+			pos.y = Math.round(now.getY());
+		}
+		else {
+			pos.x = MatchDirector.SPAWN_X;
+			pos.y = MatchDirector.SPAWN_Y;
+		}
+		return pos;
+	}
+
+	/**
+	 * Rounds a position or velocity to a pixel, the way moves are sent.
+	 *
+	 * @param tiles the value, in tiles
+	 * @return the value clients are sent
+	 */
+	private static double quantize(final float tiles) {
+		return Math.round(tiles * BinaryProtocol.POSITION_SCALE)
+				/ (double) BinaryProtocol.POSITION_SCALE;
+	}
+
+	/**
+	 * Creates the message telling clients a mascot spawned.
+	 *
+	 * @param m the mascot
+	 * @return the message
+	 */
+	private static EntitySpawned spawnMessage(Mascot m) {
+		EntitySpawned es = new EntitySpawned();
+		es.entity = MatchDirector.info(m);
+		es.position = MatchDirector.position(m);
+		return es;
+	}
+
 	private HashSet<Mascot> ai;
 	private HashSet<Mascot> players;
 
@@ -78,10 +176,12 @@ public class MatchDirector implements Listener {
 	private int spawnedThisRound;
 
 	private Map<Mascot, Mascot> targets;
+	/**
+	 * The reverse of targets, the enemies chasing each player.
+	 */
+	private Map<Mascot, Set<Mascot>> chasers;
 	// private Map<Mascot, Path> paths;
 
-	private Map<Mascot, String> facing;
-
 	private SecureRandom rng;
 
 	private Map<Mascot, Double> points;
@@ -90,12 +190,106 @@ public class MatchDirector implements Listener {
 	private boolean frozen;
 
 	/**
-	 * Creates a new director listener
+	 * Builds up over time, an enemy is spawned for each whole number.
+	 */
+	private float spawnCredit;
+	/**
+	 * How long the match has been simulated for, in seconds.
+	 */
+	private float clock;
+	/**
+	 * How long it has been since positions were last sent, in seconds.
+	 */
+	private float sendTimer;
+
+	private final ExecutionMode mode;
+	/**
+	 * Commands waiting for the next update, when running as an actor. Any
+	 * thread may add to this, but only the update runs them.
+	 */
+	private final ConcurrentLinkedQueue<Runnable> commands;
+
+	/**
+	 * Positions, health, etc. of every mascot in the match.
+	 */
+	private EntityStore store;
+	/**
+	 * Gives out the IDs used to find mascots and tell clients about them.
+	 */
+	private EntityRegistry registry;
+
+	/**
+	 * Where the enemies were at the start of the update, by slot in the
+	 * store.
+	 */
+	private final SpatialGrid enemyGrid;
+	/**
+	 * Where the players that can be chased were at the start of the update,
+	 * by slot in the store. Dead players are left out.
+	 */
+	private final SpatialGrid playerGrid;
+	/**
+	 * Scratch space for the slots that go in the player grid.
+	 */
+	private final BitSet chaseable;
+
+	private Steering steering;
+	/**
+	 * Scratch space for steering, reused every update. Index i of each array
+	 * is for the same AI, movers holding its slot in the store.
+	 */
+	private int[] movers;
+	private float[] posX;
+	private float[] posY;
+	private float[] moveX;
+	private float[] moveY;
+	/**
+	 * Writes the positions sent every update without making objects for
+	 * them.
+	 */
+	private final MoveEncoder moveEncoder;
+
+	/**
+	 * Only one player joins at a time, so they all see the same snapshot.
+	 */
+	private final Object joinLock;
+	/**
+	 * The snapshot sent to players who join during the current update, or
+	 * null if it needs to be built again.
+	 */
+	private volatile MatchSnapshot joinSnapshot;
+	private PreparedFrame joinFrame;
+	/**
+	 * The update the join snapshot was built during.
+	 */
+	private long joinTick;
+	/**
+	 * Players who joined since the join snapshot was built, who aren't in it.
+	 */
+	private final ArrayList<Mascot> joinedSinceSnapshot;
+
+	/**
+	 * The largest x position an entity can have, taken from the map size.
+	 */
+	private final int maxMapX;
+	/**
+	 * The largest y position an entity can have, taken from the map size.
+	 */
+	private final int maxMapY;
+	private final int mapWidth;
+	private final int mapHeight;
+
+	/**
+	 * Creates a new director listener. The parent's map must already be set,
+	 * as it determines the bounds entities are kept within, and so must its
+	 * execution mode.
 	 *
 	 * @param par the parent match
 	 */
 	public MatchDirector(Match par) {
 		this.parent = par;
+		this.mode = par.getExecutionMode();
+		this.commands = new ConcurrentLinkedQueue<>();
 		this.ai = new HashSet<>();
 		this.players = new HashSet<>();
 		this.aiLock = new ReentrantLock();
@@ -107,142 +301,417 @@ public class MatchDirector implements Listener {
 
 		this.targets =
 				Collections.synchronizedMap(new HashMap<Mascot, Mascot>());
+		this.chasers =
+				Collections.synchronizedMap(new HashMap<Mascot, Set<Mascot>>());
 		// this.paths = Collections.synchronizedMap(new HashMap<Mascot,
 		// Path>());
-		this.facing =
-				Collections.synchronizedMap(new HashMap<Mascot, String>());
 		this.points =
 				Collections.synchronizedMap(new HashMap<Mascot, Double>());
-	}
 
-	private void findNewTarget(Mascot enemy) {
-		float lowest = Float.MAX_VALUE;
-		Mascot lMasc = null;
-		for (Mascot play : this.players) {
-			Location l = (Location) play.getComponent(Location.TYPE_NAME);
+		this.maxMapX = par.map.getWidth();
+		this.maxMapY = par.map.getHeight();
+		this.mapWidth = this.maxMapX - MatchDirector.MIN_MAP_X;
+		this.mapHeight = this.maxMapY - MatchDirector.MIN_MAP_Y;
+
+		// as an actor, only the update thread uses the store
+		this.store = new EntityStore(this.mode != ExecutionMode.ACTOR);
+		this.registry = new EntityRegistry();
+		this.enemyGrid = new SpatialGrid();
+		this.playerGrid = new SpatialGrid();
+		this.chaseable = new BitSet();
+		this.steering = new Steering(par.map);
+		this.movers = new int[0];
+		this.posX = new float[0];
+		this.posY = new float[0];
+		this.moveX = new float[0];
+		this.moveY = new float[0];
+		this.moveEncoder = new MoveEncoder(par.getMoveThreshold(),
+				1.0f / par.getSendRate(), par.getMoveBudget());
+		this.clock = 0;
+		this.sendTimer = 0;
+		this.joinLock = new Object();
+		this.joinSnapshot = null;
+		this.joinFrame = null;
+		this.joinTick = -1;
+		this.joinedSinceSnapshot = new ArrayList<>();
+	}
 
-			float dist = Location.getDistance(
-					(Location) enemy.getComponent(Location.TYPE_NAME), l);
-			if (dist < lowest) {
-				lowest = dist;
-				lMasc = play;
+	/**
+	 * Sends the positions of either all the enemies or all the players to
+	 * everyone who isn't being sent snapshots. Each client is only sent the
+	 * ones it can see, and if there is a byte budget, only as many as fit in
+	 * it, starting with the ones nearest its player.
+	 *
+	 * @param enemies true to send enemies, false to send players
+	 */
+	private void broadcastMoves(final boolean enemies) {
+		final Replicator replicator = this.parent.getReplicator();
+		if (this.parent.getPlayerCount() <= replicator.getClientCount()) {
+			// everyone gets snapshots instead
+			return;
+		}
+		final MoveEncoder moves = this.moveEncoder;
+		moves.capture(this.store, enemies, this.clock);
+		final boolean budgeted = moves.isBudgeted();
+		if (moves.getCount() == 0 && !budgeted) {
+			// clients can still work out where everything is
+			return;
+		}
+		final InterestManager interest = this.parent.getInterest().isEnabled()
+				? this.parent.getInterest() : null;
+		for (Connection c : this.parent.getConnections()) {
+			if (replicator.isReplicated(c)) {
+				continue;
+			}
+			float viewerX = Float.NaN;
+			float viewerY = Float.NaN;
+			if (budgeted) {
+				Mascot viewer =
+						this.registry.get(this.parent.getPlayerID(c));
+				final int slot = viewer == null ? -1 : viewer.getSlot();
+				if (slot >= 0) {
+					viewerX = this.store.getX(slot);
+					viewerY = this.store.getY(slot);
+				}
+			}
+			// tick snapshots hold messages that must arrive, so aren't keyed
+			if (this.parent.isBatching(c)) {
+				MoveSet moveSet = moves.toMessage(c, interest, viewerX, viewerY);
+				if (moveSet != null) {
+					this.parent.send(c, moveSet);
+				}
+				continue;
+			}
+			// clients sent the same moves share the frame
+			PreparedFrame frame = moves.prepare(c, interest, viewerX, viewerY);
+			if (frame != null) {
+				// replaces an older list that hasn't gone out, and carries
+				// its moves
+				c.sendFrame(frame, moves.getKey());
 			}
 		}
-		if (lMasc == null) {
-			Logging.finer("Match Director", "No players found!");
+	}
+
+	/**
+	 * Stops the enemy from chasing anyone.
+	 *
+	 * @param enemy the enemy
+	 */
+	private void clearTarget(Mascot enemy) {
+		Mascot old = this.targets.remove(enemy);
+		if (old != null) {
+			Set<Mascot> chasing = this.chasers.get(old);
+			if (chasing != null) {
+				chasing.remove(enemy);
+			}
 		}
-		else {
-			this.targets.put(enemy, lMasc);
+	}
+
+	/**
+	 * Makes sure the arrays used for steering can hold the given number of AI.
+	 *
+	 * @param count the number of AI
+	 */
+	private void ensureSteeringCapacity(final int count) {
+		if (this.movers.length >= count) {
+			return;
 		}
+		final int size = Math.max(count, this.movers.length * 2);
+		this.movers = new int[size];
+		this.posX = new float[size];
+		this.posY = new float[size];
+		this.moveX = new float[size];
+		this.moveY = new float[size];
 	}
 
-	private void moveEnemies(long dt) {
-		// 3.0f / seconds
-		final float SPEED = 2000.0f / dt;
+	/**
+	 * Finds the entity an {@link EntityDiedEvent} is about. This uses the ID if
+	 * there is one, and otherwise looks through every mascot for the unique
+	 * name, for clients that don't send IDs.
+	 *
+	 * @param event the event
+	 * @return the dead mascot, or null if it is not in this match
+	 */
+	private Mascot findDead(EntityDiedEvent event) {
+		if (event.getEntityID() != EntityRegistry.NO_ID) {
+			return this.registry.get(event.getEntityID());
+		}
+		final String name = event.getUniqueID();
+		if (name == null) {
+			return null;
+		}
 		this.aiLock.lock();
 		this.playerLock.lock();
 		try {
+			for (Mascot m : this.players) {
+				if (name.equals(m.getName())) {
+					return m;
+				}
+			}
 			for (Mascot m : this.ai) {
-				Location loc = (Location) m.getComponent(Location.TYPE_NAME);
-				// random movement.
-				if (loc == null) {
-					Logging.warning("Match Director",
-							"Null location component.");
-					break;
+				if (name.equals(m.getName())) {
+					return m;
+				}
+			}
+		}
+		finally {
+			this.playerLock.unlock();
+			this.aiLock.unlock();
+		}
+		return null;
+	}
+
+	/**
+	 * Puts the players and enemies where they are now into the grids. Dead
+	 * players are left out, so they can't be chased.
+	 */
+	private void indexEntities() {
+		final EntityStore es = this.store;
+		es.lock();
+		try {
+			this.chaseable.clear();
+			this.chaseable.or(es.getPlayerSlots());
+			this.chaseable.and(es.getAliveSlots());
+			this.playerGrid.rebuild(es.getXs(), es.getYs(), this.chaseable);
+			this.enemyGrid.rebuild(es.getXs(), es.getYs(),
+					es.getEnemySlots());
+		}
+		finally {
+			es.unlock();
+		}
+	}
+
+	private void moveEnemies(final float dt) {
+		final float SPEED = MatchDirector.ENEMY_SPEED * dt;
+		final EntityStore es = this.store;
+		this.aiLock.lock();
+		this.playerLock.lock();
+		es.lock();
+		try {
+			// the store is locked, so use its arrays rather than lock per field
+			final BitSet enemies = es.getEnemySlots();
+			final BitSet players = es.getPlayerSlots();
+			final Mascot[] mascots = es.getMascots();
+			final float[] xs = es.getXs();
+			final float[] ys = es.getYs();
+			final float[] vxs = es.getVelocityXs();
+			final float[] vys = es.getVelocityYs();
+			this.ensureSteeringCapacity(this.ai.size());
+			int moving = 0;
+			// pick where everyone wants to go
+			for (int slot = enemies.nextSetBit(0); slot >= 0; slot =
+					enemies.nextSetBit(slot + 1)) {
+				final float x = xs[slot];
+				final float y = ys[slot];
+				// chase the closest player
+				final int tSlot = this.playerGrid.nearest(x, y);
+				// when locked, the player might have left since the grid
+				if (tSlot < 0 || !players.get(tSlot)) {
+					Logging.finer("Match Director", "No players found!");
+					vxs[slot] = 0;
+					vys[slot] = 0;
+					continue;
 				}
-				this.findNewTarget(m);
-				Mascot target = this.targets.get(m);
-				if (target == null) {
-					target = this.targets.get(m);
-					Logging.finer("Match Director",
-							m.getName() + " is targeting " + target.getName());
+				this.setTarget(mascots[slot], mascots[tSlot]);
+
+				final float toX = xs[tSlot] - x;
+				final float toY = ys[tSlot] - y;
+				final float dist = (float) Math.sqrt(toX * toX + toY * toY);
+
+				this.movers[moving] = slot;
+				this.posX[moving] = x;
+				this.posY[moving] = y;
+				if (dist > 0) {
+					this.moveX[moving] = SPEED * toX / dist;
+					this.moveY[moving] = SPEED * toY / dist;
 				}
-				Location tLoc =
-						(Location) target.getComponent(Location.TYPE_NAME);
-				// random movement.
-				if (tLoc == null) {
-					Logging.warning("Match Director",
-							"Null target location component.");
-					break;
+				else {
+					this.moveX[moving] = 0;
+					this.moveY[moving] = 0;
 				}
+				++moving;
+			}
 
-				// Point cur = new Point(Math.round(loc.getX()),
-				// Math.round(loc.getY()));
-				// Path toFollow = this.parent.pathfinding.getPath(cur, new
-				// Point(
-				// Math.round(tLoc.getX()), Math.round(tLoc.getY())));
-				// this.parent.pathfinding.smoothPath(toFollow);
-				// this.paths.put(m, toFollow);
-
-				// System.out.println(toFollow.getTiles());
-				// if (toFollow.steps() < 2) {
-				// Logging.warning("Match Director",
-				// "Path from (" + loc.getX() + ", " + loc.getY()
-				// + ") to (" + tLoc.getX() + ", "
-				// + tLoc.getY() + ") is too short ("
-				// + toFollow.steps() + ").");
-				// this.findNewTarget(m);
-				// continue;
-				// }
-
-				// Point nextStep = toFollow.getTiles().get(1);
-
-				Location next = new Location();
-
-				int tries = 0;
-
-				double angleRad;
-				float dx, dy;
-				angleRad = (Math.PI / 2) - Location.findAngleRads(loc, tLoc);
-
-				dx = (float) (SPEED * Math.cos(angleRad));
-				dy = (float) (SPEED * Math.sin(angleRad));
-
-				while (!this.parent.map.isWalkable(Math.round(next.getX() + dx),
-						(Math.round(next.getY() + dy)))) {
-					++tries;
-					if (tries > 1000) {
-						break;
-					}
-					next.setX(this.rng.nextFloat() * MatchDirector.MAP_WIDTH
-							+ MatchDirector.MIN_MAP_X);
-					next.setY(this.rng.nextFloat() * MatchDirector.MAP_HEIGHT
-							+ MatchDirector.MIN_MAP_Y);
-					angleRad = (Math.PI / 2) - Location.findAngle(loc, next);
-					while (angleRad < 0) {
-						angleRad += Math.PI * 2;
-					}
-					dx = (float) (SPEED * Math.cos(angleRad));
-					dy = (float) (SPEED * Math.sin(angleRad));
-				}
+			// spread out and avoid walls
+			this.steering.steer(this.enemyGrid, xs, ys, this.movers,
+					this.moveX, this.moveY, moving);
 
-				loc.setX(loc.getX() + dx);
-				loc.setY(loc.getY() + dy);
+			for (int i = 0; i < moving; ++i) {
+				float x = this.posX[i] + this.moveX[i];
+				float y = this.posY[i] + this.moveY[i];
 
 				if (this.frozen) {
-					loc.setX(1);
-					loc.setY(1);
+					x = 1;
+					y = 1;
 				}
 
-				if (loc.getX() < MatchDirector.MIN_MAP_X) {
-					loc.setX(MatchDirector.MIN_MAP_X);
-				}
-				if (loc.getY() < MatchDirector.MIN_MAP_Y) {
-					loc.setY(MatchDirector.MIN_MAP_Y);
+				x = Math.max(x, MatchDirector.MIN_MAP_X);
+				y = Math.max(y, MatchDirector.MIN_MAP_Y);
+				x = Math.min(x, this.maxMapX);
+				y = Math.min(y, this.maxMapY);
+
+				final int slot = this.movers[i];
+				xs[slot] = x;
+				ys[slot] = y;
+				if (this.frozen || dt <= 0) {
+					vxs[slot] = 0;
+					vys[slot] = 0;
 				}
-				if (loc.getX() > MatchDirector.MAX_MAP_X) {
-					loc.setX(MatchDirector.MAX_MAP_X);
-				}
-				if (loc.getY() > MatchDirector.MAX_MAP_Y) {
-					loc.setY(MatchDirector.MAX_MAP_Y);
+				else {
+					vxs[slot] = (x - this.posX[i]) / dt;
+					vys[slot] = (y - this.posY[i]) / dt;
 				}
 			}
+		}
+		finally {
+			es.unlock();
+			this.playerLock.unlock();
+			this.aiLock.unlock();
+		}
+	}
 
+	/**
+	 * Returns the snapshot for players joining during this update, building
+	 * it if it hasn't been built yet. The frame for it is left in
+	 * {@link #joinFrame}. Only called while holding the join lock.
+	 *
+	 * @param client the client joining, which the frame is prepared for
+	 * @return the snapshot
+	 */
+	private MatchSnapshot getJoinSnapshot(Connection client) {
+		final long tick = this.parent.getTickCount();
+		MatchSnapshot snapshot = this.joinSnapshot;
+		if (snapshot != null && this.joinTick == tick) {
+			return snapshot;
+		}
+		final InterestManager interest = this.parent.getInterest();
+		final float radius = interest.getRadius();
+		ArrayList<MoveInfo> entities = new ArrayList<>();
+		ArrayList<Mascot> everyone = new ArrayList<>();
+		this.playerLock.lock();
+		try {
+			everyone.addAll(this.players);
 		}
 		finally {
 			this.playerLock.unlock();
+		}
+		this.aiLock.lock();
+		try {
+			everyone.addAll(this.ai);
+		}
+		finally {
 			this.aiLock.unlock();
 		}
+		final EntityStore es = this.store;
+		es.lock();
+		try {
+			// the store is locked, so use its arrays rather than lock per field
+			final Mascot[] mascots = es.getMascots();
+			final float[] xs = es.getXs();
+			final float[] ys = es.getYs();
+			final float[] vxs = es.getVelocityXs();
+			final float[] vys = es.getVelocityYs();
+			final byte[] facings = es.getFacingCodes();
+			for (Mascot m : everyone) {
+				MoveInfo known = new MoveInfo();
+				known.entity = MatchDirector.info(m);
+				final int slot = m.getSlot();
+				if (slot >= 0 && mascots[slot] == m) {
+					// as exact as moves are, so the joiner keeps it moving
+					Vect pos = new Vect();
+					pos.x = MatchDirector.quantize(xs[slot]);
+					pos.y = MatchDirector.quantize(ys[slot]);
+					known.position = pos;
+					final double vx = MatchDirector.quantize(vxs[slot]);
+					final double vy = MatchDirector.quantize(vys[slot]);
+					if (vx != 0 || vy != 0) {
+						Vect velocity = new Vect();
+						velocity.x = vx;
+						velocity.y = vy;
+						known.velocity = velocity;
+					}
+					if (facings[slot] >= 0) {
+						known.facing =
+								Facing.fromCode(facings[slot]).getName();
+					}
+				}
+				else {
+					known.position = MatchDirector.position(m);
+				}
+				// everyone joins at the spawn, so they can all see the same
+				// things
+				final double dx = known.position.x - MatchDirector.SPAWN_X;
+				final double dy = known.position.y - MatchDirector.SPAWN_Y;
+				if (!interest.isEnabled()
+						|| dx * dx + dy * dy <= radius * radius) {
+					entities.add(known);
+				}
+			}
+		}
+		finally {
+			es.unlock();
+		}
+		snapshot = new MatchSnapshot();
+		snapshot.tick = tick;
+		snapshot.round = this.round;
+		snapshot.entityCount = entities.size();
+		snapshot.entities = entities.toArray(new MoveInfo[entities.size()]);
+		snapshot.scores = this.getScores();
+		snapshot.scoreCount = snapshot.scores.length;
+		this.joinFrame = client.prepareJson(snapshot);
+		this.joinTick = tick;
+		this.joinedSinceSnapshot.clear();
+		this.joinSnapshot = snapshot;
+		return snapshot;
+	}
+
+	/**
+	 * Returns the round being played. Should only be called by the thread
+	 * updating the match.
+	 *
+	 * @return the current round number
+	 */
+	public int getRound() {
+		return this.round;
+	}
+
+	/**
+	 * Returns the points of every player, highest first.
+	 *
+	 * @return the scores
+	 */
+	private ScoreInfo[] getScores() {
+		ArrayList<ScoreInfo> scoreList = new ArrayList<>();
+		synchronized (this.points) {
+			for (Map.Entry<Mascot, Double> entry : this.points.entrySet()) {
+				final Mascot m = entry.getKey();
+				ScoreInfo scoreInfo = new ScoreInfo();
+				scoreInfo.entity = MatchDirector.info(m);
+				scoreInfo.score = entry.getValue();
+				MascotColor mColor = MascotColor.MAROON;
+				for (MascotColor mc : MascotColor.values()) {
+					if (mc.getIndex() == m.getColor()) {
+						mColor = mc;
+						break;
+					}
+				}
+				scoreInfo.colorName = mColor.name();
+				scoreList.add(scoreInfo);
+			}
+		}
+		scoreList.sort((a, b) -> Math.round((float) b.score)
+				- Math.round((float) a.score));
+		return scoreList.toArray(new ScoreInfo[scoreList.size()]);
+	}
+
+	/**
+	 * Makes the next player to join build a new snapshot, because something
+	 * in the last one is out of date. Positions and velocities don't count,
+	 * since a snapshot is only shared by players joining during the update it
+	 * was built in, and is rebuilt for the next update anyway.
+	 */
+	private void invalidateJoinSnapshot() {
+		this.joinSnapshot = null;
 	}
 
 	/**
@@ -252,55 +721,34 @@ public class MatchDirector implements Listener {
 	 */
 	@EventHandler
 	public void onConnectionClosed(ConnectionClosed event) {
-		String uniqueName;
-		uniqueName = this.parent.removeConnection(event.getConnection());
-		if (uniqueName == null) {
+		this.submit(() -> this.handleConnectionClosed(event));
+	}
+
+	private void handleConnectionClosed(ConnectionClosed event) {
+		final int leftID =
+				this.parent.removeConnection(event.getConnection());
+		this.moveEncoder.removeClient(event.getConnection());
+		if (leftID == EntityRegistry.NO_ID) {
 			return;
 		}
-		Mascot left = null;
+		Mascot left = this.registry.get(leftID);
 		this.playerLock.lock();
 		try {
-			for (Mascot m : this.players) {
-				if (m.getName().equals(uniqueName)) {
-					left = m;
-					break;
-				}
-			}
-			if (left != null) {
-				this.players.remove(left);
+			if (left != null && this.players.remove(left)) {
+				this.store.remove(left.getSlot());
+				this.retargetChasers(left);
 				this.points.remove(left);
 				this.colorTree.remove(left.getColor());
+				this.parent.getInterest().remove(leftID);
+				this.registry.release(leftID);
 				left.destroy();
+				this.invalidateJoinSnapshot();
 			}
-			if (this.players.stream().filter((
-					m) -> !((Health) m.getComponent(Health.TYPE_NAME)).isDead())
-					.collect(Collectors.toSet()).isEmpty()) {
+			if (!this.store.anyPlayerAlive()) {
 				Logging.finer("Match Director", "Game over!");
 				GameOver go = new GameOver();
-				ArrayList<ScoreInfo> scoreList = new ArrayList<>();
-				for (Mascot m : this.points.keySet()) {
-					ScoreInfo scoreInfo = new ScoreInfo();
-					scoreInfo.entity = new EntityInfo();
-					scoreInfo.entity.colorIndex = m.getColor();
-					scoreInfo.entity.name = m.getUsername();
-					scoreInfo.entity.uniqueID = m.getName();
-					scoreInfo.score = this.points.get(m);
-					MascotColor mColor = MascotColor.MAROON;
-					for (MascotColor mc : MascotColor.values()) {
-						if (mc.getIndex() == m.getColor()) {
-							mColor = mc;
-							break;
-						}
-					}
-					scoreInfo.colorName = mColor.name();
-					scoreList.add(scoreInfo);
-				}
-				scoreList.sort((a, b) -> Math.round((float) b.score)
-						- Math.round((float) a.score));
-
-				go.numScores = scoreList.size();
-				go.scores = new ScoreInfo[scoreList.size()];
-				go.scores = scoreList.toArray(go.scores);
+				go.scores = this.getScores();
+				go.numScores = go.scores.length;
 				this.parent.broadcast(go);
 				EventManager.getInstance()
 						.fireEvent(new MatchOver(this.parent.getMatchID()));
@@ -316,6 +764,7 @@ public class MatchDirector implements Listener {
 		this.parent.removeConnection(event.getConnection());
 
 		EntityInfo info = new EntityInfo();
+		info.id = leftID;
 		info.name = left.getUsername();
 		info.uniqueID = left.getName();
 		PlayerLeft msg = new PlayerLeft();
@@ -331,63 +780,40 @@ public class MatchDirector implements Listener {
 	 */
 	@EventHandler
 	public void onEntityDied(EntityDiedEvent event) {
-		Logging.finer("Match Director", event.getUniqueID() + " died.");
+		this.submit(() -> this.handleEntityDied(event));
+	}
+
+	private void handleEntityDied(EntityDiedEvent event) {
+		final Mascot dead = this.findDead(event);
+		final Mascot sender =
+				this.registry.get(this.parent.getPlayerID(event.getSender()));
+		Logging.finer("Match Director",
+				(dead == null ? event.getUniqueID() : dead.getName())
+						+ " died.");
 		this.playerLock.lock();
 		try {
-			ArrayList<Mascot> toRemove = new ArrayList<>();
-			for (Mascot m : this.targets.keySet()) {
-				if (this.targets.get(m).getName().equals(event.getUniqueID())) {
-					toRemove.add(m);
-				}
-			}
-			for (Mascot m : this.players) {
-				if (this.parent.getName(event.getSender())
-						.equals(m.getName())) {
-					this.points.put(m, event.getPoints());
-				}
+			if (sender == null || !this.players.contains(sender)) {
+				Logging.warning("Match Director",
+						"No player found to update points");
 			}
-			for (Mascot m : toRemove) {
-				this.targets.remove(m);
-				this.findNewTarget(m);
+			else {
+				this.points.put(sender, event.getPoints());
+				this.invalidateJoinSnapshot();
 			}
 
-			for (Mascot m : this.players) {
-				if (m.getName().equals(event.getUniqueID())) {
-					Health h = ((Health) m.getComponent(Health.TYPE_NAME));
-					h.setHealth(h.getMinHealth());
-				}
+			if (dead != null && this.players.contains(dead)) {
+				Health h = ((Health) dead.getComponent(Health.TYPE_NAME));
+				// dead players can't be chased
+				this.store.setHealth(dead.getSlot(), h.getMinHealth());
+				this.retargetChasers(dead);
 			}
 
 			// no players alive
-			if (this.players.stream().filter((
-					m) -> !((Health) m.getComponent(Health.TYPE_NAME)).isDead())
-					.collect(Collectors.toSet()).isEmpty()) {
+			if (!this.store.anyPlayerAlive()) {
 				Logging.finer("Match Director", "Game over!");
 				GameOver go = new GameOver();
-				ArrayList<ScoreInfo> scoreList = new ArrayList<>();
-				for (Mascot m : this.points.keySet()) {
-					ScoreInfo scoreInfo = new ScoreInfo();
-					scoreInfo.entity = new EntityInfo();
-					scoreInfo.entity.colorIndex = m.getColor();
-					scoreInfo.entity.name = m.getUsername();
-					scoreInfo.entity.uniqueID = m.getName();
-					scoreInfo.score = this.points.get(m);
-					MascotColor mColor = MascotColor.MAROON;
-					for (MascotColor mc : MascotColor.values()) {
-						if (mc.getIndex() == m.getColor()) {
-							mColor = mc;
-							break;
-						}
-					}
-					scoreInfo.colorName = mColor.name();
-					scoreList.add(scoreInfo);
-				}
-				scoreList.sort((a, b) -> Math.round((float) b.score)
-						- Math.round((float) a.score));
-
-				go.numScores = scoreList.size();
-				go.scores = new ScoreInfo[scoreList.size()];
-				go.scores = scoreList.toArray(go.scores);
+				go.scores = this.getScores();
+				go.numScores = go.scores.length;
 				this.parent.broadcast(go);
 				EventManager.getInstance()
 						.fireEvent(new MatchOver(this.parent.getMatchID()));
@@ -400,32 +826,25 @@ public class MatchDirector implements Listener {
 
 		this.aiLock.lock();
 		try {
-			for (Iterator<Mascot> it = this.ai.iterator(); it.hasNext();) {
-				Mascot m = it.next();
-				if (m.getName().equals(event.getUniqueID())) {
-					it.remove();
-					continue;
-				}
-			}
-			Mascot player = null;
-			final String name = this.parent.getName(event.getSender());
-			for (Mascot m : this.players) {
-				if (m.getName().equals(name)) {
-					player = m;
-					break;
-				}
-			}
-			if (player == null) {
-				Logging.warning("Match Director",
-						"No player found to update points");
-			}
-			else {
-				this.points.put(player, event.getPoints());
-			}
+			final InterestManager interest = this.parent.getInterest();
 			EntityDied ed = new EntityDied();
 			ed.uniqueID = event.getUniqueID();
+			final int deadID = dead == null ? EntityRegistry.NO_ID : dead.getId();
+			if (dead != null) {
+				ed.id = deadID;
+				ed.uniqueID = dead.getName();
+			}
+
+			// only clients that could see it need to know
+			this.parent.broadcast(ed, c -> interest.forget(c, deadID));
 
-			this.parent.broadcast(ed);
+			if (dead != null && this.ai.remove(dead)) {
+				this.store.remove(dead.getSlot());
+				this.clearTarget(dead);
+				interest.remove(deadID);
+				this.registry.release(deadID);
+				this.invalidateJoinSnapshot();
+			}
 
 			if (this.ai.isEmpty()) {
 				this.parent.getEventManager().fireEvent(new RoundOver());
@@ -443,6 +862,10 @@ public class MatchDirector implements Listener {
 	 */
 	@EventHandler
 	public void onFreeze(Freeze event) {
+		this.submit(() -> this.handleFreeze(event));
+	}
+
+	private void handleFreeze(Freeze event) {
 		this.frozen = !this.frozen;
 	}
 
@@ -453,14 +876,35 @@ public class MatchDirector implements Listener {
 	 */
 	@EventHandler
 	public void onJoinMatch(JoinMatch event) {
+		this.submit(() -> this.handleJoinMatch(event));
+	}
+
+	private void handleJoinMatch(JoinMatch event) {
 		if (event.isCancelled()) {
 			return;
 		}
+		synchronized (this.joinLock) {
+			this.join(event.getSender());
+		}
+	}
+
+	/**
+	 * Adds a player to the match for a client, and tells the client about
+	 * everything already in it.
+	 *
+	 * @param client the client joining
+	 */
+	private void join(Connection client) {
+		// built before the player is added, so it can be shared with others
+		final MatchSnapshot snapshot = this.getJoinSnapshot(client);
+		final PreparedFrame snapshotFrame = this.joinFrame;
+
 		Mascot player = new Mascot("Player");
 		player.setUsername("Player");
 		this.playerLock.lock();
 		try {
 			this.players.add(player);
+			this.registry.register(player);
 			int color = this.colorTree.getSmallestUnusedInt();
 			if (color >= 0 && color < 10) {
 				try {
@@ -485,87 +929,47 @@ public class MatchDirector implements Listener {
 					"Player doesn't have a location component");
 		}
 		else {
-			loc.setX(21);
-			loc.setY(22);
+			loc.setPosition(MatchDirector.SPAWN_X, MatchDirector.SPAWN_Y);
+			this.store.add(player, false);
 		}
+		this.joinedSinceSnapshot.add(player);
+		final InterestManager interest = this.parent.getInterest();
+		interest.addClient(client, player);
 
 		Welcome wel = new Welcome();
 		wel.colorIndex = player.getColor();
 		wel.uniqueName = player.getName();
+		wel.id = player.getId();
 		wel.waveNum = this.round;
+		wel.tickRate = this.parent.getSendRate();
 
-		event.getSender().sendMessage(wel);
+		client.sendMessage(wel);
 
-		EntitySpawned es = new EntitySpawned();
-		EntityInfo info = new EntityInfo();
-		info.name = player.getUsername();
-		info.uniqueID = player.getName();
-		info.colorIndex = player.getColor();
-		es.entity = info;
+		EntitySpawned es = MatchDirector.spawnMessage(player);
+		final float spawnX = (float) es.position.x;
+		final float spawnY = (float) es.position.y;
+		this.parent.broadcast(es,
+				c -> interest.reveal(c, player.getId(), spawnX, spawnY));
 
-		Vect pos = new Vect();
-		if (loc != null) {
-			pos.x = Math.round(loc.getX());
-			pos.y = Math.round(loc.getY());
-		}
-		else {
-			pos.x = 21;
-			pos.y = 22;
+		// the snapshot only has what this player can see from the spawn
+		for (MoveInfo known : snapshot.entities) {
+			interest.reveal(client, (int) known.entity.id,
+					(float) known.position.x, (float) known.position.y);
 		}
-		es.position = pos;
-		this.parent.broadcast(es);
-
-		// spawn previous players
-		for (Mascot m : this.players) {
-			EntitySpawned es2 = new EntitySpawned();
-			EntityInfo info2 = new EntityInfo();
-			info2.name = m.getUsername();
-			info2.uniqueID = m.getName();
-			info2.colorIndex = m.getColor();
-			es2.entity = info2;
-
-			Location loc2 = (Location) m.getComponent(Location.TYPE_NAME);
-
-			Vect pos2 = new Vect();
-			if (loc2 != null) {
-				pos2.x = Math.round(loc2.getX());
-				pos2.y = Math.round(loc2.getY());
+		client.sendFrame(snapshotFrame);
+
+		// players who joined during this update, including this one
+		for (Mascot m : this.joinedSinceSnapshot) {
+			EntitySpawned es2 = MatchDirector.spawnMessage(m);
+			if (interest.reveal(client, m.getId(), (float) es2.position.x,
+					(float) es2.position.y)) {
+				client.sendMessage(es2);
 			}
-			else {
-				pos2.x = 21;
-				pos2.y = 22;
-			}
-			es2.position = pos2;
-			event.getSender().sendMessage(es2);
 		}
 
-		// spawn previous players
-		for (Mascot m : this.ai) {
-			EntitySpawned es2 = new EntitySpawned();
-			EntityInfo info2 = new EntityInfo();
-			info2.name = m.getUsername();
-			info2.uniqueID = m.getName();
-			info2.colorIndex = m.getColor();
-			es2.entity = info2;
-
-			Location loc2 = (Location) m.getComponent(Location.TYPE_NAME);
-
-			Vect pos2 = new Vect();
-			if (loc2 != null) {
-				pos2.x = Math.round(loc2.getX());
-				pos2.y = Math.round(loc2.getY());
-			}
-			else {
-				pos2.x = 21;
-				pos2.y = 22;
-			}
-			es2.position = pos2;
-			event.getSender().sendMessage(es2);
-		}
-
-		this.parent.mapPlayer(player.getName(), event.getSender());
+		this.parent.mapPlayer(player.getId(), client);
 		// make the connection listen interact with this match
-		event.getSender().setManager(this.parent.getEventManager());
+		client.setManager(this.parent.getEventManager());
 
 	}
 
@@ -576,29 +980,22 @@ public class MatchDirector implements Listener {
 	 */
 	@EventHandler
 	public void onPlayerUpdate(PlayerUpdate event) {
+		this.submit(() -> this.handlePlayerUpdate(event));
+	}
+
+	private void handlePlayerUpdate(PlayerUpdate event) {
 		this.playerLock.lock();
 
 		try {
-			Mascot player = null;
-			String name = this.parent.getName(event.getSender());
-			for (Mascot m : this.players) {
-				if (m.getName().equals(name)) {
-					player = m;
-					break;
-				}
-			}
-			if (player == null) {
+			Mascot player = this.registry
+					.get(this.parent.getPlayerID(event.getSender()));
+			if (player == null || !this.players.contains(player)) {
 				Logging.finer("Match Director",
 						"Trying to update non-existant player");
 				return;
 			}
-
-			Location loc = (Location) player.getComponent(Location.TYPE_NAME);
-			// 64 is the size of a tile
-			loc.setX((float) event.getX() / 64);
-			loc.setY((float) event.getY() / 64);
-
-			this.facing.put(player, event.getFacing());
+			this.movePlayer(player, event.getX(), event.getY(),
+					event.getFacing());
 		}
 		catch (Exception e) {
 			Logging.warning("Match Director",
@@ -609,6 +1006,64 @@ public class MatchDirector implements Listener {
 		}
 	}
 
+	/**
+	 * Moves a player to where their client says they are. Should only be
+	 * called while holding the player lock.
+	 *
+	 * @param player the player
+	 * @param pixelX the x position, in pixels
+	 * @param pixelY the y position, in pixels
+	 * @param facing the name of the way they are facing
+	 */
+	private void movePlayer(Mascot player, final double pixelX,
+			final double pixelY, final String facing) {
+		// 64 is the size of a tile
+		final float x = (float) pixelX / 64;
+		final float y = (float) pixelY / 64;
+		final int slot = player.getSlot();
+		if (slot >= 0) {
+			this.store.setPosition(slot, x, y);
+			this.store.setFacing(slot, Facing.fromName(facing));
+		}
+		else {
+			Location loc = (Location) player.getComponent(Location.TYPE_NAME);
+			loc.setPosition(x, y);
+		}
+	}
+
+	/**
+	 * Reads the newest position each player's client has sent since the last
+	 * update. Positions that were replaced before being read are never seen
+	 * here.
+	 */
+	private void readInputs() {
+		this.playerLock.lock();
+		try {
+			for (Mascot m : this.players) {
+				Connection c = this.parent.getConnection(m.getId());
+				if (c == null) {
+					continue;
+				}
+				// one bad input shouldn't hold up everyone else's
+				try {
+					PosUpdate input = c.takeInput();
+					if (input != null) {
+						this.movePlayer(m, input.xPosition, input.yPosition,
+								input.facing);
+					}
+				}
+				catch (RuntimeException e) {
+					Logging.warning("Match Director", "Error " + e.getMessage()
+							+ " reading player input.");
+					e.printStackTrace(System.err);
+				}
+			}
+		}
+		finally {
+			this.playerLock.unlock();
+		}
+	}
+
 	/**
 	 * Reset the round.
 	 *
@@ -616,14 +1071,20 @@ public class MatchDirector implements Listener {
 	 */
 	@EventHandler
 	public void onRoundOver(RoundOver roundOver) {
+		this.submit(() -> this.handleRoundOver(roundOver));
+	}
+
+	private void handleRoundOver(RoundOver roundOver) {
 		Logging.finer("Match Director", "Round " + this.round + " over!");
 		this.round++;
 		this.spawnedThisRound = 0;
+		this.invalidateJoinSnapshot();
 		this.playerLock.lock();
 		try {
 			for (Mascot m : this.players) {
 				Health health = (Health) m.getComponent(Health.TYPE_NAME);
-				health.setHealth(health.getMaxHealth());
+				// back to being chased
+				this.store.setHealth(m.getSlot(), health.getMaxHealth());
 			}
 		}
 		finally {
@@ -642,30 +1103,79 @@ public class MatchDirector implements Listener {
 	 */
 	@EventHandler
 	public void onSuddenDeath(SuddenDeath event) {
+		this.submit(() -> this.handleSuddenDeath(event));
+	}
+
+	private void handleSuddenDeath(SuddenDeath event) {
 		this.suddenDeath = !this.suddenDeath;
 	}
 
 	/**
-	 * Update the match
+	 * Stops all the enemies chasing a player, for when the player is no
+	 * longer a valid target. They pick the closest player left the next time
+	 * enemies move.
 	 *
-	 * @param event the event
+	 * @param player the player that was being chased
 	 */
-	@EventHandler
-	public void onUpdate(Update event) {
-		if (!this.players.isEmpty()) {
-			this.spawnStuff();
-			this.updatePlayers();
-			this.moveEnemies(event.getTime());
-			this.updateEnemies();
+	private void retargetChasers(Mascot player) {
+		Set<Mascot> chasing = this.chasers.remove(player);
+		if (chasing == null) {
+			return;
+		}
+		for (Mascot m : chasing) {
+			this.targets.remove(m);
+		}
+	}
+
+	/**
+	 * Runs queued commands, at most {@link #MAX_COMMANDS_PER_TICK} of them so
+	 * a flood of messages can't make one update take forever. The rest wait
+	 * for the next update.
+	 */
+	private void runCommands() {
+		Runnable command;
+		int ran = 0;
+		while (ran < MatchDirector.MAX_COMMANDS_PER_TICK
+				&& (command = this.commands.poll()) != null) {
+			++ran;
+			try {
+				command.run();
+			}
+			catch (RuntimeException e) {
+				Logging.warning("Match Director",
+						"Error " + e.getMessage() + " running a command.");
+				e.printStackTrace(System.err);
+			}
 		}
 	}
 
+	/**
+	 * Makes the enemy chase the target, keeping track of who is chasing whom.
+	 *
+	 * @param enemy the enemy
+	 * @param target who the enemy should chase
+	 */
+	private void setTarget(Mascot enemy, Mascot target) {
+		Mascot old = this.targets.put(enemy, target);
+		if (old == target) {
+			return;
+		}
+		if (old != null) {
+			Set<Mascot> chasing = this.chasers.get(old);
+			if (chasing != null) {
+				chasing.remove(enemy);
+			}
+		}
+		this.chasers.computeIfAbsent(target, t -> new HashSet<>()).add(enemy);
+	}
+
 	/**
 	 * Cleans up the game and resources.
 	 */
 	public void shutdown() {
 		this.aiLock.lock();
 		try {
+			this.ai.forEach(m -> this.store.remove(m.getSlot()));
 			this.ai.clear();
 		}
 		finally {
@@ -673,44 +1183,51 @@ public class MatchDirector implements Listener {
 		}
 		this.playerLock.lock();
 		try {
+			this.players.forEach(m -> this.store.remove(m.getSlot()));
 			this.players.clear();
 		}
 		finally {
 			this.playerLock.unlock();
 		}
+		this.commands.clear();
+		this.registry.clear();
 		this.points.clear();
+		this.targets.clear();
+		this.chasers.clear();
 	}
 
-	private void spawnStuff() {
-		final int SPAWNS_PER_UPDATE = 2;
+	private void spawnStuff(final float dt) {
 		this.aiLock.lock();
 		try {
-			for (int i = 0; i < Math.random() * SPAWNS_PER_UPDATE; ++i) {
+			// random, but averages out to the spawn rate
+			this.spawnCredit += 2 * this.rng.nextFloat()
+					* MatchDirector.SPAWNS_PER_SECOND * dt;
+			while (this.spawnCredit >= 1) {
+				this.spawnCredit -= 1;
 				if ((this.spawnedThisRound < MatchDirector.maxAI(this.round))
 						|| this.suddenDeath) {
 					Mascot foe = new Mascot("Enemy");
 					foe.setUsername("Enemy");
 					this.ai.add(foe);
+					this.registry.register(foe);
+					this.invalidateJoinSnapshot();
 					this.spawnedThisRound++;
 					// setup
 					Location loc = (Location) foe.getComponent("Location");
-					Location tmp = new Location();
-					tmp.setX(loc.getX());
-					tmp.setY(loc.getY());
 					float x, y;
-					x = this.rng.nextFloat() * MatchDirector.MAP_WIDTH
+					x = this.rng.nextFloat() * this.mapWidth
 							+ MatchDirector.MIN_MAP_X;
-					y = this.rng.nextFloat() * MatchDirector.MAP_HEIGHT
+					y = this.rng.nextFloat() * this.mapHeight
 							+ MatchDirector.MIN_MAP_Y;
 					int tries = 0;
 					while (!this.parent.map.isWalkable(Math.round(x),
-							Math.round(y))) {
-						x = this.rng.nextFloat() * MatchDirector.MAP_WIDTH
+							Math.round(y))
+							|| this.playerGrid.countWithin(x, y,
+									MatchDirector.SPAWN_CLEARANCE) > 0) {
+						x = this.rng.nextFloat() * this.mapWidth
 								+ MatchDirector.MIN_MAP_X;
-						y = this.rng.nextFloat() * MatchDirector.MAP_HEIGHT
+						y = this.rng.nextFloat() * this.mapHeight
 								+ MatchDirector.MIN_MAP_Y;
-						tmp.setX(x);
-						tmp.setY(y);
 						++tries;
 						if (tries > 100) {
 							Logging.warning("Match Director",
@@ -718,8 +1235,11 @@ public class MatchDirector implements Listener {
 							break;
 						}
 					}
-					loc.setX(tmp.getX());
-					loc.setY(tmp.getY());
+					loc.setPosition(x, y);
+					this.store.add(foe, true);
+					final int foeID = foe.getId();
+					final float foeX = x;
+					final float foeY = y;
 
 					// alert players
 					EntitySpawned es = new EntitySpawned();
@@ -727,15 +1247,20 @@ public class MatchDirector implements Listener {
 					pos.x = loc.getX();
 					pos.y = loc.getY();
 					EntityInfo ei = new EntityInfo();
+					ei.id = foe.getId();
 					ei.name = foe.getUsername();
 					ei.uniqueID = foe.getName();
 					ei.colorIndex = 0;
 					es.entity = ei;
 					es.position = pos;
 
-					this.parent.broadcast(es);
+					// clients further away are told when it comes into view
+					this.parent.broadcast(es, c -> this.parent.getInterest()
+							.reveal(c, foeID, foeX, foeY));
 				}
 				else {
+					// don't save up spawns for the next round
+					this.spawnCredit = 0;
 					break;
 				}
 			}
@@ -745,68 +1270,89 @@ public class MatchDirector implements Listener {
 		}
 	}
 
-	private void updateEnemies() {
-		ArrayList<MoveInfo> moves = new ArrayList<>();
-
-		for (Mascot m : this.ai) {
-			MoveInfo moveInfo = new MoveInfo();
-			EntityInfo info = new EntityInfo();
-			info.name = m.getUsername();
-			info.uniqueID = m.getName();
-			info.colorIndex = m.getColor();
-			moveInfo.entity = info;
-			Location loc = (Location) m.getComponent(Location.TYPE_NAME);
-			Vect pos = new Vect();
-			if (loc != null) {
-				pos.x = Math.round(loc.getX());
-				pos.y = Math.round(loc.getY());
+	/**
+	 * Spawns and moves enemies and sends out where everyone is.
+	 *
+	 * @param dt the time to simulate, in seconds
+	 */
+	private void simulate(final float dt) {
+		this.clock += dt;
+		final boolean send = this.isSendDue(dt);
+		if (!this.players.isEmpty()) {
+			this.spawnStuff(dt);
+			this.indexEntities();
+			this.parent.getInterest().update(this.parent::send, this.store,
+					this.enemyGrid, this.playerGrid);
+			if (send) {
+				this.updatePlayers();
 			}
-			else {
-				Logging.warning("Match Director", "Null location component.");
-				break;
+			this.moveEnemies(dt);
+			if (send) {
+				this.updateEnemies();
+			}
+			// snapshots can mention entities that spawned this update
+			this.parent.sendTickSnapshots();
+			if (send) {
+				this.parent.getReplicator().replicate(this.store,
+						this.parent.getInterest());
 			}
-			moveInfo.position = pos;
-			moveInfo.facing = this.facing.get(m);
-			moveInfo.facing = "up";
-			moves.add(moveInfo);
 		}
-		MoveSet moveSet = new MoveSet();
-		MoveInfo[] moveArray = new MoveInfo[moves.size()];
-		moveSet.moves = moves.toArray(moveArray);
-		moveSet.moveCount = moves.size();
+	}
 
-		this.parent.broadcast(moveSet);
+	/**
+	 * Returns true if positions should be sent during this update, so that
+	 * they go out at the send rate however often the match is updated.
+	 *
+	 * @param dt the time being simulated, in seconds
+	 * @return true if it is time to send positions
+	 */
+	private boolean isSendDue(final float dt) {
+		final float interval = 1.0f / this.parent.getSendRate();
+		this.sendTimer += dt;
+		// within half an update is close enough, so rounding can't skip one
+		if (this.sendTimer < interval - dt / 2) {
+			return false;
+		}
+		// sends that were missed are not made up for
+		this.sendTimer =
+				Math.max(0, Math.min(this.sendTimer - interval, interval));
+		return true;
 	}
 
-	private void updatePlayers() {
-		ArrayList<MoveInfo> moves = new ArrayList<>();
-
-		for (Mascot m : this.players) {
-			MoveInfo moveInfo = new MoveInfo();
-			EntityInfo info = new EntityInfo();
-			info.name = m.getUsername();
-			info.uniqueID = m.getName();
-			info.colorIndex = m.getColor();
-			moveInfo.entity = info;
-			Location loc = (Location) m.getComponent(Location.TYPE_NAME);
-			Vect pos = new Vect();
-			if (loc != null) {
-				pos.x = Math.round(loc.getX());
-				pos.y = Math.round(loc.getY());
-			}
-			else {
-				Logging.warning("Match Director", "Null location component.");
-				break;
-			}
-			moveInfo.position = pos;
-			moveInfo.facing = this.facing.get(m);
-			moves.add(moveInfo);
+	/**
+	 * Runs a command that changes the match. In {@link ExecutionMode#ACTOR}
+	 * it is queued for the next update, otherwise it runs right away on the
+	 * calling thread.
+	 *
+	 * @param command the command to run
+	 */
+	private void submit(Runnable command) {
+		if (this.mode == ExecutionMode.ACTOR) {
+			this.commands.add(command);
 		}
-		MoveSet moveSet = new MoveSet();
-		MoveInfo[] moveArray = new MoveInfo[moves.size()];
-		moveSet.moves = moves.toArray(moveArray);
-		moveSet.moveCount = moves.size();
+		else {
+			command.run();
+		}
+	}
 
-		this.parent.broadcast(moveSet);
+	/**
+	 * Runs one update of the match. When running as an actor, the commands
+	 * that were queued since the last update are run first. Then the newest
+	 * position from each player is read.
+	 *
+	 * @param dt the time to simulate, in seconds
+	 */
+	public void tick(final float dt) {
+		this.runCommands();
+		this.readInputs();
+		this.simulate(dt);
+	}
+
+	private void updateEnemies() {
+		this.broadcastMoves(true);
+	}
+
+	private void updatePlayers() {
+		this.broadcastMoves(false);
 	}
 }
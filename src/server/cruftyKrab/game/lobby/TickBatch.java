@@ -0,0 +1,109 @@
+package cruftyKrab.game.lobby;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import cruftyKrab.network.messages.EntityDied;
+import cruftyKrab.network.messages.MoveInfo;
+import cruftyKrab.network.messages.out.EntityEntered;
+import cruftyKrab.network.messages.out.EntityLeft;
+import cruftyKrab.network.messages.out.EntitySpawned;
+import cruftyKrab.network.messages.out.MoveSet;
+import cruftyKrab.network.messages.out.RoundOver;
+import cruftyKrab.network.messages.out.TickSnapshot;
+
+/**
+ * The messages an update produces for one client, which are sent together as
+ * a {@link TickSnapshot} once the update is done.
+ *
+ * @author Ches Burks
+ *
+ */
+class TickBatch {
+	private final ArrayList<Object> spawns;
+	private final ArrayList<MoveInfo> moves;
+	private final ArrayList<Object> despawns;
+	private RoundOver roundOver;
+	/**
+	 * Every message added, in order. Messages broadcast to everyone are the
+	 * same objects in each batch, so two clients were sent the same thing if
+	 * these lists are equal.
+	 */
+	private final ArrayList<Object> added;
+
+	TickBatch() {
+		this.spawns = new ArrayList<>();
+		this.moves = new ArrayList<>();
+		this.despawns = new ArrayList<>();
+		this.roundOver = null;
+		this.added = new ArrayList<>();
+	}
+
+	/**
+	 * Adds a message to the batch, if it is a kind that goes in a
+	 * {@link TickSnapshot}.
+	 *
+	 * @param message the message
+	 * @return true if it was added, false if it has to be sent by itself
+	 */
+	boolean add(Object message) {
+		if (message instanceof EntitySpawned
+				|| message instanceof EntityEntered) {
+			this.spawns.add(message);
+		}
+		else if (message instanceof MoveSet) {
+			MoveSet set = (MoveSet) message;
+			if (set.moves != null) {
+				Collections.addAll(this.moves, set.moves);
+			}
+		}
+		else if (message instanceof EntityDied
+				|| message instanceof EntityLeft) {
+			this.despawns.add(message);
+		}
+		else if (message instanceof RoundOver) {
+			this.roundOver = (RoundOver) message;
+		}
+		else {
+			return false;
+		}
+		this.added.add(message);
+		return true;
+	}
+
+	/**
+	 * Returns the messages that were added, in order.
+	 *
+	 * @return the list of messages, which should not be changed
+	 */
+	ArrayList<Object> getAdded() {
+		return this.added;
+	}
+
+	/**
+	 * Creates the message to send.
+	 *
+	 * @param tick which update this is
+	 * @param round the current round
+	 * @return the snapshot of the update
+	 */
+	TickSnapshot toMessage(final long tick, final int round) {
+		TickSnapshot msg = new TickSnapshot();
+		msg.tick = tick;
+		msg.round = round;
+		msg.spawnCount = this.spawns.size();
+		if (!this.spawns.isEmpty()) {
+			msg.spawns = this.spawns.toArray();
+		}
+		msg.moveCount = this.moves.size();
+		if (!this.moves.isEmpty()) {
+			msg.moves = this.moves.toArray(new MoveInfo[this.moves.size()]);
+		}
+		msg.despawnCount = this.despawns.size();
+		if (!this.despawns.isEmpty()) {
+			msg.despawns = this.despawns.toArray();
+		}
+		msg.roundOver = this.roundOver;
+		return msg;
+	}
+}
@@ -0,0 +1,429 @@
+package cruftyKrab.game.lobby;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ikalagaming.logging.Logging;
+
+/**
+ * Runs the updates for every match at a fixed rate, using a small pool of
+ * threads shared by all matches instead of a thread per match.
+ *
+ * Each match has at most one update running at a time. If a match is still
+ * busy when its next update is due, that update is late, and what happens
+ * then depends on the {@link Policy}. Matches are given a time budget for
+ * each update. A match that goes over its budget is left out of the next
+ * few updates, for about as long as it went over, so that a heavy match
+ * can't hold on to the pool and starve the other matches.
+ *
+ * @author Ches Burks
+ *
+ */
+public class TickScheduler {
+
+	/**
+	 * What to do when a match falls behind.
+	 *
+	 * @author Ches Burks
+	 *
+	 */
+	public enum Policy {
+		/**
+		 * Run several fixed length updates in a row until the match is caught
+		 * up, up to {@link TickScheduler#MAX_CATCH_UP_TICKS} at once. Time
+		 * past that is dropped.
+		 */
+		CATCH_UP,
+		/**
+		 * Drop the late updates and run one update covering all the time that
+		 * passed.
+		 */
+		SKIP;
+	}
+
+	/**
+	 * Per match bookkeeping.
+	 */
+	private static class Entry {
+		private final Match match;
+		/**
+		 * True while an update for the match is queued or running.
+		 */
+		private final AtomicBoolean busy;
+		/**
+		 * When the match was last updated, in ns.
+		 */
+		private long lastTick;
+		/**
+		 * Time that has passed but not been simulated yet, in ns.
+		 */
+		private long owed;
+		/**
+		 * The match won't be updated before this time, in ns.
+		 */
+		private volatile long penaltyUntil;
+
+		private Entry(Match toRun, final long now) {
+			this.match = toRun;
+			this.busy = new AtomicBoolean(false);
+			this.lastTick = now;
+			this.owed = 0;
+			this.penaltyUntil = now;
+		}
+	}
+
+	/**
+	 * The default number of updates per second. ({@value})
+	 */
+	public static final int DEFAULT_TICK_RATE = 20;
+
+	/**
+	 * The fewest updates per second allowed. ({@value})
+	 */
+	public static final int MIN_TICK_RATE = 1;
+
+	/**
+	 * The most updates per second allowed. ({@value})
+	 */
+	public static final int MAX_TICK_RATE = 120;
+
+	/**
+	 * The most updates that will be run back to back to catch up, and the
+	 * most time one update will cover when skipping, in ticks. ({@value})
+	 */
+	public static final int MAX_CATCH_UP_TICKS = 5;
+
+	private static final String NAME = "Tick Scheduler";
+
+	/**
+	 * Returns the default number of threads to update matches with, which is
+	 * one less than the number of cores so the network and event threads
+	 * still have somewhere to run.
+	 *
+	 * @return the default thread count
+	 */
+	public static int defaultThreads() {
+		return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	}
+
+	private final int tickRate;
+	private final long periodNanos;
+	private final int threads;
+	private final Policy policy;
+	private volatile long budgetNanos;
+
+	private final ConcurrentHashMap<Match, Entry> entries;
+	private ScheduledExecutorService clock;
+	private volatile ExecutorService workers;
+
+	private final AtomicLong ticks;
+	private final AtomicLong late;
+	private final AtomicLong overruns;
+	private final AtomicLong dropped;
+
+	/**
+	 * Creates a scheduler. It does not run until {@link #start()} is called.
+	 * The tick rate is capped to between {@link #MIN_TICK_RATE} and
+	 * {@link #MAX_TICK_RATE}. The budget for each match starts out as the
+	 * length of one tick.
+	 *
+	 * @param rate the number of updates per second
+	 * @param threadCount the number of threads that run updates, at least 1
+	 * @param latePolicy what to do when a match falls behind
+	 */
+	public TickScheduler(final int rate, final int threadCount,
+			Policy latePolicy) {
+		int r = rate;
+		if (r < TickScheduler.MIN_TICK_RATE) {
+			Logging.warning(TickScheduler.NAME,
+					"Tick rate " + r + " is too low, capping");
+			r = TickScheduler.MIN_TICK_RATE;
+		}
+		else if (r > TickScheduler.MAX_TICK_RATE) {
+			Logging.warning(TickScheduler.NAME,
+					"Tick rate " + r + " is too high, capping");
+			r = TickScheduler.MAX_TICK_RATE;
+		}
+		this.tickRate = r;
+		this.periodNanos = TimeUnit.SECONDS.toNanos(1) / r;
+		this.budgetNanos = this.periodNanos;
+		if (threadCount < 1) {
+			Logging.warning(TickScheduler.NAME,
+					"Need at least one thread, using 1");
+		}
+		this.threads = Math.max(1, threadCount);
+		this.policy = latePolicy == null ? Policy.CATCH_UP : latePolicy;
+		this.entries = new ConcurrentHashMap<>();
+		this.ticks = new AtomicLong();
+		this.late = new AtomicLong();
+		this.overruns = new AtomicLong();
+		this.dropped = new AtomicLong();
+	}
+
+	/**
+	 * Starts updating a match.
+	 *
+	 * @param match the match to update
+	 */
+	public void add(Match match) {
+		this.entries.putIfAbsent(match, new Entry(match, System.nanoTime()));
+	}
+
+	/**
+	 * Returns the time each match is allowed to use per tick before it gets
+	 * held back, in ms.
+	 *
+	 * @return the budget in ms
+	 */
+	public double getBudgetMillis() {
+		return this.budgetNanos / 1_000_000.0;
+	}
+
+	/**
+	 * Returns how many ms of simulation time were dropped because a match got
+	 * too far behind to catch up.
+	 *
+	 * @return the dropped time in ms
+	 */
+	public long getDroppedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.dropped.get());
+	}
+
+	/**
+	 * Returns how many times updates were missed because the match was still
+	 * busy or over budget.
+	 *
+	 * @return the number of late updates
+	 */
+	public long getLateTicks() {
+		return this.late.get();
+	}
+
+	/**
+	 * Returns the number of matches being updated.
+	 *
+	 * @return the match count
+	 */
+	public int getMatchCount() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Returns how many updates went over their time budget.
+	 *
+	 * @return the number of overruns
+	 */
+	public long getOverruns() {
+		return this.overruns.get();
+	}
+
+	/**
+	 * Returns what happens when a match falls behind.
+	 *
+	 * @return the policy
+	 */
+	public Policy getPolicy() {
+		return this.policy;
+	}
+
+	/**
+	 * Returns the number of threads that run updates.
+	 *
+	 * @return the thread count
+	 */
+	public int getThreads() {
+		return this.threads;
+	}
+
+	/**
+	 * Returns the number of updates per second.
+	 *
+	 * @return the tick rate
+	 */
+	public int getTickRate() {
+		return this.tickRate;
+	}
+
+	/**
+	 * Returns the number of updates that have been run across all matches.
+	 *
+	 * @return the total ticks
+	 */
+	public long getTicks() {
+		return this.ticks.get();
+	}
+
+	/**
+	 * Called by the clock once per tick, hands each match that is ready to a
+	 * worker.
+	 */
+	private void pulse() {
+		final ExecutorService pool = this.workers;
+		if (pool == null) {
+			return;
+		}
+		final long now = System.nanoTime();
+		for (Entry e : this.entries.values()) {
+			if (now - e.penaltyUntil < 0 || !e.busy.compareAndSet(false, true)) {
+				this.late.incrementAndGet();
+				continue;
+			}
+			try {
+				pool.execute(() -> this.run(e));
+			}
+			catch (@SuppressWarnings("unused") RejectedExecutionException ex) {
+				// shutting down
+				e.busy.set(false);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stops updating a match. An update that is already running will still
+	 * finish.
+	 *
+	 * @param match the match to stop updating
+	 */
+	public void remove(Match match) {
+		this.entries.remove(match);
+	}
+
+	/**
+	 * Updates one match, as many times as the policy says.
+	 *
+	 * @param e the match to update
+	 */
+	private void run(Entry e) {
+		final long start = System.nanoTime();
+		final long maxOwed = this.periodNanos * TickScheduler.MAX_CATCH_UP_TICKS;
+		try {
+			if (!this.entries.containsKey(e.match)) {
+				return;
+			}
+			final long elapsed = start - e.lastTick;
+			e.lastTick = start;
+
+			if (this.policy == Policy.SKIP) {
+				long dt = elapsed;
+				if (dt > maxOwed) {
+					this.dropped.addAndGet(dt - maxOwed);
+					dt = maxOwed;
+				}
+				e.match.tick(dt / 1_000_000_000.0f);
+				this.ticks.incrementAndGet();
+			}
+			else {
+				e.owed += elapsed;
+				if (e.owed > maxOwed) {
+					this.dropped.addAndGet(e.owed - maxOwed);
+					e.owed = maxOwed;
+				}
+				final float dt = this.periodNanos / 1_000_000_000.0f;
+				while (e.owed >= this.periodNanos) {
+					e.match.tick(dt);
+					this.ticks.incrementAndGet();
+					e.owed -= this.periodNanos;
+					if (System.nanoTime() - start > this.budgetNanos) {
+						// the rest waits for the next tick
+						break;
+					}
+				}
+			}
+		}
+		catch (RuntimeException ex) {
+			Logging.warning(TickScheduler.NAME, "Error " + ex.getMessage()
+					+ " updating match " + e.match.getMatchID());
+			ex.printStackTrace(System.err);
+		}
+		finally {
+			final long took = System.nanoTime() - start;
+			final long over = took - this.budgetNanos;
+			if (over > 0) {
+				this.overruns.incrementAndGet();
+				e.penaltyUntil = System.nanoTime() + over;
+				Logging.finest(TickScheduler.NAME,
+						"Match " + e.match.getMatchID() + " went over budget by "
+								+ TimeUnit.NANOSECONDS.toMillis(over) + " ms");
+			}
+			e.busy.set(false);
+		}
+	}
+
+	/**
+	 * Sets how long each match is allowed to take per tick before it gets held
+	 * back. Values that are not positive are ignored.
+	 *
+	 * @param millis the budget in ms
+	 */
+	public void setBudgetMillis(final double millis) {
+		if (!(millis > 0)) {
+			Logging.warning(TickScheduler.NAME,
+					"Budget must be positive, ignoring");
+			return;
+		}
+		this.budgetNanos = (long) (millis * 1_000_000);
+	}
+
+	/**
+	 * Stops updating all matches and shuts down the threads.
+	 */
+	public synchronized void shutdown() {
+		if (this.clock != null) {
+			this.clock.shutdownNow();
+			this.clock = null;
+		}
+		final ExecutorService pool = this.workers;
+		if (pool != null) {
+			this.workers = null;
+			pool.shutdown();
+			try {
+				if (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+					pool.shutdownNow();
+				}
+			}
+			catch (@SuppressWarnings("unused") InterruptedException e) {
+				pool.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+		this.entries.clear();
+	}
+
+	/**
+	 * Starts the clock and the threads that run updates. Does nothing if
+	 * already started.
+	 */
+	public synchronized void start() {
+		if (this.clock != null) {
+			return;
+		}
+		this.workers =
+				Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r,
+								"TickWorker-" + this.count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		this.clock = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "TickScheduler");
+			t.setDaemon(true);
+			return t;
+		});
+		this.clock.scheduleAtFixedRate(this::pulse, 0, this.periodNanos,
+				TimeUnit.NANOSECONDS);
+	}
+}
@@ -0,0 +1,180 @@
+package cruftyKrab.game.replication;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * What the replicator knows about one client's copy of the world.
+ *
+ * @author Ches Burks
+ *
+ */
+class ClientView {
+	/**
+	 * The newest snapshot the client said it has, or -1 if none.
+	 */
+	private volatile int acked;
+	/**
+	 * The newest snapshot sent to the client, or -1 if none.
+	 */
+	private volatile int lastSent;
+	/**
+	 * When the client was last sent a full snapshot. Only used by the thread
+	 * updating the match.
+	 */
+	int lastKeyframe;
+
+	/**
+	 * The slots the client could see in the last snapshot sent, or null if it
+	 * can see everything. This and the arrays below are only used by the
+	 * thread updating the match.
+	 */
+	private BitSet visible;
+	/**
+	 * The first snapshot each slot was visible in, since it last came into
+	 * view, or -1 if it never has been.
+	 */
+	private int[] enteredAt;
+	/**
+	 * The first snapshot each slot was not visible in, since it last went out
+	 * of view, or -1 if it never has.
+	 */
+	private int[] leftAt;
+
+	ClientView() {
+		this.acked = -1;
+		this.lastSent = -1;
+		this.lastKeyframe = -1;
+		this.visible = null;
+		this.enteredAt = new int[0];
+		this.leftAt = new int[0];
+	}
+
+	/**
+	 * Records that the client has a snapshot. Acknowledgements for snapshots
+	 * that were never sent, or that are older than one already acknowledged,
+	 * are ignored.
+	 *
+	 * @param seq the sequence number of the snapshot
+	 */
+	void acknowledge(final int seq) {
+		if (seq > this.lastSent || seq <= this.acked) {
+			return;
+		}
+		this.acked = seq;
+	}
+
+	/**
+	 * Returns everything about the client's view that decides what it is
+	 * sent as the changes since a base snapshot. Clients with equal keys for
+	 * the same base are sent the same changes.
+	 *
+	 * @param baseSeq the snapshot the changes are from, or -1 for a keyframe
+	 * @return the key
+	 */
+	List<Object> diffKey(final int baseSeq) {
+		if (this.visible == null) {
+			return Arrays.asList(Integer.valueOf(baseSeq));
+		}
+		// slots the client already has, and slots it has to be told are gone
+		BitSet since = new BitSet();
+		BitSet left = new BitSet();
+		if (baseSeq >= 0) {
+			for (int s = this.visible.nextSetBit(0); s >= 0; s =
+					this.visible.nextSetBit(s + 1)) {
+				if (this.visibleSince(s, baseSeq)) {
+					since.set(s);
+				}
+			}
+			for (int s = 0; s < this.leftAt.length; ++s) {
+				if (this.leftAfter(s, baseSeq)) {
+					left.set(s);
+				}
+			}
+		}
+		return Arrays.asList(Integer.valueOf(baseSeq), this.visible, since,
+				left);
+	}
+
+	int getAcked() {
+		return this.acked;
+	}
+
+	private void grow(final int slot) {
+		if (slot < this.enteredAt.length) {
+			return;
+		}
+		final int old = this.enteredAt.length;
+		final int size = Math.max(slot + 1, 2 * old);
+		this.enteredAt = Arrays.copyOf(this.enteredAt, size);
+		this.leftAt = Arrays.copyOf(this.leftAt, size);
+		Arrays.fill(this.enteredAt, old, size, -1);
+		Arrays.fill(this.leftAt, old, size, -1);
+	}
+
+	/**
+	 * Returns true if the client is sent every entity.
+	 */
+	boolean seesAll() {
+		return this.visible == null;
+	}
+
+	/**
+	 * Returns true if the slot has been visible since before the given
+	 * snapshot, so the client already has it.
+	 */
+	boolean visibleSince(final int slot, final int seq) {
+		return this.visible != null && this.visible.get(slot)
+				&& slot < this.enteredAt.length && this.enteredAt[slot] >= 0
+				&& this.enteredAt[slot] <= seq;
+	}
+
+	/**
+	 * Returns true if the slot is visible now.
+	 */
+	boolean isVisible(final int slot) {
+		return this.visible == null || this.visible.get(slot);
+	}
+
+	/**
+	 * Returns true if the slot went out of view after the given snapshot, so
+	 * the client might still have it in that snapshot and needs to be told to
+	 * remove it.
+	 */
+	boolean leftAfter(final int slot, final int seq) {
+		return slot < this.leftAt.length && this.leftAt[slot] > seq;
+	}
+
+	void sent(final int seq) {
+		this.lastSent = seq;
+	}
+
+	/**
+	 * Records what the client can see as of a snapshot.
+	 *
+	 * @param now the visible slots, or null if the client can see everything
+	 * @param seq the snapshot about to be sent
+	 */
+	void track(BitSet now, final int seq) {
+		if (now == null) {
+			this.visible = null;
+			return;
+		}
+		BitSet before = this.visible == null ? new BitSet() : this.visible;
+		for (int s = now.nextSetBit(0); s >= 0; s = now.nextSetBit(s + 1)) {
+			if (!before.get(s)) {
+				this.grow(s);
+				this.enteredAt[s] = seq;
+			}
+		}
+		for (int s = before.nextSetBit(0); s >= 0; s =
+				before.nextSetBit(s + 1)) {
+			if (!now.get(s)) {
+				this.grow(s);
+				this.leftAt[s] = seq;
+			}
+		}
+		this.visible = now;
+	}
+}
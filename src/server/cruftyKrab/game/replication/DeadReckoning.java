@@ -0,0 +1,167 @@
+package cruftyKrab.game.replication;
+
+import java.util.Arrays;
+
+import cruftyKrab.game.EntityRegistry;
+import cruftyKrab.network.binary.BinaryProtocol;
+
+/**
+ * Keeps track of where clients think each entity is. Clients are sent a
+ * position and a velocity, and move the entity along that velocity until
+ * they hear otherwise. An entity only needs to be sent again once the
+ * client's guess would be off by more than the error threshold, so enemies
+ * walking in a straight line are hardly sent at all.
+ *
+ * Every entity is sent at least every {@link #MAX_SILENCE} seconds anyway,
+ * which puts a limit on how long a client that missed an update, or only
+ * just started seeing the entity, stays wrong.
+ *
+ * Entities are tracked by slot. Only used by the thread updating the match.
+ *
+ * @author Ches Burks
+ *
+ */
+class DeadReckoning {
+
+	/**
+	 * The longest an entity goes without being sent, in seconds. ({@value})
+	 */
+	static final float MAX_SILENCE = 1.0f;
+
+	/**
+	 * Rounds a position or velocity the way it is sent, to a pixel.
+	 *
+	 * @param tiles the value, in tiles
+	 * @return the value clients are sent
+	 */
+	static float quantize(final float tiles) {
+		return Math.round(tiles * BinaryProtocol.POSITION_SCALE)
+				/ (float) BinaryProtocol.POSITION_SCALE;
+	}
+
+	private final float threshold;
+	private final float lookAhead;
+
+	/**
+	 * The ID of the entity that was last sent for each slot, or
+	 * {@link EntityRegistry#NO_ID}.
+	 */
+	private int[] ids;
+	private float[] x;
+	private float[] y;
+	private float[] vx;
+	private float[] vy;
+	private int[] facing;
+	/**
+	 * When each slot was last sent, in seconds of match time.
+	 */
+	private float[] sentAt;
+
+	/**
+	 * Creates a tracker that hasn't sent anything.
+	 *
+	 * @param error how far off a client's guess can be before the entity is
+	 *            sent again, in tiles, or zero to send everything every time
+	 * @param interval how long until the next send, in seconds. An entity is
+	 *            also sent if it will be too far off by then.
+	 */
+	DeadReckoning(final float error, final float interval) {
+		this.threshold = Math.max(0, error);
+		this.lookAhead = Math.max(0, interval);
+		this.ids = new int[0];
+		this.x = new float[0];
+		this.y = new float[0];
+		this.vx = new float[0];
+		this.vy = new float[0];
+		this.facing = new int[0];
+		this.sentAt = new float[0];
+	}
+
+	/**
+	 * Forgets what was sent, so everything is sent next time.
+	 */
+	void clear() {
+		Arrays.fill(this.ids, EntityRegistry.NO_ID);
+	}
+
+	private void grow(final int slot) {
+		if (slot < this.ids.length) {
+			return;
+		}
+		final int old = this.ids.length;
+		final int size = Math.max(slot + 1, Math.max(16, 2 * old));
+		this.ids = Arrays.copyOf(this.ids, size);
+		this.x = Arrays.copyOf(this.x, size);
+		this.y = Arrays.copyOf(this.y, size);
+		this.vx = Arrays.copyOf(this.vx, size);
+		this.vy = Arrays.copyOf(this.vy, size);
+		this.facing = Arrays.copyOf(this.facing, size);
+		this.sentAt = Arrays.copyOf(this.sentAt, size);
+		Arrays.fill(this.ids, old, size, EntityRegistry.NO_ID);
+	}
+
+	/**
+	 * Returns true if an entity has to be sent, because it is new, it turned,
+	 * it hasn't been sent for a while, or where clients think it is is (or
+	 * will be by the next send) too far from where it really is.
+	 *
+	 * @param slot the slot the entity is in
+	 * @param id the ID of the entity
+	 * @param px the quantized x position
+	 * @param py the quantized y position
+	 * @param pvx the quantized x velocity
+	 * @param pvy the quantized y velocity
+	 * @param face the facing code
+	 * @param now the match time, in seconds
+	 * @return true if the entity should be sent
+	 */
+	boolean isStale(final int slot, final int id, final float px,
+			final float py, final float pvx, final float pvy, final int face,
+			final float now) {
+		if (this.threshold <= 0 || slot >= this.ids.length
+				|| this.ids[slot] != id || this.facing[slot] != face) {
+			return true;
+		}
+		final float age = now - this.sentAt[slot];
+		if (age >= DeadReckoning.MAX_SILENCE) {
+			return true;
+		}
+		// where the client has it now
+		final float dx = px - (this.x[slot] + this.vx[slot] * age);
+		final float dy = py - (this.y[slot] + this.vy[slot] * age);
+		final float limit = this.threshold * this.threshold;
+		if (dx * dx + dy * dy > limit) {
+			return true;
+		}
+		// and where it will have it when the next send might correct it
+		final float ahead = this.lookAhead;
+		final float fx = dx + (pvx - this.vx[slot]) * ahead;
+		final float fy = dy + (pvy - this.vy[slot]) * ahead;
+		return fx * fx + fy * fy > limit;
+	}
+
+	/**
+	 * Records that an entity was sent to clients.
+	 *
+	 * @param slot the slot the entity is in
+	 * @param id the ID of the entity
+	 * @param px the quantized x position that was sent
+	 * @param py the quantized y position that was sent
+	 * @param pvx the quantized x velocity that was sent
+	 * @param pvy the quantized y velocity that was sent
+	 * @param face the facing code that was sent
+	 * @param now the match time, in seconds
+	 */
+	void sent(final int slot, final int id, final float px, final float py,
+			final float pvx, final float pvy, final int face,
+			final float now) {
+		this.grow(slot);
+		this.ids[slot] = id;
+		this.x[slot] = px;
+		this.y[slot] = py;
+		this.vx[slot] = pvx;
+		this.vy[slot] = pvy;
+		this.facing[slot] = face;
+		this.sentAt[slot] = now;
+	}
+}
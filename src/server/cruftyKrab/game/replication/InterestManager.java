@@ -0,0 +1,405 @@
+package cruftyKrab.game.replication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import cruftyKrab.ai.SpatialGrid;
+import cruftyKrab.game.EntityRegistry;
+import cruftyKrab.game.EntityStore;
+import cruftyKrab.game.Facing;
+import cruftyKrab.game.Location;
+import cruftyKrab.game.Mascot;
+import cruftyKrab.network.Connection;
+import cruftyKrab.network.messages.EntityInfo;
+import cruftyKrab.network.messages.Vect;
+import cruftyKrab.network.messages.out.EntityEntered;
+import cruftyKrab.network.messages.out.EntityLeft;
+
+/**
+ * Keeps track of which entities each client can see, so that clients are
+ * only sent updates about entities near their own player. An entity becomes
+ * visible when it comes within the radius of the player, and stops being
+ * visible once it is {@link #LEAVE_MARGIN} tiles past that, so entities
+ * near the edge don't flicker in and out. Clients are sent an
+ * {@link EntityEntered} or {@link EntityLeft} message when that changes.
+ *
+ * Entities are tracked by the slot part of their ID, so whatever releases
+ * an ID should call {@link #remove(int)} first.
+ *
+ * A radius of zero or less turns this off, and every client sees everything.
+ *
+ * @author Ches Burks
+ *
+ */
+public class InterestManager {
+
+	/**
+	 * What one client can see.
+	 */
+	private static class ClientInterest {
+		final Mascot player;
+		/**
+		 * The slots of the entities the client knows about.
+		 */
+		final BitSet visible;
+		/**
+		 * The full ID of the entity in each visible slot.
+		 */
+		int[] ids;
+
+		ClientInterest(Mascot owner) {
+			this.player = owner;
+			this.visible = new BitSet();
+			this.ids = new int[0];
+			if (owner.getId() != EntityRegistry.NO_ID) {
+				this.show(owner.getId());
+			}
+		}
+
+		void show(final int id) {
+			final int slot = EntityRegistry.slotOf(id);
+			if (slot >= this.ids.length) {
+				this.ids = Arrays.copyOf(this.ids,
+						Math.max(slot + 1, 2 * this.ids.length));
+			}
+			this.ids[slot] = id;
+			this.visible.set(slot);
+		}
+
+		boolean sees(final int id) {
+			final int slot = EntityRegistry.slotOf(id);
+			return this.visible.get(slot) && this.ids[slot] == id;
+		}
+	}
+
+	/**
+	 * The default distance from a player that entities can be seen from, in
+	 * tiles. This is a bit more than half the width of the client's screen.
+	 * ({@value})
+	 */
+	public static final float DEFAULT_RADIUS = 12.0f;
+
+	/**
+	 * How far past the radius an entity has to go before it stops being
+	 * visible, in tiles. ({@value})
+	 */
+	public static final float LEAVE_MARGIN = 2.0f;
+
+	/**
+	 * Creates the message telling a client about an entity that came into
+	 * view. The position and velocity are as exact as moves are, so the
+	 * client can keep it moving the same way clients that were sent its moves
+	 * do. Should only be called while holding the store lock.
+	 *
+	 * @param m the entity
+	 * @param store where the entity is
+	 * @return the message
+	 */
+	private static EntityEntered entered(Mascot m, EntityStore store) {
+		EntityEntered msg = new EntityEntered();
+		EntityInfo info = new EntityInfo();
+		info.id = m.getId();
+		info.name = m.getUsername();
+		info.uniqueID = m.getName();
+		info.colorIndex = m.getColor();
+		msg.entity = info;
+		final int slot = m.getSlot();
+		Vect pos = new Vect();
+		pos.x = DeadReckoning.quantize(store.getXs()[slot]);
+		pos.y = DeadReckoning.quantize(store.getYs()[slot]);
+		msg.position = pos;
+		final float vx = DeadReckoning.quantize(store.getVelocityXs()[slot]);
+		final float vy = DeadReckoning.quantize(store.getVelocityYs()[slot]);
+		if (vx != 0 || vy != 0) {
+			Vect velocity = new Vect();
+			velocity.x = vx;
+			velocity.y = vy;
+			msg.velocity = velocity;
+		}
+		final byte face = store.getFacingCodes()[slot];
+		if (face >= 0) {
+			msg.facing = Facing.fromCode(face).getName();
+		}
+		return msg;
+	}
+
+	private final float radius;
+	private final ConcurrentHashMap<Connection, ClientInterest> clients;
+	/**
+	 * Scratch space for the slots found near each client.
+	 */
+	private int[] found;
+
+	/**
+	 * Creates an interest manager with no clients.
+	 *
+	 * @param range how far from their player clients can see, in tiles, or
+	 *            zero to let every client see everything
+	 */
+	public InterestManager(final float range) {
+		this.radius = range;
+		this.clients = new ConcurrentHashMap<>();
+		this.found = new int[0];
+	}
+
+	/**
+	 * Starts tracking what a client can see. At first that is only its own
+	 * player, which it can always see.
+	 *
+	 * @param client the client
+	 * @param player the player the client controls
+	 */
+	public void addClient(Connection client, Mascot player) {
+		if (this.isEnabled()) {
+			this.clients.put(client, new ClientInterest(player));
+		}
+	}
+
+	/**
+	 * Stops tracking all clients.
+	 */
+	public void clear() {
+		this.clients.clear();
+	}
+
+	/**
+	 * Returns a copy of the slots of the entities a client can see.
+	 *
+	 * @param client the client
+	 * @return the visible slots, or null if the client can see everything
+	 */
+	public BitSet copyVisible(Connection client) {
+		ClientInterest ci = this.clients.get(client);
+		if (ci == null) {
+			return null;
+		}
+		synchronized (ci) {
+			return (BitSet) ci.visible.clone();
+		}
+	}
+
+	/**
+	 * Stops a client from seeing an entity, such as when it dies. Meant to
+	 * be used as a filter when telling clients about it, so only clients that
+	 * knew about the entity are told.
+	 *
+	 * @param client the client
+	 * @param id the ID of the entity
+	 * @return true if the client could see the entity
+	 */
+	public boolean forget(Connection client, final int id) {
+		ClientInterest ci = this.clients.get(client);
+		if (ci == null || id == EntityRegistry.NO_ID) {
+			return true;
+		}
+		final int slot = EntityRegistry.slotOf(id);
+		synchronized (ci) {
+			final boolean was = ci.sees(id);
+			if (ci.player.getId() != id) {
+				ci.visible.clear(slot);
+			}
+			return was;
+		}
+	}
+
+	/**
+	 * Returns how far from their player clients can see.
+	 *
+	 * @return the radius in tiles, or zero or less if everything is visible
+	 */
+	public float getRadius() {
+		return this.radius;
+	}
+
+	/**
+	 * Returns true if clients only see entities near them.
+	 *
+	 * @return true if interest is being tracked
+	 */
+	public boolean isEnabled() {
+		return this.radius > 0;
+	}
+
+	/**
+	 * Returns true if a client can see an entity.
+	 *
+	 * @param client the client
+	 * @param id the ID of the entity
+	 * @return true if the client can see it, which is always true for
+	 *         clients that are not tracked
+	 */
+	public boolean isVisible(Connection client, final int id) {
+		ClientInterest ci = this.clients.get(client);
+		if (ci == null) {
+			return true;
+		}
+		synchronized (ci) {
+			return ci.sees(id);
+		}
+	}
+
+	/**
+	 * Stops every client from seeing an entity. This should be called before
+	 * its ID is released.
+	 *
+	 * @param id the ID of the entity
+	 */
+	public void remove(final int id) {
+		if (id == EntityRegistry.NO_ID) {
+			return;
+		}
+		this.clients.values().forEach(ci -> {
+			synchronized (ci) {
+				ci.visible.clear(EntityRegistry.slotOf(id));
+			}
+		});
+	}
+
+	/**
+	 * Stops tracking what a client can see.
+	 *
+	 * @param client the client
+	 */
+	public void removeClient(Connection client) {
+		this.clients.remove(client);
+	}
+
+	/**
+	 * Lets a client see an entity if it is in range, such as when it spawns.
+	 * Meant to be used as a filter when telling clients about it, so clients
+	 * too far away aren't told.
+	 *
+	 * @param client the client
+	 * @param id the ID of the entity
+	 * @param x the x position of the entity
+	 * @param y the y position of the entity
+	 * @return true if the client can see the entity
+	 */
+	public boolean reveal(Connection client, final int id, final float x,
+			final float y) {
+		ClientInterest ci = this.clients.get(client);
+		if (ci == null || id == EntityRegistry.NO_ID) {
+			return true;
+		}
+		synchronized (ci) {
+			if (ci.sees(id)) {
+				return true;
+			}
+			Location loc =
+					(Location) ci.player.getComponent(Location.TYPE_NAME);
+			if (loc == null) {
+				return false;
+			}
+			Location.Snapshot center = loc.getSnapshot();
+			final float dx = x - center.getX();
+			final float dy = y - center.getY();
+			if (dx * dx + dy * dy > this.radius * this.radius) {
+				return false;
+			}
+			ci.show(id);
+			return true;
+		}
+	}
+
+	/**
+	 * Works out what each client can see now, and tells clients about the
+	 * entities that came into or went out of view. Should only be called by
+	 * the thread updating the match.
+	 *
+	 * @param sender sends a message to a client
+	 * @param store where everything is
+	 * @param grids where to look for entities, built from the store
+	 */
+	public void update(BiConsumer<Connection, Object> sender,
+			EntityStore store, SpatialGrid... grids) {
+		if (!this.isEnabled() || this.clients.isEmpty()) {
+			return;
+		}
+		final float enterSq = this.radius * this.radius;
+		final float leave = this.radius + InterestManager.LEAVE_MARGIN;
+		final float leaveSq = leave * leave;
+		int most = 0;
+		for (SpatialGrid grid : grids) {
+			most = Math.max(most, grid.getCount());
+		}
+		if (this.found.length < most) {
+			this.found = new int[most];
+		}
+		final int[] near = this.found;
+		BitSet now = new BitSet();
+		ArrayList<Mascot> entered = new ArrayList<>();
+		store.lock();
+		try {
+			// the store is locked, so use its arrays rather than lock per field
+			final Mascot[] mascots = store.getMascots();
+			final float[] xs = store.getXs();
+			final float[] ys = store.getYs();
+			this.clients.forEach((client, ci) -> {
+				final int center = ci.player.getSlot();
+				if (center < 0) {
+					return;
+				}
+				final float cx = xs[center];
+				final float cy = ys[center];
+				now.clear();
+				entered.clear();
+				BitSet left;
+				int[] leftIDs;
+				synchronized (ci) {
+					now.set(EntityRegistry.slotOf(ci.player.getId()));
+					for (SpatialGrid grid : grids) {
+						final int count = grid.query(cx, cy, leave, -1, near);
+						for (int n = 0; n < count; ++n) {
+							final int slot = near[n];
+							// when locked, it might have been removed since
+							final Mascot m = mascots[slot];
+							if (m == null) {
+								continue;
+							}
+							final int id = m.getId();
+							if (id == EntityRegistry.NO_ID
+									|| now.get(EntityRegistry.slotOf(id))) {
+								continue;
+							}
+							final float dx = xs[slot] - cx;
+							final float dy = ys[slot] - cy;
+							final float distSq = dx * dx + dy * dy;
+							final boolean was = ci.sees(id);
+							if (distSq <= enterSq
+									|| (was && distSq <= leaveSq)) {
+								now.set(EntityRegistry.slotOf(id));
+								if (!was) {
+									entered.add(m);
+								}
+							}
+						}
+					}
+					left = (BitSet) ci.visible.clone();
+					left.andNot(now);
+					leftIDs = ci.ids.clone();
+					ci.visible.clear();
+					ci.visible.or(now);
+					for (Mascot m : entered) {
+						ci.show(m.getId());
+					}
+				}
+				for (int slot = left.nextSetBit(0); slot >= 0; slot =
+						left.nextSetBit(slot + 1)) {
+					EntityLeft msg = new EntityLeft();
+					msg.entity = new EntityInfo();
+					msg.entity.id = leftIDs[slot];
+					sender.accept(client, msg);
+				}
+				for (Mascot m : entered) {
+					sender.accept(client, InterestManager.entered(m, store));
+				}
+			});
+		}
+		finally {
+			store.unlock();
+		}
+	}
+}
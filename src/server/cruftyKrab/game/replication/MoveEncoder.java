@@ -0,0 +1,625 @@
+package cruftyKrab.game.replication;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import cruftyKrab.game.EntityStore;
+import cruftyKrab.game.Facing;
+import cruftyKrab.game.Mascot;
+import cruftyKrab.network.Connection;
+import cruftyKrab.network.FrameWriter;
+import cruftyKrab.network.PreparedFrame;
+import cruftyKrab.network.binary.BinaryProtocol;
+import cruftyKrab.network.binary.BinaryType;
+import cruftyKrab.network.binary.BinaryWriter;
+import cruftyKrab.network.messages.EntityInfo;
+import cruftyKrab.network.messages.MoveInfo;
+import cruftyKrab.network.messages.Vect;
+import cruftyKrab.network.messages.out.MoveSet;
+
+/**
+ * Encodes {@link MoveSet} messages straight from the entity store, without
+ * making an object for each entity. The positions are copied out of the store
+ * into arrays that are reused every tick, and then written as JSON into a
+ * pooled buffer, or in the binary protocol, for each client that needs them.
+ * Clients on the same protocol that are sent the same moves share one frame,
+ * so each distinct list is only written once per capture. The JSON is the
+ * same as Gson would write for a MoveSet, except that the move count comes
+ * after the moves.
+ *
+ * Each move has a velocity, which clients use to keep the entity moving
+ * until the next move for it. Given an error threshold, only the entities
+ * that clients would otherwise get too far wrong are sent.
+ *
+ * Given a byte budget, each client is sent at most that many bytes of moves
+ * per second. Entities that don't fit are owed to the client and sent in
+ * later updates, those nearest the client's player and waiting longest
+ * first. See {@link SendPriority}.
+ *
+ * Frames should be sent with {@link #getKey()}, so that a newer list
+ * replaces an older one that hasn't gone out yet. The entities in the older
+ * list are put in the newer one as well, so nothing is lost.
+ *
+ * An encoder should only be used by the thread updating the match, except
+ * for {@link #removeClient(Connection)}.
+ *
+ * @author Ches Burks
+ *
+ */
+public class MoveEncoder {
+
+	/**
+	 * How far off clients can guess an entity's position before it is sent
+	 * again, by default, in tiles. ({@value})
+	 */
+	public static final float DEFAULT_THRESHOLD = 0.25f;
+
+	/**
+	 * The most bytes a move takes up in JSON, used to tell how many fit in a
+	 * budget without writing them first. ({@value})
+	 */
+	private static final int MAX_JSON_MOVE = 160;
+	/**
+	 * The most bytes a move takes up in binary. ({@value})
+	 */
+	private static final int MAX_BINARY_MOVE = 24;
+	/**
+	 * The most bytes a move list takes up besides the moves, including the
+	 * frame header. ({@value})
+	 */
+	private static final int MAX_OVERHEAD = 64;
+
+	/**
+	 * Frames with the same key replace each other, so enemies and players
+	 * need different ones.
+	 */
+	private static final String ENEMY_KEY = "EnemyMoves";
+	private static final String PLAYER_KEY = "PlayerMoves";
+
+	private static final byte[] START =
+			FrameWriter.encode("{\"eventType\":\"MoveSet\",\"moves\":[");
+	private static final byte[] MOVE_START =
+			FrameWriter.encode("{\"entity\":{\"id\":");
+	private static final byte[] COLOR = FrameWriter.encode(",\"colorIndex\":");
+	private static final byte[] POSITION_X =
+			FrameWriter.encode("},\"position\":{\"x\":");
+	private static final byte[] POSITION_Y = FrameWriter.encode(",\"y\":");
+	private static final byte[] VELOCITY_X =
+			FrameWriter.encode("},\"velocity\":{\"x\":");
+	/**
+	 * The end of a move for each facing code, with the facing in it.
+	 */
+	private static final byte[][] MOVE_END;
+	private static final byte[] MOVE_END_NO_FACING = FrameWriter.encode("}}");
+	private static final byte[] MOVE_COUNT =
+			FrameWriter.encode("],\"moveCount\":");
+
+	static {
+		Facing[] all = Facing.values();
+		MOVE_END = new byte[all.length][];
+		for (Facing dir : all) {
+			MoveEncoder.MOVE_END[dir.getCode()] = FrameWriter
+					.encode("},\"facing\":\"" + dir.getName() + "\"}");
+		}
+	}
+
+	private int count;
+	private int[] ids;
+	private int[] slots;
+	private int[] colors;
+	private float[] xs;
+	private float[] ys;
+	private float[] vxs;
+	private float[] vys;
+	/**
+	 * The facing code of each entity, or {@link BinaryProtocol#NO_FACING}.
+	 */
+	private int[] facings;
+	/**
+	 * Whether each entity changed enough since it was last sent to be sent
+	 * again.
+	 */
+	private boolean[] changed;
+	private int changedCount;
+	/**
+	 * The entities picked for the frame being written, by index.
+	 */
+	private int[] chosen;
+	/**
+	 * Priority in the top half, index in the bottom half, for sorting.
+	 */
+	private long[] order;
+	/**
+	 * The match time of the last capture, in seconds.
+	 */
+	private float now;
+	/**
+	 * The key for the frames of the last capture.
+	 */
+	private String key;
+	private final BinaryWriter body;
+	private final BinaryWriter batch;
+	/**
+	 * The frames written since the last capture, keyed by which of the
+	 * captured entities are in them.
+	 */
+	private final HashMap<BitSet, PreparedFrame> textFrames;
+	private final HashMap<BitSet, PreparedFrame> binaryFrames;
+	/**
+	 * What clients were last sent for each entity.
+	 */
+	private final DeadReckoning reckoning;
+	private final float interval;
+	/**
+	 * How many bytes each client can be sent each time, or zero for no
+	 * limit.
+	 */
+	private final int budget;
+	/**
+	 * What each client is owed. Clients can be removed from any thread.
+	 */
+	private final ConcurrentHashMap<Connection, SendPriority> priorities;
+
+	/**
+	 * Creates an encoder with nothing in it, that sends every entity every
+	 * time.
+	 */
+	public MoveEncoder() {
+		this(0, 0, 0);
+	}
+
+	/**
+	 * Creates an encoder with nothing in it, that only sends entities
+	 * clients would get too far wrong by moving them along the velocity they
+	 * were last sent, and only as many as fit in each client's budget.
+	 *
+	 * @param threshold how far off clients can be, in tiles, or zero to send
+	 *            every entity every time
+	 * @param sendInterval how long there is between captures, in seconds
+	 * @param bytesPerSecond how many bytes of moves each client can be sent
+	 *            each second, or zero for no limit
+	 */
+	public MoveEncoder(final float threshold, final float sendInterval,
+			final int bytesPerSecond) {
+		this.count = 0;
+		this.ids = new int[0];
+		this.slots = new int[0];
+		this.colors = new int[0];
+		this.xs = new float[0];
+		this.ys = new float[0];
+		this.vxs = new float[0];
+		this.vys = new float[0];
+		this.facings = new int[0];
+		this.changed = new boolean[0];
+		this.changedCount = 0;
+		this.chosen = new int[0];
+		this.order = new long[0];
+		this.now = 0;
+		this.key = MoveEncoder.ENEMY_KEY;
+		this.body = new BinaryWriter();
+		this.batch = new BinaryWriter();
+		this.textFrames = new HashMap<>();
+		this.binaryFrames = new HashMap<>();
+		this.reckoning = new DeadReckoning(threshold, sendInterval);
+		this.interval = Math.max(0, sendInterval);
+		this.budget = bytesPerSecond <= 0 ? 0
+				: Math.max(1, Math.round(bytesPerSecond * this.interval));
+		this.priorities = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Copies the positions of either the enemies or the players out of the
+	 * store, replacing whatever was captured before. Entities that clients
+	 * can still guess the position of closely enough are marked as
+	 * unchanged, and the rest are recorded as sent.
+	 *
+	 * @param es the entity store
+	 * @param enemies true for enemies, false for players
+	 * @param time the match time, in seconds
+	 */
+	public void capture(EntityStore es, final boolean enemies,
+			final float time) {
+		this.count = 0;
+		this.changedCount = 0;
+		this.now = time;
+		this.key = enemies ? MoveEncoder.ENEMY_KEY : MoveEncoder.PLAYER_KEY;
+		this.textFrames.clear();
+		this.binaryFrames.clear();
+		es.lock();
+		try {
+			// the store is locked, so use its arrays rather than lock per field
+			final BitSet kind = enemies ? es.getEnemySlots() : es.getPlayerSlots();
+			final Mascot[] mascots = es.getMascots();
+			final int[] storeColors = es.getColors();
+			final float[] storeXs = es.getXs();
+			final float[] storeYs = es.getYs();
+			final float[] storeVxs = es.getVelocityXs();
+			final float[] storeVys = es.getVelocityYs();
+			final byte[] storeFacings = es.getFacingCodes();
+			for (int slot = kind.nextSetBit(0); slot >= 0; slot =
+					kind.nextSetBit(slot + 1)) {
+				this.grow();
+				final int i = this.count++;
+				final int id = mascots[slot].getId();
+				this.ids[i] = id;
+				this.slots[i] = slot;
+				this.colors[i] = storeColors[slot];
+				this.xs[i] = DeadReckoning.quantize(storeXs[slot]);
+				this.ys[i] = DeadReckoning.quantize(storeYs[slot]);
+				this.vxs[i] = DeadReckoning.quantize(storeVxs[slot]);
+				this.vys[i] = DeadReckoning.quantize(storeVys[slot]);
+				// the client already knows the rest from when it spawned
+				final byte code =
+						enemies ? Facing.UP.getCode() : storeFacings[slot];
+				this.facings[i] = code < 0 ? BinaryProtocol.NO_FACING : code;
+				this.changed[i] = this.reckoning.isStale(slot, id, this.xs[i],
+						this.ys[i], this.vxs[i], this.vys[i], this.facings[i],
+						time);
+				if (this.changed[i]) {
+					this.reckoning.sent(slot, id, this.xs[i], this.ys[i],
+							this.vxs[i], this.vys[i], this.facings[i], time);
+					++this.changedCount;
+				}
+			}
+		}
+		finally {
+			es.unlock();
+		}
+	}
+
+	/**
+	 * Forgets what clients were sent, so every entity is sent next time.
+	 */
+	public void clear() {
+		this.reckoning.clear();
+		this.priorities.clear();
+	}
+
+	/**
+	 * Returns how many of the captured entities changed enough to be sent.
+	 * When clients have a budget, entities that didn't fit before might still
+	 * be owed even if this is zero.
+	 *
+	 * @return the number of moves to send
+	 */
+	public int getCount() {
+		return this.changedCount;
+	}
+
+	/**
+	 * Returns the key to send the frames from the last capture with, so that
+	 * each one replaces the list before it if that hasn't been sent yet.
+	 *
+	 * @return the key
+	 * @see Connection#sendFrame(PreparedFrame, Object)
+	 */
+	public Object getKey() {
+		return this.key;
+	}
+
+	private void grow() {
+		if (this.count < this.ids.length) {
+			return;
+		}
+		final int size = Math.max(16, this.ids.length * 2);
+		this.ids = Arrays.copyOf(this.ids, size);
+		this.slots = Arrays.copyOf(this.slots, size);
+		this.colors = Arrays.copyOf(this.colors, size);
+		this.xs = Arrays.copyOf(this.xs, size);
+		this.ys = Arrays.copyOf(this.ys, size);
+		this.vxs = Arrays.copyOf(this.vxs, size);
+		this.vys = Arrays.copyOf(this.vys, size);
+		this.facings = Arrays.copyOf(this.facings, size);
+		this.changed = Arrays.copyOf(this.changed, size);
+		this.chosen = Arrays.copyOf(this.chosen, size);
+		this.order = Arrays.copyOf(this.order, size);
+	}
+
+	/**
+	 * Returns true if clients have a byte budget, so each one needs its own
+	 * move lists.
+	 *
+	 * @return true if moves are budgeted
+	 */
+	public boolean isBudgeted() {
+		return this.budget > 0;
+	}
+
+	/**
+	 * Encodes the captured moves for a client, in binary if it uses the
+	 * binary protocol, otherwise as JSON. The frame is reused for any other
+	 * client on the same protocol that is sent the same moves.
+	 *
+	 * @param client the client
+	 * @param interest only include entities the client can see, or null to
+	 *            include all of them
+	 * @return the frame, or null if a filter or budget was given and there
+	 *         is nothing to send the client
+	 */
+	public PreparedFrame prepare(Connection client, InterestManager interest) {
+		return this.prepare(client, interest, Float.NaN, Float.NaN);
+	}
+
+	/**
+	 * Encodes the captured moves for a client, like
+	 * {@link #prepare(Connection, InterestManager)}, using where the client's
+	 * player is to decide what to send first if there is a budget.
+	 *
+	 * @param client the client
+	 * @param interest only include entities the client can see, or null to
+	 *            include all of them
+	 * @param viewerX the x position of the client's player, or NaN if it
+	 *            doesn't have one
+	 * @param viewerY the y position of the client's player
+	 * @return the frame, or null if a filter or budget was given and there
+	 *         is nothing to send the client
+	 */
+	public PreparedFrame prepare(Connection client, InterestManager interest,
+			final float viewerX, final float viewerY) {
+		final boolean binary = client.isBinary();
+		final int written = this.select(client, interest, viewerX, viewerY,
+				binary ? MoveEncoder.MAX_BINARY_MOVE : MoveEncoder.MAX_JSON_MOVE);
+		if ((interest != null || this.budget > 0) && written == 0) {
+			return null;
+		}
+		BitSet key = new BitSet(this.count);
+		for (int n = 0; n < written; ++n) {
+			key.set(this.chosen[n]);
+		}
+		HashMap<BitSet, PreparedFrame> frames =
+				binary ? this.binaryFrames : this.textFrames;
+		PreparedFrame frame = frames.get(key);
+		if (frame == null) {
+			if (binary) {
+				frame = this.prepareBinary(client, written);
+			}
+			else {
+				try (FrameWriter out = FrameWriter.open()) {
+					this.writeJson(out, written);
+					frame = client.prepare(out);
+					frame.setType(MoveSet.class.getSimpleName());
+				}
+			}
+			frames.put(key, frame);
+		}
+		this.spend(client, frame.getSize());
+		return frame;
+	}
+
+	private PreparedFrame prepareBinary(Connection client, final int written) {
+		this.body.clear();
+		this.body.writeVarint(written);
+		for (int n = 0; n < written; ++n) {
+			final int i = this.chosen[n];
+			this.body.writeVarint(this.ids[i]);
+			this.body.writePosition(this.xs[i]);
+			this.body.writePosition(this.ys[i]);
+			this.body.writeByte(this.facings[i]);
+			this.body.writeVarint(this.colors[i]);
+			this.body.writePosition(this.vxs[i]);
+			this.body.writePosition(this.vys[i]);
+		}
+		this.batch.clear();
+		this.batch.writeBatchHeader(1);
+		this.batch.writeMessage(BinaryType.MOVE_SET, this.body);
+		return client.prepare(this.batch.view());
+	}
+
+	/**
+	 * Stops keeping track of what a client is owed, such as when it leaves.
+	 *
+	 * @param client the client
+	 */
+	public void removeClient(Connection client) {
+		this.priorities.remove(client);
+	}
+
+	/**
+	 * Picks which of the captured entities to send a client, leaving their
+	 * indexes at the start of {@link #chosen}. Without a budget that is every
+	 * changed entity the client can see. With one, it is the owed entities
+	 * with the highest priority that are sure to fit in what is left of the
+	 * budget, and they are recorded as sent. The bytes they really take up are
+	 * spent once they are written. Either way, entities in a list that the
+	 * new one will replace count as changed.
+	 *
+	 * @param moveSize the most bytes a move takes up for the client
+	 * @return how many entities were picked
+	 */
+	private int select(Connection client, InterestManager interest,
+			final float viewerX, final float viewerY, final int moveSize) {
+		SendPriority owed =
+				this.priorities.computeIfAbsent(client, c -> new SendPriority());
+		// the last list hasn't gone out, and the new one will replace it
+		final boolean replacing = client.isQueued(this.key);
+		int n = 0;
+		if (this.budget <= 0) {
+			for (int i = 0; i < this.count; ++i) {
+				final int slot = this.slots[i];
+				if (interest != null
+						&& !interest.isVisible(client, this.ids[i])) {
+					owed.forget(slot);
+					continue;
+				}
+				final boolean dropped =
+						owed.unqueue(slot, this.ids[i]) && replacing;
+				if (this.changed[i] || dropped) {
+					this.chosen[n++] = i;
+					owed.queue(slot, this.ids[i]);
+				}
+			}
+			return n;
+		}
+		for (int i = 0; i < this.count; ++i) {
+			final int slot = this.slots[i];
+			if (interest != null && !interest.isVisible(client, this.ids[i])) {
+				owed.forget(slot);
+				continue;
+			}
+			final boolean dropped =
+					owed.unqueue(slot, this.ids[i]) && replacing;
+			if (this.changed[i] || dropped) {
+				owed.owe(slot, this.ids[i]);
+			}
+			else if (!owed.isOwed(slot, this.ids[i])) {
+				continue;
+			}
+			float distance = 0;
+			if (!Float.isNaN(viewerX)) {
+				final float dx = this.xs[i] - viewerX;
+				final float dy = this.ys[i] - viewerY;
+				distance = (float) Math.sqrt(dx * dx + dy * dy);
+			}
+			final float priority = owed.age(slot, this.interval, distance);
+			// positive floats sort the same as their bits
+			this.order[n++] =
+					((long) Float.floatToIntBits(priority) << 32) | i;
+		}
+		if (n == 0) {
+			return 0;
+		}
+		final int room =
+				owed.remaining(this.now, this.budget, client.getQueuedBytes())
+						- MoveEncoder.MAX_OVERHEAD;
+		final int fit = Math.max(0, Math.min(n, room / moveSize));
+		if (fit == 0) {
+			return 0;
+		}
+		Arrays.sort(this.order, 0, n);
+		for (int k = 0; k < fit; ++k) {
+			final int i = (int) this.order[n - 1 - k];
+			this.chosen[k] = i;
+			owed.sent(this.slots[i]);
+			owed.queue(this.slots[i], this.ids[i]);
+		}
+		return fit;
+	}
+
+	/**
+	 * Takes the bytes that were written for a client out of its budget, if
+	 * it has one.
+	 *
+	 * @param client the client
+	 * @param bytes how many bytes the moves took up
+	 */
+	private void spend(Connection client, final int bytes) {
+		if (this.budget <= 0) {
+			return;
+		}
+		SendPriority owed = this.priorities.get(client);
+		if (owed != null) {
+			owed.spend(bytes);
+		}
+	}
+
+	/**
+	 * Creates a MoveSet holding the captured moves, for clients that need the
+	 * message itself rather than a frame.
+	 *
+	 * @param client the client
+	 * @param interest only include entities the client can see, or null to
+	 *            include all of them
+	 * @return the message, or null if a filter or budget was given and there
+	 *         is nothing to send the client
+	 */
+	public MoveSet toMessage(Connection client, InterestManager interest) {
+		return this.toMessage(client, interest, Float.NaN, Float.NaN);
+	}
+
+	/**
+	 * Creates a MoveSet holding the captured moves, like
+	 * {@link #toMessage(Connection, InterestManager)}, using where the
+	 * client's player is to decide what to send first if there is a budget.
+	 *
+	 * @param client the client
+	 * @param interest only include entities the client can see, or null to
+	 *            include all of them
+	 * @param viewerX the x position of the client's player, or NaN if it
+	 *            doesn't have one
+	 * @param viewerY the y position of the client's player
+	 * @return the message, or null if a filter or budget was given and there
+	 *         is nothing to send the client
+	 */
+	public MoveSet toMessage(Connection client, InterestManager interest,
+			final float viewerX, final float viewerY) {
+		final int written = this.select(client, interest, viewerX, viewerY,
+				MoveEncoder.MAX_JSON_MOVE);
+		if ((interest != null || this.budget > 0) && written == 0) {
+			return null;
+		}
+		MoveInfo[] moves = new MoveInfo[written];
+		for (int n = 0; n < written; ++n) {
+			final int i = this.chosen[n];
+			MoveInfo move = new MoveInfo();
+			EntityInfo info = new EntityInfo();
+			info.id = this.ids[i];
+			info.colorIndex = this.colors[i];
+			move.entity = info;
+			Vect pos = new Vect();
+			pos.x = this.xs[i];
+			pos.y = this.ys[i];
+			move.position = pos;
+			if (this.vxs[i] != 0 || this.vys[i] != 0) {
+				Vect velocity = new Vect();
+				velocity.x = this.vxs[i];
+				velocity.y = this.vys[i];
+				move.velocity = velocity;
+			}
+			if (this.facings[i] != BinaryProtocol.NO_FACING) {
+				move.facing =
+						Facing.fromCode((byte) this.facings[i]).getName();
+			}
+			moves[n] = move;
+		}
+		if (this.budget > 0) {
+			// the moves end up in a bigger message, so count them as JSON
+			try (FrameWriter out = FrameWriter.open()) {
+				this.writeJson(out, written);
+				this.spend(client, out.size());
+			}
+		}
+		MoveSet set = new MoveSet();
+		set.moves = moves;
+		set.moveCount = written;
+		return set;
+	}
+
+	/**
+	 * Writes the chosen moves as a MoveSet in JSON.
+	 *
+	 * @param out where to write them
+	 * @param written how many moves were chosen
+	 */
+	private void writeJson(FrameWriter out, final int written) {
+		out.writeBytes(MoveEncoder.START);
+		for (int n = 0; n < written; ++n) {
+			final int i = this.chosen[n];
+			if (n > 0) {
+				out.writeByte(',');
+			}
+			out.writeBytes(MoveEncoder.MOVE_START);
+			out.writeLong(this.ids[i]);
+			out.writeBytes(MoveEncoder.COLOR);
+			out.writeLong(this.colors[i]);
+			out.writeBytes(MoveEncoder.POSITION_X);
+			out.writeDouble(this.xs[i]);
+			out.writeBytes(MoveEncoder.POSITION_Y);
+			out.writeDouble(this.ys[i]);
+			if (this.vxs[i] != 0 || this.vys[i] != 0) {
+				out.writeBytes(MoveEncoder.VELOCITY_X);
+				out.writeDouble(this.vxs[i]);
+				out.writeBytes(MoveEncoder.POSITION_Y);
+				out.writeDouble(this.vys[i]);
+			}
+			final int facing = this.facings[i];
+			out.writeBytes(facing == BinaryProtocol.NO_FACING
+					? MoveEncoder.MOVE_END_NO_FACING
+					: MoveEncoder.MOVE_END[facing]);
+		}
+		out.writeBytes(MoveEncoder.MOVE_COUNT);
+		out.writeLong(written);
+		out.writeByte('}');
+	}
+}
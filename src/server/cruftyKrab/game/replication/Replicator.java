@@ -0,0 +1,354 @@
+package cruftyKrab.game.replication;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cruftyKrab.game.EntityRegistry;
+import cruftyKrab.game.EntityStore;
+import cruftyKrab.game.Facing;
+import cruftyKrab.network.Connection;
+import cruftyKrab.network.PreparedFrame;
+import cruftyKrab.network.binary.BinaryEncoder;
+import cruftyKrab.network.messages.EntityDelta;
+import cruftyKrab.network.messages.out.Snapshot;
+
+/**
+ * Sends clients the state of a match each tick as the changes since the last
+ * snapshot they acknowledged, instead of the position of every entity. Each
+ * client is sent a full snapshot (a keyframe) when it first joins, when the
+ * snapshot it acknowledged is too old to still be kept, and every
+ * {@link #KEYFRAME_INTERVAL} ticks so that a client can't drift out of sync
+ * forever.
+ *
+ * Clients that acknowledged the same snapshot and see the same entities are
+ * sent the same bytes, so each distinct message is only encoded once per
+ * tick.
+ *
+ * Clients have to ask for snapshots. Clients that don't should be sent the
+ * old full move lists instead.
+ *
+ * @author Ches Burks
+ *
+ */
+public class Replicator {
+
+	/**
+	 * How many recent snapshots are kept to work out changes from. ({@value})
+	 */
+	public static final int RING_SIZE = 32;
+
+	/**
+	 * The most ticks between full snapshots for each client. ({@value})
+	 */
+	public static final int KEYFRAME_INTERVAL = 40;
+
+	/**
+	 * A newer snapshot replaces one that hasn't been sent yet. Its base is
+	 * still one the client acknowledged, so nothing is lost.
+	 */
+	private static final String SNAPSHOT_KEY = "Snapshot";
+
+	/**
+	 * Works out what changed between two snapshots.
+	 *
+	 * @param base what the client has, or null to send everything
+	 * @param current the current state
+	 * @return the message to send
+	 */
+	static Snapshot diff(WorldSnapshot base, WorldSnapshot current) {
+		return Replicator.diff(base, current, null);
+	}
+
+	/**
+	 * Works out what changed between two snapshots, for a client that might
+	 * only be able to see some of the entities. Entities that came into view
+	 * since the base are sent in full, and ones that went out of view are
+	 * removed.
+	 *
+	 * @param base what the client has, or null to send everything
+	 * @param current the current state
+	 * @param view what the client can see, or null if it sees everything
+	 * @return the message to send
+	 */
+	static Snapshot diff(WorldSnapshot base, WorldSnapshot current,
+			ClientView view) {
+		final boolean all = view == null || view.seesAll();
+		ArrayList<EntityDelta> changed = new ArrayList<>();
+		ArrayList<Integer> removed = new ArrayList<>();
+		final int baseCount = base == null ? 0 : base.getCount();
+		final int baseSeq = base == null ? -1 : base.getSeq();
+		final int count = current.getCount();
+		int i = 0;
+		int j = 0;
+		while (i < baseCount || j < count) {
+			final int oldID = i < baseCount ? base.ids[i] : Integer.MAX_VALUE;
+			final int newID = j < count ? current.ids[j] : Integer.MAX_VALUE;
+			if (oldID < newID) {
+				final int slot = EntityRegistry.slotOf(oldID);
+				if (all || view.leftAfter(slot, baseSeq)
+						|| view.visibleSince(slot, baseSeq)) {
+					removed.add(Integer.valueOf(oldID));
+				}
+				++i;
+				continue;
+			}
+			if (newID < oldID) {
+				if (all || view.isVisible(EntityRegistry.slotOf(newID))) {
+					// new since the base, send all of it
+					changed.add(Replicator.entry(current, j));
+				}
+				++j;
+				continue;
+			}
+			if (!all) {
+				final int slot = EntityRegistry.slotOf(newID);
+				if (!view.isVisible(slot)) {
+					if (view.leftAfter(slot, baseSeq)) {
+						removed.add(Integer.valueOf(oldID));
+					}
+					++i;
+					++j;
+					continue;
+				}
+				if (!view.visibleSince(slot, baseSeq)) {
+					// came into view since the base
+					changed.add(Replicator.entry(current, j));
+					++i;
+					++j;
+					continue;
+				}
+			}
+			EntityDelta d = null;
+			if (base.x[i] != current.x[j]) {
+				d = new EntityDelta();
+				d.x = Double.valueOf(current.x[j]);
+			}
+			if (base.y[i] != current.y[j]) {
+				d = d == null ? new EntityDelta() : d;
+				d.y = Double.valueOf(current.y[j]);
+			}
+			if (base.facing[i] != current.facing[j]) {
+				d = d == null ? new EntityDelta() : d;
+				d.facing = Replicator.facingName(current.facing[j]);
+			}
+			if (d != null) {
+				d.id = newID;
+				changed.add(d);
+			}
+			++i;
+			++j;
+		}
+
+		Snapshot msg = new Snapshot();
+		msg.seq = current.getSeq();
+		msg.baseSeq = base == null ? -1 : base.getSeq();
+		msg.entityCount = changed.size();
+		msg.entities = changed.toArray(new EntityDelta[changed.size()]);
+		msg.removedCount = removed.size();
+		msg.removed = new double[removed.size()];
+		for (int r = 0; r < msg.removed.length; ++r) {
+			msg.removed[r] = removed.get(r).intValue();
+		}
+		return msg;
+	}
+
+	/**
+	 * Returns all of an entity in a snapshot.
+	 */
+	private static EntityDelta entry(WorldSnapshot snapshot, final int index) {
+		EntityDelta d = new EntityDelta();
+		d.id = snapshot.ids[index];
+		d.x = Double.valueOf(snapshot.x[index]);
+		d.y = Double.valueOf(snapshot.y[index]);
+		d.facing = Replicator.facingName(snapshot.facing[index]);
+		return d;
+	}
+
+	private static String facingName(final byte code) {
+		Facing dir = Facing.fromCode(code);
+		return dir == null ? null : dir.getName();
+	}
+
+	private final SnapshotRing ring;
+	private final ConcurrentHashMap<Connection, ClientView> clients;
+	/**
+	 * The sequence number of the next snapshot. Only used by the thread
+	 * updating the match.
+	 */
+	private int nextSeq;
+
+	private final AtomicLong keyframes;
+	private final AtomicLong deltas;
+	private final AtomicLong entitiesSent;
+
+	/**
+	 * Creates a replicator with no clients.
+	 */
+	public Replicator() {
+		this.ring = new SnapshotRing(Replicator.RING_SIZE);
+		this.clients = new ConcurrentHashMap<>();
+		this.nextSeq = 0;
+		this.keyframes = new AtomicLong();
+		this.deltas = new AtomicLong();
+		this.entitiesSent = new AtomicLong();
+	}
+
+	/**
+	 * Records that a client has received a snapshot.
+	 *
+	 * @param client the client
+	 * @param seq the sequence number of the snapshot
+	 */
+	public void acknowledge(Connection client, final int seq) {
+		ClientView view = this.clients.get(client);
+		if (view != null) {
+			view.acknowledge(seq);
+		}
+	}
+
+	/**
+	 * Starts sending snapshots to a client. The first one will be a keyframe.
+	 *
+	 * @param client the client
+	 */
+	public void addClient(Connection client) {
+		this.clients.putIfAbsent(client, new ClientView());
+	}
+
+	/**
+	 * Stops sending snapshots to all clients and forgets old snapshots.
+	 */
+	public void clear() {
+		this.clients.clear();
+		this.ring.clear();
+	}
+
+	private void count(WorldSnapshot base) {
+		if (base == null) {
+			this.keyframes.incrementAndGet();
+		}
+		else {
+			this.deltas.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns the number of clients being sent snapshots.
+	 *
+	 * @return the client count
+	 */
+	public int getClientCount() {
+		return this.clients.size();
+	}
+
+	/**
+	 * Returns how many snapshots have been sent as changes since an older
+	 * one.
+	 *
+	 * @return the number of delta snapshots sent
+	 */
+	public long getDeltasSent() {
+		return this.deltas.get();
+	}
+
+	/**
+	 * Returns how many entity entries have been encoded into snapshots. A
+	 * message shared by several clients is only counted once.
+	 *
+	 * @return the number of entities encoded
+	 */
+	public long getEntitiesSent() {
+		return this.entitiesSent.get();
+	}
+
+	/**
+	 * Returns how many full snapshots have been sent.
+	 *
+	 * @return the number of keyframes sent
+	 */
+	public long getKeyframesSent() {
+		return this.keyframes.get();
+	}
+
+	/**
+	 * Returns true if the client is being sent snapshots.
+	 *
+	 * @param client the client
+	 * @return true if the client asked for snapshots
+	 */
+	public boolean isReplicated(Connection client) {
+		return this.clients.containsKey(client);
+	}
+
+	/**
+	 * Stops sending snapshots to a client.
+	 *
+	 * @param client the client
+	 */
+	public void removeClient(Connection client) {
+		this.clients.remove(client);
+	}
+
+	/**
+	 * Takes a snapshot of the store and sends each client what changed since
+	 * the last snapshot it acknowledged. Should only be called by the thread
+	 * updating the match, after everything has moved this tick. Clients that
+	 * can only see part of the match are only sent that part, and share the
+	 * message with clients that see the same part.
+	 *
+	 * @param store where the entities are kept
+	 * @param interest what each client can see, or null if they all see
+	 *            everything
+	 */
+	public void replicate(EntityStore store, InterestManager interest) {
+		if (this.clients.isEmpty()) {
+			return;
+		}
+		WorldSnapshot current = WorldSnapshot.capture(this.nextSeq++, store);
+		this.ring.add(current);
+
+		// clients with the same base, view and protocol get the same bytes
+		HashMap<List<Object>, Snapshot> diffs = new HashMap<>();
+		HashMap<List<Object>, PreparedFrame> textFrames = new HashMap<>();
+		HashMap<List<Object>, PreparedFrame> binaryFrames = new HashMap<>();
+		for (Map.Entry<Connection, ClientView> entry : this.clients
+				.entrySet()) {
+			final Connection client = entry.getKey();
+			final ClientView view = entry.getValue();
+			WorldSnapshot base = null;
+			if (view.lastKeyframe >= 0 && current.getSeq()
+					- view.lastKeyframe < Replicator.KEYFRAME_INTERVAL) {
+				base = this.ring.get(view.getAcked());
+			}
+			if (base == null) {
+				view.lastKeyframe = current.getSeq();
+			}
+			view.track(interest == null ? null : interest.copyVisible(client),
+					current.getSeq());
+			final List<Object> key =
+					view.diffKey(base == null ? -1 : base.getSeq());
+			Snapshot msg = diffs.get(key);
+			if (msg == null) {
+				msg = Replicator.diff(base, current, view);
+				diffs.put(key, msg);
+				this.entitiesSent.addAndGet((long) msg.entityCount);
+			}
+			final boolean binary = client.isBinary();
+			HashMap<List<Object>, PreparedFrame> frames =
+					binary ? binaryFrames : textFrames;
+			PreparedFrame frame = frames.get(key);
+			if (frame == null) {
+				frame = binary ? client.prepare(BinaryEncoder.encode(msg))
+						: client.prepareJson(msg);
+				frames.put(key, frame);
+			}
+			this.count(base);
+			view.sent(current.getSeq());
+			client.sendFrame(frame, Replicator.SNAPSHOT_KEY);
+		}
+	}
+}
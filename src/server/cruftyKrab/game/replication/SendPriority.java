@@ -0,0 +1,192 @@
+package cruftyKrab.game.replication;
+
+import java.util.Arrays;
+
+import cruftyKrab.game.EntityRegistry;
+
+/**
+ * Which entities one client is owed a newer position for, and how badly.
+ * Each entity's priority builds up every send it is owed and not sent, more
+ * quickly the closer it is to the client's player, and drops back to zero
+ * once it is sent. When a client can't be sent everything, it gets the
+ * entities with the highest priority first, so nearby entities stay
+ * accurate and far away ones are still sent eventually.
+ *
+ * It also remembers which entities were in the newest move list queued for
+ * the client. If that list is replaced before it goes out, they are owed
+ * again.
+ *
+ * Entities are tracked by slot. Only used by the thread updating the match.
+ *
+ * @author Ches Burks
+ *
+ */
+class SendPriority {
+
+	/**
+	 * An entity this many tiles away builds up priority half as fast as one
+	 * right next to the client's player. ({@value})
+	 */
+	static final float HALF_PRIORITY_DISTANCE = 8.0f;
+
+	/**
+	 * The ID of the entity owed for each slot, or
+	 * {@link EntityRegistry#NO_ID} if nothing is owed.
+	 */
+	private int[] owed;
+	private float[] priority;
+	/**
+	 * The ID of the entity in each slot that is in the newest queued move
+	 * list, or {@link EntityRegistry#NO_ID}.
+	 */
+	private int[] queued;
+	/**
+	 * When the bytes spent below were counted from, in seconds of match time.
+	 */
+	private float round;
+	/**
+	 * How many bytes have been spent on the client during the current send.
+	 */
+	private int spent;
+
+	SendPriority() {
+		this.owed = new int[0];
+		this.priority = new float[0];
+		this.queued = new int[0];
+		this.round = -1;
+		this.spent = 0;
+	}
+
+	/**
+	 * Builds up the priority of an entity the client is owed.
+	 *
+	 * @param slot the slot the entity is in
+	 * @param elapsed how long since the last send, in seconds
+	 * @param distance how far the entity is from the client's player, in
+	 *            tiles, or zero if that isn't known
+	 * @return the new priority
+	 */
+	float age(final int slot, final float elapsed, final float distance) {
+		final float weight =
+				1 / (1 + distance / SendPriority.HALF_PRIORITY_DISTANCE);
+		this.priority[slot] += elapsed * weight;
+		return this.priority[slot];
+	}
+
+	/**
+	 * Forgets that an entity is owed, because the client can't see it. The
+	 * client is sent where it is if it comes back into view.
+	 *
+	 * @param slot the slot the entity is in
+	 */
+	void forget(final int slot) {
+		if (slot < this.owed.length) {
+			this.owed[slot] = EntityRegistry.NO_ID;
+			this.priority[slot] = 0;
+			this.queued[slot] = EntityRegistry.NO_ID;
+		}
+	}
+
+	private void grow(final int slot) {
+		if (slot < this.owed.length) {
+			return;
+		}
+		final int old = this.owed.length;
+		final int size = Math.max(slot + 1, Math.max(16, 2 * old));
+		this.owed = Arrays.copyOf(this.owed, size);
+		this.priority = Arrays.copyOf(this.priority, size);
+		this.queued = Arrays.copyOf(this.queued, size);
+		Arrays.fill(this.owed, old, size, EntityRegistry.NO_ID);
+		Arrays.fill(this.queued, old, size, EntityRegistry.NO_ID);
+	}
+
+	/**
+	 * Returns true if the client is owed a newer position for the entity.
+	 *
+	 * @param slot the slot the entity is in
+	 * @param id the ID of the entity
+	 * @return true if the entity should be sent
+	 */
+	boolean isOwed(final int slot, final int id) {
+		return slot < this.owed.length && this.owed[slot] == id;
+	}
+
+	/**
+	 * Records that the client is owed a newer position for an entity. If a
+	 * different entity was owed in that slot, its priority is dropped.
+	 *
+	 * @param slot the slot the entity is in
+	 * @param id the ID of the entity
+	 */
+	void owe(final int slot, final int id) {
+		this.grow(slot);
+		if (this.owed[slot] != id) {
+			this.owed[slot] = id;
+			this.priority[slot] = 0;
+		}
+	}
+
+	/**
+	 * Records that an entity is in the move list being queued for the client.
+	 *
+	 * @param slot the slot the entity is in
+	 * @param id the ID of the entity
+	 */
+	void queue(final int slot, final int id) {
+		this.grow(slot);
+		this.queued[slot] = id;
+	}
+
+	/**
+	 * Returns how many bytes the client can still be sent during a send.
+	 *
+	 * @param now the match time of the send, in seconds
+	 * @param budget how many bytes the client can be sent each send
+	 * @param queued how many bytes are still waiting to go out to the client
+	 *            from earlier sends
+	 * @return the bytes left, which may be zero
+	 */
+	int remaining(final float now, final int budget, final long queued) {
+		if (now != this.round) {
+			this.round = now;
+			this.spent = 0;
+		}
+		return (int) Math.max(0, budget - this.spent - queued);
+	}
+
+	/**
+	 * Records that an entity was sent, so it is no longer owed.
+	 *
+	 * @param slot the slot the entity is in
+	 */
+	void sent(final int slot) {
+		this.owed[slot] = EntityRegistry.NO_ID;
+		this.priority[slot] = 0;
+	}
+
+	/**
+	 * Records bytes sent to the client during the current send.
+	 *
+	 * @param bytes how many bytes were sent
+	 */
+	void spend(final int bytes) {
+		this.spent += bytes;
+	}
+
+	/**
+	 * Forgets that an entity is in the newest queued move list, because a
+	 * newer list is about to be queued.
+	 *
+	 * @param slot the slot the entity is in
+	 * @param id the ID of the entity
+	 * @return true if the entity was in the list
+	 */
+	boolean unqueue(final int slot, final int id) {
+		if (slot >= this.queued.length) {
+			return false;
+		}
+		final boolean was = this.queued[slot] == id;
+		this.queued[slot] = EntityRegistry.NO_ID;
+		return was;
+	}
+}
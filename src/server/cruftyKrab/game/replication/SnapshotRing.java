@@ -0,0 +1,73 @@
+package cruftyKrab.game.replication;
+
+/**
+ * Holds the most recent snapshots, so that changes can be worked out from
+ * whichever one a client last acknowledged. Older snapshots are overwritten
+ * as new ones are added.
+ *
+ * Only the thread updating the match adds snapshots, but they can be looked
+ * up from anywhere.
+ *
+ * @author Ches Burks
+ *
+ */
+public class SnapshotRing {
+	private final WorldSnapshot[] snapshots;
+
+	/**
+	 * Creates a ring that remembers the given number of snapshots.
+	 *
+	 * @param capacity how many snapshots to keep, at least 1
+	 */
+	public SnapshotRing(final int capacity) {
+		this.snapshots = new WorldSnapshot[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Adds a snapshot, replacing the oldest one if the ring is full.
+	 *
+	 * @param snapshot the snapshot to add
+	 */
+	public synchronized void add(WorldSnapshot snapshot) {
+		this.snapshots[this.index(snapshot.getSeq())] = snapshot;
+	}
+
+	/**
+	 * Forgets all the snapshots.
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < this.snapshots.length; ++i) {
+			this.snapshots[i] = null;
+		}
+	}
+
+	/**
+	 * Returns the snapshot with the given sequence number.
+	 *
+	 * @param seq the sequence number
+	 * @return the snapshot, or null if it was never added or was overwritten
+	 */
+	public synchronized WorldSnapshot get(final int seq) {
+		if (seq < 0) {
+			return null;
+		}
+		WorldSnapshot snap = this.snapshots[this.index(seq)];
+		if (snap == null || snap.getSeq() != seq) {
+			return null;
+		}
+		return snap;
+	}
+
+	/**
+	 * Returns how many snapshots the ring can hold.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return this.snapshots.length;
+	}
+
+	private int index(final int seq) {
+		return Math.floorMod(seq, this.snapshots.length);
+	}
+}
@@ -0,0 +1,118 @@
+package cruftyKrab.game.replication;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import cruftyKrab.game.EntityStore;
+import cruftyKrab.game.Facing;
+import cruftyKrab.game.Mascot;
+
+/**
+ * Where every entity in a match was at one point in time, as clients see it.
+ * Positions are rounded the same way they are when sent, so entities that
+ * only moved a little don't count as changed. Entities are sorted by ID so
+ * that two snapshots can be compared in one pass.
+ *
+ * Snapshots are never changed after being captured, so they can be read from
+ * any thread.
+ *
+ * @author Ches Burks
+ *
+ */
+public final class WorldSnapshot {
+
+	/**
+	 * Stored for entities that aren't facing any way in particular.
+	 */
+	static final byte NO_FACING = -1;
+
+	/**
+	 * Captures the current positions of everything in the store.
+	 *
+	 * @param seq the sequence number of the snapshot
+	 * @param store where the entities are kept
+	 * @return the new snapshot
+	 */
+	public static WorldSnapshot capture(final int seq, EntityStore store) {
+		store.lock();
+		try {
+			final int size = store.size();
+			int[] ids = new int[size];
+			int[] xs = new int[size];
+			int[] ys = new int[size];
+			byte[] facings = new byte[size];
+			// id in the top half, position in the list in the bottom half
+			long[] order = new long[size];
+			// the store is locked, so use its arrays rather than lock per field
+			final Mascot[] mascots = store.getMascots();
+			final float[] storeXs = store.getXs();
+			final float[] storeYs = store.getYs();
+			final byte[] storeFacings = store.getFacingCodes();
+			int n = 0;
+			for (int pass = 0; pass < 2; ++pass) {
+				final boolean enemies = pass == 0;
+				final BitSet kind =
+						enemies ? store.getEnemySlots() : store.getPlayerSlots();
+				int slot = kind.nextSetBit(0);
+				while (slot >= 0 && n < size) {
+					ids[n] = mascots[slot].getId();
+					xs[n] = Math.round(storeXs[slot]);
+					ys[n] = Math.round(storeYs[slot]);
+					final byte code =
+							enemies ? Facing.UP.getCode() : storeFacings[slot];
+					facings[n] = code < 0 ? WorldSnapshot.NO_FACING : code;
+					order[n] = ((long) ids[n] << 32) | n;
+					++n;
+					slot = kind.nextSetBit(slot + 1);
+				}
+			}
+			Arrays.sort(order, 0, n);
+			WorldSnapshot snap = new WorldSnapshot(seq, n);
+			for (int i = 0; i < n; ++i) {
+				final int from = (int) order[i];
+				snap.ids[i] = ids[from];
+				snap.x[i] = xs[from];
+				snap.y[i] = ys[from];
+				snap.facing[i] = facings[from];
+			}
+			return snap;
+		}
+		finally {
+			store.unlock();
+		}
+	}
+
+	private final int seq;
+	private final int count;
+	final int[] ids;
+	final int[] x;
+	final int[] y;
+	final byte[] facing;
+
+	private WorldSnapshot(final int sequence, final int size) {
+		this.seq = sequence;
+		this.count = size;
+		this.ids = new int[size];
+		this.x = new int[size];
+		this.y = new int[size];
+		this.facing = new byte[size];
+	}
+
+	/**
+	 * Returns the number of entities in the snapshot.
+	 *
+	 * @return the entity count
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the sequence number of the snapshot.
+	 *
+	 * @return the sequence number
+	 */
+	public int getSeq() {
+		return this.seq;
+	}
+}
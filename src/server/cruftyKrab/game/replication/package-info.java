@@ -0,0 +1,5 @@
+/**
+ * Keeps clients up to date with the state of a match by sending them only
+ * what changed since the last state they acknowledged.
+ */
+package cruftyKrab.game.replication;
@@ -0,0 +1,69 @@
+package cruftyKrab.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Direct buffers that are reused for encoding messages, so encoding doesn't
+ * allocate a new buffer each time. Only a limited number of buffers are
+ * kept, and buffers that grew very large are let go.
+ *
+ * @author Ches Burks
+ *
+ */
+class BufferPool {
+	/**
+	 * The size of new buffers, in bytes. ({@value})
+	 */
+	static final int BUFFER_SIZE = 16 * 1024;
+	/**
+	 * The largest buffer that is kept, in bytes. ({@value})
+	 */
+	static final int MAX_POOLED_SIZE = 1024 * 1024;
+	/**
+	 * How many free buffers are kept. ({@value})
+	 */
+	static final int MAX_BUFFERS = 32;
+
+	private final ArrayDeque<ByteBuffer> free;
+
+	BufferPool() {
+		this.free = new ArrayDeque<>();
+	}
+
+	/**
+	 * Takes a buffer from the pool, or creates one if there isn't a free one
+	 * big enough.
+	 *
+	 * @param minSize the smallest capacity needed, in bytes
+	 * @return an empty buffer
+	 */
+	ByteBuffer acquire(final int minSize) {
+		synchronized (this) {
+			Iterator<ByteBuffer> it = this.free.iterator();
+			while (it.hasNext()) {
+				ByteBuffer buffer = it.next();
+				if (buffer.capacity() >= minSize) {
+					it.remove();
+					buffer.clear();
+					return buffer;
+				}
+			}
+		}
+		return ByteBuffer.allocateDirect(Math.max(minSize, BufferPool.BUFFER_SIZE));
+	}
+
+	/**
+	 * Returns a buffer to the pool. It must not be used after this.
+	 *
+	 * @param buffer the buffer that is no longer needed
+	 */
+	synchronized void release(ByteBuffer buffer) {
+		if (buffer.capacity() > BufferPool.MAX_POOLED_SIZE
+				|| this.free.size() >= BufferPool.MAX_BUFFERS) {
+			return;
+		}
+		this.free.push(buffer);
+	}
+}
@@ -0,0 +1,94 @@
+package cruftyKrab.network;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How well outbound messages compress and how long compressing them takes,
+ * for each type of message. Used to pick a compression threshold that makes
+ * sense for a deployment, since compression saves bandwidth but costs CPU.
+ *
+ * @author Ches Burks
+ *
+ */
+class CompressionStats {
+
+	private static final class Totals {
+		final AtomicLong messages = new AtomicLong();
+		final AtomicLong compressions = new AtomicLong();
+		final AtomicLong bytesIn = new AtomicLong();
+		final AtomicLong bytesOut = new AtomicLong();
+		final AtomicLong nanos = new AtomicLong();
+	}
+
+	private final ConcurrentHashMap<String, Totals> types;
+
+	CompressionStats() {
+		this.types = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Returns true if no compressed messages have been sent.
+	 *
+	 * @return true if there is nothing to report
+	 */
+	boolean isEmpty() {
+		return this.types.isEmpty();
+	}
+
+	/**
+	 * Records a compressed message being sent to a client.
+	 *
+	 * @param type the type of message
+	 * @param in the size of the message before it was compressed, in bytes
+	 * @param out the size after it was compressed, in bytes
+	 * @param compressed true if it was compressed for this client, false if
+	 *            it reused bytes compressed for another client
+	 * @param nanos how long compressing it took, in nanoseconds
+	 */
+	void record(final String type, final int in, final int out,
+			final boolean compressed, final long nanos) {
+		Totals totals = this.types.computeIfAbsent(type, t -> new Totals());
+		totals.messages.incrementAndGet();
+		totals.bytesIn.addAndGet(in);
+		totals.bytesOut.addAndGet(out);
+		if (compressed) {
+			totals.compressions.incrementAndGet();
+			totals.nanos.addAndGet(nanos);
+		}
+	}
+
+	/**
+	 * Describes the compression of each message type, one line each, with the
+	 * types that saved the most bytes first.
+	 *
+	 * @return the report, which is empty if nothing was compressed
+	 */
+	String report() {
+		ArrayList<Map.Entry<String, Totals>> entries =
+				new ArrayList<>(this.types.entrySet());
+		entries.sort((a, b) -> Long.compare(
+				b.getValue().bytesIn.get() - b.getValue().bytesOut.get(),
+				a.getValue().bytesIn.get() - a.getValue().bytesOut.get()));
+		StringBuilder out = new StringBuilder();
+		for (Map.Entry<String, Totals> entry : entries) {
+			Totals totals = entry.getValue();
+			final long in = totals.bytesIn.get();
+			final long sent = totals.bytesOut.get();
+			final long compressions = totals.compressions.get();
+			if (out.length() > 0) {
+				out.append('\n');
+			}
+			out.append(String.format(
+					"%s: %d messages, %d bytes sent as %d (%.1f%%), "
+							+ "%d compressed at %.1f us each",
+					entry.getKey(), totals.messages.get(), in, sent,
+					in == 0 ? 100.0 : 100.0 * sent / in, compressions,
+					compressions == 0 ? 0.0
+							: totals.nanos.get() / 1000.0 / compressions));
+		}
+		return out.toString();
+	}
+}
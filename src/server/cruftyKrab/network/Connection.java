@@ -1,14 +1,27 @@
 package cruftyKrab.network;
 
+import java.nio.ByteBuffer;
 import java.nio.channels.NotYetConnectedException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.server.WebSocketServer;
 
 import com.google.gson.Gson;
 import com.ikalagaming.event.EventManager;
 import com.ikalagaming.logging.Logging;
 
+import cruftyKrab.network.codec.MessageCodecs;
+import cruftyKrab.network.messages.in.PosUpdate;
+
 /**
  * A connection that is currently made to a client.
  *
@@ -16,24 +29,205 @@ import com.ikalagaming.logging.Logging;
  *
  */
 public class Connection {
+
+	/**
+	 * The default for the most bytes that can be waiting to be sent to a
+	 * client before it is considered too slow. ({@value})
+	 */
+	public static final long DEFAULT_MAX_QUEUED_BYTES = 1024 * 1024;
+
+	/**
+	 * How long a client can stay over its limit before it is disconnected, in
+	 * milliseconds. ({@value})
+	 */
+	public static final long STALL_MILLIS = 5000;
+
+	/**
+	 * The most bytes handed to the socket before waiting for it to write
+	 * them. The rest wait in the queue, where stale updates can still be
+	 * replaced by newer ones. ({@value})
+	 */
+	private static final long WRITE_AHEAD_BYTES = 64 * 1024;
+
+	/**
+	 * How long to wait for the socket to write before trying again, in
+	 * milliseconds. ({@value})
+	 */
+	private static final long RETRY_MILLIS = 5;
+
+	private static final String LOG_NAME = "Connection";
+
+	/**
+	 * Used for anything sent that doesn't have a generated codec. Gson is
+	 * thread safe, so every connection shares one.
+	 */
+	private static final Gson GSON = new Gson();
+
 	private WebSocket connection;
 
+	/**
+	 * The server the socket belongs to, which is told when there is something
+	 * to write. Null if not known.
+	 */
+	private final WebSocketServer server;
+
 	private EventManager manager;
 
 	private ReentrantLock managerLock;
 
-	private Gson gson;
+	/**
+	 * Where game messages from this connection go, or null to send them all
+	 * to the global event manager.
+	 */
+	private volatile MessageHandler handler;
+
+	/**
+	 * The version of the binary protocol the client asked for, or 0 if it
+	 * only understands JSON.
+	 */
+	private volatile int protocolVersion;
 
 	/**
-	 * Constructs a connection to a client.
+	 * Handles messages from the client in order, or null to handle them on
+	 * the calling thread.
+	 */
+	private final SerialExecutor inbound;
+	/**
+	 * Sends messages to the client in order, or null to send them on the
+	 * calling thread.
+	 */
+	private final SerialExecutor outbound;
+	/**
+	 * Used to try writing again later when the socket is busy, or null to
+	 * hand everything to the socket right away.
+	 */
+	private final ScheduledExecutorService writers;
+	/**
+	 * Frames waiting to be written.
+	 */
+	private final OutboundQueue queue;
+	/**
+	 * True while a drain of the queue is waiting to run.
+	 */
+	private final AtomicBoolean drainScheduled;
+	private volatile long maxQueuedBytes;
+	/**
+	 * When the client went over its limit, or 0 if it is under it.
+	 */
+	private volatile long overLimitSince;
+	private final AtomicLong framesCoalesced;
+
+	/**
+	 * The newest position the client sent that the match hasn't read yet.
+	 * Newer positions replace older ones, since only the latest one matters.
+	 */
+	private final AtomicReference<PosUpdate> latestInput;
+	private final AtomicLong inputsReceived;
+	private final AtomicLong inputsCoalesced;
+
+	/**
+	 * Constructs a connection to a client. Messages are handled and sent on
+	 * whatever thread calls this connection.
 	 *
 	 * @param socket the WebSocket to the client
 	 */
 	public Connection(WebSocket socket) {
+		this(socket, null);
+	}
+
+	/**
+	 * Constructs a connection to a client that handles and sends messages
+	 * using threads from the given executor. Messages are still handled and
+	 * sent in order, but a slow client only holds up its own messages.
+	 *
+	 * @param socket the WebSocket to the client
+	 * @param executor the executor to run work on, or null to use the calling
+	 *            thread
+	 */
+	public Connection(WebSocket socket, Executor executor) {
+		this(socket, executor, null, null);
+	}
+
+	/**
+	 * Constructs a connection to a client of the given server, so that
+	 * prepared frames can be written straight to the socket. Messages are
+	 * written by the writer threads, which only hand the socket a little at a
+	 * time so that newer updates can replace older ones that are still
+	 * waiting.
+	 *
+	 * @param socket the WebSocket to the client
+	 * @param executor the executor to handle messages on, or null to use the
+	 *            calling thread
+	 * @param writerThreads the threads that write to sockets, or null to
+	 *            write using the executor
+	 * @param owner the server the socket belongs to, or null if unknown
+	 */
+	Connection(WebSocket socket, Executor executor,
+			ScheduledExecutorService writerThreads, WebSocketServer owner) {
 		this.connection = socket;
+		this.server = owner;
+		this.writers = writerThreads;
+		this.queue = new OutboundQueue();
+		this.drainScheduled = new AtomicBoolean(false);
+		this.maxQueuedBytes = Connection.DEFAULT_MAX_QUEUED_BYTES;
+		this.overLimitSince = 0;
+		this.framesCoalesced = new AtomicLong();
 		this.managerLock = new ReentrantLock();
 		this.manager = EventManager.getInstance();
-		this.gson = new Gson();
+		this.latestInput = new AtomicReference<>();
+		this.inputsReceived = new AtomicLong();
+		this.inputsCoalesced = new AtomicLong();
+		if (executor == null) {
+			this.inbound = null;
+			this.outbound = null;
+		}
+		else {
+			this.inbound = new SerialExecutor(executor);
+			this.outbound = new SerialExecutor(
+					writerThreads == null ? executor : writerThreads);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes the socket has been given but not written
+	 * yet.
+	 */
+	private long backlog() {
+		if (!(this.connection instanceof WebSocketImpl)) {
+			return 0;
+		}
+		long bytes = 0;
+		for (ByteBuffer b : ((WebSocketImpl) this.connection).outQueue) {
+			bytes += b.remaining();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Checks if the client has too much waiting to be sent, and disconnects
+	 * it if it has been that way for too long.
+	 *
+	 * @return true if the client was disconnected
+	 */
+	private boolean checkLimit() {
+		final long waiting = this.queue.getBytes() + this.backlog();
+		if (waiting <= this.maxQueuedBytes) {
+			this.overLimitSince = 0;
+			return false;
+		}
+		final long now = System.currentTimeMillis();
+		if (this.overLimitSince == 0) {
+			this.overLimitSince = now;
+			return false;
+		}
+		if (now - this.overLimitSince < Connection.STALL_MILLIS) {
+			return false;
+		}
+		Logging.warning(Connection.LOG_NAME, "Client is too slow, " + waiting
+				+ " bytes waiting to be sent. Disconnecting.");
+		this.queue.clear();
+		this.close(WSServer.TRY_AGAIN_LATER);
+		return true;
 	}
 
 	/**
@@ -52,12 +246,78 @@ public class Connection {
 	}
 
 	/**
-	 * Get the gson instance from this connection.
+	 * Writes queued frames until the queue is empty or the socket has enough
+	 * to write for now. Runs on the outbound executor.
+	 */
+	private void drain() {
+		this.drainScheduled.set(false);
+		final long writeAhead =
+				this.writers == null ? Long.MAX_VALUE : Connection.WRITE_AHEAD_BYTES;
+		PreparedFrame next;
+		while (this.backlog() < writeAhead
+				&& (next = this.queue.poll()) != null) {
+			this.write(next);
+		}
+		if (this.queue.isEmpty() || this.connection.isClosed()
+				|| this.checkLimit()) {
+			return;
+		}
+		// the socket is still busy, come back once it has had time to write
+		if (this.drainScheduled.compareAndSet(false, true)) {
+			try {
+				this.writers.schedule(() -> this.outbound.execute(this::drain),
+						Connection.RETRY_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			catch (@SuppressWarnings("unused") RejectedExecutionException e) {
+				this.queue.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns how many frames were replaced by a newer one before being sent.
 	 *
-	 * @return the gson instance
+	 * @return the number of dropped frames
 	 */
-	public Gson getGson() {
-		return this.gson;
+	public long getFramesCoalesced() {
+		return this.framesCoalesced.get();
+	}
+
+	/**
+	 * Returns the handler that game messages from this connection go to.
+	 *
+	 * @return the message handler, or null if there is none
+	 */
+	public MessageHandler getHandler() {
+		return this.handler;
+	}
+
+	/**
+	 * Returns the version of the binary protocol used with this client.
+	 *
+	 * @return the protocol version, or 0 for JSON only
+	 */
+	public int getProtocolVersion() {
+		return this.protocolVersion;
+	}
+
+	/**
+	 * Returns how many positions from the client were replaced by a newer one
+	 * before the match read them.
+	 *
+	 * @return the number of dropped positions
+	 */
+	public long getInputsCoalesced() {
+		return this.inputsCoalesced.get();
+	}
+
+	/**
+	 * Returns how many positions the client has sent.
+	 *
+	 * @return the number of positions received
+	 */
+	public long getInputsReceived() {
+		return this.inputsReceived.get();
 	}
 
 	/**
@@ -79,6 +339,156 @@ public class Connection {
 		return mgr;
 	}
 
+	/**
+	 * Runs some work for a message from this client. Work for the same
+	 * connection is always run in the order it was given.
+	 *
+	 * @param task the work to do
+	 */
+	public void handle(Runnable task) {
+		if (this.inbound == null) {
+			task.run();
+		}
+		else {
+			this.inbound.execute(task);
+		}
+	}
+
+	/**
+	 * Returns true if messages that have a binary form should be sent to this
+	 * client in binary.
+	 *
+	 * @return true if the client uses the binary protocol
+	 */
+	public boolean isBinary() {
+		return this.protocolVersion > 0;
+	}
+
+	/**
+	 * Returns true if a frame sent with the given key is still waiting to be
+	 * sent, so the next one sent with that key will replace it.
+	 *
+	 * @param key the key the frame was sent with
+	 * @return true if the frame hasn't gone out yet
+	 * @see #sendFrame(PreparedFrame, Object)
+	 */
+	public boolean isQueued(Object key) {
+		return key != null && this.queue.contains(key);
+	}
+
+	/**
+	 * Stores the newest position sent by the client, replacing any position
+	 * that hasn't been read yet.
+	 *
+	 * @param input the position update
+	 */
+	public void offerInput(PosUpdate input) {
+		this.inputsReceived.incrementAndGet();
+		if (this.latestInput.getAndSet(input) != null) {
+			this.inputsCoalesced.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Encodes a message into a frame that can be sent to this client and any
+	 * other client using the same kind of connection.
+	 *
+	 * @param message the message to encode. Should be JSON.
+	 * @return the prepared frame
+	 */
+	public PreparedFrame prepare(final String message) {
+		return PreparedFrame.prepare(message, this.connection.getDraft());
+	}
+
+	/**
+	 * Encodes a binary message into a frame that can be sent to this client
+	 * and any other client using the same kind of connection.
+	 *
+	 * @param message the bytes to send, which are not changed
+	 * @return the prepared frame
+	 */
+	public PreparedFrame prepare(final ByteBuffer message) {
+		return PreparedFrame.prepare(message, this.connection.getDraft());
+	}
+
+	/**
+	 * Encodes the text written to a frame writer into a frame that can be
+	 * sent to this client and any other client using the same kind of
+	 * connection. The writer can be closed as soon as this returns.
+	 *
+	 * @param message the writer holding the message. Should be JSON.
+	 * @return the prepared frame
+	 */
+	public PreparedFrame prepare(final FrameWriter message) {
+		return message.prepare(this.connection.getDraft());
+	}
+
+	/**
+	 * Converts an object to JSON and encodes it into a frame that can be sent
+	 * to this client and any other client using the same kind of connection.
+	 * The JSON is written straight into a pooled buffer instead of a string,
+	 * by the generated codec for the message. Objects that aren't messages
+	 * fall back to Gson. If the object is a String it is sent as is.
+	 *
+	 * @param toJsonify the object to jsonify
+	 * @return the prepared frame
+	 */
+	public PreparedFrame prepareJson(final Object toJsonify) {
+		if (toJsonify instanceof String) {
+			return this.prepare((String) toJsonify);
+		}
+		try (FrameWriter out = FrameWriter.open()) {
+			if (!MessageCodecs.write(out, toJsonify)) {
+				Connection.GSON.toJson(toJsonify, out);
+			}
+			PreparedFrame frame = this.prepare(out);
+			if (toJsonify != null) {
+				frame.setType(toJsonify.getClass().getSimpleName());
+			}
+			return frame;
+		}
+	}
+
+	/**
+	 * Sends a frame that was already encoded, which is cheaper than sending
+	 * the same message to many clients one at a time. If this connection has
+	 * an executor, the frame is queued and this returns right away.
+	 *
+	 * @param frame the frame to send
+	 */
+	public void sendFrame(final PreparedFrame frame) {
+		this.sendFrame(frame, null);
+	}
+
+	/**
+	 * Sends a frame that only matters until a newer one with the same key is
+	 * sent, like a list of positions. If an older frame with that key is
+	 * still waiting to be sent, it is dropped and only this one is sent.
+	 * Frames without a key are always sent, in order.
+	 *
+	 * @param frame the frame to send
+	 * @param replaces frames with an equal key are replaced by this one if
+	 *            they haven't been sent yet, or null to always send it
+	 */
+	public void sendFrame(final PreparedFrame frame, Object replaces) {
+		if (this.outbound == null) {
+			this.write(frame);
+			return;
+		}
+		if (this.connection.isClosing() || this.connection.isClosed()) {
+			return;
+		}
+		if (this.queue.add(frame, replaces)) {
+			this.framesCoalesced.incrementAndGet();
+		}
+		if (this.checkLimit()) {
+			return;
+		}
+		if (this.drainScheduled.compareAndSet(false, true)) {
+			this.outbound.execute(this::drain);
+		}
+	}
+
 	/**
 	 * Convert an object to JSON and send it to the client. If the object is a
 	 * String it just sends it.
@@ -90,24 +500,53 @@ public class Connection {
 			this.sendMessage((String) toJsonify);
 			return;
 		}
-		this.sendMessage(this.gson.toJson(toJsonify));
+		this.sendFrame(this.prepareJson(toJsonify));
 	}
 
 	/**
-	 * Sends a message to the WebSocket.
+	 * Sends a message to the WebSocket. If this connection has an executor,
+	 * the message is queued and this returns right away.
 	 *
 	 * @param message the string to send. Should be JSON.
 	 */
 	public void sendMessage(final String message) {
-		try {
-			this.connection.send(message);
+		if (this.outbound == null) {
+			this.write(message);
 		}
-		catch (@SuppressWarnings("unused") NotYetConnectedException e) {
-			Logging.warning("Connection",
-					"Sending message to client that hasn't connected yet.");
+		else {
+			this.sendFrame(this.prepare(message));
 		}
 	}
 
+	/**
+	 * Sets the handler that game messages from this connection go to.
+	 * Messages it doesn't handle still go to the global event manager.
+	 *
+	 * @param newHandler the new handler, or null for none
+	 */
+	public void setHandler(MessageHandler newHandler) {
+		this.handler = newHandler;
+	}
+
+	/**
+	 * Sets the most bytes that can be waiting to be sent to this client. If
+	 * it stays over this for {@link #STALL_MILLIS} it is disconnected.
+	 *
+	 * @param bytes the limit
+	 */
+	public void setMaxQueuedBytes(final long bytes) {
+		this.maxQueuedBytes = bytes;
+	}
+
+	/**
+	 * Sets the version of the binary protocol to use with this client.
+	 *
+	 * @param version the protocol version, or 0 for JSON only
+	 */
+	public void setProtocolVersion(final int version) {
+		this.protocolVersion = version;
+	}
+
 	/**
 	 * Sets the manager concerned with messages about this connection.
 	 *
@@ -123,4 +562,55 @@ public class Connection {
 		}
 	}
 
+	/**
+	 * Returns the number of bytes waiting in this connection's queue, not
+	 * counting what has been handed to the socket.
+	 *
+	 * @return the bytes waiting to be sent
+	 */
+	public long getQueuedBytes() {
+		return this.queue.getBytes();
+	}
+
+	/**
+	 * Returns the newest position sent by the client and clears it, so each
+	 * position is only read once.
+	 *
+	 * @return the newest position, or null if none was sent since the last
+	 *         call
+	 */
+	public PosUpdate takeInput() {
+		return this.latestInput.getAndSet(null);
+	}
+
+	/**
+	 * Actually writes a prepared frame to the socket.
+	 *
+	 * @param frame the frame to send
+	 */
+	private void write(final PreparedFrame frame) {
+		try {
+			frame.writeTo(this.connection, this.server);
+		}
+		catch (@SuppressWarnings("unused") NotYetConnectedException e) {
+			Logging.warning(Connection.LOG_NAME,
+					"Sending message to client that hasn't connected yet.");
+		}
+	}
+
+	/**
+	 * Actually writes a message to the socket.
+	 *
+	 * @param message the string to send
+	 */
+	private void write(final String message) {
+		try {
+			this.connection.send(message);
+		}
+		catch (@SuppressWarnings("unused") NotYetConnectedException e) {
+			Logging.warning(Connection.LOG_NAME,
+					"Sending message to client that hasn't connected yet.");
+		}
+	}
+
 }
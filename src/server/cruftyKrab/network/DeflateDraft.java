@@ -0,0 +1,517 @@
+package cruftyKrab.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.java_websocket.drafts.Draft_17;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.InvalidFrameException;
+import org.java_websocket.exceptions.InvalidHandshakeException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.FrameBuilder;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.HandshakeBuilder;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
+
+/**
+ * The RFC 6455 draft with the {@code permessage-deflate} extension from RFC
+ * 7692. If the client offers the extension, outbound messages at least as
+ * big as the threshold are compressed, and compressed messages from the
+ * client are decompressed before the library sees them.
+ *
+ * With context takeover each client keeps one compressor for the whole
+ * connection, so later messages can refer back to earlier ones. That
+ * compresses the repetitive game messages much better, but every message
+ * has to be compressed once per client. Without it each message is
+ * compressed on its own, so a message broadcast to many clients is only
+ * compressed once.
+ *
+ * This keeps state for a connection, so the server gives each connection its
+ * own {@link #copy() copy} of the draft it was created with.
+ *
+ * @author Ches Burks
+ *
+ */
+public class DeflateDraft extends Draft_17 {
+
+	/**
+	 * The name of the extension.
+	 */
+	public static final String EXTENSION = "permessage-deflate";
+
+	/**
+	 * The default size a message has to be before it is compressed, in bytes.
+	 * ({@value})
+	 */
+	public static final int DEFAULT_THRESHOLD = 512;
+
+	/**
+	 * The largest message a client can send, after it is decompressed, in
+	 * bytes. ({@value})
+	 */
+	static final int MAX_MESSAGE_BYTES = 1024 * 1024;
+
+	/**
+	 * The header the extension is negotiated with.
+	 */
+	private static final String HEADER = "Sec-WebSocket-Extensions";
+
+	/**
+	 * The bit in the first byte of a frame that marks a compressed message.
+	 */
+	private static final int RSV1 = 0x40;
+
+	/**
+	 * The end of a sync flush, which is left off of every compressed message.
+	 */
+	private static final byte[] TAIL = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+
+	/**
+	 * Returns the number of bytes in the frame at the start of the buffer,
+	 * if enough of it is there to tell.
+	 *
+	 * @param data the bytes read from the client
+	 * @return the size of the frame including its header, or -1 if the
+	 *         header isn't all there yet
+	 * @throws InvalidDataException if the frame is too big
+	 */
+	private static long frameLength(ByteBuffer data)
+			throws InvalidDataException {
+		final int start = data.position();
+		if (data.remaining() < 2) {
+			return -1;
+		}
+		final int second = data.get(start + 1) & 0xFF;
+		// frames from clients are masked
+		long header = 2 + ((second & 0x80) != 0 ? 4 : 0);
+		long payload = second & 0x7F;
+		if (payload == 126) {
+			if (data.remaining() < 4) {
+				return -1;
+			}
+			payload = data.getShort(start + 2) & 0xFFFF;
+			header += 2;
+		}
+		else if (payload == 127) {
+			if (data.remaining() < 10) {
+				return -1;
+			}
+			payload = data.getLong(start + 2);
+			header += 8;
+		}
+		if (payload < 0 || payload > DeflateDraft.MAX_MESSAGE_BYTES) {
+			throw new InvalidDataException(CloseFrame.TOOBIG,
+					"Frame is too large");
+		}
+		return header + payload;
+	}
+
+	private final int threshold;
+	private final boolean contextTakeover;
+	private final CompressionStats stats;
+
+	private volatile boolean negotiated;
+	/**
+	 * True if the compressor starts over for each message.
+	 */
+	private boolean resetCompressor;
+	/**
+	 * True if the client starts its compressor over for each message.
+	 */
+	private boolean resetDecompressor;
+	/**
+	 * Created the first time a message is compressed, and only used while
+	 * holding the lock on this draft.
+	 */
+	private Deflater deflater;
+	/**
+	 * Only used by the thread reading from the socket.
+	 */
+	private Inflater inflater;
+	/**
+	 * True while the fragments of a compressed message are being read.
+	 */
+	private boolean inflating;
+	private int inflatedBytes;
+	/**
+	 * The start of a frame that hasn't all been read yet, or null.
+	 */
+	private ByteBuffer partial;
+
+	/**
+	 * Creates a draft that compresses messages at least the given size.
+	 *
+	 * @param minSize the smallest message to compress, in bytes, or less
+	 *            than zero to never negotiate compression
+	 * @param takeover true to keep the compression context between
+	 *            messages, false to compress each message on its own
+	 */
+	public DeflateDraft(final int minSize, final boolean takeover) {
+		this(minSize, takeover, new CompressionStats());
+	}
+
+	private DeflateDraft(final int minSize, final boolean takeover,
+			CompressionStats totals) {
+		this.threshold = minSize;
+		this.contextTakeover = takeover;
+		this.stats = totals;
+		this.negotiated = false;
+	}
+
+	/**
+	 * Creates a new draft for a connection, with the same settings as this
+	 * one and sharing its statistics.
+	 *
+	 * @return the new draft
+	 */
+	DeflateDraft copy() {
+		return new DeflateDraft(this.threshold, this.contextTakeover,
+				this.stats);
+	}
+
+	/**
+	 * Compresses a message, which stays in the compression context unless it
+	 * is reset for each message.
+	 *
+	 * @param payload the message
+	 * @return the compressed message, without the end of the flush
+	 */
+	private ByteBuffer deflate(ByteBuffer payload) {
+		if (this.deflater == null) {
+			this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		}
+		else if (this.resetCompressor) {
+			this.deflater.reset();
+		}
+		this.deflater.setInput(payload);
+		ByteBuffer out = ByteBuffer.allocate(payload.remaining() / 2 + 64);
+		while (true) {
+			this.deflater.deflate(out, Deflater.SYNC_FLUSH);
+			if (out.hasRemaining()) {
+				break;
+			}
+			ByteBuffer bigger = ByteBuffer.allocate(2 * out.capacity());
+			out.flip();
+			bigger.put(out);
+			out = bigger;
+		}
+		out.flip();
+		out.limit(out.limit() - DeflateDraft.TAIL.length);
+		return out;
+	}
+
+	/**
+	 * Returns the bytes to send to the client for a frame, which are
+	 * compressed if the extension was negotiated and the message is big
+	 * enough. When the context is kept between messages they have to reach
+	 * the socket in the order they were compressed, so callers hold the lock
+	 * on this draft until the bytes are queued.
+	 *
+	 * @param frame the frame to send
+	 * @return the bytes to write, which may be shared with other clients
+	 */
+	synchronized ByteBuffer encode(PreparedFrame frame) {
+		final ByteBuffer raw = frame.getFrame();
+		final ByteBuffer payload = frame.getPayload();
+		if (!this.negotiated || payload == null
+				|| payload.remaining() < this.threshold) {
+			return raw;
+		}
+		final String type = frame.getStatsType();
+		if (this.resetCompressor) {
+			ByteBuffer shared = frame.getDeflated();
+			if (shared != null) {
+				this.stats.record(type, raw.remaining(), shared.remaining(), false,
+						0);
+				return shared;
+			}
+		}
+		final long start = System.nanoTime();
+		ByteBuffer compressed = PreparedFrame.frame(
+				DeflateDraft.RSV1 | PreparedFrame.firstByte(frame.isBinary()),
+				this.deflate(payload));
+		final long nanos = System.nanoTime() - start;
+		if (this.resetCompressor) {
+			// nothing depends on it, so it can be sent as is if that is smaller
+			if (compressed.remaining() >= raw.remaining()) {
+				compressed = raw;
+			}
+			frame.setDeflated(compressed);
+		}
+		this.stats.record(type, raw.remaining(), compressed.remaining(), true,
+				nanos);
+		return compressed;
+	}
+
+	/**
+	 * Returns the statistics shared by this draft and its copies.
+	 *
+	 * @return the compression statistics
+	 */
+	CompressionStats getStats() {
+		return this.stats;
+	}
+
+	/**
+	 * Decompresses one frame of a compressed message.
+	 *
+	 * @param payload the compressed bytes
+	 * @param last true if this is the end of the message
+	 * @return the decompressed bytes
+	 * @throws InvalidDataException if the data is bad or too big
+	 */
+	private ByteBuffer inflate(ByteBuffer payload, final boolean last)
+			throws InvalidDataException {
+		if (this.inflater == null) {
+			this.inflater = new Inflater(true);
+		}
+		ByteBuffer out = ByteBuffer.allocate(Math.min(
+				Math.max(64, 4 * payload.remaining()),
+				DeflateDraft.MAX_MESSAGE_BYTES - this.inflatedBytes));
+		try {
+			out = this.inflateInto(payload, out);
+			if (last) {
+				out = this.inflateInto(ByteBuffer.wrap(DeflateDraft.TAIL), out);
+			}
+		}
+		catch (DataFormatException e) {
+			throw new InvalidFrameException("Bad compressed data", e);
+		}
+		this.inflatedBytes += out.position();
+		// the library assumes the capacity is the size when joining fragments
+		return ByteBuffer.wrap(Arrays.copyOf(out.array(), out.position()));
+	}
+
+	/**
+	 * Feeds the inflater all of the input, growing the output as needed.
+	 */
+	private ByteBuffer inflateInto(ByteBuffer in, ByteBuffer out)
+			throws DataFormatException, InvalidDataException {
+		this.inflater.setInput(in);
+		while (true) {
+			if (!out.hasRemaining()) {
+				final int room =
+						DeflateDraft.MAX_MESSAGE_BYTES - this.inflatedBytes;
+				if (out.capacity() >= room) {
+					throw new InvalidDataException(CloseFrame.TOOBIG,
+							"Message is too large");
+				}
+				ByteBuffer bigger =
+						ByteBuffer.allocate(Math.min(2 * out.capacity(), room));
+				out.flip();
+				bigger.put(out);
+				out = bigger;
+			}
+			this.inflater.inflate(out);
+			if (this.inflater.finished()) {
+				return out;
+			}
+			if (this.inflater.needsDictionary()) {
+				throw new DataFormatException("Needs a dictionary");
+			}
+			// a full buffer might mean there is more output waiting
+			if (this.inflater.needsInput() && out.hasRemaining()) {
+				return out;
+			}
+		}
+	}
+
+	/**
+	 * Decompresses a frame if it is part of a compressed message.
+	 *
+	 * @param frame the frame read by the library
+	 * @param compressed true if the frame had the compressed bit set
+	 * @return the frame, with its payload decompressed
+	 * @throws InvalidDataException if the frame is not valid
+	 */
+	private Framedata inflate(Framedata frame, final boolean compressed)
+			throws InvalidDataException {
+		final Framedata.Opcode opcode = frame.getOpcode();
+		if (opcode != Framedata.Opcode.TEXT && opcode != Framedata.Opcode.BINARY
+				&& opcode != Framedata.Opcode.CONTINUOUS) {
+			if (compressed) {
+				throw new InvalidFrameException("Compressed control frame");
+			}
+			return frame;
+		}
+		if (opcode != Framedata.Opcode.CONTINUOUS) {
+			this.inflating = compressed;
+			this.inflatedBytes = 0;
+		}
+		else if (compressed) {
+			throw new InvalidFrameException("Compressed continuation frame");
+		}
+		if (!this.inflating) {
+			return frame;
+		}
+		((FrameBuilder) frame).setPayload(
+				this.inflate(frame.getPayloadData(), frame.isFin()));
+		if (frame.isFin()) {
+			this.inflating = false;
+			if (this.resetDecompressor || this.inflater.finished()) {
+				this.inflater.reset();
+			}
+		}
+		return frame;
+	}
+
+	/**
+	 * Returns true if the client agreed to compress messages.
+	 *
+	 * @return true if the extension is in use
+	 */
+	public boolean isNegotiated() {
+		return this.negotiated;
+	}
+
+	/**
+	 * Picks the first offer of the extension that can be used, and works out
+	 * the parameters to reply with.
+	 *
+	 * @param header the extensions the client offered
+	 * @return the reply, or null if none of the offers can be used
+	 */
+	private String negotiate(final String header) {
+		if (header == null || header.isEmpty()) {
+			return null;
+		}
+		for (String offer : header.split(",")) {
+			String[] params = offer.split(";");
+			if (!params[0].trim().equalsIgnoreCase(DeflateDraft.EXTENSION)) {
+				continue;
+			}
+			boolean serverReset = !this.contextTakeover;
+			boolean clientReset = !this.contextTakeover;
+			boolean usable = true;
+			for (int i = 1; i < params.length && usable; ++i) {
+				final String param = params[i].trim();
+				final int split = param.indexOf('=');
+				final String name =
+						(split < 0 ? param : param.substring(0, split)).trim();
+				final String value = split < 0 ? null
+						: param.substring(split + 1).trim().replace("\"", "");
+				switch (name.toLowerCase()) {
+					case "server_no_context_takeover":
+						serverReset = true;
+						break;
+					case "client_no_context_takeover":
+						clientReset = true;
+						break;
+					case "client_max_window_bits":
+						// the inflater can read any window size
+						break;
+					case "server_max_window_bits":
+						// the deflater always uses the largest window
+						usable = "15".equals(value);
+						break;
+					default:
+						usable = false;
+				}
+			}
+			if (!usable) {
+				continue;
+			}
+			this.resetCompressor = serverReset;
+			this.resetDecompressor = clientReset;
+			StringBuilder reply = new StringBuilder(DeflateDraft.EXTENSION);
+			if (serverReset) {
+				reply.append("; server_no_context_takeover");
+			}
+			if (clientReset) {
+				reply.append("; client_no_context_takeover");
+			}
+			return reply.toString();
+		}
+		return null;
+	}
+
+	@Override
+	public HandshakeBuilder postProcessHandshakeResponseAsServer(
+			ClientHandshake request, ServerHandshakeBuilder response)
+			throws InvalidHandshakeException {
+		HandshakeBuilder built =
+				super.postProcessHandshakeResponseAsServer(request, response);
+		this.negotiated = false;
+		if (this.threshold >= 0) {
+			final String reply =
+					this.negotiate(request.getFieldValue(DeflateDraft.HEADER));
+			if (reply != null) {
+				built.put(DeflateDraft.HEADER, reply);
+				this.negotiated = true;
+			}
+		}
+		return built;
+	}
+
+	/**
+	 * Frees the compressor once the connection is closed. The decompressor
+	 * is left for the garbage collector, since the socket might still be
+	 * reading.
+	 */
+	synchronized void release() {
+		if (this.deflater != null) {
+			this.deflater.end();
+			this.deflater = null;
+		}
+		this.negotiated = false;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		this.partial = null;
+		this.inflating = false;
+	}
+
+	/**
+	 * Splits the bytes read from the client into frames. The library rejects
+	 * frames with the compressed bit set, so it is cleared before the library
+	 * reads each frame, and the payload is decompressed afterwards.
+	 */
+	@Override
+	public List<Framedata> translateFrame(ByteBuffer buffer)
+			throws InvalidDataException {
+		if (!this.negotiated) {
+			return super.translateFrame(buffer);
+		}
+		ByteBuffer data = buffer;
+		if (this.partial != null) {
+			data = ByteBuffer
+					.allocate(this.partial.remaining() + buffer.remaining());
+			data.put(this.partial);
+			data.put(buffer);
+			data.flip();
+			this.partial = null;
+		}
+		List<Framedata> frames = new ArrayList<>();
+		long length;
+		while ((length = DeflateDraft.frameLength(data)) >= 0
+				&& length <= data.remaining()) {
+			// a copy, so the bit can be cleared without touching the input
+			ByteBuffer single = ByteBuffer.allocate((int) length);
+			ByteBuffer view = data.duplicate();
+			view.limit(view.position() + (int) length);
+			single.put(view);
+			single.flip();
+			data.position(data.position() + (int) length);
+			final byte first = single.get(0);
+			single.put(0, (byte) (first & ~DeflateDraft.RSV1));
+			for (Framedata frame : super.translateFrame(single)) {
+				frames.add(this.inflate(frame,
+						(first & DeflateDraft.RSV1) != 0));
+			}
+		}
+		if (data.hasRemaining()) {
+			this.partial = ByteBuffer.allocate(data.remaining());
+			this.partial.put(data);
+			this.partial.flip();
+		}
+		return frames;
+	}
+}
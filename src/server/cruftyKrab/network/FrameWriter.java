@@ -0,0 +1,324 @@
+package cruftyKrab.network;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.java_websocket.drafts.Draft;
+
+/**
+ * Writes the text of a message as UTF-8 straight into a pooled direct buffer,
+ * which is turned into a {@link PreparedFrame} once the message is done. It
+ * can be given to Gson as the place to write JSON, and messages built by hand
+ * can write fragments that were encoded ahead of time with
+ * {@link #writeBytes(byte[])}, so no strings are made along the way.
+ *
+ * Writers should be closed once the frame is prepared, which gives the
+ * buffer back to the pool.
+ *
+ * @author Ches Burks
+ *
+ */
+public final class FrameWriter extends Writer {
+
+	private static final BufferPool POOL = new BufferPool();
+
+	/**
+	 * The largest whole number that Double.toString writes without an
+	 * exponent. ({@value})
+	 */
+	private static final double MAX_PLAIN_DOUBLE = 1e7;
+
+	/**
+	 * What to write instead of each ASCII character in a string, or null if
+	 * it can be written as is. The same characters are escaped as Gson does
+	 * by default, which includes the ones that matter in HTML.
+	 */
+	private static final byte[][] ESCAPES = new byte[128][];
+	private static final char LINE_SEPARATOR = 0x2028;
+	private static final char PARAGRAPH_SEPARATOR = 0x2029;
+	private static final byte[] LINE_SEPARATOR_ESCAPE =
+			FrameWriter.encode("\\u2028");
+	private static final byte[] PARAGRAPH_SEPARATOR_ESCAPE =
+			FrameWriter.encode("\\u2029");
+
+	static {
+		for (int c = 0; c < 0x20; ++c) {
+			FrameWriter.ESCAPES[c] =
+					FrameWriter.encode(String.format("\\u%04x", c));
+		}
+		FrameWriter.ESCAPES['"'] = FrameWriter.encode("\\\"");
+		FrameWriter.ESCAPES['\\'] = FrameWriter.encode("\\\\");
+		FrameWriter.ESCAPES['\t'] = FrameWriter.encode("\\t");
+		FrameWriter.ESCAPES['\b'] = FrameWriter.encode("\\b");
+		FrameWriter.ESCAPES['\n'] = FrameWriter.encode("\\n");
+		FrameWriter.ESCAPES['\r'] = FrameWriter.encode("\\r");
+		FrameWriter.ESCAPES['\f'] = FrameWriter.encode("\\f");
+		FrameWriter.ESCAPES['<'] = FrameWriter.encode("\\u003c");
+		FrameWriter.ESCAPES['>'] = FrameWriter.encode("\\u003e");
+		FrameWriter.ESCAPES['&'] = FrameWriter.encode("\\u0026");
+		FrameWriter.ESCAPES['='] = FrameWriter.encode("\\u003d");
+		FrameWriter.ESCAPES['\''] = FrameWriter.encode("\\u0027");
+	}
+
+	/**
+	 * Encodes text that never changes, such as the names of fields, so it can
+	 * be written with {@link #writeBytes(byte[])}.
+	 *
+	 * @param fragment the text
+	 * @return the UTF-8 bytes of the text
+	 */
+	public static byte[] encode(String fragment) {
+		return fragment.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Creates a writer with an empty buffer from the pool.
+	 *
+	 * @return the new writer
+	 */
+	public static FrameWriter open() {
+		return new FrameWriter(FrameWriter.POOL.acquire(BufferPool.BUFFER_SIZE));
+	}
+
+	private ByteBuffer buffer;
+	/**
+	 * The first half of a character that takes two chars, or 0 if the last
+	 * char written was not one.
+	 */
+	private char highSurrogate;
+	/**
+	 * Digits of a number being written, in reverse.
+	 */
+	private final byte[] digits;
+
+	private FrameWriter(ByteBuffer start) {
+		this.buffer = start;
+		this.highSurrogate = 0;
+		this.digits = new byte[20];
+	}
+
+	/**
+	 * Gives the buffer back to the pool. Nothing can be written after this.
+	 */
+	@Override
+	public void close() {
+		if (this.buffer != null) {
+			FrameWriter.POOL.release(this.buffer);
+			this.buffer = null;
+		}
+	}
+
+	private void ensure(final int extra) {
+		if (this.buffer.remaining() >= extra) {
+			return;
+		}
+		ByteBuffer bigger = FrameWriter.POOL.acquire(Math
+				.max(this.buffer.capacity() * 2, this.buffer.position() + extra));
+		this.buffer.flip();
+		bigger.put(this.buffer);
+		FrameWriter.POOL.release(this.buffer);
+		this.buffer = bigger;
+	}
+
+	@Override
+	public void flush() {
+		// everything is already in the buffer
+	}
+
+	/**
+	 * Encodes what was written into a frame.
+	 *
+	 * @param draft the draft of the sockets it will be sent to, or null to
+	 *            not encode it
+	 * @return the prepared frame
+	 */
+	PreparedFrame prepare(Draft draft) {
+		ByteBuffer text = this.buffer.duplicate();
+		text.flip();
+		return PreparedFrame.prepareText(text, draft);
+	}
+
+	/**
+	 * Returns how many bytes have been written.
+	 *
+	 * @return the size of the message so far
+	 */
+	public int size() {
+		return this.buffer.position();
+	}
+
+	@Override
+	public void write(final char[] cbuf, final int off, final int len) {
+		for (int i = off; i < off + len; ++i) {
+			this.write(cbuf[i]);
+		}
+	}
+
+	@Override
+	public void write(final int c) {
+		final char ch = (char) c;
+		if (this.highSurrogate != 0) {
+			final char high = this.highSurrogate;
+			this.highSurrogate = 0;
+			if (Character.isLowSurrogate(ch)) {
+				final int code = Character.toCodePoint(high, ch);
+				this.ensure(4);
+				this.buffer.put((byte) (0xF0 | (code >> 18)));
+				this.buffer.put((byte) (0x80 | ((code >> 12) & 0x3F)));
+				this.buffer.put((byte) (0x80 | ((code >> 6) & 0x3F)));
+				this.buffer.put((byte) (0x80 | (code & 0x3F)));
+				return;
+			}
+			this.writeByte('?');
+		}
+		if (ch < 0x80) {
+			this.writeByte(ch);
+		}
+		else if (ch < 0x800) {
+			this.ensure(2);
+			this.buffer.put((byte) (0xC0 | (ch >> 6)));
+			this.buffer.put((byte) (0x80 | (ch & 0x3F)));
+		}
+		else if (Character.isHighSurrogate(ch)) {
+			this.highSurrogate = ch;
+		}
+		else if (Character.isLowSurrogate(ch)) {
+			this.writeByte('?');
+		}
+		else {
+			this.ensure(3);
+			this.buffer.put((byte) (0xE0 | (ch >> 12)));
+			this.buffer.put((byte) (0x80 | ((ch >> 6) & 0x3F)));
+			this.buffer.put((byte) (0x80 | (ch & 0x3F)));
+		}
+	}
+
+	@Override
+	public void write(final String str, final int off, final int len) {
+		this.ensure(len);
+		for (int i = off; i < off + len; ++i) {
+			final char ch = str.charAt(i);
+			if (ch < 0x80 && this.highSurrogate == 0) {
+				// the buffer has room for at least one byte per char
+				if (!this.buffer.hasRemaining()) {
+					this.ensure(len - (i - off));
+				}
+				this.buffer.put((byte) ch);
+			}
+			else {
+				this.write(ch);
+			}
+		}
+	}
+
+	/**
+	 * Writes one byte, which should be an ASCII character.
+	 *
+	 * @param value the byte
+	 */
+	public void writeByte(final int value) {
+		this.ensure(1);
+		this.buffer.put((byte) value);
+	}
+
+	/**
+	 * Writes bytes that are already UTF-8, such as a fragment from
+	 * {@link #encode(String)}.
+	 *
+	 * @param fragment the bytes to write
+	 */
+	public void writeBytes(final byte[] fragment) {
+		this.ensure(fragment.length);
+		this.buffer.put(fragment);
+	}
+
+	/**
+	 * Writes a number the same way Gson does, which is the same as
+	 * Double.toString. Whole numbers, which are most of what is sent, are
+	 * written without making a string.
+	 *
+	 * @param value the number
+	 * @throws IllegalArgumentException if the value is NaN or infinite, which
+	 *             JSON can't hold
+	 */
+	public void writeDouble(final double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			throw new IllegalArgumentException(
+					"JSON forbids NaN and infinities: " + value);
+		}
+		if (value == Math.rint(value)
+				&& Math.abs(value) < FrameWriter.MAX_PLAIN_DOUBLE) {
+			if (value == 0 && 1 / value < 0) {
+				// negative zero
+				this.writeByte('-');
+			}
+			this.writeLong((long) value);
+			this.writeByte('.');
+			this.writeByte('0');
+			return;
+		}
+		final String digitString = Double.toString(value);
+		this.write(digitString, 0, digitString.length());
+	}
+
+	/**
+	 * Writes a whole number in decimal.
+	 *
+	 * @param value the number
+	 */
+	public void writeLong(final long value) {
+		if (value == Long.MIN_VALUE) {
+			final String digitString = Long.toString(value);
+			this.write(digitString, 0, digitString.length());
+			return;
+		}
+		long left = value < 0 ? -value : value;
+		int count = 0;
+		do {
+			this.digits[count++] = (byte) ('0' + (left % 10));
+			left /= 10;
+		} while (left > 0);
+		this.ensure(count + 1);
+		if (value < 0) {
+			this.buffer.put((byte) '-');
+		}
+		while (count > 0) {
+			this.buffer.put(this.digits[--count]);
+		}
+	}
+
+	/**
+	 * Writes a string as a quoted JSON value, escaped the same way Gson
+	 * does.
+	 *
+	 * @param value the string, which must not be null
+	 */
+	public void writeString(final String value) {
+		this.writeByte('"');
+		final int length = value.length();
+		for (int i = 0; i < length; ++i) {
+			final char ch = value.charAt(i);
+			if (ch < 0x80) {
+				final byte[] escape = FrameWriter.ESCAPES[ch];
+				if (escape == null) {
+					this.writeByte(ch);
+				}
+				else {
+					this.writeBytes(escape);
+				}
+			}
+			else if (ch == FrameWriter.LINE_SEPARATOR) {
+				// valid in JSON but not in JavaScript strings
+				this.writeBytes(FrameWriter.LINE_SEPARATOR_ESCAPE);
+			}
+			else if (ch == FrameWriter.PARAGRAPH_SEPARATOR) {
+				this.writeBytes(FrameWriter.PARAGRAPH_SEPARATOR_ESCAPE);
+			}
+			else {
+				this.write(ch);
+			}
+		}
+		this.writeByte('"');
+	}
+}
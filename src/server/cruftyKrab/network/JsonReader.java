@@ -0,0 +1,458 @@
+package cruftyKrab.network;
+
+/**
+ * Reads JSON from a string one token at a time, without building a tree of
+ * objects or using reflection. Names can be compared in place, so reading a
+ * message with known fields only creates objects for the string values.
+ *
+ * This is lenient about commas, and is only meant for the small flat
+ * messages sent by clients. Malformed input throws an
+ * {@link IllegalArgumentException}.
+ *
+ * @author Ches Burks
+ *
+ */
+public class JsonReader {
+
+	/**
+	 * The most digits that fit in a long without losing any. ({@value})
+	 */
+	private static final int MAX_FAST_DIGITS = 15;
+
+	/**
+	 * Powers of ten that can be represented exactly as doubles.
+	 */
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	private String text;
+	private int pos;
+	/**
+	 * Where the last name read starts in the text, not including quotes.
+	 */
+	private int nameStart;
+	private int nameLength;
+	/**
+	 * The last name read if it had escapes in it, otherwise null.
+	 */
+	private String escapedName;
+
+	/**
+	 * Creates a reader for some JSON.
+	 *
+	 * @param json the text to read
+	 */
+	public JsonReader(String json) {
+		this.reset(json);
+	}
+
+	/**
+	 * Reads the start of an array.
+	 */
+	public void beginArray() {
+		this.expect('[');
+	}
+
+	/**
+	 * Reads the start of an object.
+	 */
+	public void beginObject() {
+		this.expect('{');
+	}
+
+	/**
+	 * Reads the end of an array.
+	 */
+	public void endArray() {
+		this.skipWhitespace();
+		if (this.pos < this.text.length() && this.text.charAt(this.pos) == ',') {
+			++this.pos;
+		}
+		this.expect(']');
+	}
+
+	/**
+	 * Reads the end of an object.
+	 */
+	public void endObject() {
+		this.skipWhitespace();
+		if (this.pos < this.text.length() && this.text.charAt(this.pos) == ',') {
+			++this.pos;
+		}
+		this.expect('}');
+	}
+
+	private void expect(final char c) {
+		this.skipWhitespace();
+		if (this.pos >= this.text.length() || this.text.charAt(this.pos) != c) {
+			throw this.error("Expected '" + c + "'");
+		}
+		++this.pos;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at " + this.pos);
+	}
+
+	/**
+	 * Returns true if there is another name or value in the current object or
+	 * array.
+	 *
+	 * @return true if there is more to read
+	 */
+	public boolean hasNext() {
+		this.skipWhitespace();
+		if (this.pos < this.text.length() && this.text.charAt(this.pos) == ',') {
+			++this.pos;
+			this.skipWhitespace();
+		}
+		if (this.pos >= this.text.length()) {
+			throw this.error("Unexpected end");
+		}
+		final char c = this.text.charAt(this.pos);
+		return c != '}' && c != ']';
+	}
+
+	/**
+	 * Returns true if the last name read is the given name.
+	 *
+	 * @param name the name to compare to
+	 * @return true if they are the same
+	 */
+	public boolean nameEquals(String name) {
+		if (this.escapedName != null) {
+			return this.escapedName.equals(name);
+		}
+		return this.nameLength == name.length() && this.text
+				.regionMatches(this.nameStart, name, 0, this.nameLength);
+	}
+
+	/**
+	 * Reads true or false.
+	 *
+	 * @return the value read
+	 */
+	public boolean nextBoolean() {
+		this.skipWhitespace();
+		if (this.text.startsWith("true", this.pos)) {
+			this.pos += 4;
+			return true;
+		}
+		if (this.text.startsWith("false", this.pos)) {
+			this.pos += 5;
+			return false;
+		}
+		throw this.error("Expected a boolean");
+	}
+
+	/**
+	 * Reads a number.
+	 *
+	 * @return the value read
+	 */
+	public double nextDouble() {
+		this.skipWhitespace();
+		final int start = this.pos;
+		final int len = this.text.length();
+		boolean negative = false;
+		if (this.pos < len && this.text.charAt(this.pos) == '-') {
+			negative = true;
+			++this.pos;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean simple = true;
+		char c;
+		while (this.pos < len && (c = this.text.charAt(this.pos)) >= '0'
+				&& c <= '9') {
+			mantissa = mantissa * 10 + (c - '0');
+			++digits;
+			++this.pos;
+		}
+		if (this.pos < len && this.text.charAt(this.pos) == '.') {
+			++this.pos;
+			while (this.pos < len && (c = this.text.charAt(this.pos)) >= '0'
+					&& c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				++digits;
+				++scale;
+				++this.pos;
+			}
+		}
+		if (this.pos < len && ((c = this.text.charAt(this.pos)) == 'e'
+				|| c == 'E')) {
+			// rare enough to leave to the library
+			simple = false;
+			++this.pos;
+			if (this.pos < len && ((c = this.text.charAt(this.pos)) == '+'
+					|| c == '-')) {
+				++this.pos;
+			}
+			while (this.pos < len && (c = this.text.charAt(this.pos)) >= '0'
+					&& c <= '9') {
+				++this.pos;
+			}
+		}
+		if (this.pos == start || (negative && this.pos == start + 1)) {
+			throw this.error("Expected a number");
+		}
+		if (simple && digits <= JsonReader.MAX_FAST_DIGITS
+				&& scale < JsonReader.POWERS_OF_TEN.length) {
+			// both parts are exact, so the division rounds correctly
+			final double value = mantissa / JsonReader.POWERS_OF_TEN[scale];
+			return negative ? -value : value;
+		}
+		try {
+			return Double.parseDouble(this.text.substring(start, this.pos));
+		}
+		catch (NumberFormatException e) {
+			throw this.error("Bad number (" + e.getMessage() + ")");
+		}
+	}
+
+	/**
+	 * Reads a number and converts it to an int.
+	 *
+	 * @return the value read
+	 */
+	public int nextInt() {
+		return (int) this.nextDouble();
+	}
+
+	/**
+	 * Reads the name of the next field in an object, which can be checked
+	 * with {@link #nameEquals(String)}. The colon after the name is read too.
+	 */
+	public void nextName() {
+		this.skipWhitespace();
+		this.expect('"');
+		final int start = this.pos;
+		final int close = this.text.indexOf('"', start);
+		if (close < 0) {
+			throw this.error("Unterminated name");
+		}
+		final int slash = this.text.indexOf('\\', start);
+		if (slash < 0 || slash > close) {
+			this.nameStart = start;
+			this.nameLength = close - start;
+			this.escapedName = null;
+			this.pos = close + 1;
+		}
+		else {
+			--this.pos;
+			this.escapedName = this.nextString();
+		}
+		this.expect(':');
+	}
+
+	/**
+	 * Reads a null if that is what comes next.
+	 *
+	 * @return true if a null was read, false if something else is next and
+	 *         nothing was read
+	 */
+	public boolean nextNull() {
+		this.skipWhitespace();
+		if (this.text.startsWith("null", this.pos)) {
+			this.pos += 4;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reads a string, or null.
+	 *
+	 * @return the value read
+	 */
+	public String nextString() {
+		this.skipWhitespace();
+		if (this.text.startsWith("null", this.pos)) {
+			this.pos += 4;
+			return null;
+		}
+		this.expect('"');
+		final int start = this.pos;
+		final int len = this.text.length();
+		StringBuilder unescaped = null;
+		int runStart = start;
+		while (this.pos < len) {
+			final char c = this.text.charAt(this.pos);
+			if (c == '"') {
+				final String value;
+				if (unescaped == null) {
+					value = this.text.substring(start, this.pos);
+				}
+				else {
+					unescaped.append(this.text, runStart, this.pos);
+					value = unescaped.toString();
+				}
+				++this.pos;
+				return value;
+			}
+			if (c == '\\') {
+				if (unescaped == null) {
+					unescaped = new StringBuilder();
+				}
+				unescaped.append(this.text, runStart, this.pos);
+				++this.pos;
+				if (this.pos >= len) {
+					break;
+				}
+				final char e = this.text.charAt(this.pos);
+				switch (e) {
+				case 'b':
+					unescaped.append('\b');
+					break;
+				case 'f':
+					unescaped.append('\f');
+					break;
+				case 'n':
+					unescaped.append('\n');
+					break;
+				case 'r':
+					unescaped.append('\r');
+					break;
+				case 't':
+					unescaped.append('\t');
+					break;
+				case 'u':
+					if (this.pos + 4 >= len) {
+						throw this.error("Bad unicode escape");
+					}
+					try {
+						unescaped.append((char) Integer.parseInt(
+								this.text.substring(this.pos + 1, this.pos + 5),
+								16));
+					}
+					catch (@SuppressWarnings("unused") NumberFormatException ex) {
+						throw this.error("Bad unicode escape");
+					}
+					this.pos += 4;
+					break;
+				default:
+					// quotes, slashes, and anything else stand for themselves
+					unescaped.append(e);
+				}
+				++this.pos;
+				runStart = this.pos;
+				continue;
+			}
+			++this.pos;
+		}
+		throw this.error("Unterminated string");
+	}
+
+	/**
+	 * Reads a string and returns which of the options it is, without creating
+	 * a new string if it has no escapes in it.
+	 *
+	 * @param options the strings to compare to
+	 * @return the index of the matching option, or -1 if none match
+	 */
+	public int nextStringIndex(String[] options) {
+		this.skipWhitespace();
+		final int quote = this.pos;
+		if (quote < this.text.length() && this.text.charAt(quote) == '"') {
+			final int close = this.text.indexOf('"', quote + 1);
+			final int slash = this.text.indexOf('\\', quote + 1);
+			if (close >= 0 && (slash < 0 || slash > close)) {
+				final int start = quote + 1;
+				final int length = close - start;
+				this.pos = close + 1;
+				for (int i = 0; i < options.length; ++i) {
+					if (options[i].length() == length && this.text
+							.regionMatches(start, options[i], 0, length)) {
+						return i;
+					}
+				}
+				return -1;
+			}
+		}
+		String value = this.nextString();
+		for (int i = 0; i < options.length; ++i) {
+			if (options[i].equals(value)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Starts reading a new string from the beginning.
+	 *
+	 * @param json the text to read
+	 */
+	public void reset(String json) {
+		this.text = json;
+		this.pos = 0;
+		this.nameStart = 0;
+		this.nameLength = 0;
+		this.escapedName = null;
+	}
+
+	/**
+	 * Skips over the next value, whatever it is, including any objects or
+	 * arrays inside of it.
+	 */
+	public void skipValue() {
+		this.skipWhitespace();
+		if (this.pos >= this.text.length()) {
+			throw this.error("Unexpected end");
+		}
+		final char c = this.text.charAt(this.pos);
+		switch (c) {
+		case '"':
+			this.nextString();
+			return;
+		case '{':
+			++this.pos;
+			while (this.hasNext()) {
+				this.nextName();
+				this.skipValue();
+			}
+			this.expect('}');
+			return;
+		case '[':
+			++this.pos;
+			while (this.hasNext()) {
+				this.skipValue();
+			}
+			this.expect(']');
+			return;
+		case 't':
+		case 'f':
+			this.nextBoolean();
+			return;
+		case 'n':
+			this.nextString();
+			return;
+		default:
+			this.nextDouble();
+		}
+	}
+
+	private void skipWhitespace() {
+		final int len = this.text.length();
+		while (this.pos < len) {
+			final char c = this.text.charAt(this.pos);
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return;
+			}
+			++this.pos;
+		}
+	}
+
+	/**
+	 * Returns true if the next thing to read is the start of an object.
+	 *
+	 * @return true if an object is next
+	 */
+	public boolean startsObject() {
+		this.skipWhitespace();
+		return this.pos < this.text.length()
+				&& this.text.charAt(this.pos) == '{';
+	}
+}
@@ -0,0 +1,229 @@
+package cruftyKrab.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import com.ikalagaming.logging.Logging;
+
+/**
+ * Turns messages from clients into typed records, using a table of message
+ * types that each know how to read their own fields. The event name is read
+ * first and picks the type, then each field is read straight into the
+ * record, and the record is given to the handler for that type.
+ *
+ * Types should all be registered before messages are decoded, such as in a
+ * static initializer.
+ *
+ * @author Ches Burks
+ *
+ * @param <C> what handlers are given along with the record, such as the
+ *            match the message is for
+ */
+public class MessageDecoder<C> {
+
+	/**
+	 * Reads the value of one field into a record.
+	 *
+	 * @author Ches Burks
+	 *
+	 * @param <T> the type of record
+	 */
+	public interface FieldReader<T> {
+		/**
+		 * Reads a value and stores it in the record.
+		 *
+		 * @param record the record to fill in
+		 * @param in the reader, positioned at the value
+		 */
+		public void read(T record, JsonReader in);
+	}
+
+	/**
+	 * Does something with a message once it has been read.
+	 *
+	 * @author Ches Burks
+	 *
+	 * @param <C> the context given to the handler
+	 * @param <T> the type of record
+	 */
+	public interface Handler<C, T> {
+		/**
+		 * Handles a decoded message.
+		 *
+		 * @param context the context passed to the decoder
+		 * @param source the connection the message came from
+		 * @param record the message that was read
+		 */
+		public void handle(C context, Connection source, T record);
+	}
+
+	/**
+	 * One entry in the table, describing how to read and handle a message.
+	 *
+	 * @author Ches Burks
+	 *
+	 * @param <C> the context given to the handler
+	 * @param <T> the type of record
+	 */
+	public static final class MessageType<C, T> {
+		private final Supplier<T> factory;
+		private final Handler<C, T> handler;
+		private final ArrayList<String> fieldNames;
+		private final ArrayList<FieldReader<T>> fieldReaders;
+
+		private MessageType(Supplier<T> creator, Handler<C, T> onRead) {
+			this.factory = creator;
+			this.handler = onRead;
+			this.fieldNames = new ArrayList<>();
+			this.fieldReaders = new ArrayList<>();
+		}
+
+		/**
+		 * Adds a field to read. Fields in the message that were not added are
+		 * skipped.
+		 *
+		 * @param name the name of the field in the JSON
+		 * @param reader how to read the field into the record
+		 * @return this message type, so calls can be chained
+		 */
+		public MessageType<C, T> field(String name, FieldReader<T> reader) {
+			this.fieldNames.add(name);
+			this.fieldReaders.add(reader);
+			return this;
+		}
+
+		/**
+		 * Reads the rest of the object into a new record and handles it.
+		 */
+		private void read(C context, Connection source, JsonReader in,
+				final boolean restart, String message) {
+			T record = this.factory.get();
+			if (restart) {
+				// the event name wasn't first, go back for the fields before it
+				in.reset(message);
+				in.beginObject();
+			}
+			final int count = this.fieldNames.size();
+			while (in.hasNext()) {
+				in.nextName();
+				int field = -1;
+				for (int i = 0; i < count; ++i) {
+					if (in.nameEquals(this.fieldNames.get(i))) {
+						field = i;
+						break;
+					}
+				}
+				if (field >= 0) {
+					this.fieldReaders.get(field).read(record, in);
+				}
+				else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			this.handler.handle(context, source, record);
+		}
+	}
+
+	/**
+	 * The name of the field that says what kind of message it is. ({@value})
+	 */
+	public static final String EVENT_NAME = "eventName";
+
+	private static final String LOG_NAME = "Message Decoder";
+
+	/**
+	 * Event names, in the same order as {@link #types}.
+	 */
+	private volatile String[] names;
+	private volatile MessageType<C, ?>[] types;
+
+	/**
+	 * Creates a decoder with no message types.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public MessageDecoder() {
+		this.names = new String[0];
+		this.types = new MessageType[0];
+	}
+
+	/**
+	 * Reads a message and hands it to the handler for its type.
+	 *
+	 * @param context passed along to the handler
+	 * @param source the connection the message came from
+	 * @param message the message text
+	 * @return true if the message was a known type, false if it is not JSON
+	 *         or is a type that isn't in the table
+	 */
+	public boolean decode(C context, Connection source, String message) {
+		final String[] known = this.names;
+		final MessageType<C, ?>[] table = this.types;
+		JsonReader in = new JsonReader(message);
+		int index = -1;
+		boolean first = true;
+		try {
+			if (!in.startsObject()) {
+				return false;
+			}
+			in.beginObject();
+			while (in.hasNext()) {
+				in.nextName();
+				if (in.nameEquals(MessageDecoder.EVENT_NAME)) {
+					index = in.nextStringIndex(known);
+					break;
+				}
+				in.skipValue();
+				first = false;
+			}
+			if (index < 0) {
+				return false;
+			}
+			table[index].read(context, source, in, !first, message);
+		}
+		catch (IllegalArgumentException e) {
+			if (index < 0) {
+				return false;
+			}
+			Logging.finer(MessageDecoder.LOG_NAME, "Bad " + known[index]
+					+ " message (" + e.getMessage() + ")");
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a message type to the table. Fields to read are added to the
+	 * returned type with {@link MessageType#field(String, FieldReader)}.
+	 *
+	 * @param eventName the event name of the message
+	 * @param factory creates a record for each message
+	 * @param handler what to do with the record once it is read
+	 * @return the new message type
+	 * @param <T> the type of record
+	 */
+	public synchronized <T> MessageType<C, T> register(String eventName,
+			Supplier<T> factory, Handler<C, T> handler) {
+		MessageType<C, T> type = new MessageType<>(factory, handler);
+		int index = Arrays.asList(this.names).indexOf(eventName);
+		String[] newNames;
+		MessageType<C, ?>[] newTypes;
+		if (index >= 0) {
+			Logging.warning(MessageDecoder.LOG_NAME,
+					"Replacing message type " + eventName);
+			newNames = this.names;
+			newTypes = Arrays.copyOf(this.types, this.types.length);
+		}
+		else {
+			index = this.names.length;
+			newNames = Arrays.copyOf(this.names, index + 1);
+			newNames[index] = eventName;
+			newTypes = Arrays.copyOf(this.types, index + 1);
+		}
+		newTypes[index] = type;
+		// types before names, so a name never points past the types
+		this.types = newTypes;
+		this.names = newNames;
+		return type;
+	}
+}
@@ -0,0 +1,38 @@
+package cruftyKrab.network;
+
+import cruftyKrab.network.binary.BinaryReader;
+
+/**
+ * Receives messages from a connection directly, without going through the
+ * event system. A connection has at most one handler at a time, usually the
+ * match it is playing in.
+ *
+ * @author Ches Burks
+ *
+ */
+public interface MessageHandler {
+	/**
+	 * Handles a message from a client. Messages from the same connection are
+	 * handled in the order they were received.
+	 *
+	 * @param source the connection the message came from
+	 * @param message the message, which should be JSON
+	 * @return true if the message was handled, false if it should be sent to
+	 *         the global event manager instead
+	 */
+	public boolean handleMessage(Connection source, String message);
+
+	/**
+	 * Handles one message from a binary batch sent by a client. By default
+	 * nothing is handled.
+	 *
+	 * @param source the connection the message came from
+	 * @param type the type code of the message
+	 * @param message a reader over the body of the message
+	 * @return true if the message was handled
+	 */
+	public default boolean handleBinary(Connection source, final int type,
+			BinaryReader message) {
+		return false;
+	}
+}
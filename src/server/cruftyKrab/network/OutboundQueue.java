@@ -0,0 +1,118 @@
+package cruftyKrab.network;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Frames waiting to be written to one client, and how many bytes they add up
+ * to. Most frames are sent in the order they were added. A frame added with a
+ * key replaces any unsent frame with the same key, since only the newest
+ * state matters, and goes to the back of the queue so it still arrives after
+ * everything that was sent before it.
+ *
+ * @author Ches Burks
+ *
+ */
+class OutboundQueue {
+
+	private static final class Entry {
+		final PreparedFrame frame;
+		final Object key;
+
+		Entry(PreparedFrame toSend, Object replaces) {
+			this.frame = toSend;
+			this.key = replaces;
+		}
+	}
+
+	private final ArrayDeque<Entry> entries;
+	private long bytes;
+
+	OutboundQueue() {
+		this.entries = new ArrayDeque<>();
+		this.bytes = 0;
+	}
+
+	/**
+	 * Adds a frame to the back of the queue.
+	 *
+	 * @param frame the frame to send
+	 * @param key frames with an equal key replace this one if it hasn't been
+	 *            sent yet, or null if it must always be sent
+	 * @return true if an older frame was replaced
+	 */
+	synchronized boolean add(PreparedFrame frame, Object key) {
+		boolean replaced = false;
+		if (key != null) {
+			Iterator<Entry> it = this.entries.iterator();
+			while (it.hasNext()) {
+				Entry old = it.next();
+				if (key.equals(old.key)) {
+					it.remove();
+					this.bytes -= old.frame.getSize();
+					replaced = true;
+					break;
+				}
+			}
+		}
+		this.entries.add(new Entry(frame, key));
+		this.bytes += frame.getSize();
+		return replaced;
+	}
+
+	/**
+	 * Removes everything from the queue.
+	 */
+	synchronized void clear() {
+		this.entries.clear();
+		this.bytes = 0;
+	}
+
+	/**
+	 * Returns true if a frame with the given key is waiting to be sent, so a
+	 * new one would replace it.
+	 *
+	 * @param key the key the frame was added with
+	 * @return true if it is still in the queue
+	 */
+	synchronized boolean contains(Object key) {
+		for (Entry e : this.entries) {
+			if (key.equals(e.key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of bytes waiting to be sent.
+	 *
+	 * @return the size of all the queued frames
+	 */
+	synchronized long getBytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * Returns true if there is nothing waiting to be sent.
+	 *
+	 * @return true if the queue is empty
+	 */
+	synchronized boolean isEmpty() {
+		return this.entries.isEmpty();
+	}
+
+	/**
+	 * Removes the frame at the front of the queue.
+	 *
+	 * @return the next frame to send, or null if the queue is empty
+	 */
+	synchronized PreparedFrame poll() {
+		Entry next = this.entries.poll();
+		if (next == null) {
+			return null;
+		}
+		this.bytes -= next.frame.getSize();
+		return next.frame;
+	}
+}
@@ -0,0 +1,369 @@
+package cruftyKrab.network;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.NotYetConnectedException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_10;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.server.WebSocketServer;
+
+/**
+ * A message that has already been turned into the bytes of a WebSocket
+ * frame, so it can be sent to many clients without encoding it again for each
+ * one. Frames sent by the server are not masked, so the same bytes work for
+ * every client that uses the same draft. For the current drafts the header is
+ * written here, straight in front of a single copy of the message.
+ *
+ * @author Ches Burks
+ *
+ */
+public final class PreparedFrame {
+
+	/**
+	 * The first byte of a frame that is the whole message, without the
+	 * opcode.
+	 */
+	private static final int FINAL_FRAGMENT = 0x80;
+	private static final int OPCODE_TEXT = 0x1;
+	private static final int OPCODE_BINARY = 0x2;
+
+	/**
+	 * Writes a frame header in front of a copy of a message, as a server
+	 * would send it, with the length in as few bytes as it fits in.
+	 *
+	 * @param first the first byte of the frame, with the flags and opcode
+	 * @param payload the message, which is not changed
+	 * @return the frame
+	 */
+	static ByteBuffer frame(final int first, ByteBuffer payload) {
+		final int length = payload.remaining();
+		final int header = length < 126 ? 2 : (length <= 0xFFFF ? 4 : 10);
+		ByteBuffer bytes = ByteBuffer.allocate(header + length);
+		bytes.put((byte) first);
+		// frames from the server are never masked
+		if (header == 2) {
+			bytes.put((byte) length);
+		}
+		else if (header == 4) {
+			bytes.put((byte) 126);
+			bytes.putShort((short) length);
+		}
+		else {
+			bytes.put((byte) 127);
+			bytes.putLong(length);
+		}
+		bytes.put(payload.duplicate());
+		bytes.flip();
+		return bytes;
+	}
+
+	/**
+	 * Returns the first byte of a frame that is a whole message.
+	 *
+	 * @param binary true for a binary message, false for text
+	 * @return the flags and opcode
+	 */
+	static int firstByte(final boolean binary) {
+		return PreparedFrame.FINAL_FRAGMENT | (binary
+				? PreparedFrame.OPCODE_BINARY : PreparedFrame.OPCODE_TEXT);
+	}
+
+	/**
+	 * Encodes a binary message into a frame using the given draft.
+	 *
+	 * @param message the bytes to send, which are not changed
+	 * @param draft the draft of the sockets it will be sent to, or null to
+	 *            not encode it
+	 * @return the prepared frame
+	 */
+	public static PreparedFrame prepare(final ByteBuffer message, Draft draft) {
+		return PreparedFrame.prepare(null, message, true, draft);
+	}
+
+	/**
+	 * Encodes a message into a frame using the given draft.
+	 *
+	 * @param message the text to send
+	 * @param draft the draft of the sockets it will be sent to, or null to
+	 *            not encode it
+	 * @return the prepared frame
+	 */
+	public static PreparedFrame prepare(final String message, Draft draft) {
+		if (!(draft instanceof Draft_10)) {
+			return PreparedFrame.prepare(message, null, false, draft);
+		}
+		return PreparedFrame.prepare(message,
+				ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)), false,
+				draft);
+	}
+
+	/**
+	 * Encodes a message that is already UTF-8 text into a frame using the
+	 * given draft. The bytes are copied, so the buffer can be reused as soon
+	 * as this returns.
+	 *
+	 * @param utf8 the text to send, which is not changed
+	 * @param draft the draft of the sockets it will be sent to, or null to
+	 *            not encode it
+	 * @return the prepared frame
+	 */
+	public static PreparedFrame prepareText(final ByteBuffer utf8, Draft draft) {
+		return PreparedFrame.prepare(null, utf8, false, draft);
+	}
+
+	/**
+	 * Encodes a message, writing the frame header directly for the drafts
+	 * from RFC 6455 and using the draft to do it for anything older.
+	 *
+	 * @param text the text of the message, or null if it is binary or only
+	 *            the bytes are known
+	 * @param payload the bytes of the message, or null if only the text is
+	 *            known
+	 * @param binary true for a binary message, false for text
+	 * @param draft the draft to encode for, or null to not encode it
+	 */
+	private static PreparedFrame prepare(String text, ByteBuffer payload,
+			final boolean binary, Draft draft) {
+		if (draft instanceof Draft_10) {
+			ByteBuffer bytes =
+					PreparedFrame.frame(PreparedFrame.firstByte(binary), payload);
+			// skip the header
+			bytes.position(bytes.remaining() - payload.remaining());
+			ByteBuffer body = bytes.slice().asReadOnlyBuffer();
+			bytes.position(0);
+			return new PreparedFrame(text, body, binary,
+					bytes.asReadOnlyBuffer(), draft.getClass());
+		}
+		ByteBuffer data = null;
+		if (payload != null) {
+			// the caller might reuse its buffer
+			data = ByteBuffer.allocate(payload.remaining());
+			data.put(payload.duplicate());
+			data.flip();
+			data = data.asReadOnlyBuffer();
+		}
+		if (!binary && text == null) {
+			text = StandardCharsets.UTF_8.decode(data.duplicate()).toString();
+		}
+		if (draft == null) {
+			return new PreparedFrame(text, data, binary, null, null);
+		}
+		List<Framedata> frames = binary
+				? draft.createFrames(data.duplicate(), false)
+				: draft.createFrames(text, false);
+		return new PreparedFrame(text, data, binary,
+				PreparedFrame.encode(frames, draft), draft.getClass());
+	}
+
+	/**
+	 * Turns frames into the bytes that go over the socket.
+	 */
+	private static ByteBuffer encode(List<Framedata> frames, Draft draft) {
+		ByteBuffer[] parts = new ByteBuffer[frames.size()];
+		int size = 0;
+		for (int i = 0; i < parts.length; ++i) {
+			parts[i] = draft.createBinaryFrame(frames.get(i));
+			size += parts[i].remaining();
+		}
+		ByteBuffer bytes = ByteBuffer.allocate(size);
+		for (ByteBuffer part : parts) {
+			bytes.put(part);
+		}
+		bytes.flip();
+		return bytes.asReadOnlyBuffer();
+	}
+
+	/**
+	 * The text of the message, or null if it is binary or hasn't been needed
+	 * yet.
+	 */
+	private String text;
+	/**
+	 * The body of the message, or null if it is only known as text.
+	 */
+	private final ByteBuffer data;
+	private final boolean binary;
+	/**
+	 * The encoded frames, or null if the message was not encoded.
+	 */
+	private final ByteBuffer frame;
+	private final Class<? extends Draft> draftType;
+	/**
+	 * The type of message, used to report how well each type compresses.
+	 */
+	private volatile String type;
+	/**
+	 * The frame compressed on its own, for clients that don't keep the
+	 * compression context between messages, or null if it hasn't been yet.
+	 */
+	private volatile ByteBuffer deflated;
+
+	private PreparedFrame(final String message, ByteBuffer body,
+			final boolean isBinary, ByteBuffer bytes,
+			Class<? extends Draft> type) {
+		this.text = message;
+		this.data = body;
+		this.binary = isBinary;
+		this.frame = bytes;
+		this.draftType = type;
+	}
+
+	/**
+	 * Returns the frame compressed without any context from earlier
+	 * messages.
+	 *
+	 * @return the compressed frame, or null if it hasn't been compressed
+	 */
+	ByteBuffer getDeflated() {
+		return this.deflated;
+	}
+
+	/**
+	 * Returns the encoded frame.
+	 *
+	 * @return the frame, or null if it was not encoded
+	 */
+	ByteBuffer getFrame() {
+		return this.frame;
+	}
+
+	/**
+	 * Returns the body of the message.
+	 *
+	 * @return the bytes of the message, or null if it is only known as text
+	 */
+	ByteBuffer getPayload() {
+		return this.data == null ? null : this.data.duplicate();
+	}
+
+	/**
+	 * Returns the number of bytes in the encoded frame. If it was not
+	 * encoded, this is the size of the message instead, counting each
+	 * character of text as a byte.
+	 *
+	 * @return the frame size
+	 */
+	public int getSize() {
+		if (this.frame != null) {
+			return this.frame.remaining();
+		}
+		if (this.data != null) {
+			return this.data.remaining();
+		}
+		return this.text == null ? 0 : this.text.length();
+	}
+
+	/**
+	 * Returns the type of message to report statistics under.
+	 *
+	 * @return the type of message, or "binary" or "text" if it wasn't set
+	 */
+	String getStatsType() {
+		final String name = this.type;
+		if (name != null) {
+			return name;
+		}
+		return this.binary ? "binary" : "text";
+	}
+
+	/**
+	 * Returns the text of the message.
+	 *
+	 * @return the message, or null if it is binary
+	 */
+	public String getText() {
+		if (this.binary) {
+			return null;
+		}
+		if (this.text == null) {
+			this.text =
+					StandardCharsets.UTF_8.decode(this.data.duplicate()).toString();
+		}
+		return this.text;
+	}
+
+	/**
+	 * Returns the type of message this is, such as the class of the message
+	 * it was encoded from.
+	 *
+	 * @return the type, or null if it is not known
+	 */
+	public String getType() {
+		return this.type;
+	}
+
+	/**
+	 * Returns true if this is a binary message.
+	 *
+	 * @return true for binary, false for text
+	 */
+	boolean isBinary() {
+		return this.binary;
+	}
+
+	/**
+	 * Stores the frame compressed without any context, so other clients
+	 * that don't keep the context can send it without compressing it again.
+	 *
+	 * @param compressed the compressed frame
+	 */
+	void setDeflated(ByteBuffer compressed) {
+		this.deflated = compressed;
+	}
+
+	/**
+	 * Sets the type of message this is, which statistics about the frame are
+	 * reported under.
+	 *
+	 * @param name the type, such as the class of the message
+	 */
+	public void setType(final String name) {
+		this.type = name;
+	}
+
+	/**
+	 * Queues the frame to be written to a socket. If the socket uses a
+	 * different draft, or isn't one the server can write to directly, the
+	 * message is sent the normal way instead.
+	 *
+	 * @param socket the socket to write to
+	 * @param server the server the socket belongs to, or null if unknown
+	 * @throws NotYetConnectedException if the socket is not open
+	 */
+	void writeTo(WebSocket socket, WebSocketServer server)
+			throws NotYetConnectedException {
+		if (this.frame == null || server == null
+				|| !(socket instanceof WebSocketImpl)
+				|| socket.getDraft() == null
+				|| socket.getDraft().getClass() != this.draftType) {
+			if (this.binary) {
+				socket.send(this.data.duplicate());
+			}
+			else {
+				socket.send(this.getText());
+			}
+			return;
+		}
+		if (!socket.isOpen()) {
+			throw new NotYetConnectedException();
+		}
+		if (socket.getDraft() instanceof DeflateDraft) {
+			DeflateDraft draft = (DeflateDraft) socket.getDraft();
+			// queued while holding the lock, in the order it was compressed
+			synchronized (draft) {
+				((WebSocketImpl) socket).outQueue
+						.add(draft.encode(this).duplicate());
+			}
+		}
+		else {
+			// each socket gets its own position and limit over the shared bytes
+			((WebSocketImpl) socket).outQueue.add(this.frame.duplicate());
+		}
+		server.onWriteDemand(socket);
+	}
+}
@@ -0,0 +1,104 @@
+package cruftyKrab.network;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.ikalagaming.logging.Logging;
+
+/**
+ * Runs tasks one at a time, in the order they were given, on threads borrowed
+ * from a shared executor. This lets every connection have its own ordered
+ * queue of work without needing a thread of its own.
+ *
+ * @author Ches Burks
+ *
+ */
+public class SerialExecutor implements Executor {
+
+	/**
+	 * The most tasks run before giving the thread back to the shared executor,
+	 * so one busy connection can't keep a thread forever. ({@value})
+	 */
+	public static final int BATCH_SIZE = 64;
+
+	private static final String LOG_NAME = "Serial Executor";
+
+	private final Executor target;
+	private final ConcurrentLinkedQueue<Runnable> tasks;
+	/**
+	 * True while a drain is queued or running on the shared executor.
+	 */
+	private final AtomicBoolean scheduled;
+
+	/**
+	 * Creates a serial executor that runs its tasks on the given executor.
+	 *
+	 * @param shared the executor to borrow threads from
+	 */
+	public SerialExecutor(Executor shared) {
+		this.target = shared;
+		this.tasks = new ConcurrentLinkedQueue<>();
+		this.scheduled = new AtomicBoolean(false);
+	}
+
+	/**
+	 * Runs queued tasks until the queue is empty or a batch has been run,
+	 * then schedules another drain if there is more to do.
+	 */
+	private void drain() {
+		try {
+			Runnable task;
+			int ran = 0;
+			while (ran < SerialExecutor.BATCH_SIZE
+					&& (task = this.tasks.poll()) != null) {
+				++ran;
+				try {
+					task.run();
+				}
+				catch (RuntimeException e) {
+					Logging.warning(SerialExecutor.LOG_NAME,
+							"Error " + e.getMessage() + " running a task.");
+					e.printStackTrace(System.err);
+				}
+			}
+		}
+		finally {
+			this.scheduled.set(false);
+		}
+		if (!this.tasks.isEmpty()) {
+			this.schedule();
+		}
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		this.tasks.add(command);
+		this.schedule();
+	}
+
+	/**
+	 * Returns true if there are no tasks waiting to run.
+	 *
+	 * @return true if the queue is empty
+	 */
+	public boolean isIdle() {
+		return this.tasks.isEmpty() && !this.scheduled.get();
+	}
+
+	private void schedule() {
+		if (!this.scheduled.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			this.target.execute(this::drain);
+		}
+		catch (@SuppressWarnings("unused") RejectedExecutionException e) {
+			this.scheduled.set(false);
+			Logging.warning(SerialExecutor.LOG_NAME,
+					"Executor is shut down, dropping tasks");
+			this.tasks.clear();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package cruftyKrab.network;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ikalagaming.logging.Logging;
+
+/**
+ * The kind of threads used to handle work for each connection, such as
+ * reading messages and sending replies.
+ *
+ * @author Ches Burks
+ *
+ */
+public enum ThreadMode {
+	/**
+	 * A fixed pool of regular threads. Work that blocks, like writing to a slow
+	 * socket, holds on to one of the threads until it is done.
+	 */
+	PLATFORM,
+	/**
+	 * A virtual thread for each task, so blocking is cheap and the number of
+	 * connections isn't limited by the number of threads. This needs Java 21
+	 * or newer, and falls back to {@link #PLATFORM} on older versions.
+	 */
+	VIRTUAL;
+
+	private static final String LOG_NAME = "Thread Mode";
+
+	/**
+	 * Creates daemon threads named after the pool, followed by a number.
+	 */
+	private static ThreadFactory daemonThreads(final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	/**
+	 * Returns the default number of threads used by {@link #PLATFORM}, which
+	 * is a few per core since connection work mostly waits on the network.
+	 *
+	 * @return the default pool size
+	 */
+	public static int defaultPlatformThreads() {
+		return 4 * Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Returns the method that creates a virtual thread executor, or null if
+	 * this version of Java doesn't have virtual threads.
+	 */
+	private static Method findVirtualFactory() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		}
+		catch (@SuppressWarnings("unused") NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a pool of daemon platform threads that can also run tasks after
+	 * a delay. Used for work that never blocks, like handing data to sockets.
+	 *
+	 * @param name the name of the threads, which is followed by a number
+	 * @param threads the number of threads
+	 * @return a new executor, which should be shut down when no longer needed
+	 */
+	public static ScheduledExecutorService newScheduledExecutor(
+			final String name, final int threads) {
+		return Executors.newScheduledThreadPool(Math.max(1, threads),
+				ThreadMode.daemonThreads(name));
+	}
+
+	/**
+	 * Returns true if virtual threads can be used on this version of Java.
+	 *
+	 * @return true if {@link #VIRTUAL} is supported
+	 */
+	public static boolean isVirtualSupported() {
+		return ThreadMode.findVirtualFactory() != null;
+	}
+
+	/**
+	 * Creates an executor that runs tasks on this kind of thread. Platform
+	 * threads are daemon threads, so they don't keep the server running.
+	 *
+	 * @param name the name of the threads, which is followed by a number
+	 * @param platformThreads the number of threads to use if this is
+	 *            {@link #PLATFORM}, or if virtual threads aren't supported
+	 * @return a new executor, which should be shut down when no longer needed
+	 */
+	public ExecutorService newExecutor(final String name,
+			final int platformThreads) {
+		if (this == VIRTUAL) {
+			Method factory = ThreadMode.findVirtualFactory();
+			if (factory != null) {
+				try {
+					return (ExecutorService) factory.invoke(null);
+				}
+				catch (ReflectiveOperationException e) {
+					Logging.warning(ThreadMode.LOG_NAME,
+							"Could not create virtual threads ("
+									+ e.getMessage() + ")");
+				}
+			}
+			Logging.warning(ThreadMode.LOG_NAME,
+					"Virtual threads are not supported, using platform threads");
+		}
+		return Executors.newFixedThreadPool(Math.max(1, platformThreads),
+				ThreadMode.daemonThreads(name));
+	}
+}
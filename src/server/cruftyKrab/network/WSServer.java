@@ -1,13 +1,23 @@
 package cruftyKrab.network;
 
+import java.io.IOException;
+import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketAdapter;
+import org.java_websocket.WebSocketImpl;
 import org.java_websocket.drafts.Draft;
 import org.java_websocket.framing.FrameBuilder;
 import org.java_websocket.framing.Framedata;
@@ -17,9 +27,17 @@ import org.java_websocket.server.WebSocketServer;
 import com.ikalagaming.event.EventManager;
 import com.ikalagaming.logging.Logging;
 
+import cruftyKrab.game.Facing;
 import cruftyKrab.game.events.PlayerConnected;
+import cruftyKrab.network.binary.BinaryDecoder;
+import cruftyKrab.network.binary.BinaryProtocol;
+import cruftyKrab.network.binary.BinaryReader;
+import cruftyKrab.network.binary.BinaryType;
 import cruftyKrab.network.events.ConnectionClosed;
 import cruftyKrab.network.events.MessageReceived;
+import cruftyKrab.network.messages.in.BinaryHello;
+import cruftyKrab.network.messages.in.PosUpdate;
+import cruftyKrab.network.messages.out.ProtocolSelected;
 
 /**
  * A WebSocket server using Nathan Rajlich's java_websocket library.
@@ -90,7 +108,152 @@ public class WSServer extends WebSocketServer {
 	private static int counter = 0;
 	private static final String LOG_NAME = "Web Socket";
 
-	private HashMap<WebSocket, Connection> connectionMap;
+	/**
+	 * The drafts a server side socket tries to match the handshake against.
+	 * The library's constructor ignores the drafts it is given and always
+	 * uses its own defaults, so they are set through this instead. Null if
+	 * the field can't be found.
+	 */
+	private static final Field KNOWN_DRAFTS = WSServer.findDraftsField();
+
+	/**
+	 * Gives each connection its own copy of any draft that keeps state for
+	 * the connection.
+	 */
+	private static final WebSocketServerFactory COPY_DRAFTS =
+			new WebSocketServerFactory() {
+				@Override
+				public WebSocketImpl createWebSocket(WebSocketAdapter a, Draft d,
+						Socket s) {
+					return new WebSocketImpl(a, WSServer.copyOf(d), s);
+				}
+
+				@Override
+				public WebSocketImpl createWebSocket(WebSocketAdapter a,
+						List<Draft> drafts, Socket s) {
+					WebSocketImpl socket = new WebSocketImpl(a, drafts, s);
+					if (WSServer.KNOWN_DRAFTS == null) {
+						return socket;
+					}
+					ArrayList<Draft> copies = new ArrayList<>(drafts.size());
+					for (Draft d : drafts) {
+						copies.add(WSServer.copyOf(d));
+					}
+					try {
+						WSServer.KNOWN_DRAFTS.set(socket, copies);
+					}
+					catch (IllegalAccessException e) {
+						Logging.warning(WSServer.LOG_NAME,
+								"Could not set the drafts (" + e.getMessage() + ")");
+					}
+					return socket;
+				}
+
+				@Override
+				public SocketChannel wrapChannel(SelectionKey key) {
+					return (SocketChannel) key.channel();
+				}
+			};
+
+	/**
+	 * Messages the server handles itself, before they get to a match.
+	 */
+	private static final MessageDecoder<WSServer> DECODER =
+			new MessageDecoder<>();
+
+	/**
+	 * Binary messages the server handles itself, before they get to a match.
+	 */
+	private static final BinaryDecoder<WSServer> BINARY_DECODER =
+			new BinaryDecoder<>();
+
+	static {
+		/*
+		 * Clients send these every frame, but only the newest one matters, so
+		 * they skip the event system and wait for the match to read them.
+		 */
+		WSServer.DECODER
+				.register("posUpdate", PosUpdate::new,
+						(server, source, update) -> source.offerInput(update))
+				.field("xPosition", (r, in) -> r.xPosition = in.nextDouble())
+				.field("yPosition", (r, in) -> r.yPosition = in.nextDouble())
+				.field("facing", (r, in) -> r.facing = in.nextString());
+		WSServer.DECODER.register("binaryHello", BinaryHello::new,
+				(server, source, hello) -> {
+					final int version =
+							(int) hello.version == BinaryProtocol.VERSION
+									? BinaryProtocol.VERSION : 0;
+					source.setProtocolVersion(version);
+					ProtocolSelected reply = new ProtocolSelected();
+					reply.version = version;
+					source.sendMessage(reply);
+				}).field("version", (r, in) -> r.version = in.nextDouble());
+
+		WSServer.BINARY_DECODER.register(BinaryType.POS_UPDATE,
+				(server, source, in) -> {
+					PosUpdate update = new PosUpdate();
+					// a position unit is a pixel, which is what JSON sends
+					update.xPosition = in.readSigned();
+					update.yPosition = in.readSigned();
+					Facing dir = Facing.fromCode((byte) in.readByte());
+					update.facing = dir == null ? null : dir.getName();
+					source.offerInput(update);
+				});
+	}
+
+	/**
+	 * Returns a draft for a new connection.
+	 *
+	 * @param d the draft the server was given
+	 * @return a copy of the draft if it keeps state for each connection,
+	 *         otherwise the draft itself
+	 */
+	private static Draft copyOf(Draft d) {
+		if (d instanceof DeflateDraft) {
+			return ((DeflateDraft) d).copy();
+		}
+		return d;
+	}
+
+	/**
+	 * Returns the field holding the drafts a socket can use, or null if this
+	 * version of the library doesn't have it.
+	 */
+	private static Field findDraftsField() {
+		try {
+			Field drafts = WebSocketImpl.class.getDeclaredField("knownDrafts");
+			drafts.setAccessible(true);
+			return drafts;
+		}
+		catch (NoSuchFieldException | RuntimeException e) {
+			Logging.warning(WSServer.LOG_NAME,
+					"Could not find the drafts field, compression is off ("
+							+ e.getMessage() + ")");
+			return null;
+		}
+	}
+
+	private ConcurrentHashMap<WebSocket, Connection> connectionMap;
+
+	/**
+	 * How well messages compress, or null if compression is not offered.
+	 */
+	private CompressionStats compression;
+
+	/**
+	 * Runs the work for each connection, or null to run it on the socket
+	 * threads.
+	 */
+	private ExecutorService handlers;
+	/**
+	 * Writes queued messages to the sockets, or null to write them using the
+	 * handlers.
+	 */
+	private ScheduledExecutorService writers;
+	/**
+	 * The most bytes that can be waiting to be sent to each client.
+	 */
+	private long maxQueuedBytes = Connection.DEFAULT_MAX_QUEUED_BYTES;
 
 	/**
 	 * Creates a new web socket server given the port and {@link Draft} The
@@ -102,7 +265,8 @@ public class WSServer extends WebSocketServer {
 	 */
 	public WSServer(InetSocketAddress address, Draft d) {
 		super(address, Collections.singletonList(d));
-		this.connectionMap = new HashMap<>();
+		this.connectionMap = new ConcurrentHashMap<>();
+		this.useDraft(d);
 	}
 
 	/**
@@ -117,7 +281,55 @@ public class WSServer extends WebSocketServer {
 	 */
 	public WSServer(int port, Draft d) throws UnknownHostException {
 		super(new InetSocketAddress(port), Collections.singletonList(d));
-		this.connectionMap = new HashMap<>();
+		this.connectionMap = new ConcurrentHashMap<>();
+		this.useDraft(d);
+	}
+
+	/**
+	 * Creates a new web socket server given the port and {@link Draft}, which
+	 * handles messages from and sends messages to each connection using the
+	 * given kind of threads. The socket threads only read and write data, so
+	 * slow clients and slow handlers don't hold them up.
+	 *
+	 * @param port the port number to listen on
+	 * @param d the draft to use
+	 * @param mode the kind of threads to handle connections with
+	 * @param platformThreads the number of threads to use for
+	 *            {@link ThreadMode#PLATFORM}
+	 * @throws UnknownHostException when defined by the library, unknown to
+	 *             implementor (Ches)
+	 */
+	public WSServer(int port, Draft d, ThreadMode mode,
+			final int platformThreads) throws UnknownHostException {
+		this(port, d);
+		this.handlers = mode.newExecutor("ConnectionHandler", platformThreads);
+	}
+
+	/**
+	 * Creates a new web socket server given the port and {@link Draft}, which
+	 * handles messages from each connection using the given kind of threads,
+	 * and has its own threads for writing to sockets. Each connection has a
+	 * queue of messages to send, and clients that fall too far behind are
+	 * disconnected.
+	 *
+	 * @param port the port number to listen on
+	 * @param d the draft to use
+	 * @param mode the kind of threads to handle connections with
+	 * @param platformThreads the number of threads to use for
+	 *            {@link ThreadMode#PLATFORM}
+	 * @param writerThreads the number of threads that write to sockets
+	 * @param maxQueued the most bytes that can be waiting to be sent to a
+	 *            client before it is considered too slow
+	 * @throws UnknownHostException when defined by the library, unknown to
+	 *             implementor (Ches)
+	 */
+	public WSServer(int port, Draft d, ThreadMode mode,
+			final int platformThreads, final int writerThreads,
+			final long maxQueued) throws UnknownHostException {
+		this(port, d, mode, platformThreads);
+		this.writers =
+				ThreadMode.newScheduledExecutor("ConnectionWriter", writerThreads);
+		this.maxQueuedBytes = maxQueued;
 	}
 
 	/**
@@ -132,22 +344,58 @@ public class WSServer extends WebSocketServer {
 		}
 	}
 
+	/**
+	 * Returns how well each type of message compressed, one line per type,
+	 * so the threshold and context takeover can be tuned for a deployment.
+	 *
+	 * @return the report, which is empty if nothing was compressed
+	 */
+	public String getCompressionReport() {
+		return this.compression == null ? "" : this.compression.report();
+	}
+
+	/**
+	 * Logs how well messages compressed, if any were.
+	 */
+	private void logCompression() {
+		if (this.compression == null || this.compression.isEmpty()) {
+			return;
+		}
+		for (String line : this.compression.report().split("\n")) {
+			Logging.info(WSServer.LOG_NAME, "Compression of " + line);
+		}
+	}
+
 	@Override
 	public void onClose(WebSocket conn, int code, String reason,
 			boolean remote) {
 		WSServer.counter--;
 		Logging.info(WSServer.LOG_NAME, "Closed connection. Now "
 				+ WSServer.counter + " clients connected.");
+		if (conn.getDraft() instanceof DeflateDraft) {
+			((DeflateDraft) conn.getDraft()).release();
+		}
+		if (WSServer.counter == 0) {
+			this.logCompression();
+		}
 
-		Connection c = this.connectionMap.get(conn);
-		this.connectionMap.remove(conn);
+		Connection c = this.connectionMap.remove(conn);
 		if (c == null) {
 			Logging.warning(WSServer.LOG_NAME,
 					"Closed a nonexistent connection");
 			return;
 		}
+		if (c.getInputsReceived() > 0) {
+			Logging.finest(WSServer.LOG_NAME,
+					"Coalesced " + c.getInputsCoalesced() + " of "
+							+ c.getInputsReceived() + " position updates");
+		}
+		if (c.getFramesCoalesced() > 0) {
+			Logging.finest(WSServer.LOG_NAME, "Replaced "
+					+ c.getFramesCoalesced() + " stale updates before sending");
+		}
 		ConnectionClosed event = new ConnectionClosed(c, code);
-		c.getManager().fireEvent(event);
+		c.handle(() -> c.getManager().fireEvent(event));
 	}
 
 	@Override
@@ -159,7 +407,40 @@ public class WSServer extends WebSocketServer {
 
 	@Override
 	public void onMessage(WebSocket conn, ByteBuffer blob) {
-		// conn.send(blob); // echo
+		Connection connection = this.connectionMap.get(conn);
+		if (connection == null) {
+			Logging.warning(WSServer.LOG_NAME,
+					"Received message from unmapped connection");
+			return;
+		}
+		// the library may reuse the buffer once this returns
+		ByteBuffer copy = ByteBuffer.allocate(blob.remaining());
+		copy.put(blob.duplicate());
+		copy.flip();
+		connection.handle(() -> {
+			try {
+				BinaryReader batch = new BinaryReader(copy);
+				final int count = batch.readBatchHeader();
+				for (int i = 0; i < count; ++i) {
+					final int type = batch.readByte();
+					BinaryReader message = batch.readMessage();
+					if (WSServer.BINARY_DECODER.handle(this, connection, type,
+							message)) {
+						continue;
+					}
+					MessageHandler handler = connection.getHandler();
+					if (handler == null
+							|| !handler.handleBinary(connection, type, message)) {
+						Logging.finer(WSServer.LOG_NAME,
+								"Unknown binary message type " + type);
+					}
+				}
+			}
+			catch (IllegalArgumentException e) {
+				Logging.finer(WSServer.LOG_NAME,
+						"Bad binary message (" + e.getMessage() + ")");
+			}
+		});
 	}
 
 	@Override
@@ -172,10 +453,19 @@ public class WSServer extends WebSocketServer {
 					"Received message from unmapped connection");
 			return;
 		}
-		// alert other modules of message
-		MessageReceived event = new MessageReceived(message, connection);
-		EventManager.getInstance().fireEvent(event);
-		connection.getManager().fireEvent(event);
+		connection.handle(() -> {
+			if (WSServer.DECODER.decode(this, connection, message)) {
+				return;
+			}
+			// game messages go straight to the match
+			MessageHandler handler = connection.getHandler();
+			if (handler != null && handler.handleMessage(connection, message)) {
+				return;
+			}
+			// alert other modules of message
+			EventManager.getInstance()
+					.fireEvent(new MessageReceived(message, connection));
+		});
 	}
 
 	@Override
@@ -183,12 +473,41 @@ public class WSServer extends WebSocketServer {
 		WSServer.counter++;
 		Logging.fine(WSServer.LOG_NAME,
 				"Opened connection number " + WSServer.counter);
-		Connection c = new Connection(conn);
+		Connection c = new Connection(conn, this.handlers, this.writers, this);
+		c.setMaxQueuedBytes(this.maxQueuedBytes);
 		// store a reference so that you can find connections on message
 		this.connectionMap.put(conn, c);
 		// alert other modules of new connection
 		PlayerConnected event = new PlayerConnected(c);
-		c.getManager().fireEvent(event);
+		c.handle(() -> c.getManager().fireEvent(event));
+	}
+
+	@Override
+	public void stop(int timeout) throws IOException, InterruptedException {
+		super.stop(timeout);
+		this.logCompression();
+		if (this.handlers != null) {
+			this.handlers.shutdown();
+			this.handlers = null;
+		}
+		if (this.writers != null) {
+			this.writers.shutdown();
+			this.writers = null;
+		}
+	}
+
+	/**
+	 * Sets up the server for the draft it was given. Drafts that compress
+	 * messages keep state for each connection, so each connection gets a
+	 * copy.
+	 *
+	 * @param d the draft the server was created with
+	 */
+	private void useDraft(Draft d) {
+		if (d instanceof DeflateDraft) {
+			this.compression = ((DeflateDraft) d).getStats();
+			this.setWebSocketFactory(WSServer.COPY_DRAFTS);
+		}
 	}
 
 	/**
@@ -0,0 +1,75 @@
+package cruftyKrab.network.binary;
+
+import cruftyKrab.network.Connection;
+
+/**
+ * A table of what to do with each type of binary message.
+ *
+ * @author Ches Burks
+ *
+ * @param <C> what handlers are given along with the message, such as the
+ *            match the message is for
+ */
+public class BinaryDecoder<C> {
+
+	/**
+	 * Reads and acts on one binary message.
+	 *
+	 * @author Ches Burks
+	 *
+	 * @param <C> the context given to the handler
+	 */
+	public interface Handler<C> {
+		/**
+		 * Handles a message.
+		 *
+		 * @param context the context passed to the decoder
+		 * @param source the connection the message came from
+		 * @param in a reader over just the body of the message
+		 */
+		public void handle(C context, Connection source, BinaryReader in);
+	}
+
+	private final Handler<C>[] handlers;
+
+	/**
+	 * Creates a decoder that doesn't handle any types.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public BinaryDecoder() {
+		this.handlers = new Handler[256];
+	}
+
+	/**
+	 * Handles a message if there is a handler for its type.
+	 *
+	 * @param context passed along to the handler
+	 * @param source the connection the message came from
+	 * @param code the type code of the message
+	 * @param in a reader over the body of the message
+	 * @return true if there was a handler for the type
+	 */
+	public boolean handle(C context, Connection source, final int code,
+			BinaryReader in) {
+		if (code < 0 || code >= this.handlers.length) {
+			return false;
+		}
+		Handler<C> handler = this.handlers[code];
+		if (handler == null) {
+			return false;
+		}
+		handler.handle(context, source, in);
+		return true;
+	}
+
+	/**
+	 * Sets what to do with a type of message. Should be called before any
+	 * messages are handled, such as in a static initializer.
+	 *
+	 * @param type the type of message
+	 * @param handler what to do with it
+	 */
+	public void register(BinaryType type, Handler<C> handler) {
+		this.handlers[type.getCode()] = handler;
+	}
+}
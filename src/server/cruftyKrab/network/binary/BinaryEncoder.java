@@ -0,0 +1,103 @@
+package cruftyKrab.network.binary;
+
+import java.nio.ByteBuffer;
+
+import cruftyKrab.game.Facing;
+import cruftyKrab.network.messages.EntityDelta;
+import cruftyKrab.network.messages.MoveInfo;
+import cruftyKrab.network.messages.out.MoveSet;
+import cruftyKrab.network.messages.out.Snapshot;
+
+/**
+ * Turns the messages sent most often into the binary protocol. Everything
+ * else is still sent as JSON, which clients using binary also understand.
+ *
+ * @author Ches Burks
+ *
+ */
+public final class BinaryEncoder {
+
+	/**
+	 * Encodes a message as a batch holding just that message.
+	 *
+	 * @param message the message to encode
+	 * @return the encoded batch, or null if the message has no binary form
+	 */
+	public static ByteBuffer encode(Object message) {
+		BinaryWriter body = new BinaryWriter();
+		BinaryType type;
+		if (message instanceof Snapshot) {
+			BinaryEncoder.writeSnapshot(body, (Snapshot) message);
+			type = BinaryType.SNAPSHOT;
+		}
+		else if (message instanceof MoveSet) {
+			BinaryEncoder.writeMoveSet(body, (MoveSet) message);
+			type = BinaryType.MOVE_SET;
+		}
+		else {
+			return null;
+		}
+		BinaryWriter batch = new BinaryWriter();
+		batch.writeBatchHeader(1);
+		batch.writeMessage(type, body);
+		return batch.toByteBuffer();
+	}
+
+	private static int facingCode(String name) {
+		Facing dir = Facing.fromName(name);
+		return dir == null ? BinaryProtocol.NO_FACING : dir.getCode();
+	}
+
+	private static void writeMoveSet(BinaryWriter out, MoveSet set) {
+		final int count = set.moves == null ? 0 : set.moves.length;
+		out.writeVarint(count);
+		for (int i = 0; i < count; ++i) {
+			MoveInfo move = set.moves[i];
+			out.writeVarint((long) move.entity.id);
+			out.writePosition(move.position.x);
+			out.writePosition(move.position.y);
+			out.writeByte(BinaryEncoder.facingCode(move.facing));
+			out.writeVarint((long) move.entity.colorIndex);
+			out.writePosition(move.velocity == null ? 0 : move.velocity.x);
+			out.writePosition(move.velocity == null ? 0 : move.velocity.y);
+		}
+	}
+
+	private static void writeSnapshot(BinaryWriter out, Snapshot snap) {
+		out.writeVarint((long) snap.seq);
+		out.writeSigned((long) snap.baseSeq);
+		final int count = snap.entities == null ? 0 : snap.entities.length;
+		out.writeVarint(count);
+		for (int i = 0; i < count; ++i) {
+			EntityDelta d = snap.entities[i];
+			int flags = 0;
+			if (d.x != null) {
+				flags |= BinaryProtocol.HAS_X;
+			}
+			if (d.y != null) {
+				flags |= BinaryProtocol.HAS_Y;
+			}
+			if (d.facing != null) {
+				flags |= BinaryProtocol.HAS_FACING;
+			}
+			out.writeVarint((long) d.id);
+			out.writeByte(flags);
+			if (d.x != null) {
+				out.writePosition(d.x.doubleValue());
+			}
+			if (d.y != null) {
+				out.writePosition(d.y.doubleValue());
+			}
+			if (d.facing != null) {
+				out.writeByte(BinaryEncoder.facingCode(d.facing));
+			}
+		}
+		final int removed = snap.removed == null ? 0 : snap.removed.length;
+		out.writeVarint(removed);
+		for (int i = 0; i < removed; ++i) {
+			out.writeVarint((long) snap.removed[i]);
+		}
+	}
+
+	private BinaryEncoder() {}
+}
@@ -0,0 +1,57 @@
+package cruftyKrab.network.binary;
+
+/**
+ * Constants for the binary protocol.
+ *
+ * Every binary WebSocket message is a batch. A batch starts with the
+ * protocol version as a byte and the number of messages as a varint. Each
+ * message is then its {@link BinaryType} code as a byte, the length of the
+ * rest of the message as a varint, and the message itself. The length lets
+ * readers skip messages they don't know.
+ *
+ * Varints are unsigned LEB128, 7 bits per byte with the high bit set on
+ * every byte but the last. Signed values are zigzag encoded first, so small
+ * negative numbers stay small. Positions are in tiles, sent as signed
+ * varints of {@link #POSITION_SCALE} units per tile.
+ *
+ * @author Ches Burks
+ *
+ */
+public final class BinaryProtocol {
+
+	/**
+	 * The current version of the protocol. Version 0 means JSON, and version
+	 * 2 added velocities to moves. ({@value})
+	 */
+	public static final int VERSION = 2;
+
+	/**
+	 * How many position units there are in a tile, which makes one unit a
+	 * pixel. ({@value})
+	 */
+	public static final int POSITION_SCALE = 64;
+
+	/**
+	 * Written instead of a facing code when there is no facing. ({@value})
+	 */
+	public static final int NO_FACING = 0xFF;
+
+	/**
+	 * Set in the flags of a snapshot entity if the x position follows.
+	 * ({@value})
+	 */
+	public static final int HAS_X = 1;
+
+	/**
+	 * Set in the flags of a snapshot entity if the y position follows.
+	 * ({@value})
+	 */
+	public static final int HAS_Y = 2;
+
+	/**
+	 * Set in the flags of a snapshot entity if the facing follows. ({@value})
+	 */
+	public static final int HAS_FACING = 4;
+
+	private BinaryProtocol() {}
+}
@@ -0,0 +1,141 @@
+package cruftyKrab.network.binary;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads values in the binary protocol from a buffer. Malformed input throws
+ * an {@link IllegalArgumentException}.
+ *
+ * @author Ches Burks
+ *
+ */
+public class BinaryReader {
+	private final ByteBuffer buffer;
+
+	/**
+	 * Creates a reader over the remaining bytes of a buffer. The buffer's
+	 * position is not changed.
+	 *
+	 * @param bytes the bytes to read
+	 */
+	public BinaryReader(ByteBuffer bytes) {
+		this.buffer = bytes.slice();
+	}
+
+	/**
+	 * Returns true if there is anything left to read.
+	 *
+	 * @return true if there are bytes left
+	 */
+	public boolean hasRemaining() {
+		return this.buffer.hasRemaining();
+	}
+
+	/**
+	 * Reads the start of a batch and checks the version.
+	 *
+	 * @return the number of messages in the batch
+	 */
+	public int readBatchHeader() {
+		final int version = this.readByte();
+		if (version != BinaryProtocol.VERSION) {
+			throw new IllegalArgumentException(
+					"Unsupported protocol version " + version);
+		}
+		return this.readInt();
+	}
+
+	/**
+	 * Reads one unsigned byte.
+	 *
+	 * @return the byte, from 0 to 255
+	 */
+	public int readByte() {
+		if (!this.buffer.hasRemaining()) {
+			throw new IllegalArgumentException("Unexpected end of message");
+		}
+		return this.buffer.get() & 0xFF;
+	}
+
+	/**
+	 * Reads a varint that should fit in a non-negative int.
+	 *
+	 * @return the value
+	 */
+	public int readInt() {
+		final long value = this.readVarint();
+		if (value < 0 || value > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Value out of range");
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Reads the body of the next message in a batch, using its length. The
+	 * type should have been read already.
+	 *
+	 * @return a reader for just the message
+	 */
+	public BinaryReader readMessage() {
+		final int length = this.readInt();
+		if (length > this.buffer.remaining()) {
+			throw new IllegalArgumentException("Message longer than batch");
+		}
+		ByteBuffer body = this.buffer.slice();
+		body.limit(length);
+		this.buffer.position(this.buffer.position() + length);
+		return new BinaryReader(body);
+	}
+
+	/**
+	 * Reads a fixed point position.
+	 *
+	 * @return the position, in tiles
+	 */
+	public double readPosition() {
+		return this.readSigned() / (double) BinaryProtocol.POSITION_SCALE;
+	}
+
+	/**
+	 * Reads a zigzag encoded signed value.
+	 *
+	 * @return the value
+	 */
+	public long readSigned() {
+		final long raw = this.readVarint();
+		return (raw >>> 1) ^ -(raw & 1);
+	}
+
+	/**
+	 * Reads a length prefixed UTF-8 string.
+	 *
+	 * @return the string
+	 */
+	public String readString() {
+		final int length = this.readInt();
+		if (length > this.buffer.remaining()) {
+			throw new IllegalArgumentException("String longer than message");
+		}
+		byte[] utf = new byte[length];
+		this.buffer.get(utf);
+		return new String(utf, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads an unsigned varint.
+	 *
+	 * @return the value
+	 */
+	public long readVarint() {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final int b = this.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Varint too long");
+	}
+}
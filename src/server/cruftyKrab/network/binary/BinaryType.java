@@ -0,0 +1,71 @@
+package cruftyKrab.network.binary;
+
+/**
+ * The kinds of messages that can be sent in binary. Each is written as a
+ * single byte before the message.
+ *
+ * @author Ches Burks
+ *
+ */
+public enum BinaryType {
+	/**
+	 * Client to server, where the player is and which way they face.
+	 */
+	POS_UPDATE(1),
+	/**
+	 * Client to server, something died on the client.
+	 */
+	ENTITY_DIED(2),
+	/**
+	 * Client to server, asks to be sent snapshots.
+	 */
+	SNAPSHOT_HELLO(3),
+	/**
+	 * Client to server, a snapshot was received.
+	 */
+	SNAPSHOT_ACK(4),
+	/**
+	 * Server to client, the positions and velocities of a group of entities.
+	 */
+	MOVE_SET(16),
+	/**
+	 * Server to client, what changed since an earlier snapshot.
+	 */
+	SNAPSHOT(17);
+
+	private static final BinaryType[] BY_CODE = new BinaryType[256];
+
+	static {
+		for (BinaryType t : BinaryType.values()) {
+			BinaryType.BY_CODE[t.code] = t;
+		}
+	}
+
+	/**
+	 * Returns the type with the given code, as returned by {@link #getCode()}.
+	 *
+	 * @param code the code
+	 * @return the type, or null if there is none with that code
+	 */
+	public static BinaryType fromCode(final int code) {
+		if (code < 0 || code >= BinaryType.BY_CODE.length) {
+			return null;
+		}
+		return BinaryType.BY_CODE[code];
+	}
+
+	private final int code;
+
+	private BinaryType(final int typeCode) {
+		this.code = typeCode;
+	}
+
+	/**
+	 * Returns the byte written before messages of this type.
+	 *
+	 * @return the type code
+	 */
+	public int getCode() {
+		return this.code;
+	}
+}
@@ -0,0 +1,147 @@
+package cruftyKrab.network.binary;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes values in the binary protocol into a growing array.
+ *
+ * @author Ches Burks
+ *
+ */
+public class BinaryWriter {
+	private byte[] bytes;
+	private int size;
+
+	/**
+	 * Creates an empty writer.
+	 */
+	public BinaryWriter() {
+		this.bytes = new byte[64];
+		this.size = 0;
+	}
+
+	/**
+	 * Empties the writer so it can be used for another message, keeping the
+	 * space it already has.
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+
+	private void ensure(final int extra) {
+		if (this.size + extra > this.bytes.length) {
+			this.bytes = Arrays.copyOf(this.bytes,
+					Math.max(this.bytes.length * 2, this.size + extra));
+		}
+	}
+
+	/**
+	 * Writes the start of a batch.
+	 *
+	 * @param count how many messages will be in the batch
+	 */
+	public void writeBatchHeader(final int count) {
+		this.writeByte(BinaryProtocol.VERSION);
+		this.writeVarint(count);
+	}
+
+	/**
+	 * Writes one byte.
+	 *
+	 * @param value the byte, only the low 8 bits are used
+	 */
+	public void writeByte(final int value) {
+		this.ensure(1);
+		this.bytes[this.size++] = (byte) value;
+	}
+
+	/**
+	 * Writes a message into the batch, with its type and length in front.
+	 *
+	 * @param type the type of message
+	 * @param message the body of the message
+	 */
+	public void writeMessage(BinaryType type, BinaryWriter message) {
+		this.writeByte(type.getCode());
+		this.writeVarint(message.size);
+		this.ensure(message.size);
+		System.arraycopy(message.bytes, 0, this.bytes, this.size, message.size);
+		this.size += message.size;
+	}
+
+	/**
+	 * Writes a position, in tiles, as fixed point.
+	 *
+	 * @param tiles the position
+	 */
+	public void writePosition(final double tiles) {
+		this.writeSigned(Math.round(tiles * BinaryProtocol.POSITION_SCALE));
+	}
+
+	/**
+	 * Writes a signed value as a zigzag varint.
+	 *
+	 * @param value the value
+	 */
+	public void writeSigned(final long value) {
+		this.writeVarint((value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Writes a string as its length in bytes and then UTF-8.
+	 *
+	 * @param value the string
+	 */
+	public void writeString(String value) {
+		byte[] utf = value.getBytes(StandardCharsets.UTF_8);
+		this.writeVarint(utf.length);
+		this.ensure(utf.length);
+		System.arraycopy(utf, 0, this.bytes, this.size, utf.length);
+		this.size += utf.length;
+	}
+
+	/**
+	 * Writes an unsigned value as a varint.
+	 *
+	 * @param value the value, treated as unsigned
+	 */
+	public void writeVarint(final long value) {
+		this.ensure(10);
+		long v = value;
+		while ((v & ~0x7FL) != 0) {
+			this.bytes[this.size++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		this.bytes[this.size++] = (byte) v;
+	}
+
+	/**
+	 * Returns the number of bytes written.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns what was written, in a new buffer ready to be read.
+	 *
+	 * @return the written bytes
+	 */
+	public ByteBuffer toByteBuffer() {
+		return ByteBuffer.wrap(Arrays.copyOf(this.bytes, this.size));
+	}
+
+	/**
+	 * Returns what was written without copying it. The buffer is only valid
+	 * until the writer is written to or cleared again.
+	 *
+	 * @return a read only view of the written bytes
+	 */
+	public ByteBuffer view() {
+		return ByteBuffer.wrap(this.bytes, 0, this.size).asReadOnlyBuffer();
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * A compact binary form of the messages sent most often, which clients can
+ * ask to use instead of JSON.
+ */
+package cruftyKrab.network.binary;
@@ -0,0 +1,2191 @@
+package cruftyKrab.network.codec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import cruftyKrab.network.FrameWriter;
+import cruftyKrab.network.JsonReader;
+import cruftyKrab.network.messages.AttackInfo;
+import cruftyKrab.network.messages.EntityDelta;
+import cruftyKrab.network.messages.EntityDied;
+import cruftyKrab.network.messages.EntityInfo;
+import cruftyKrab.network.messages.HealthInfo;
+import cruftyKrab.network.messages.MatchInfo;
+import cruftyKrab.network.messages.MoveInfo;
+import cruftyKrab.network.messages.ScoreInfo;
+import cruftyKrab.network.messages.Vect;
+import cruftyKrab.network.messages.in.BinaryHello;
+import cruftyKrab.network.messages.in.PosUpdate;
+import cruftyKrab.network.messages.in.SnapshotAck;
+import cruftyKrab.network.messages.out.EntityEntered;
+import cruftyKrab.network.messages.out.EntityLeft;
+import cruftyKrab.network.messages.out.EntitySpawned;
+import cruftyKrab.network.messages.out.GameOver;
+import cruftyKrab.network.messages.out.MatchList;
+import cruftyKrab.network.messages.out.MatchSnapshot;
+import cruftyKrab.network.messages.out.MoveSet;
+import cruftyKrab.network.messages.out.PlayerLeft;
+import cruftyKrab.network.messages.out.PlayerList;
+import cruftyKrab.network.messages.out.ProtocolSelected;
+import cruftyKrab.network.messages.out.RoundOver;
+import cruftyKrab.network.messages.out.Snapshot;
+import cruftyKrab.network.messages.out.TickSnapshot;
+import cruftyKrab.network.messages.out.Welcome;
+
+/**
+ * JSON encoders and decoders for every message in
+ * {@link cruftyKrab.network.messages} and its in and out packages, written
+ * out field by field so no reflection is needed. The JSON is the same as
+ * Gson writes, with null fields left out. Everything is static and keeps no
+ * state, so it can be used from any thread.
+ *
+ * Generated by {@link cruftyKrab.tools.CodecGenerator}. Don't edit this file,
+ * change the messages and run the generator again.
+ *
+ * @author Ches Burks
+ *
+ */
+public final class MessageCodecs {
+
+	private static final byte[] NULL = FrameWriter.encode("null");
+	private static final byte[] TRUE = FrameWriter.encode("true");
+	private static final byte[] FALSE = FrameWriter.encode("false");
+	private static final byte[] NAME_ATTACK = FrameWriter.encode("\"attack\":");
+	private static final byte[] NAME_BASE_SEQ =
+			FrameWriter.encode("\"baseSeq\":");
+	private static final byte[] NAME_COLOR_INDEX =
+			FrameWriter.encode("\"colorIndex\":");
+	private static final byte[] NAME_COLOR_NAME =
+			FrameWriter.encode("\"colorName\":");
+	private static final byte[] NAME_CUR_HEALTH =
+			FrameWriter.encode("\"curHealth\":");
+	private static final byte[] NAME_CUR_PLAYERS =
+			FrameWriter.encode("\"curPlayers\":");
+	private static final byte[] NAME_DESPAWN_COUNT =
+			FrameWriter.encode("\"despawnCount\":");
+	private static final byte[] NAME_DESPAWNS =
+			FrameWriter.encode("\"despawns\":");
+	private static final byte[] NAME_ENTITIES =
+			FrameWriter.encode("\"entities\":");
+	private static final byte[] NAME_ENTITY = FrameWriter.encode("\"entity\":");
+	private static final byte[] NAME_ENTITY_COUNT =
+			FrameWriter.encode("\"entityCount\":");
+	private static final byte[] NAME_EVENT_TYPE =
+			FrameWriter.encode("\"eventType\":");
+	private static final byte[] NAME_FACING = FrameWriter.encode("\"facing\":");
+	private static final byte[] NAME_HOST = FrameWriter.encode("\"host\":");
+	private static final byte[] NAME_ID = FrameWriter.encode("\"id\":");
+	private static final byte[] NAME_MATCH_COUNT =
+			FrameWriter.encode("\"matchCount\":");
+	private static final byte[] NAME_MATCH_ID =
+			FrameWriter.encode("\"matchID\":");
+	private static final byte[] NAME_MATCHES =
+			FrameWriter.encode("\"matches\":");
+	private static final byte[] NAME_MAX_HEALTH =
+			FrameWriter.encode("\"maxHealth\":");
+	private static final byte[] NAME_MAX_PLAYERS =
+			FrameWriter.encode("\"maxPlayers\":");
+	private static final byte[] NAME_MOVE_COUNT =
+			FrameWriter.encode("\"moveCount\":");
+	private static final byte[] NAME_MOVES = FrameWriter.encode("\"moves\":");
+	private static final byte[] NAME_NAME = FrameWriter.encode("\"name\":");
+	private static final byte[] NAME_NUM_SCORES =
+			FrameWriter.encode("\"numScores\":");
+	private static final byte[] NAME_POINTS = FrameWriter.encode("\"points\":");
+	private static final byte[] NAME_POSITION =
+			FrameWriter.encode("\"position\":");
+	private static final byte[] NAME_REMOVED =
+			FrameWriter.encode("\"removed\":");
+	private static final byte[] NAME_REMOVED_COUNT =
+			FrameWriter.encode("\"removedCount\":");
+	private static final byte[] NAME_ROUND = FrameWriter.encode("\"round\":");
+	private static final byte[] NAME_ROUND_NUMBER =
+			FrameWriter.encode("\"roundNumber\":");
+	private static final byte[] NAME_ROUND_OVER =
+			FrameWriter.encode("\"roundOver\":");
+	private static final byte[] NAME_SCORE = FrameWriter.encode("\"score\":");
+	private static final byte[] NAME_SCORE_COUNT =
+			FrameWriter.encode("\"scoreCount\":");
+	private static final byte[] NAME_SCORES = FrameWriter.encode("\"scores\":");
+	private static final byte[] NAME_SEQ = FrameWriter.encode("\"seq\":");
+	private static final byte[] NAME_SPAWN_COUNT =
+			FrameWriter.encode("\"spawnCount\":");
+	private static final byte[] NAME_SPAWNS = FrameWriter.encode("\"spawns\":");
+	private static final byte[] NAME_STATE = FrameWriter.encode("\"state\":");
+	private static final byte[] NAME_TICK = FrameWriter.encode("\"tick\":");
+	private static final byte[] NAME_TICK_RATE =
+			FrameWriter.encode("\"tickRate\":");
+	private static final byte[] NAME_UNIQUE_ID =
+			FrameWriter.encode("\"uniqueID\":");
+	private static final byte[] NAME_UNIQUE_NAME =
+			FrameWriter.encode("\"uniqueName\":");
+	private static final byte[] NAME_VELOCITY =
+			FrameWriter.encode("\"velocity\":");
+	private static final byte[] NAME_VERSION =
+			FrameWriter.encode("\"version\":");
+	private static final byte[] NAME_WAVE_NUM =
+			FrameWriter.encode("\"waveNum\":");
+	private static final byte[] NAME_X = FrameWriter.encode("\"x\":");
+	private static final byte[] NAME_X_POSITION =
+			FrameWriter.encode("\"xPosition\":");
+	private static final byte[] NAME_Y = FrameWriter.encode("\"y\":");
+	private static final byte[] NAME_Y_POSITION =
+			FrameWriter.encode("\"yPosition\":");
+
+	/**
+	 * Writes a {@link AttackInfo} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, AttackInfo value) {
+		out.writeByte('{');
+		if (value.attack != null) {
+			out.writeBytes(MessageCodecs.NAME_ATTACK);
+			out.writeString(value.attack);
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link AttackInfo}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static AttackInfo readAttackInfo(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		AttackInfo value = new AttackInfo();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("attack")) {
+				value.attack = in.nextString();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link EntityDelta} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, EntityDelta value) {
+		out.writeByte('{');
+		out.writeBytes(MessageCodecs.NAME_ID);
+		out.writeDouble(value.id);
+		if (value.x != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_X);
+			out.writeDouble(value.x.doubleValue());
+		}
+		if (value.y != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_Y);
+			out.writeDouble(value.y.doubleValue());
+		}
+		if (value.facing != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_FACING);
+			out.writeString(value.facing);
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link EntityDelta}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static EntityDelta readEntityDelta(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		EntityDelta value = new EntityDelta();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("id")) {
+				value.id = in.nextDouble();
+			}
+			else if (in.nameEquals("x")) {
+				value.x = in.nextNull() ? null : Double.valueOf(in.nextDouble());
+			}
+			else if (in.nameEquals("y")) {
+				value.y = in.nextNull() ? null : Double.valueOf(in.nextDouble());
+			}
+			else if (in.nameEquals("facing")) {
+				value.facing = in.nextString();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link EntityDied} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, EntityDied value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_ID);
+		out.writeDouble(value.id);
+		if (value.uniqueID != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_UNIQUE_ID);
+			out.writeString(value.uniqueID);
+		}
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_POINTS);
+		out.writeDouble(value.points);
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link EntityDied}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static EntityDied readEntityDied(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		EntityDied value = new EntityDied();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("id")) {
+				value.id = in.nextDouble();
+			}
+			else if (in.nameEquals("uniqueID")) {
+				value.uniqueID = in.nextString();
+			}
+			else if (in.nameEquals("points")) {
+				value.points = in.nextDouble();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link EntityInfo} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, EntityInfo value) {
+		out.writeByte('{');
+		out.writeBytes(MessageCodecs.NAME_ID);
+		out.writeDouble(value.id);
+		if (value.uniqueID != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_UNIQUE_ID);
+			out.writeString(value.uniqueID);
+		}
+		if (value.name != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_NAME);
+			out.writeString(value.name);
+		}
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_COLOR_INDEX);
+		out.writeDouble(value.colorIndex);
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link EntityInfo}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static EntityInfo readEntityInfo(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		EntityInfo value = new EntityInfo();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("id")) {
+				value.id = in.nextDouble();
+			}
+			else if (in.nameEquals("uniqueID")) {
+				value.uniqueID = in.nextString();
+			}
+			else if (in.nameEquals("name")) {
+				value.name = in.nextString();
+			}
+			else if (in.nameEquals("colorIndex")) {
+				value.colorIndex = in.nextDouble();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link HealthInfo} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, HealthInfo value) {
+		out.writeByte('{');
+		out.writeBytes(MessageCodecs.NAME_MAX_HEALTH);
+		out.writeDouble(value.maxHealth);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_CUR_HEALTH);
+		out.writeDouble(value.curHealth);
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link HealthInfo}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static HealthInfo readHealthInfo(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		HealthInfo value = new HealthInfo();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("maxHealth")) {
+				value.maxHealth = in.nextDouble();
+			}
+			else if (in.nameEquals("curHealth")) {
+				value.curHealth = in.nextDouble();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link MatchInfo} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, MatchInfo value) {
+		out.writeByte('{');
+		out.writeBytes(MessageCodecs.NAME_MATCH_ID);
+		out.writeDouble(value.matchID);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_CUR_PLAYERS);
+		out.writeDouble(value.curPlayers);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_MAX_PLAYERS);
+		out.writeDouble(value.maxPlayers);
+		if (value.host != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_HOST);
+			out.writeString(value.host);
+		}
+		if (value.state != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_STATE);
+			out.writeString(value.state);
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link MatchInfo}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static MatchInfo readMatchInfo(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		MatchInfo value = new MatchInfo();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("matchID")) {
+				value.matchID = in.nextDouble();
+			}
+			else if (in.nameEquals("curPlayers")) {
+				value.curPlayers = in.nextDouble();
+			}
+			else if (in.nameEquals("maxPlayers")) {
+				value.maxPlayers = in.nextDouble();
+			}
+			else if (in.nameEquals("host")) {
+				value.host = in.nextString();
+			}
+			else if (in.nameEquals("state")) {
+				value.state = in.nextString();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link MoveInfo} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, MoveInfo value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.entity != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_ENTITY);
+			MessageCodecs.write(out, value.entity);
+		}
+		if (value.position != null) {
+			if (more) {
+				out.writeByte(',');
+			}
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_POSITION);
+			MessageCodecs.write(out, value.position);
+		}
+		if (value.velocity != null) {
+			if (more) {
+				out.writeByte(',');
+			}
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_VELOCITY);
+			MessageCodecs.write(out, value.velocity);
+		}
+		if (value.facing != null) {
+			if (more) {
+				out.writeByte(',');
+			}
+			out.writeBytes(MessageCodecs.NAME_FACING);
+			out.writeString(value.facing);
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link MoveInfo}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static MoveInfo readMoveInfo(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		MoveInfo value = new MoveInfo();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("entity")) {
+				value.entity = MessageCodecs.readEntityInfo(in);
+			}
+			else if (in.nameEquals("position")) {
+				value.position = MessageCodecs.readVect(in);
+			}
+			else if (in.nameEquals("velocity")) {
+				value.velocity = MessageCodecs.readVect(in);
+			}
+			else if (in.nameEquals("facing")) {
+				value.facing = in.nextString();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link ScoreInfo} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, ScoreInfo value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.entity != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_ENTITY);
+			MessageCodecs.write(out, value.entity);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_SCORE);
+		out.writeDouble(value.score);
+		if (value.colorName != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_COLOR_NAME);
+			out.writeString(value.colorName);
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link ScoreInfo}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static ScoreInfo readScoreInfo(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		ScoreInfo value = new ScoreInfo();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("entity")) {
+				value.entity = MessageCodecs.readEntityInfo(in);
+			}
+			else if (in.nameEquals("score")) {
+				value.score = in.nextDouble();
+			}
+			else if (in.nameEquals("colorName")) {
+				value.colorName = in.nextString();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link Vect} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, Vect value) {
+		out.writeByte('{');
+		out.writeBytes(MessageCodecs.NAME_X);
+		out.writeDouble(value.x);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_Y);
+		out.writeDouble(value.y);
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link Vect}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static Vect readVect(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		Vect value = new Vect();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("x")) {
+				value.x = in.nextDouble();
+			}
+			else if (in.nameEquals("y")) {
+				value.y = in.nextDouble();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link BinaryHello} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, BinaryHello value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_VERSION);
+		out.writeDouble(value.version);
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link BinaryHello}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static BinaryHello readBinaryHello(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		BinaryHello value = new BinaryHello();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("version")) {
+				value.version = in.nextDouble();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link PosUpdate} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, PosUpdate value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_X_POSITION);
+		out.writeDouble(value.xPosition);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_Y_POSITION);
+		out.writeDouble(value.yPosition);
+		if (value.facing != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_FACING);
+			out.writeString(value.facing);
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link PosUpdate}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static PosUpdate readPosUpdate(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		PosUpdate value = new PosUpdate();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("xPosition")) {
+				value.xPosition = in.nextDouble();
+			}
+			else if (in.nameEquals("yPosition")) {
+				value.yPosition = in.nextDouble();
+			}
+			else if (in.nameEquals("facing")) {
+				value.facing = in.nextString();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link SnapshotAck} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, SnapshotAck value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_SEQ);
+		out.writeDouble(value.seq);
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link SnapshotAck}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static SnapshotAck readSnapshotAck(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		SnapshotAck value = new SnapshotAck();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("seq")) {
+				value.seq = in.nextDouble();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link EntityEntered} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, EntityEntered value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (value.entity != null) {
+			if (more) {
+				out.writeByte(',');
+			}
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_ENTITY);
+			MessageCodecs.write(out, value.entity);
+		}
+		if (value.position != null) {
+			if (more) {
+				out.writeByte(',');
+			}
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_POSITION);
+			MessageCodecs.write(out, value.position);
+		}
+		if (value.velocity != null) {
+			if (more) {
+				out.writeByte(',');
+			}
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_VELOCITY);
+			MessageCodecs.write(out, value.velocity);
+		}
+		if (value.facing != null) {
+			if (more) {
+				out.writeByte(',');
+			}
+			out.writeBytes(MessageCodecs.NAME_FACING);
+			out.writeString(value.facing);
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link EntityEntered}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static EntityEntered readEntityEntered(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		EntityEntered value = new EntityEntered();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("entity")) {
+				value.entity = MessageCodecs.readEntityInfo(in);
+			}
+			else if (in.nameEquals("position")) {
+				value.position = MessageCodecs.readVect(in);
+			}
+			else if (in.nameEquals("velocity")) {
+				value.velocity = MessageCodecs.readVect(in);
+			}
+			else if (in.nameEquals("facing")) {
+				value.facing = in.nextString();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link EntityLeft} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, EntityLeft value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (value.entity != null) {
+			if (more) {
+				out.writeByte(',');
+			}
+			out.writeBytes(MessageCodecs.NAME_ENTITY);
+			MessageCodecs.write(out, value.entity);
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link EntityLeft}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static EntityLeft readEntityLeft(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		EntityLeft value = new EntityLeft();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("entity")) {
+				value.entity = MessageCodecs.readEntityInfo(in);
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link EntitySpawned} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, EntitySpawned value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (value.entity != null) {
+			if (more) {
+				out.writeByte(',');
+			}
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_ENTITY);
+			MessageCodecs.write(out, value.entity);
+		}
+		if (value.position != null) {
+			if (more) {
+				out.writeByte(',');
+			}
+			out.writeBytes(MessageCodecs.NAME_POSITION);
+			MessageCodecs.write(out, value.position);
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link EntitySpawned}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static EntitySpawned readEntitySpawned(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		EntitySpawned value = new EntitySpawned();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("entity")) {
+				value.entity = MessageCodecs.readEntityInfo(in);
+			}
+			else if (in.nameEquals("position")) {
+				value.position = MessageCodecs.readVect(in);
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link GameOver} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, GameOver value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_NUM_SCORES);
+		out.writeDouble(value.numScores);
+		if (value.scores != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_SCORES);
+			out.writeByte('[');
+			for (int i = 0; i < value.scores.length; ++i) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				if (value.scores[i] == null) {
+					out.writeBytes(MessageCodecs.NULL);
+				}
+				else {
+					MessageCodecs.write(out, value.scores[i]);
+				}
+			}
+			out.writeByte(']');
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link GameOver}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static GameOver readGameOver(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		GameOver value = new GameOver();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("numScores")) {
+				value.numScores = in.nextDouble();
+			}
+			else if (in.nameEquals("scores")) {
+				value.scores = MessageCodecs.readScoreInfoArray(in);
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link MatchList} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, MatchList value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_MATCH_COUNT);
+		out.writeDouble(value.matchCount);
+		if (value.matches != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_MATCHES);
+			out.writeByte('[');
+			for (int i = 0; i < value.matches.length; ++i) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				if (value.matches[i] == null) {
+					out.writeBytes(MessageCodecs.NULL);
+				}
+				else {
+					MessageCodecs.write(out, value.matches[i]);
+				}
+			}
+			out.writeByte(']');
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link MatchList}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static MatchList readMatchList(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		MatchList value = new MatchList();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("matchCount")) {
+				value.matchCount = in.nextDouble();
+			}
+			else if (in.nameEquals("matches")) {
+				value.matches = MessageCodecs.readMatchInfoArray(in);
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link MatchSnapshot} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, MatchSnapshot value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_TICK);
+		out.writeDouble(value.tick);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_ROUND);
+		out.writeDouble(value.round);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_ENTITY_COUNT);
+		out.writeDouble(value.entityCount);
+		if (value.entities != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_ENTITIES);
+			out.writeByte('[');
+			for (int i = 0; i < value.entities.length; ++i) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				if (value.entities[i] == null) {
+					out.writeBytes(MessageCodecs.NULL);
+				}
+				else {
+					MessageCodecs.write(out, value.entities[i]);
+				}
+			}
+			out.writeByte(']');
+		}
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_SCORE_COUNT);
+		out.writeDouble(value.scoreCount);
+		if (value.scores != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_SCORES);
+			out.writeByte('[');
+			for (int i = 0; i < value.scores.length; ++i) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				if (value.scores[i] == null) {
+					out.writeBytes(MessageCodecs.NULL);
+				}
+				else {
+					MessageCodecs.write(out, value.scores[i]);
+				}
+			}
+			out.writeByte(']');
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link MatchSnapshot}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static MatchSnapshot readMatchSnapshot(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		MatchSnapshot value = new MatchSnapshot();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("tick")) {
+				value.tick = in.nextDouble();
+			}
+			else if (in.nameEquals("round")) {
+				value.round = in.nextDouble();
+			}
+			else if (in.nameEquals("entityCount")) {
+				value.entityCount = in.nextDouble();
+			}
+			else if (in.nameEquals("entities")) {
+				value.entities = MessageCodecs.readMoveInfoArray(in);
+			}
+			else if (in.nameEquals("scoreCount")) {
+				value.scoreCount = in.nextDouble();
+			}
+			else if (in.nameEquals("scores")) {
+				value.scores = MessageCodecs.readScoreInfoArray(in);
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link MoveSet} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, MoveSet value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_MOVE_COUNT);
+		out.writeDouble(value.moveCount);
+		if (value.moves != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_MOVES);
+			out.writeByte('[');
+			for (int i = 0; i < value.moves.length; ++i) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				if (value.moves[i] == null) {
+					out.writeBytes(MessageCodecs.NULL);
+				}
+				else {
+					MessageCodecs.write(out, value.moves[i]);
+				}
+			}
+			out.writeByte(']');
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link MoveSet}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static MoveSet readMoveSet(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		MoveSet value = new MoveSet();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("moveCount")) {
+				value.moveCount = in.nextDouble();
+			}
+			else if (in.nameEquals("moves")) {
+				value.moves = MessageCodecs.readMoveInfoArray(in);
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link PlayerLeft} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, PlayerLeft value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (value.entity != null) {
+			if (more) {
+				out.writeByte(',');
+			}
+			out.writeBytes(MessageCodecs.NAME_ENTITY);
+			MessageCodecs.write(out, value.entity);
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link PlayerLeft}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static PlayerLeft readPlayerLeft(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		PlayerLeft value = new PlayerLeft();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("entity")) {
+				value.entity = MessageCodecs.readEntityInfo(in);
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link PlayerList} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, PlayerList value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_ENTITY_COUNT);
+		out.writeDouble(value.entityCount);
+		if (value.entities != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_ENTITIES);
+			out.writeByte('[');
+			for (int i = 0; i < value.entities.length; ++i) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				if (value.entities[i] == null) {
+					out.writeBytes(MessageCodecs.NULL);
+				}
+				else {
+					MessageCodecs.write(out, value.entities[i]);
+				}
+			}
+			out.writeByte(']');
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link PlayerList}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static PlayerList readPlayerList(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		PlayerList value = new PlayerList();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("entityCount")) {
+				value.entityCount = in.nextDouble();
+			}
+			else if (in.nameEquals("entities")) {
+				value.entities = MessageCodecs.readEntitySpawnedArray(in);
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link ProtocolSelected} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, ProtocolSelected value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_VERSION);
+		out.writeDouble(value.version);
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link ProtocolSelected}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static ProtocolSelected readProtocolSelected(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		ProtocolSelected value = new ProtocolSelected();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("version")) {
+				value.version = in.nextDouble();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link RoundOver} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, RoundOver value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_ROUND_NUMBER);
+		out.writeDouble(value.roundNumber);
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link RoundOver}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static RoundOver readRoundOver(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		RoundOver value = new RoundOver();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("roundNumber")) {
+				value.roundNumber = in.nextDouble();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link Snapshot} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, Snapshot value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_SEQ);
+		out.writeDouble(value.seq);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_BASE_SEQ);
+		out.writeDouble(value.baseSeq);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_ENTITY_COUNT);
+		out.writeDouble(value.entityCount);
+		if (value.entities != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_ENTITIES);
+			out.writeByte('[');
+			for (int i = 0; i < value.entities.length; ++i) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				if (value.entities[i] == null) {
+					out.writeBytes(MessageCodecs.NULL);
+				}
+				else {
+					MessageCodecs.write(out, value.entities[i]);
+				}
+			}
+			out.writeByte(']');
+		}
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_REMOVED_COUNT);
+		out.writeDouble(value.removedCount);
+		if (value.removed != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_REMOVED);
+			MessageCodecs.writeArray(out, value.removed);
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link Snapshot}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static Snapshot readSnapshot(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		Snapshot value = new Snapshot();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("seq")) {
+				value.seq = in.nextDouble();
+			}
+			else if (in.nameEquals("baseSeq")) {
+				value.baseSeq = in.nextDouble();
+			}
+			else if (in.nameEquals("entityCount")) {
+				value.entityCount = in.nextDouble();
+			}
+			else if (in.nameEquals("entities")) {
+				value.entities = MessageCodecs.readEntityDeltaArray(in);
+			}
+			else if (in.nameEquals("removedCount")) {
+				value.removedCount = in.nextDouble();
+			}
+			else if (in.nameEquals("removed")) {
+				value.removed = MessageCodecs.readDoubleArray(in);
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link TickSnapshot} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, TickSnapshot value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_TICK);
+		out.writeDouble(value.tick);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_ROUND);
+		out.writeDouble(value.round);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_SPAWN_COUNT);
+		out.writeDouble(value.spawnCount);
+		if (value.spawns != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_SPAWNS);
+			out.writeByte('[');
+			for (int i = 0; i < value.spawns.length; ++i) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				MessageCodecs.writeValue(out, value.spawns[i]);
+			}
+			out.writeByte(']');
+		}
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_MOVE_COUNT);
+		out.writeDouble(value.moveCount);
+		if (value.moves != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_MOVES);
+			out.writeByte('[');
+			for (int i = 0; i < value.moves.length; ++i) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				if (value.moves[i] == null) {
+					out.writeBytes(MessageCodecs.NULL);
+				}
+				else {
+					MessageCodecs.write(out, value.moves[i]);
+				}
+			}
+			out.writeByte(']');
+		}
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_DESPAWN_COUNT);
+		out.writeDouble(value.despawnCount);
+		if (value.despawns != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_DESPAWNS);
+			out.writeByte('[');
+			for (int i = 0; i < value.despawns.length; ++i) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				MessageCodecs.writeValue(out, value.despawns[i]);
+			}
+			out.writeByte(']');
+		}
+		if (value.roundOver != null) {
+			out.writeByte(',');
+			out.writeBytes(MessageCodecs.NAME_ROUND_OVER);
+			MessageCodecs.write(out, value.roundOver);
+		}
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link TickSnapshot}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static TickSnapshot readTickSnapshot(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		TickSnapshot value = new TickSnapshot();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("tick")) {
+				value.tick = in.nextDouble();
+			}
+			else if (in.nameEquals("round")) {
+				value.round = in.nextDouble();
+			}
+			else if (in.nameEquals("spawnCount")) {
+				value.spawnCount = in.nextDouble();
+			}
+			else if (in.nameEquals("spawns")) {
+				// the type isn't known, so these are only sent
+				in.skipValue();
+			}
+			else if (in.nameEquals("moveCount")) {
+				value.moveCount = in.nextDouble();
+			}
+			else if (in.nameEquals("moves")) {
+				value.moves = MessageCodecs.readMoveInfoArray(in);
+			}
+			else if (in.nameEquals("despawnCount")) {
+				value.despawnCount = in.nextDouble();
+			}
+			else if (in.nameEquals("despawns")) {
+				// the type isn't known, so these are only sent
+				in.skipValue();
+			}
+			else if (in.nameEquals("roundOver")) {
+				value.roundOver = MessageCodecs.readRoundOver(in);
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Writes a {@link Welcome} as JSON.
+	 *
+	 * @param out where to write it
+	 * @param value the message, which must not be null
+	 */
+	public static void write(FrameWriter out, Welcome value) {
+		out.writeByte('{');
+		boolean more = false;
+		if (value.eventType != null) {
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_EVENT_TYPE);
+			out.writeString(value.eventType);
+		}
+		if (value.uniqueName != null) {
+			if (more) {
+				out.writeByte(',');
+			}
+			more = true;
+			out.writeBytes(MessageCodecs.NAME_UNIQUE_NAME);
+			out.writeString(value.uniqueName);
+		}
+		if (more) {
+			out.writeByte(',');
+		}
+		out.writeBytes(MessageCodecs.NAME_ID);
+		out.writeDouble(value.id);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_COLOR_INDEX);
+		out.writeDouble(value.colorIndex);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_WAVE_NUM);
+		out.writeDouble(value.waveNum);
+		out.writeByte(',');
+		out.writeBytes(MessageCodecs.NAME_TICK_RATE);
+		out.writeDouble(value.tickRate);
+		out.writeByte('}');
+	}
+
+	/**
+	 * Reads a {@link Welcome}, skipping any fields it doesn't have.
+	 *
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 */
+	public static Welcome readWelcome(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		Welcome value = new Welcome();
+		in.beginObject();
+		while (in.hasNext()) {
+			in.nextName();
+			if (in.nameEquals("eventType")) {
+				value.eventType = in.nextString();
+			}
+			else if (in.nameEquals("uniqueName")) {
+				value.uniqueName = in.nextString();
+			}
+			else if (in.nameEquals("id")) {
+				value.id = in.nextDouble();
+			}
+			else if (in.nameEquals("colorIndex")) {
+				value.colorIndex = in.nextDouble();
+			}
+			else if (in.nameEquals("waveNum")) {
+				value.waveNum = in.nextDouble();
+			}
+			else if (in.nameEquals("tickRate")) {
+				value.tickRate = in.nextDouble();
+			}
+			else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		return value;
+	}
+
+	/**
+	 * Reads a message of the given type.
+	 *
+	 * @param type the class of the message
+	 * @param in the reader, positioned at the object
+	 * @return the message, or null if the value was null
+	 * @param <T> the type of message
+	 * @throws IllegalArgumentException if the type isn't a message, or the
+	 *             JSON is malformed
+	 */
+	public static <T> T read(Class<T> type, JsonReader in) {
+		if (type == AttackInfo.class) {
+			return type.cast(MessageCodecs.readAttackInfo(in));
+		}
+		if (type == EntityDelta.class) {
+			return type.cast(MessageCodecs.readEntityDelta(in));
+		}
+		if (type == EntityDied.class) {
+			return type.cast(MessageCodecs.readEntityDied(in));
+		}
+		if (type == EntityInfo.class) {
+			return type.cast(MessageCodecs.readEntityInfo(in));
+		}
+		if (type == HealthInfo.class) {
+			return type.cast(MessageCodecs.readHealthInfo(in));
+		}
+		if (type == MatchInfo.class) {
+			return type.cast(MessageCodecs.readMatchInfo(in));
+		}
+		if (type == MoveInfo.class) {
+			return type.cast(MessageCodecs.readMoveInfo(in));
+		}
+		if (type == ScoreInfo.class) {
+			return type.cast(MessageCodecs.readScoreInfo(in));
+		}
+		if (type == Vect.class) {
+			return type.cast(MessageCodecs.readVect(in));
+		}
+		if (type == BinaryHello.class) {
+			return type.cast(MessageCodecs.readBinaryHello(in));
+		}
+		if (type == PosUpdate.class) {
+			return type.cast(MessageCodecs.readPosUpdate(in));
+		}
+		if (type == SnapshotAck.class) {
+			return type.cast(MessageCodecs.readSnapshotAck(in));
+		}
+		if (type == EntityEntered.class) {
+			return type.cast(MessageCodecs.readEntityEntered(in));
+		}
+		if (type == EntityLeft.class) {
+			return type.cast(MessageCodecs.readEntityLeft(in));
+		}
+		if (type == EntitySpawned.class) {
+			return type.cast(MessageCodecs.readEntitySpawned(in));
+		}
+		if (type == GameOver.class) {
+			return type.cast(MessageCodecs.readGameOver(in));
+		}
+		if (type == MatchList.class) {
+			return type.cast(MessageCodecs.readMatchList(in));
+		}
+		if (type == MatchSnapshot.class) {
+			return type.cast(MessageCodecs.readMatchSnapshot(in));
+		}
+		if (type == MoveSet.class) {
+			return type.cast(MessageCodecs.readMoveSet(in));
+		}
+		if (type == PlayerLeft.class) {
+			return type.cast(MessageCodecs.readPlayerLeft(in));
+		}
+		if (type == PlayerList.class) {
+			return type.cast(MessageCodecs.readPlayerList(in));
+		}
+		if (type == ProtocolSelected.class) {
+			return type.cast(MessageCodecs.readProtocolSelected(in));
+		}
+		if (type == RoundOver.class) {
+			return type.cast(MessageCodecs.readRoundOver(in));
+		}
+		if (type == Snapshot.class) {
+			return type.cast(MessageCodecs.readSnapshot(in));
+		}
+		if (type == TickSnapshot.class) {
+			return type.cast(MessageCodecs.readTickSnapshot(in));
+		}
+		if (type == Welcome.class) {
+			return type.cast(MessageCodecs.readWelcome(in));
+		}
+		throw new IllegalArgumentException("No codec for " + type.getName());
+	}
+
+	/**
+	 * Writes a message as JSON, if it is one of the messages there is a codec
+	 * for.
+	 *
+	 * @param out where to write it
+	 * @param message the message
+	 * @return true if it was written, false if it isn't a known message and
+	 *         nothing was written
+	 */
+	public static boolean write(FrameWriter out, Object message) {
+		final Class<?> type = message.getClass();
+		if (type == AttackInfo.class) {
+			MessageCodecs.write(out, (AttackInfo) message);
+			return true;
+		}
+		if (type == EntityDelta.class) {
+			MessageCodecs.write(out, (EntityDelta) message);
+			return true;
+		}
+		if (type == EntityDied.class) {
+			MessageCodecs.write(out, (EntityDied) message);
+			return true;
+		}
+		if (type == EntityInfo.class) {
+			MessageCodecs.write(out, (EntityInfo) message);
+			return true;
+		}
+		if (type == HealthInfo.class) {
+			MessageCodecs.write(out, (HealthInfo) message);
+			return true;
+		}
+		if (type == MatchInfo.class) {
+			MessageCodecs.write(out, (MatchInfo) message);
+			return true;
+		}
+		if (type == MoveInfo.class) {
+			MessageCodecs.write(out, (MoveInfo) message);
+			return true;
+		}
+		if (type == ScoreInfo.class) {
+			MessageCodecs.write(out, (ScoreInfo) message);
+			return true;
+		}
+		if (type == Vect.class) {
+			MessageCodecs.write(out, (Vect) message);
+			return true;
+		}
+		if (type == BinaryHello.class) {
+			MessageCodecs.write(out, (BinaryHello) message);
+			return true;
+		}
+		if (type == PosUpdate.class) {
+			MessageCodecs.write(out, (PosUpdate) message);
+			return true;
+		}
+		if (type == SnapshotAck.class) {
+			MessageCodecs.write(out, (SnapshotAck) message);
+			return true;
+		}
+		if (type == EntityEntered.class) {
+			MessageCodecs.write(out, (EntityEntered) message);
+			return true;
+		}
+		if (type == EntityLeft.class) {
+			MessageCodecs.write(out, (EntityLeft) message);
+			return true;
+		}
+		if (type == EntitySpawned.class) {
+			MessageCodecs.write(out, (EntitySpawned) message);
+			return true;
+		}
+		if (type == GameOver.class) {
+			MessageCodecs.write(out, (GameOver) message);
+			return true;
+		}
+		if (type == MatchList.class) {
+			MessageCodecs.write(out, (MatchList) message);
+			return true;
+		}
+		if (type == MatchSnapshot.class) {
+			MessageCodecs.write(out, (MatchSnapshot) message);
+			return true;
+		}
+		if (type == MoveSet.class) {
+			MessageCodecs.write(out, (MoveSet) message);
+			return true;
+		}
+		if (type == PlayerLeft.class) {
+			MessageCodecs.write(out, (PlayerLeft) message);
+			return true;
+		}
+		if (type == PlayerList.class) {
+			MessageCodecs.write(out, (PlayerList) message);
+			return true;
+		}
+		if (type == ProtocolSelected.class) {
+			MessageCodecs.write(out, (ProtocolSelected) message);
+			return true;
+		}
+		if (type == RoundOver.class) {
+			MessageCodecs.write(out, (RoundOver) message);
+			return true;
+		}
+		if (type == Snapshot.class) {
+			MessageCodecs.write(out, (Snapshot) message);
+			return true;
+		}
+		if (type == TickSnapshot.class) {
+			MessageCodecs.write(out, (TickSnapshot) message);
+			return true;
+		}
+		if (type == Welcome.class) {
+			MessageCodecs.write(out, (Welcome) message);
+			return true;
+		}
+		return false;
+	}
+
+	private static EntityDelta[] readEntityDeltaArray(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		ArrayList<EntityDelta> values = new ArrayList<>();
+		in.beginArray();
+		while (in.hasNext()) {
+			values.add(MessageCodecs.readEntityDelta(in));
+		}
+		in.endArray();
+		return values.toArray(new EntityDelta[values.size()]);
+	}
+
+	private static EntitySpawned[] readEntitySpawnedArray(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		ArrayList<EntitySpawned> values = new ArrayList<>();
+		in.beginArray();
+		while (in.hasNext()) {
+			values.add(MessageCodecs.readEntitySpawned(in));
+		}
+		in.endArray();
+		return values.toArray(new EntitySpawned[values.size()]);
+	}
+
+	private static MatchInfo[] readMatchInfoArray(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		ArrayList<MatchInfo> values = new ArrayList<>();
+		in.beginArray();
+		while (in.hasNext()) {
+			values.add(MessageCodecs.readMatchInfo(in));
+		}
+		in.endArray();
+		return values.toArray(new MatchInfo[values.size()]);
+	}
+
+	private static MoveInfo[] readMoveInfoArray(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		ArrayList<MoveInfo> values = new ArrayList<>();
+		in.beginArray();
+		while (in.hasNext()) {
+			values.add(MessageCodecs.readMoveInfo(in));
+		}
+		in.endArray();
+		return values.toArray(new MoveInfo[values.size()]);
+	}
+
+	private static ScoreInfo[] readScoreInfoArray(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		ArrayList<ScoreInfo> values = new ArrayList<>();
+		in.beginArray();
+		while (in.hasNext()) {
+			values.add(MessageCodecs.readScoreInfo(in));
+		}
+		in.endArray();
+		return values.toArray(new ScoreInfo[values.size()]);
+	}
+
+	private static double[] readDoubleArray(JsonReader in) {
+		if (in.nextNull()) {
+			return null;
+		}
+		double[] values = new double[8];
+		int count = 0;
+		in.beginArray();
+		while (in.hasNext()) {
+			if (count == values.length) {
+				values = Arrays.copyOf(values, count * 2);
+			}
+			values[count++] = in.nextDouble();
+		}
+		in.endArray();
+		return Arrays.copyOf(values, count);
+	}
+
+	private static void writeArray(FrameWriter out, double[] values) {
+		out.writeByte('[');
+		for (int i = 0; i < values.length; ++i) {
+			if (i > 0) {
+				out.writeByte(',');
+			}
+			out.writeDouble(values[i]);
+		}
+		out.writeByte(']');
+	}
+
+	/**
+	 * Writes a value whose type is only known at run time.
+	 */
+	private static void writeValue(FrameWriter out, Object value) {
+		if (value == null) {
+			out.writeBytes(MessageCodecs.NULL);
+		}
+		else if (value instanceof String) {
+			out.writeString((String) value);
+		}
+		else if (value instanceof Double) {
+			out.writeDouble(((Double) value).doubleValue());
+		}
+		else if (value instanceof Number) {
+			final String text = value.toString();
+			out.write(text, 0, text.length());
+		}
+		else if (value instanceof Boolean) {
+			out.writeBytes(((Boolean) value).booleanValue() ? MessageCodecs.TRUE
+					: MessageCodecs.FALSE);
+		}
+		else if (!MessageCodecs.write(out, value)) {
+			throw new IllegalArgumentException(
+					"No codec for " + value.getClass().getName());
+		}
+	}
+
+	private MessageCodecs() {}
+}
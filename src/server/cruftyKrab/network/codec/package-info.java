@@ -0,0 +1,6 @@
+/**
+ * Encoders and decoders for the messages in
+ * {@link cruftyKrab.network.messages}, generated ahead of time so messages can
+ * be read and written without reflection.
+ */
+package cruftyKrab.network.codec;
\ No newline at end of file
@@ -0,0 +1,27 @@
+package cruftyKrab.network.messages;
+
+/**
+ * The parts of an entity that changed between two snapshots. Fields that did
+ * not change are left null, so they are not sent at all.
+ *
+ * @author Ches Burks
+ *
+ */
+public class EntityDelta {
+	/**
+	 * The ID of the entity.
+	 */
+	public double id;
+	/**
+	 * The new x position, or null if it did not change.
+	 */
+	public Double x;
+	/**
+	 * The new y position, or null if it did not change.
+	 */
+	public Double y;
+	/**
+	 * The way the entity is now facing, or null if it did not change.
+	 */
+	public String facing;
+}
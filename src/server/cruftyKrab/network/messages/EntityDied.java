@@ -11,6 +11,13 @@ public class EntityDied {
 	 * The type of event (Equal to this class name, so it can be parsed.)
 	 */
 	public String eventType = "EntityDied";
+	/**
+	 * The ID of the entity within the match. Clients may send 0 and the unique
+	 * id instead.
+	 *
+	 * @see cruftyKrab.game.Mascot#getId()
+	 */
+	public double id;
 	/**
 	 * The unique id of the entity.
 	 */
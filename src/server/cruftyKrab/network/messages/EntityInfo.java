@@ -10,7 +10,15 @@ import cruftyKrab.game.MascotColor;
  */
 public class EntityInfo {
 	/**
-	 * The unique id of the entity.
+	 * The ID of the entity within the match. This is what clients should use
+	 * to tell entities apart, it is never 0.
+	 *
+	 * @see cruftyKrab.game.Mascot#getId()
+	 */
+	public double id;
+	/**
+	 * The unique id of the entity. Not sent when the ID is enough, such as in
+	 * moves.
 	 */
 	public String uniqueID;
 	/**
@@ -15,6 +15,11 @@ public class MoveInfo {
 	 * The new position of that entity.
 	 */
 	public Vect position;
+	/**
+	 * How fast the entity is moving, in tiles per second, so the client can
+	 * keep it moving until the next update. Null if it is standing still.
+	 */
+	public Vect velocity;
 	/**
 	 * The way the player is facing
 	 */
@@ -0,0 +1,18 @@
+package cruftyKrab.network.messages.in;
+
+/**
+ * A client would like to use the binary protocol.
+ *
+ * @author Ches Burks
+ *
+ */
+public class BinaryHello {
+	/**
+	 * The type of event (Equal to this class name, so it can be parsed).
+	 */
+	public String eventType = "binaryHello";
+	/**
+	 * The version of the binary protocol the client understands.
+	 */
+	public double version;
+}
@@ -0,0 +1,18 @@
+package cruftyKrab.network.messages.in;
+
+/**
+ * A client has received a snapshot, and can be sent changes since it.
+ *
+ * @author Ches Burks
+ *
+ */
+public class SnapshotAck {
+	/**
+	 * The type of event (Equal to this class name, so it can be parsed).
+	 */
+	public String eventType = "snapshotAck";
+	/**
+	 * The sequence number of the snapshot that was received.
+	 */
+	public double seq;
+}
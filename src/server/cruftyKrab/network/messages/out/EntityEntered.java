@@ -0,0 +1,34 @@
+package cruftyKrab.network.messages.out;
+
+import cruftyKrab.network.messages.EntityInfo;
+import cruftyKrab.network.messages.Vect;
+
+/**
+ * An entity that already existed came close enough for the client to see.
+ *
+ * @author Ches Burks
+ *
+ */
+public class EntityEntered {
+	/**
+	 * The type of event (Equal to this class name, so it can be parsed.)
+	 */
+	public String eventType = "EntityEntered";
+	/**
+	 * The entity that can now be seen.
+	 */
+	public EntityInfo entity;
+	/**
+	 * Where the entity is.
+	 */
+	public Vect position;
+	/**
+	 * How fast the entity is moving, in tiles per second, so the client can
+	 * keep it moving until the next update. Null if it is standing still.
+	 */
+	public Vect velocity;
+	/**
+	 * The way the entity is facing, or null if it isn't known.
+	 */
+	public String facing;
+}
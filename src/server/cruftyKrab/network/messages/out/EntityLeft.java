@@ -0,0 +1,21 @@
+package cruftyKrab.network.messages.out;
+
+import cruftyKrab.network.messages.EntityInfo;
+
+/**
+ * An entity went too far away for the client to see. It still exists, and
+ * the client will be told if it comes back.
+ *
+ * @author Ches Burks
+ *
+ */
+public class EntityLeft {
+	/**
+	 * The type of event (Equal to this class name, so it can be parsed.)
+	 */
+	public String eventType = "EntityLeft";
+	/**
+	 * The entity that can't be seen any more. Only the ID is set.
+	 */
+	public EntityInfo entity;
+}
@@ -0,0 +1,45 @@
+package cruftyKrab.network.messages.out;
+
+import cruftyKrab.network.messages.MoveInfo;
+import cruftyKrab.network.messages.ScoreInfo;
+
+/**
+ * Everything a player needs to know when joining a match in progress, sent
+ * as one message instead of an {@link EntitySpawned} for each entity. It is
+ * built once per update and shared by everyone who joins during that update,
+ * so it doesn't include players who joined during the same update.
+ *
+ * @author Ches Burks
+ *
+ */
+public class MatchSnapshot {
+	/**
+	 * The type of event (Equal to this class name, so it can be parsed.)
+	 */
+	public String eventType = "MatchSnapshot";
+	/**
+	 * Which update of the match it was built during.
+	 */
+	public double tick;
+	/**
+	 * The round being played.
+	 */
+	public double round;
+	/**
+	 * How many entities there are.
+	 */
+	public double entityCount;
+	/**
+	 * The players and enemies the joining player can see, where they are and
+	 * how they are moving, as exactly as moves are sent.
+	 */
+	public MoveInfo[] entities;
+	/**
+	 * How many scores there are.
+	 */
+	public double scoreCount;
+	/**
+	 * The points of each player so far, highest first.
+	 */
+	public ScoreInfo[] scores;
+}
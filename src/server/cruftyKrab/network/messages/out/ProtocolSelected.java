@@ -0,0 +1,20 @@
+package cruftyKrab.network.messages.out;
+
+/**
+ * Tells a client which protocol the server will use with it, in answer to a
+ * request to use the binary protocol.
+ *
+ * @author Ches Burks
+ *
+ */
+public class ProtocolSelected {
+	/**
+	 * The type of event (Equal to this class name, so it can be parsed).
+	 */
+	public String eventType = "ProtocolSelected";
+	/**
+	 * The version of the binary protocol that will be used, or 0 if the
+	 * server will keep using JSON.
+	 */
+	public double version;
+}
@@ -0,0 +1,43 @@
+package cruftyKrab.network.messages.out;
+
+import cruftyKrab.network.messages.EntityDelta;
+
+/**
+ * The state of the world, sent as the changes since a snapshot the client
+ * already has. The client should acknowledge each snapshot it gets, so the
+ * next one can be sent as changes since this one.
+ *
+ * @author Ches Burks
+ *
+ */
+public class Snapshot {
+	/**
+	 * The type of event (Equal to this class name, so it can be parsed).
+	 */
+	public String eventType = "Snapshot";
+	/**
+	 * The sequence number of this snapshot.
+	 */
+	public double seq;
+	/**
+	 * The snapshot this one is based on, or -1 if this snapshot contains
+	 * everything and the client should throw away what it has.
+	 */
+	public double baseSeq;
+	/**
+	 * How many entities are in the entity list.
+	 */
+	public double entityCount;
+	/**
+	 * The entities that are new or changed since the base snapshot.
+	 */
+	public EntityDelta[] entities;
+	/**
+	 * How many entities are in the removed list.
+	 */
+	public double removedCount;
+	/**
+	 * The IDs of entities that were in the base snapshot but are gone now.
+	 */
+	public double[] removed;
+}
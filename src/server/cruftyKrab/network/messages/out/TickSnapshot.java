@@ -0,0 +1,58 @@
+package cruftyKrab.network.messages.out;
+
+import cruftyKrab.network.messages.MoveInfo;
+
+/**
+ * Everything that happened to the entities a client can see during one
+ * update of the match, sent as one message instead of one for each thing.
+ * The parts are meant to be applied in the order they are listed here.
+ * Arrays and the round over message are left out when there is nothing in
+ * them.
+ *
+ * @author Ches Burks
+ *
+ */
+public class TickSnapshot {
+	/**
+	 * The type of event (Equal to this class name, so it can be parsed.)
+	 */
+	public String eventType = "TickSnapshot";
+	/**
+	 * Which update of the match this is.
+	 */
+	public double tick;
+	/**
+	 * The round being played at the end of the update.
+	 */
+	public double round;
+	/**
+	 * How many entities were spawned or came into view.
+	 */
+	public double spawnCount;
+	/**
+	 * The {@link EntitySpawned} and {@link EntityEntered} messages for the
+	 * update, in the order they happened.
+	 */
+	public Object[] spawns;
+	/**
+	 * How many moves there are.
+	 */
+	public double moveCount;
+	/**
+	 * Where players and enemies are.
+	 */
+	public MoveInfo[] moves;
+	/**
+	 * How many entities died or went out of view.
+	 */
+	public double despawnCount;
+	/**
+	 * The EntityDied and {@link EntityLeft} messages for the update, in the
+	 * order they happened.
+	 */
+	public Object[] despawns;
+	/**
+	 * Set if a round ended during the update.
+	 */
+	public RoundOver roundOver;
+}
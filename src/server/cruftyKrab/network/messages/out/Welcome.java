@@ -17,6 +17,13 @@ public class Welcome {
 	 * The unique name for the player that connected.
 	 */
 	public String uniqueName;
+	/**
+	 * The ID of the player that connected, which is used for it in all other
+	 * messages.
+	 *
+	 * @see cruftyKrab.game.Mascot#getId()
+	 */
+	public double id;
 	/**
 	 * The index of the color of this player on the sprite sheet. See
 	 * {@link MascotColor#getIndex()} for an explanation of this number.
@@ -28,4 +35,9 @@ public class Welcome {
 	 * What round the match is on at time of join.
 	 */
 	public double waveNum;
+	/**
+	 * How many times a second the server sends out moves, so the client knows
+	 * how long to take moving things between them.
+	 */
+	public double tickRate;
 }
@@ -0,0 +1,637 @@
+package cruftyKrab.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Writes {@link cruftyKrab.network.codec.MessageCodecs}, which has a JSON
+ * encoder and decoder for each class in <code>cruftyKrab.network.messages</code>
+ * and its <code>in</code> and <code>out</code> packages. The fields of each
+ * message are read with reflection here, once, so the server never has to.
+ *
+ * This has to be run again whenever a message is added or changed, with the
+ * compiled messages on the class path. Usage:
+ * <code>CodecGenerator [source root]</code>, where the source root defaults to
+ * <code>src/server</code>. The messages are found by listing the files in
+ * their packages under the source root, and the generated file is written
+ * there too.
+ *
+ * @author Ches Burks
+ *
+ */
+public class CodecGenerator {
+
+	/**
+	 * The kinds of field the generated code knows how to handle.
+	 */
+	private enum Kind {
+		BOOLEAN, BOXED_DOUBLE, DOUBLE, DOUBLE_ARRAY, INT, LONG, MESSAGE,
+		MESSAGE_ARRAY, OBJECT, OBJECT_ARRAY, STRING;
+	}
+
+	/**
+	 * Whether a comma is needed before the next field of an object, as far as
+	 * can be told while generating the code.
+	 */
+	private enum Comma {
+		/**
+		 * Nothing has been written yet.
+		 */
+		NEVER,
+		/**
+		 * A field that is always written came before.
+		 */
+		ALWAYS,
+		/**
+		 * Only fields that might have been null came before, so the generated
+		 * code has to keep track.
+		 */
+		MAYBE;
+	}
+
+	private static final String CODEC_PACKAGE = "cruftyKrab.network.codec";
+	private static final String CODEC_CLASS = "MessageCodecs";
+	private static final String[] MESSAGE_PACKAGES =
+			{"cruftyKrab.network.messages", "cruftyKrab.network.messages.in",
+					"cruftyKrab.network.messages.out"};
+
+	/**
+	 * Returns the fields Gson would write, in the order it writes them.
+	 */
+	private static Field[] fieldsOf(Class<?> type) {
+		ArrayList<Field> fields = new ArrayList<>();
+		for (Field f : type.getDeclaredFields()) {
+			final int mods = f.getModifiers();
+			if (Modifier.isStatic(mods) || Modifier.isTransient(mods)
+					|| f.isSynthetic()) {
+				continue;
+			}
+			if (!Modifier.isPublic(mods)) {
+				throw new IllegalStateException(
+						type.getName() + "." + f.getName() + " is not public");
+			}
+			fields.add(f);
+		}
+		return fields.toArray(new Field[fields.size()]);
+	}
+
+	/**
+	 * Finds the message classes by listing the source files in their
+	 * packages.
+	 */
+	private static ArrayList<Class<?>> findMessages(File root)
+			throws ClassNotFoundException {
+		ArrayList<Class<?>> found = new ArrayList<>();
+		for (String pack : CodecGenerator.MESSAGE_PACKAGES) {
+			File dir = new File(root, pack.replace('.', File.separatorChar));
+			String[] files = dir.list();
+			if (files == null) {
+				throw new IllegalStateException("Can't list " + dir);
+			}
+			Arrays.sort(files);
+			for (String file : files) {
+				if (!file.endsWith(".java") || file.equals("package-info.java")) {
+					continue;
+				}
+				found.add(Class.forName(
+						pack + "." + file.substring(0, file.length() - 5)));
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Generates the codecs and writes them to the source tree.
+	 *
+	 * @param args the source root, optional
+	 * @throws Exception if the messages can't be loaded or the file can't be
+	 *             written
+	 */
+	public static void main(String[] args) throws Exception {
+		File root = new File(args.length > 0 ? args[0] : "src/server");
+		ArrayList<Class<?>> messages = CodecGenerator.findMessages(root);
+		CodecGenerator gen = new CodecGenerator(messages);
+		File out = new File(root,
+				CodecGenerator.CODEC_PACKAGE.replace('.', File.separatorChar)
+						+ File.separator + CodecGenerator.CODEC_CLASS + ".java");
+		gen.write(out);
+		System.out.println("Wrote codecs for " + messages.size()
+				+ " messages to " + out);
+	}
+
+	/**
+	 * Returns true if fields of this kind can be null, and are left out when
+	 * they are.
+	 */
+	private static boolean nullable(Kind kind) {
+		return kind != Kind.DOUBLE && kind != Kind.INT && kind != Kind.LONG
+				&& kind != Kind.BOOLEAN;
+	}
+
+	/**
+	 * Turns a field name like eventType into EVENT_TYPE.
+	 */
+	private static String upperSnake(String name) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < name.length(); ++i) {
+			final char c = name.charAt(i);
+			if (Character.isUpperCase(c) && i > 0
+					&& !Character.isUpperCase(name.charAt(i - 1))) {
+				sb.append('_');
+			}
+			sb.append(Character.toUpperCase(c));
+		}
+		return sb.toString();
+	}
+
+	private final ArrayList<Class<?>> messages;
+	/**
+	 * The constant holding each field name, keyed by the name.
+	 */
+	private final TreeMap<String, String> names;
+	/**
+	 * Message types that appear in arrays and need a helper to read them.
+	 */
+	private final TreeSet<String> arrayTypes;
+	private final StringBuilder code;
+
+	private CodecGenerator(ArrayList<Class<?>> messageTypes) {
+		this.messages = messageTypes;
+		this.names = new TreeMap<>();
+		this.arrayTypes = new TreeSet<>();
+		this.code = new StringBuilder();
+		TreeSet<String> simpleNames = new TreeSet<>();
+		for (Class<?> type : messageTypes) {
+			if (!simpleNames.add(type.getSimpleName())) {
+				throw new IllegalStateException(
+						"Two messages are named " + type.getSimpleName());
+			}
+		}
+	}
+
+	private Kind kindOf(Field f) {
+		Class<?> type = f.getType();
+		if (type == double.class) {
+			return Kind.DOUBLE;
+		}
+		if (type == Double.class) {
+			return Kind.BOXED_DOUBLE;
+		}
+		if (type == int.class) {
+			return Kind.INT;
+		}
+		if (type == long.class) {
+			return Kind.LONG;
+		}
+		if (type == boolean.class) {
+			return Kind.BOOLEAN;
+		}
+		if (type == String.class) {
+			return Kind.STRING;
+		}
+		if (type == double[].class) {
+			return Kind.DOUBLE_ARRAY;
+		}
+		if (type == Object.class) {
+			return Kind.OBJECT;
+		}
+		if (type == Object[].class) {
+			return Kind.OBJECT_ARRAY;
+		}
+		if (this.messages.contains(type)) {
+			return Kind.MESSAGE;
+		}
+		if (type.isArray() && this.messages.contains(type.getComponentType())) {
+			return Kind.MESSAGE_ARRAY;
+		}
+		throw new IllegalStateException("Can't generate a codec for "
+				+ f.getDeclaringClass().getName() + "." + f.getName() + " ("
+				+ type.getName() + ")");
+	}
+
+	private void line(final int indent, String text) {
+		for (int i = 0; i < indent; ++i) {
+			this.code.append('\t');
+		}
+		this.code.append(text).append('\n');
+	}
+
+	private String nameConstant(String fieldName) {
+		String constant = this.names.get(fieldName);
+		if (constant == null) {
+			constant = "NAME_" + CodecGenerator.upperSnake(fieldName);
+			this.names.put(fieldName, constant);
+		}
+		return constant;
+	}
+
+	private void writeDecoder(Class<?> type) {
+		final String simple = type.getSimpleName();
+		this.line(1, "/**");
+		this.line(1, " * Reads a {@link " + simple + "}, skipping any fields it"
+				+ " doesn't have.");
+		this.line(1, " *");
+		this.line(1, " * @param in the reader, positioned at the object");
+		this.line(1, " * @return the message, or null if the value was null");
+		this.line(1, " */");
+		this.line(1, "public static " + simple + " read" + simple
+				+ "(JsonReader in) {");
+		this.line(2, "if (in.nextNull()) {");
+		this.line(3, "return null;");
+		this.line(2, "}");
+		this.line(2, simple + " value = new " + simple + "();");
+		this.line(2, "in.beginObject();");
+		this.line(2, "while (in.hasNext()) {");
+		this.line(3, "in.nextName();");
+		String prefix = "if";
+		for (Field f : CodecGenerator.fieldsOf(type)) {
+			final Kind kind = this.kindOf(f);
+			final String name = f.getName();
+			this.line(3, prefix + " (in.nameEquals(\"" + name + "\")) {");
+			switch (kind) {
+			case BOOLEAN:
+				this.line(4, "value." + name + " = in.nextBoolean();");
+				break;
+			case BOXED_DOUBLE:
+				this.line(4, "value." + name
+						+ " = in.nextNull() ? null : Double.valueOf(in.nextDouble());");
+				break;
+			case DOUBLE:
+				this.line(4, "value." + name + " = in.nextDouble();");
+				break;
+			case DOUBLE_ARRAY:
+				this.line(4, "value." + name
+						+ " = MessageCodecs.readDoubleArray(in);");
+				break;
+			case INT:
+				this.line(4, "value." + name + " = in.nextInt();");
+				break;
+			case LONG:
+				this.line(4, "value." + name + " = (long) in.nextDouble();");
+				break;
+			case MESSAGE:
+				this.line(4, "value." + name + " = MessageCodecs.read"
+						+ f.getType().getSimpleName() + "(in);");
+				break;
+			case MESSAGE_ARRAY:
+				final String element = f.getType().getComponentType().getSimpleName();
+				this.arrayTypes.add(element);
+				this.line(4, "value." + name + " = MessageCodecs.read" + element
+						+ "Array(in);");
+				break;
+			case OBJECT:
+			case OBJECT_ARRAY:
+				this.line(4, "// the type isn't known, so these are only sent");
+				this.line(4, "in.skipValue();");
+				break;
+			case STRING:
+				this.line(4, "value." + name + " = in.nextString();");
+				break;
+			default:
+				throw new IllegalStateException("Unknown kind " + kind);
+			}
+			this.line(3, "}");
+			prefix = "else if";
+		}
+		if (prefix.equals("if")) {
+			this.line(3, "in.skipValue();");
+		}
+		else {
+			this.line(3, "else {");
+			this.line(4, "in.skipValue();");
+			this.line(3, "}");
+		}
+		this.line(2, "}");
+		this.line(2, "in.endObject();");
+		this.line(2, "return value;");
+		this.line(1, "}");
+		this.line(0, "");
+	}
+
+	private void writeEncoder(Class<?> type) {
+		final String simple = type.getSimpleName();
+		this.line(1, "/**");
+		this.line(1, " * Writes a {@link " + simple + "} as JSON.");
+		this.line(1, " *");
+		this.line(1, " * @param out where to write it");
+		this.line(1, " * @param value the message, which must not be null");
+		this.line(1, " */");
+		this.line(1, "public static void write(FrameWriter out, " + simple
+				+ " value) {");
+		this.line(2, "out.writeByte('{');");
+		final int declaration = this.code.length();
+		boolean tracked = false;
+		Field[] fields = CodecGenerator.fieldsOf(type);
+		Comma comma = Comma.NEVER;
+		for (int f = 0; f < fields.length; ++f) {
+			final Kind kind = this.kindOf(fields[f]);
+			final String name = fields[f].getName();
+			final String get = "value." + name;
+			final boolean nullable = CodecGenerator.nullable(kind);
+			int indent = 2;
+			if (nullable) {
+				this.line(2, "if (" + get + " != null) {");
+				indent = 3;
+			}
+			if (comma == Comma.ALWAYS) {
+				this.line(indent, "out.writeByte(',');");
+			}
+			else if (comma == Comma.MAYBE) {
+				this.line(indent, "if (more) {");
+				this.line(indent + 1, "out.writeByte(',');");
+				this.line(indent, "}");
+			}
+			if (nullable && comma != Comma.ALWAYS && f < fields.length - 1) {
+				// later fields can't tell if this one was written
+				this.line(indent, "more = true;");
+				tracked = true;
+			}
+			this.line(indent,
+					"out.writeBytes(MessageCodecs." + this.nameConstant(name) + ");");
+			this.writeValue(kind, fields[f], get, indent);
+			if (nullable) {
+				this.line(2, "}");
+				if (comma == Comma.NEVER) {
+					comma = Comma.MAYBE;
+				}
+			}
+			else {
+				comma = Comma.ALWAYS;
+			}
+		}
+		if (tracked) {
+			this.code.insert(declaration, "\t\tboolean more = false;\n");
+		}
+		this.line(2, "out.writeByte('}');");
+		this.line(1, "}");
+		this.line(0, "");
+	}
+
+	private void writeValue(Kind kind, Field f, String get, final int indent) {
+		switch (kind) {
+		case BOOLEAN:
+			this.line(indent, "out.writeBytes(" + get
+					+ " ? MessageCodecs.TRUE : MessageCodecs.FALSE);");
+			break;
+		case BOXED_DOUBLE:
+			this.line(indent, "out.writeDouble(" + get + ".doubleValue());");
+			break;
+		case DOUBLE:
+			this.line(indent, "out.writeDouble(" + get + ");");
+			break;
+		case DOUBLE_ARRAY:
+			this.line(indent, "MessageCodecs.writeArray(out, " + get + ");");
+			break;
+		case INT:
+		case LONG:
+			this.line(indent, "out.writeLong(" + get + ");");
+			break;
+		case MESSAGE:
+			this.line(indent, "MessageCodecs.write(out, " + get + ");");
+			break;
+		case MESSAGE_ARRAY:
+		case OBJECT_ARRAY:
+			this.line(indent, "out.writeByte('[');");
+			this.line(indent, "for (int i = 0; i < " + get + ".length; ++i) {");
+			this.line(indent + 1, "if (i > 0) {");
+			this.line(indent + 2, "out.writeByte(',');");
+			this.line(indent + 1, "}");
+			if (kind == Kind.OBJECT_ARRAY) {
+				this.line(indent + 1,
+						"MessageCodecs.writeValue(out, " + get + "[i]);");
+			}
+			else {
+				this.line(indent + 1, "if (" + get + "[i] == null) {");
+				this.line(indent + 2, "out.writeBytes(MessageCodecs.NULL);");
+				this.line(indent + 1, "}");
+				this.line(indent + 1, "else {");
+				this.line(indent + 2, "MessageCodecs.write(out, " + get + "[i]);");
+				this.line(indent + 1, "}");
+			}
+			this.line(indent, "}");
+			this.line(indent, "out.writeByte(']');");
+			break;
+		case OBJECT:
+			this.line(indent, "MessageCodecs.writeValue(out, " + get + ");");
+			break;
+		case STRING:
+			this.line(indent, "out.writeString(" + get + ");");
+			break;
+		default:
+			throw new IllegalStateException("Unknown kind " + kind + " for "
+					+ f.getDeclaringClass().getName() + "." + f.getName());
+		}
+	}
+
+	private void write(File file) throws IOException {
+		StringBuilder body = new StringBuilder();
+		for (Class<?> type : this.messages) {
+			this.code.setLength(0);
+			this.writeEncoder(type);
+			this.writeDecoder(type);
+			body.append(this.code);
+		}
+
+		this.code.setLength(0);
+		this.line(0, "package " + CodecGenerator.CODEC_PACKAGE + ";");
+		this.line(0, "");
+		this.line(0, "import java.util.ArrayList;");
+		this.line(0, "import java.util.Arrays;");
+		this.line(0, "");
+		this.line(0, "import cruftyKrab.network.FrameWriter;");
+		this.line(0, "import cruftyKrab.network.JsonReader;");
+		for (Class<?> type : this.messages) {
+			this.line(0, "import " + type.getName() + ";");
+		}
+		this.line(0, "");
+		this.line(0, "/**");
+		this.line(0, " * JSON encoders and decoders for every message in");
+		this.line(0, " * {@link cruftyKrab.network.messages} and its in and out"
+				+ " packages, written");
+		this.line(0, " * out field by field so no reflection is needed. The"
+				+ " JSON is the same as");
+		this.line(0, " * Gson writes, with null fields left out. Everything is"
+				+ " static and keeps no");
+		this.line(0, " * state, so it can be used from any thread.");
+		this.line(0, " *");
+		this.line(0, " * Generated by {@link cruftyKrab.tools.CodecGenerator}."
+				+ " Don't edit this file,");
+		this.line(0, " * change the messages and run the generator again.");
+		this.line(0, " *");
+		this.line(0, " * @author Ches Burks");
+		this.line(0, " *");
+		this.line(0, " */");
+		this.line(0, "public final class " + CodecGenerator.CODEC_CLASS + " {");
+		this.line(0, "");
+		this.line(1, "private static final byte[] NULL = FrameWriter.encode(\"null\");");
+		this.line(1, "private static final byte[] TRUE = FrameWriter.encode(\"true\");");
+		this.line(1,
+				"private static final byte[] FALSE = FrameWriter.encode(\"false\");");
+		// fill in the names used by the bodies
+		StringBuilder header = new StringBuilder(this.code);
+		this.code.setLength(0);
+		for (Map.Entry<String, String> entry : this.names.entrySet()) {
+			final String declaration =
+					"private static final byte[] " + entry.getValue() + " =";
+			final String value =
+					"FrameWriter.encode(\"\\\"" + entry.getKey() + "\\\":\");";
+			if (4 + declaration.length() + 1 + value.length() <= 80) {
+				this.line(1, declaration + " " + value);
+			}
+			else {
+				this.line(1, declaration);
+				this.line(3, value);
+			}
+		}
+		this.line(0, "");
+		header.append(this.code);
+
+		this.code.setLength(0);
+		this.writeDispatch();
+		this.writeHelpers();
+		this.line(1, "private " + CodecGenerator.CODEC_CLASS + "() {}");
+		this.line(0, "}");
+
+		String source = header.toString() + body + this.code;
+		Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void writeDispatch() {
+		this.line(1, "/**");
+		this.line(1, " * Reads a message of the given type.");
+		this.line(1, " *");
+		this.line(1, " * @param type the class of the message");
+		this.line(1, " * @param in the reader, positioned at the object");
+		this.line(1, " * @return the message, or null if the value was null");
+		this.line(1, " * @param <T> the type of message");
+		this.line(1, " * @throws IllegalArgumentException if the type isn't a"
+				+ " message, or the");
+		this.line(1, " *             JSON is malformed");
+		this.line(1, " */");
+		this.line(1, "public static <T> T read(Class<T> type, JsonReader in) {");
+		for (Class<?> type : this.messages) {
+			final String simple = type.getSimpleName();
+			this.line(2, "if (type == " + simple + ".class) {");
+			this.line(3, "return type.cast(MessageCodecs.read" + simple + "(in));");
+			this.line(2, "}");
+		}
+		this.line(2, "throw new IllegalArgumentException(\"No codec for \" +"
+				+ " type.getName());");
+		this.line(1, "}");
+		this.line(0, "");
+
+		this.line(1, "/**");
+		this.line(1, " * Writes a message as JSON, if it is one of the messages"
+				+ " there is a codec");
+		this.line(1, " * for.");
+		this.line(1, " *");
+		this.line(1, " * @param out where to write it");
+		this.line(1, " * @param message the message");
+		this.line(1, " * @return true if it was written, false if it isn't a"
+				+ " known message and");
+		this.line(1, " *         nothing was written");
+		this.line(1, " */");
+		this.line(1, "public static boolean write(FrameWriter out, Object message) {");
+		this.line(2, "final Class<?> type = message.getClass();");
+		for (Class<?> type : this.messages) {
+			final String simple = type.getSimpleName();
+			this.line(2, "if (type == " + simple + ".class) {");
+			this.line(3, "MessageCodecs.write(out, (" + simple + ") message);");
+			this.line(3, "return true;");
+			this.line(2, "}");
+		}
+		this.line(2, "return false;");
+		this.line(1, "}");
+		this.line(0, "");
+	}
+
+	private void writeHelpers() {
+		for (String element : this.arrayTypes) {
+			this.line(1, "private static " + element + "[] read" + element
+					+ "Array(JsonReader in) {");
+			this.line(2, "if (in.nextNull()) {");
+			this.line(3, "return null;");
+			this.line(2, "}");
+			this.line(2, "ArrayList<" + element + "> values = new ArrayList<>();");
+			this.line(2, "in.beginArray();");
+			this.line(2, "while (in.hasNext()) {");
+			this.line(3, "values.add(MessageCodecs.read" + element + "(in));");
+			this.line(2, "}");
+			this.line(2, "in.endArray();");
+			this.line(2, "return values.toArray(new " + element
+					+ "[values.size()]);");
+			this.line(1, "}");
+			this.line(0, "");
+		}
+
+		this.line(1, "private static double[] readDoubleArray(JsonReader in) {");
+		this.line(2, "if (in.nextNull()) {");
+		this.line(3, "return null;");
+		this.line(2, "}");
+		this.line(2, "double[] values = new double[8];");
+		this.line(2, "int count = 0;");
+		this.line(2, "in.beginArray();");
+		this.line(2, "while (in.hasNext()) {");
+		this.line(3, "if (count == values.length) {");
+		this.line(4, "values = Arrays.copyOf(values, count * 2);");
+		this.line(3, "}");
+		this.line(3, "values[count++] = in.nextDouble();");
+		this.line(2, "}");
+		this.line(2, "in.endArray();");
+		this.line(2, "return Arrays.copyOf(values, count);");
+		this.line(1, "}");
+		this.line(0, "");
+
+		this.line(1, "private static void writeArray(FrameWriter out, double[]"
+				+ " values) {");
+		this.line(2, "out.writeByte('[');");
+		this.line(2, "for (int i = 0; i < values.length; ++i) {");
+		this.line(3, "if (i > 0) {");
+		this.line(4, "out.writeByte(',');");
+		this.line(3, "}");
+		this.line(3, "out.writeDouble(values[i]);");
+		this.line(2, "}");
+		this.line(2, "out.writeByte(']');");
+		this.line(1, "}");
+		this.line(0, "");
+
+		this.line(1, "/**");
+		this.line(1, " * Writes a value whose type is only known at run time.");
+		this.line(1, " */");
+		this.line(1, "private static void writeValue(FrameWriter out, Object"
+				+ " value) {");
+		this.line(2, "if (value == null) {");
+		this.line(3, "out.writeBytes(MessageCodecs.NULL);");
+		this.line(2, "}");
+		this.line(2, "else if (value instanceof String) {");
+		this.line(3, "out.writeString((String) value);");
+		this.line(2, "}");
+		this.line(2, "else if (value instanceof Double) {");
+		this.line(3, "out.writeDouble(((Double) value).doubleValue());");
+		this.line(2, "}");
+		this.line(2, "else if (value instanceof Number) {");
+		this.line(3, "final String text = value.toString();");
+		this.line(3, "out.write(text, 0, text.length());");
+		this.line(2, "}");
+		this.line(2, "else if (value instanceof Boolean) {");
+		this.line(3, "out.writeBytes(((Boolean) value).booleanValue()"
+				+ " ? MessageCodecs.TRUE");
+		this.line(5, ": MessageCodecs.FALSE);");
+		this.line(2, "}");
+		this.line(2, "else if (!MessageCodecs.write(out, value)) {");
+		this.line(3, "throw new IllegalArgumentException(");
+		this.line(5, "\"No codec for \" + value.getClass().getName());");
+		this.line(2, "}");
+		this.line(1, "}");
+		this.line(0, "");
+	}
+}
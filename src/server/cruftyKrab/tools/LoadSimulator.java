@@ -0,0 +1,285 @@
+package cruftyKrab.tools;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.handshake.ClientHandshakeBuilder;
+
+import cruftyKrab.network.Connection;
+import cruftyKrab.network.JsonReader;
+import cruftyKrab.network.ThreadMode;
+import cruftyKrab.network.codec.MessageCodecs;
+import cruftyKrab.network.messages.MoveInfo;
+import cruftyKrab.network.messages.Vect;
+import cruftyKrab.network.messages.in.PosUpdate;
+
+/**
+ * Compares the {@link ThreadMode thread modes} by pushing position updates
+ * through a large number of fake connections. Each update is parsed and
+ * answered the same way the server does, and each reply is "written" to a
+ * socket that blocks for a while, like a slow client would.
+ *
+ * Usage: <code>LoadSimulator [connections...]</code>, which defaults to 1000,
+ * 10000 and 50000 connections. The system properties
+ * <code>cruftyKrab.sim.rounds</code> (updates per connection, default 3),
+ * <code>cruftyKrab.sim.writeMicros</code> (time each write blocks, default
+ * 1000) and <code>cruftyKrab.connectionThreads</code> (threads for
+ * {@link ThreadMode#PLATFORM}) change the test.
+ *
+ * @author Ches Burks
+ *
+ */
+public class LoadSimulator {
+
+	/**
+	 * A socket that isn't connected to anything, and blocks for a while every
+	 * time something is sent.
+	 */
+	private static class SimulatedSocket extends WebSocket {
+		private final long writeNanos;
+		/**
+		 * When each message that hasn't been answered yet was received, in
+		 * order. Replies are sent in the same order, so each write answers the
+		 * oldest one.
+		 */
+		private final ConcurrentLinkedQueue<Long> pending;
+		private final LongConsumer onSend;
+
+		private SimulatedSocket(final long delay, LongConsumer sent) {
+			this.writeNanos = delay;
+			this.pending = new ConcurrentLinkedQueue<>();
+			this.onSend = sent;
+		}
+
+		@Override
+		public void close(int code) {}
+
+		@Override
+		public void close(int code, String message) {}
+
+		@Override
+		protected void close(InvalidDataException e) {}
+
+		@Override
+		public Draft getDraft() {
+			return null;
+		}
+
+		@Override
+		public InetSocketAddress getLocalSocketAddress() {
+			return null;
+		}
+
+		@Override
+		public int getReadyState() {
+			return WebSocket.READY_STATE_OPEN;
+		}
+
+		@Override
+		public InetSocketAddress getRemoteSocketAddress() {
+			return null;
+		}
+
+		@Override
+		public boolean hasBufferedData() {
+			return false;
+		}
+
+		@Override
+		public boolean isClosed() {
+			return false;
+		}
+
+		@Override
+		public boolean isClosing() {
+			return false;
+		}
+
+		@Override
+		public boolean isConnecting() {
+			return false;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void send(byte[] bytes) {
+			this.write();
+		}
+
+		@Override
+		public void send(java.nio.ByteBuffer bytes) {
+			this.write();
+		}
+
+		@Override
+		public void send(String text) {
+			this.write();
+		}
+
+		@Override
+		public void sendFrame(Framedata framedata) {
+			this.write();
+		}
+
+		@Override
+		public void startHandshake(ClientHandshakeBuilder handshakedata) {}
+
+		private void write() {
+			// sleeping in a loop so virtual threads are unmounted as well
+			final long end = System.nanoTime() + this.writeNanos;
+			long left;
+			while ((left = end - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(left);
+			}
+			Long received = this.pending.poll();
+			if (received != null) {
+				this.onSend.accept(System.nanoTime() - received.longValue());
+			}
+		}
+	}
+
+	/**
+	 * The default numbers of connections to test with.
+	 */
+	private static final int[] DEFAULT_COUNTS = {1000, 10000, 50000};
+
+	/**
+	 * Runs the simulation for every thread mode and connection count.
+	 *
+	 * @param args the numbers of connections to try, optional
+	 */
+	public static void main(String[] args) {
+		int[] counts = LoadSimulator.DEFAULT_COUNTS;
+		if (args.length > 0) {
+			counts = new int[args.length];
+			for (int i = 0; i < args.length; ++i) {
+				counts[i] = Integer.parseInt(args[i]);
+			}
+		}
+		final int rounds =
+				Math.max(1, Integer.getInteger("cruftyKrab.sim.rounds", 3));
+		final long writeNanos = TimeUnit.MICROSECONDS.toNanos(
+				Math.max(0, Integer.getInteger("cruftyKrab.sim.writeMicros",
+						1000)));
+		final int platformThreads = Integer.getInteger(
+				"cruftyKrab.connectionThreads",
+				ThreadMode.defaultPlatformThreads());
+
+		System.out.println("rounds=" + rounds + " writeMicros="
+				+ TimeUnit.NANOSECONDS.toMicros(writeNanos) + " platformThreads="
+				+ platformThreads);
+		System.out.println(String.format("%-9s %8s %12s %10s %10s %8s",
+				"mode", "conns", "msgs/s", "p50 ms", "p99 ms", "threads"));
+		for (ThreadMode mode : ThreadMode.values()) {
+			if (mode == ThreadMode.VIRTUAL && !ThreadMode.isVirtualSupported()) {
+				System.out.println(
+						"VIRTUAL   skipped, this version of Java has no virtual threads");
+				continue;
+			}
+			for (int count : counts) {
+				LoadSimulator.run(mode, count, rounds, writeNanos,
+						platformThreads);
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Runs one simulation and prints the results.
+	 */
+	private static void run(ThreadMode mode, final int count,
+			final int rounds, final long writeNanos, final int platformThreads) {
+		final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		final int total = count * rounds;
+		final long[] latencies = new long[total];
+		final AtomicInteger done = new AtomicInteger();
+		final CountDownLatch finished = new CountDownLatch(total);
+
+		final LongConsumer record = latency -> {
+			final int n = done.getAndIncrement();
+			if (n < total) {
+				latencies[n] = latency;
+			}
+			finished.countDown();
+		};
+		ExecutorService executor = mode.newExecutor("Sim", platformThreads);
+		SimulatedSocket[] sockets = new SimulatedSocket[count];
+		Connection[] connections = new Connection[count];
+		for (int i = 0; i < count; ++i) {
+			sockets[i] = new SimulatedSocket(writeNanos, record);
+			connections[i] = new Connection(sockets[i], executor);
+		}
+		threadBean.resetPeakThreadCount();
+
+		final long start = System.nanoTime();
+		for (int round = 0; round < rounds; ++round) {
+			for (int i = 0; i < count; ++i) {
+				final Connection c = connections[i];
+				final String message = "{\"eventName\":\"posUpdate\","
+						+ "\"xPosition\":" + i + ",\"yPosition\":" + round
+						+ ",\"facing\":\"DOWN\"}";
+				sockets[i].pending.add(Long.valueOf(System.nanoTime()));
+				c.handle(() -> {
+					PosUpdate pu =
+							MessageCodecs.readPosUpdate(new JsonReader(message));
+					MoveInfo reply = new MoveInfo();
+					reply.position = new Vect();
+					reply.position.x = pu.xPosition;
+					reply.position.y = pu.yPosition;
+					reply.facing = pu.facing;
+					c.sendMessage(reply);
+				});
+			}
+		}
+		try {
+			if (!finished.await(10, TimeUnit.MINUTES)) {
+				System.out.println(mode + " " + count + " timed out");
+			}
+		}
+		catch (@SuppressWarnings("unused") InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		final long elapsed = System.nanoTime() - start;
+		final int peakThreads = threadBean.getPeakThreadCount();
+		executor.shutdownNow();
+
+		final int measured = Math.min(done.get(), total);
+		long[] sorted = Arrays.copyOf(latencies, measured);
+		Arrays.sort(sorted);
+		System.out.println(String.format("%-9s %8d %12.0f %10.2f %10.2f %8d",
+				mode, Integer.valueOf(count),
+				Double.valueOf(measured / (elapsed / 1_000_000_000.0)),
+				Double.valueOf(LoadSimulator.percentile(sorted, 0.50)),
+				Double.valueOf(LoadSimulator.percentile(sorted, 0.99)),
+				Integer.valueOf(peakThreads)));
+	}
+
+	/**
+	 * Returns a percentile of sorted times in ns, in ms.
+	 */
+	private static double percentile(long[] sorted, final double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		final int index =
+				Math.min(sorted.length - 1, (int) (p * sorted.length));
+		return sorted[index] / 1_000_000.0;
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * Programs for testing and measuring the server, and for generating code,
+ * which are not part of the game itself.
+ */
+package cruftyKrab.tools;